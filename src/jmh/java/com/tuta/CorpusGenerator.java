@@ -0,0 +1,126 @@
+package com.tuta;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic corpora of any size from the vocabulary of a sample file, for benchmarks.
+ *
+ * <p>
+ * The words of all sample bodies are kept with their punctuation and in proportion to how often they occur, so the
+ * generated bodies follow the same word distribution. A share of the generated emails are near duplicates of earlier
+ * ones with a few words replaced, which gives the similarity step some spam to find.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * Email[] emails = CorpusGenerator.fromFile("emails-m.json").generate(10_000, 42);
+ * }</pre>
+ */
+public class CorpusGenerator {
+    /**
+     * System property naming the sample file, {@code emails-m.json} in the working directory by default.
+     */
+    public static final String VOCABULARY_FILE_PROPERTY = "spamchecker.jmh.vocabulary";
+
+    /**
+     * Share of generated emails that are near duplicates of an earlier email.
+     */
+    private static final float NEAR_DUPLICATE_RATE = 0.2f;
+
+    /**
+     * Share of words replaced in a near duplicate.
+     */
+    private static final float MUTATION_RATE = 0.1f;
+
+    /**
+     * Every word of the sample bodies, in order of occurrence.
+     */
+    private final String[] words;
+
+    /**
+     * Constructs a generator using the words of the given emails.
+     *
+     * @param sampleEmails The emails providing the vocabulary.
+     * @throws IllegalArgumentException If the emails contain no words.
+     */
+    public CorpusGenerator(Email[] sampleEmails) {
+        List<String> sampleWords = new ArrayList<>();
+        for (Email email : sampleEmails) {
+            for (String word : email.getBody().split("\\s+")) {
+                if (!word.isEmpty()) sampleWords.add(word);
+            }
+        }
+        if (sampleWords.isEmpty()) {
+            throw new IllegalArgumentException("Sample emails have no words");
+        }
+        this.words = sampleWords.toArray(new String[0]);
+    }
+
+    /**
+     * Constructs a generator using the words of a JSON file of emails.
+     *
+     * @param filePath The path of the JSON file.
+     * @return The generator.
+     * @throws IOException If the file cannot be read.
+     */
+    public static CorpusGenerator fromFile(String filePath) throws IOException {
+        List<Email> sampleEmails = new ArrayList<>();
+        try (Reader reader = new FileReader(filePath)) {
+            EmailStreamReader.readEmails(reader, sampleEmails::add);
+        }
+        return new CorpusGenerator(sampleEmails.toArray(new Email[0]));
+    }
+
+    /**
+     * Constructs a generator using the file named by {@link #VOCABULARY_FILE_PROPERTY}.
+     *
+     * @return The generator.
+     * @throws IOException If the file cannot be read.
+     */
+    public static CorpusGenerator fromDefaultFile() throws IOException {
+        return fromFile(System.getProperty(VOCABULARY_FILE_PROPERTY, "emails-m.json"));
+    }
+
+    /**
+     * Returns the number of words the bodies are generated from.
+     *
+     * @return The number of sample words, counting repetitions.
+     */
+    public int getNumOfSampleWords() {
+        return words.length;
+    }
+
+    /**
+     * Generates a corpus. The same seed always gives the same corpus.
+     *
+     * @param numOfEmails The number of emails to generate.
+     * @param seed        The seed of the random generator.
+     * @return The generated emails.
+     */
+    public Email[] generate(int numOfEmails, long seed) {
+        Random random = new Random(seed);
+        String[][] bodies = new String[numOfEmails][];
+        Email[] emails = new Email[numOfEmails];
+
+        for (int i = 0; i < numOfEmails; i++) {
+            String[] body;
+            if (i > 0 && random.nextFloat() < NEAR_DUPLICATE_RATE) {
+                body = bodies[random.nextInt(i)].clone();
+                for (int j = 0; j < body.length; j++) {
+                    if (random.nextFloat() < MUTATION_RATE) body[j] = words[random.nextInt(words.length)];
+                }
+            } else {
+                body = new String[20 + random.nextInt(100)];
+                for (int j = 0; j < body.length; j++) body[j] = words[random.nextInt(words.length)];
+            }
+            bodies[i] = body;
+            emails[i] = new Email("user" + i + "@example.com", String.join(" ", body));
+        }
+        return emails;
+    }
+}
@@ -0,0 +1,73 @@
+package com.tuta;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the full classification of a corpus: indexing, TF-IDF vectors, similarities and spam flags.
+ * 100k emails take minutes per iteration and are only run when requested with {@code -p numOfEmails=100000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+    @Param({"1000", "10000"})
+    public int numOfEmails;
+
+    @Param({"true", "false"})
+    public boolean parallel;
+
+    /**
+     * Whether the pairs sharing a term are found through the inverted index or all pairs are compared. For the full
+     * matrix, whether it is computed in blocks from the inverted index or pair by pair.
+     */
+    @Param({"true", "false"})
+    public boolean inverted;
+
+    private Email[] emails;
+
+    @Setup
+    public void setUp() throws IOException {
+        emails = CorpusGenerator.fromDefaultFile().generate(numOfEmails, 42);
+    }
+
+    @Benchmark
+    public boolean[] classify() {
+        CorpusIndex corpusIndex = new CorpusIndex(emails);
+        SparseVector[] emailVectors = corpusIndex.getVectors();
+        SimilarityEngine similarityEngine = new SimilarityEngine(parallel);
+        SimilarityGraph similarityGraph = inverted
+                ? similarityEngine.computeGraph(emailVectors, new InvertedIndex(emailVectors), 0.32f)
+                : similarityEngine.computeGraph(emailVectors, 0.32f);
+        return similarityGraph.classify(1);
+    }
+
+    @Benchmark
+    public boolean[] classifyMatrix() {
+        CorpusIndex corpusIndex = new CorpusIndex(emails);
+        SparseVector[] emailVectors = corpusIndex.getVectors();
+        SimilarityEngine similarityEngine = new SimilarityEngine(parallel);
+        SymmetricMatrix emailsSimilarity = new SymmetricMatrix(emailVectors.length);
+        if (inverted) {
+            similarityEngine.computeAll(emailVectors, new InvertedIndex(emailVectors), emailsSimilarity);
+        } else {
+            similarityEngine.computeAll(emailVectors, emailsSimilarity);
+        }
+        return SimilarityGraph.fromMatrix(emailsSimilarity, 0.32f).classify(1);
+    }
+}
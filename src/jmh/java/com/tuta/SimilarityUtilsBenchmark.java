@@ -0,0 +1,127 @@
+package com.tuta;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the TF-IDF and cosine similarity calculations on corpora of different sizes, comparing the original
+ * string-based methods of {@link SimilarityUtils} with the {@link CorpusIndex} and {@link SparseVector} ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimilarityUtilsBenchmark {
+    /**
+     * Number of emails the benchmarks cycle through, which also have their dense vectors precomputed.
+     */
+    private static final int NUM_OF_SAMPLES = 256;
+
+    @Param({"1000", "10000", "100000"})
+    public int numOfEmails;
+
+    private Email[] emails;
+    private CorpusIndex corpusIndex;
+    private Map<String, Map<Integer, Float>> tfIdfDatabase;
+    private InvertedIndex invertedIndex;
+    private int[] sampleEmails;
+    private String[] sampleWords;
+    private float[][] denseVectors;
+    private SparseVector[] sparseVectors;
+    private int next;
+    private final DenseKernel scalarKernel = new ScalarKernel();
+
+    @Setup
+    public void setUp() throws IOException {
+        emails = CorpusGenerator.fromDefaultFile().generate(numOfEmails, 42);
+        corpusIndex = new CorpusIndex(emails);
+        tfIdfDatabase = corpusIndex.buildTFIDFDatabase();
+        invertedIndex = corpusIndex.buildInvertedIndex();
+
+        Random random = new Random(7);
+        sampleEmails = new int[NUM_OF_SAMPLES];
+        sampleWords = new String[NUM_OF_SAMPLES];
+        denseVectors = new float[NUM_OF_SAMPLES][];
+        sparseVectors = new SparseVector[NUM_OF_SAMPLES];
+        for (int i = 0; i < NUM_OF_SAMPLES; i++) {
+            sampleEmails[i] = random.nextInt(numOfEmails);
+            String[] words = TextUtils.getCleanWords(emails[sampleEmails[i]].getBody());
+            sampleWords[i] = words[random.nextInt(words.length)];
+            denseVectors[i] = SimilarityUtils.getVector(tfIdfDatabase, sampleEmails[i]);
+            sparseVectors[i] = corpusIndex.getVector(sampleEmails[i]);
+        }
+    }
+
+    private int nextSample() {
+        next = (next + 1) & (NUM_OF_SAMPLES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public float calcTFIDF() {
+        int sample = nextSample();
+        return SimilarityUtils.calcTFIDF(emails, emails[sampleEmails[sample]], sampleWords[sample]);
+    }
+
+    @Benchmark
+    public float calcTFIDFIndexed() {
+        int sample = nextSample();
+        return corpusIndex.getTFIDF(sampleEmails[sample], sampleWords[sample]);
+    }
+
+    @Benchmark
+    public float[] getVector() {
+        return SimilarityUtils.getVector(tfIdfDatabase, sampleEmails[nextSample()]);
+    }
+
+    @Benchmark
+    public float[] getVectorInverted() {
+        return SimilarityUtils.getVector(invertedIndex, sampleEmails[nextSample()]);
+    }
+
+    @Benchmark
+    public SparseVector getVectorIndexed() {
+        return corpusIndex.getVector(sampleEmails[nextSample()]);
+    }
+
+    /**
+     * Uses the SIMD kernel when the benchmarks are built with the vector profile and run with
+     * {@code -jvmArgsAppend "--add-modules jdk.incubator.vector"}, the scalar kernel otherwise.
+     */
+    @Benchmark
+    public float calcCosineSimilarity() {
+        int sample = nextSample();
+        return SimilarityUtils.calcCosineSimilarity(denseVectors[sample],
+                denseVectors[(sample + 1) & (NUM_OF_SAMPLES - 1)]);
+    }
+
+    @Benchmark
+    public float calcCosineSimilarityScalarKernel() {
+        int sample = nextSample();
+        return scalarKernel.calcCosineSimilarity(denseVectors[sample],
+                denseVectors[(sample + 1) & (NUM_OF_SAMPLES - 1)]);
+    }
+
+    @Benchmark
+    public float calcCosineSimilaritySparse() {
+        int sample = nextSample();
+        return SimilarityUtils.calcCosineSimilarity(sparseVectors[sample],
+                sparseVectors[(sample + 1) & (NUM_OF_SAMPLES - 1)]);
+    }
+}
@@ -0,0 +1,92 @@
+package com.tuta;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks random access to the similarity matrix, on the heap and memory-mapped with each encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymmetricMatrixBenchmark {
+    /**
+     * Number of random pairs the benchmarks cycle through.
+     */
+    private static final int NUM_OF_PAIRS = 4096;
+
+    @Param({"1000", "10000"})
+    public int numOfEmails;
+
+    /**
+     * HEAP for {@link SymmetricMatrix}, otherwise the {@link MappedSymmetricMatrix.Encoding} of a mapped matrix.
+     */
+    @Param({"HEAP", "FLOAT32", "FLOAT16", "BYTE"})
+    public String storage;
+
+    private SimilarityMatrix matrix;
+    private Path file;
+    private int[] rows;
+    private int[] cols;
+    private float[] values;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        if ("HEAP".equals(storage)) {
+            matrix = new SymmetricMatrix(numOfEmails);
+        } else {
+            file = Files.createTempFile("similarity", ".bin");
+            matrix = new MappedSymmetricMatrix(file, numOfEmails, MappedSymmetricMatrix.Encoding.valueOf(storage));
+        }
+
+        Random random = new Random(42);
+        rows = new int[NUM_OF_PAIRS];
+        cols = new int[NUM_OF_PAIRS];
+        values = new float[NUM_OF_PAIRS];
+        for (int i = 0; i < NUM_OF_PAIRS; i++) {
+            rows[i] = 1 + random.nextInt(numOfEmails - 1);
+            cols[i] = random.nextInt(rows[i]);
+            values[i] = random.nextFloat();
+            matrix.set(rows[i], cols[i], values[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (matrix instanceof Closeable) ((Closeable) matrix).close();
+        if (file != null) Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void set() {
+        next = (next + 1) & (NUM_OF_PAIRS - 1);
+        matrix.set(rows[next], cols[next], values[next]);
+    }
+
+    @Benchmark
+    public float get() {
+        next = (next + 1) & (NUM_OF_PAIRS - 1);
+        return matrix.get(cols[next], rows[next]);
+    }
+}
@@ -0,0 +1,63 @@
+package com.tuta;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the cleaning of a single email body, with {@link TextUtils} and with the {@link Tokenizer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextUtilsBenchmark {
+    /**
+     * Number of generated bodies the benchmarks cycle through.
+     */
+    private static final int NUM_OF_BODIES = 1024;
+
+    private String[] bodies;
+    private Tokenizer tokenizer;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        Email[] emails = CorpusGenerator.fromDefaultFile().generate(NUM_OF_BODIES, 42);
+        bodies = new String[emails.length];
+        for (int i = 0; i < emails.length; i++) bodies[i] = emails[i].getBody();
+        tokenizer = new Tokenizer(new TermDictionary());
+    }
+
+    private String nextBody() {
+        next = (next + 1) & (NUM_OF_BODIES - 1);
+        return bodies[next];
+    }
+
+    @Benchmark
+    public String[] getCleanWords() {
+        return TextUtils.getCleanWords(nextBody());
+    }
+
+    @Benchmark
+    public int countNumOfWords() {
+        return TextUtils.countNumOfWords(nextBody());
+    }
+
+    @Benchmark
+    public int tokenizeTermIds() {
+        return tokenizer.tokenizeTermIds(nextBody(), termId -> { });
+    }
+}
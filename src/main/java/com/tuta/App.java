@@ -1,24 +1,45 @@
 package com.tuta;
 
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
-import com.google.gson.Gson;
-
 /**
  * Main class for the Email Processor application.
  * This program analyzes email content, calculates similarity metrics, and classifies emails as spam or non-spam.
+ *
+ * <p>
+ * Without arguments, the file path, similarity threshold and number of similar emails allowed are read interactively
+ * and every step is logged to the console. With arguments, the application runs in batch mode as described by
+ * {@link CheckerOptions#usage()}: the results are written as JSON lines or CSV to the standard output or a file, and
+ * the logging goes to the standard error at the requested verbosity.
+ * </p>
  */
 public class App {
     /**
      * The entry point of the Email Processor application.
      *
-     * @param args Command-line arguments (not used in this application).
+     * @param args Command-line arguments of the batch mode, or none for the interactive mode.
      */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            int exitCode = runBatch(args);
+            if (exitCode != 0) System.exit(exitCode);
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
 
         System.out.println("Current Working Directory: " + System.getProperty("user.dir"));
@@ -34,87 +55,125 @@ public class App {
             System.out.println("\nNumber of similar emails allowed:");
             int numOfSimilarEmailsAllowed = scanner.nextInt();
 
-            Gson gson = new Gson();
-            Email[] emails = gson.fromJson(reader, Email[].class);
-
-            // TF-IDF Database and Similarity Matrix initialization
-            Map<String, Map<Integer, Float>>TF_IDF_DATABASE = new HashMap<>();
-            SymmetricMatrix emailsSimilarity = new SymmetricMatrix(emails.length);
-
-            // Process each email calculating its TF-IDF values
-            for (int currEmailIndex = 0; currEmailIndex < emails.length; currEmailIndex++) {
-                final Email email = emails[currEmailIndex];
-                System.out.println("\n--> Processing email");
-                email.print();
+            // Log every email and every similar pair, other options come from the spamchecker.* system properties
+            CheckerOptions options = new CheckerOptions();
+            options.setInputPath(filePath);
+            options.setSimilarityThreshold(similarityThreshold);
+            options.setNumOfSimilarEmailsAllowed(numOfSimilarEmailsAllowed);
+            options.setVerbosity(CheckerOptions.Verbosity.DEBUG);
+
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+            SpamCheckResult result = new SpamChecker(options, out).check(reader);
+            result.write(out, CheckerOptions.OutputFormat.TABLE);
+            out.flush();
+        } catch (InputMismatchException e) {
+            System.err.println("Sorry, input wrong format: " + e);
+        } catch (FileNotFoundException e) {
+            System.err.println("File not found: " + filePath);
+        } catch (IOException e) {
+            System.err.println("Error reading the file: " + filePath);
+        } catch (Exception e) {
+            System.err.println("An unexpected error occurred: " + e);
+        } finally {
+            scanner.close();
+        }
+    }
 
-                String[] words = TextUtils.getCleanWords(email.getBody());
-                for (String word : words) {
-                    TF_IDF_DATABASE.computeIfAbsent(word, s -> new HashMap<Integer, Float>());
-                    Map<Integer, Float> currWordMap = TF_IDF_DATABASE.get(word);
-                    float result = SimilarityUtils.calcTFIDF(emails, email, word);
-                    currWordMap.put(currEmailIndex, result);
-                    TF_IDF_DATABASE.put(word, currWordMap);
-                }
-            }
+    /**
+     * Runs the batch mode.
+     *
+     * @param args Command-line arguments, see {@link CheckerOptions#usage()}.
+     * @return The exit code: 0 on success, 1 if the check failed and 2 if the arguments are invalid.
+     */
+    static int runBatch(String[] args) {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.println(CheckerOptions.usage());
+            return 0;
+        }
 
-            System.out.println("\n--> Number of unique words: " + TF_IDF_DATABASE.keySet().size());
+        PrintWriter log = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.err)));
+        CheckerOptions options;
+        try {
+            options = CheckerOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            log.println(e.getMessage());
+            log.println(CheckerOptions.usage());
+            log.flush();
+            return 2;
+        }
 
-            // Cosine Similarity calculation
-            for (int currEmailIndex = 0; currEmailIndex < emails.length; currEmailIndex++) {
-                System.out.println("\n--> Current email index: " + currEmailIndex);
-                for (int indexEmailToCompare = currEmailIndex + 1; indexEmailToCompare < emails.length; indexEmailToCompare++) {
-                    float[] currEmailNormalizedVector = SimilarityUtils.getVector(TF_IDF_DATABASE, currEmailIndex);
-                    float[] emailToCompareNormalizedVector = SimilarityUtils.getVector(TF_IDF_DATABASE, indexEmailToCompare);
+        if (options.isServe()) {
+            return runServer(options, log);
+        }
 
-                    if(Float.isNaN(emailsSimilarity.get(currEmailIndex, indexEmailToCompare))) {
-                        float similarity = SimilarityUtils.calcCosineSimilarity(
-                                currEmailNormalizedVector,
-                                emailToCompareNormalizedVector
-                        );
-                        emailsSimilarity.set(currEmailIndex, indexEmailToCompare, similarity);
-                    System.out.println("indexEmailToCompare: " + indexEmailToCompare + " - similarity: "
-                            + emailsSimilarity.get(currEmailIndex, indexEmailToCompare));
-                    }
+        try (Reader reader = Files.newBufferedReader(Paths.get(options.getInputPath()), StandardCharsets.UTF_8)) {
+            SpamCheckResult result = new SpamChecker(options, log).check(reader);
+            if (options.getOutputPath() == null) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                result.write(writer, options.getOutputFormat());
+                writer.flush();
+            } else {
+                Path outputPath = Paths.get(options.getOutputPath());
+                try (Writer writer = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
+                    result.write(writer, options.getOutputFormat());
                 }
             }
+            return 0;
+        } catch (NoSuchFileException e) {
+            log.println("File not found: " + e.getFile());
+        } catch (IOException e) {
+            log.println("Error reading or writing the files: " + e);
+        } catch (Exception e) {
+            log.println("An unexpected error occurred: " + e);
+        } finally {
+            log.flush();
+        }
+        return 1;
+    }
 
-            // Final Email Classification
-            System.out.println("\n--> Final classification");
-            boolean[] finalEmailSpamClassification = new boolean[emails.length];
-            for (int i = 0; i < finalEmailSpamClassification.length; i++) {
-                int similarEmailsCount = 0;
-                for (int j = 0; j < emails.length; j++) {
-                    if (i == j) continue;
-                    if (emailsSimilarity.get(i, j) > similarityThreshold) {
-                        similarEmailsCount++;
-                        System.out.printf("--> Email %d is similar to %d%n", i, j);
-                    }
-                    if (similarEmailsCount > numOfSimilarEmailsAllowed) {
-                        finalEmailSpamClassification[i] = true;
-                        System.out.printf("--> Email %d tagged as SPAM%n", i);
-                        break;
-                    }
+    /**
+     * Starts the HTTP scoring service, which keeps running after this method returns until the JVM is stopped.
+     *
+     * @param options The options of the service.
+     * @param log     The writer receiving the logging.
+     * @return The exit code: 0 if the service started and 1 otherwise.
+     */
+    private static int runServer(CheckerOptions options, PrintWriter log) {
+        try {
+            CorpusIndex corpusIndex = new CorpusIndex();
+            // The similar pairs of the snapshot give the similar-counts of its emails without recomputing them
+            SimilarityGraph similarityGraph = null;
+            if (options.getLoadSnapshotPath() != null) {
+                IndexSnapshot snapshot = IndexSnapshot.read(Paths.get(options.getLoadSnapshotPath()));
+                corpusIndex = snapshot.getCorpusIndex();
+                similarityGraph = snapshot.getSimilarityGraph();
+            }
+            if (options.getInputPath() != null) {
+                Path inputPath = Paths.get(options.getInputPath());
+                try (Reader reader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8)) {
+                    EmailStreamReader.readEmails(reader, corpusIndex::add);
                 }
-                System.out.println();
             }
-
-            System.out.println("\n--> Final result");
-            System.out.printf("| %-15s | %-4s |\n", "Email Index", "Spam");
-            System.out.println("|-----------------|------|");
-            for (int i = 0; i < finalEmailSpamClassification.length; i++) {
-                System.out.printf("| %-15d | %-4s |\n", i, finalEmailSpamClassification[i] ? "Yes" : "No");
+            OnlineSpamIndex spamIndex = new OnlineSpamIndex(corpusIndex, similarityGraph,
+                    options.getSimilarityThreshold(), options.getNumOfSimilarEmailsAllowed(), options.getEpochGrowth());
+            SpamCheckServer server = new SpamCheckServer(new InetSocketAddress(options.getPort()), spamIndex,
+                    SpamCheckServer.createExecutor(options.getThreads()));
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+
+            if (options.getVerbosity().compareTo(CheckerOptions.Verbosity.NORMAL) >= 0) {
+                log.println("--> Indexed " + corpusIndex.size() + " emails, listening on port " + server.getPort());
             }
-
-        } catch (InputMismatchException e) {
-            System.err.println("Sorry, input wrong format: " + e);
-        } catch (FileNotFoundException e) {
-            System.err.println("File not found: " + filePath);
+            return 0;
+        } catch (NoSuchFileException e) {
+            log.println("File not found: " + e.getFile());
         } catch (IOException e) {
-            System.err.println("Error reading the file: " + filePath);
-        } catch (Exception e) {
-            System.err.println("An unexpected error occurred: " + e);
+            log.println("Error starting the service: " + e);
+        } catch (IllegalArgumentException e) {
+            log.println(e.getMessage());
         } finally {
-            scanner.close();
+            log.flush();
         }
+        return 1;
     }
 }
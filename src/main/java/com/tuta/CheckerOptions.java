@@ -0,0 +1,733 @@
+package com.tuta;
+
+import java.util.Locale;
+
+/**
+ * Options of a spam check run, parsed from the command-line arguments of the batch mode.
+ *
+ * <p>
+ * Options not given on the command line fall back to the {@code spamchecker.*} system properties, so
+ * {@code -Dspamchecker.lsh=true} keeps working, and then to the defaults of the interactive mode.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * CheckerOptions options = CheckerOptions.parse(new String[]{"--input", "emails.json", "--format", "csv"});
+ * }</pre>
+ */
+public class CheckerOptions {
+    /**
+     * Amount of logging, each level including the previous ones.
+     */
+    public enum Verbosity {
+        /**
+         * No logging, only the results are written.
+         */
+        QUIET,
+
+        /**
+         * One line per stage of the pipeline.
+         */
+        NORMAL,
+
+        /**
+         * Every email as it is read.
+         */
+        VERBOSE,
+
+        /**
+         * Every similar pair and spam tag during the classification.
+         */
+        DEBUG
+    }
+
+    /**
+     * Format of the results.
+     */
+    public enum OutputFormat {
+        /**
+         * One JSON object per email and line.
+         */
+        JSONL,
+
+        /**
+         * Comma-separated values with a header line.
+         */
+        CSV,
+
+        /**
+         * Human-readable table of the interactive mode.
+         */
+        TABLE
+    }
+
+    /**
+     * Way the similar emails are found, selected once from the scoring options by {@link #validate()}.
+     */
+    public enum ScoringMode {
+        /**
+         * Only the candidate pairs found by MinHash LSH are compared.
+         */
+        LSH,
+
+        /**
+         * The similarity of every pair is kept in a matrix, on the heap or mapped to a file.
+         */
+        MATRIX,
+
+        /**
+         * Every pair of emails is compared one by one, with --all-pairs or a negative threshold.
+         */
+        ALL_PAIRS,
+
+        /**
+         * Only the pairs sharing a term are compared, walking the postings of their terms. The default.
+         */
+        POSTINGS,
+
+        /**
+         * The emails are classified while comparing them, skipping the pairs that cannot change a spam flag.
+         */
+        EARLY_EXIT,
+
+        /**
+         * The pairs sharing a term are compared by worker processes reading a snapshot of the index.
+         */
+        WORKERS
+    }
+
+    private String inputPath;
+    private String outputPath;
+    private float similarityThreshold = 0.32f;
+    private int numOfSimilarEmailsAllowed = 1;
+    private Verbosity verbosity = Verbosity.NORMAL;
+    private OutputFormat outputFormat = OutputFormat.JSONL;
+    private boolean parallel = Boolean.parseBoolean(System.getProperty("spamchecker.parallel", "true"));
+    private boolean lshEnabled = Boolean.parseBoolean(System.getProperty("spamchecker.lsh", "false"));
+    private int lshBands = Integer.getInteger("spamchecker.lsh.bands", 32);
+    private int lshRows = Integer.getInteger("spamchecker.lsh.rows", 2);
+    private int lshShingleSize = Integer.getInteger("spamchecker.lsh.shingle", 1);
+    private boolean lshRecall = Boolean.parseBoolean(System.getProperty("spamchecker.lsh.recall", "false"));
+    private boolean matrixStore = "matrix".equals(System.getProperty("spamchecker.store"));
+    private boolean allPairs = "pairs".equals(System.getProperty("spamchecker.scoring"));
+    private boolean earlyExit = Boolean.parseBoolean(System.getProperty("spamchecker.earlyexit", "false"));
+    private float maxDocFrequencyRatio = Float.parseFloat(System.getProperty("spamchecker.maxdf", "1"));
+    private String matrixFile = System.getProperty("spamchecker.matrix.file");
+    private MappedSymmetricMatrix.Encoding matrixEncoding = MappedSymmetricMatrix.Encoding.valueOf(
+            System.getProperty("spamchecker.matrix.encoding", "FLOAT32"));
+    private boolean serve;
+    private int port = 8080;
+    private String threads = String.valueOf(Runtime.getRuntime().availableProcessors());
+    private float epochGrowth = 0.1f;
+    private String saveSnapshotPath;
+    private String loadSnapshotPath;
+    private boolean metricsEnabled = Boolean.parseBoolean(System.getProperty("spamchecker.metrics", "false"));
+    private boolean jfrEvents = Boolean.parseBoolean(System.getProperty("spamchecker.metrics.jfr", "false"));
+    private int numOfWorkers = Integer.getInteger("spamchecker.workers", 0);
+    private boolean dedup = Boolean.parseBoolean(System.getProperty("spamchecker.dedup", "false"));
+    private String clustersPath = System.getProperty("spamchecker.clusters");
+    private int hashBits = Integer.getInteger("spamchecker.hash.bits", 0);
+    private boolean hashBigrams = Boolean.parseBoolean(System.getProperty("spamchecker.hash.bigrams", "false"));
+    private boolean hashReport = Boolean.parseBoolean(System.getProperty("spamchecker.hash.report", "false"));
+
+    /**
+     * Parses the command-line arguments of the batch mode. See {@link #usage()} for the supported options.
+     *
+     * @param args The command-line arguments.
+     * @return The parsed options.
+     * @throws IllegalArgumentException If an option is unknown, lacks its value or has an invalid value, if the input
+     *                                  file is missing outside of the service mode, or if an option cannot be
+     *                                  combined with another one, see {@link #validate()}.
+     */
+    public static CheckerOptions parse(String[] args) {
+        CheckerOptions options = new CheckerOptions();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            switch (option) {
+                case "--input":
+                    options.setInputPath(value(args, ++i, option));
+                    break;
+                case "--output":
+                    options.setOutputPath(value(args, ++i, option));
+                    break;
+                case "--threshold":
+                    options.setSimilarityThreshold(parseFloat(value(args, ++i, option), option));
+                    break;
+                case "--allowed":
+                    options.setNumOfSimilarEmailsAllowed(parseInt(value(args, ++i, option), option));
+                    break;
+                case "--format":
+                    options.setOutputFormat(parseEnum(OutputFormat.class, value(args, ++i, option), option));
+                    break;
+                case "--verbosity":
+                    options.setVerbosity(parseEnum(Verbosity.class, value(args, ++i, option), option));
+                    break;
+                case "--quiet":
+                    options.setVerbosity(Verbosity.QUIET);
+                    break;
+                case "--parallel":
+                    options.setParallel(true);
+                    break;
+                case "--sequential":
+                    options.setParallel(false);
+                    break;
+                case "--lsh":
+                    options.setLshEnabled(true);
+                    break;
+                case "--lsh-bands":
+                    options.lshBands = parseInt(value(args, ++i, option), option);
+                    break;
+                case "--lsh-rows":
+                    options.lshRows = parseInt(value(args, ++i, option), option);
+                    break;
+                case "--lsh-shingle":
+                    options.lshShingleSize = parseInt(value(args, ++i, option), option);
+                    break;
+                case "--lsh-recall":
+                    options.lshRecall = true;
+                    break;
+                case "--matrix":
+                    options.setMatrixStore(true);
+                    break;
+                case "--early-exit":
+                    options.setEarlyExit(true);
+                    break;
+                case "--all-pairs":
+                    options.setAllPairs(true);
+                    break;
+                case "--max-df":
+                    options.maxDocFrequencyRatio = parseFloat(value(args, ++i, option), option);
+                    if (!(options.maxDocFrequencyRatio > 0 && options.maxDocFrequencyRatio <= 1)) {
+                        throw new IllegalArgumentException("Invalid value of option " + option + ": " + args[i]);
+                    }
+                    break;
+                case "--matrix-file":
+                    options.setMatrixFile(value(args, ++i, option));
+                    break;
+                case "--matrix-encoding":
+                    options.matrixEncoding = parseEnum(MappedSymmetricMatrix.Encoding.class, value(args, ++i, option),
+                            option);
+                    break;
+                case "--serve":
+                    options.serve = true;
+                    break;
+                case "--port":
+                    options.port = parseInt(value(args, ++i, option), option);
+                    break;
+                case "--threads":
+                    options.threads = value(args, ++i, option);
+                    break;
+                case "--epoch-growth":
+                    options.epochGrowth = parseFloat(value(args, ++i, option), option);
+                    break;
+                case "--save-snapshot":
+                    options.saveSnapshotPath = value(args, ++i, option);
+                    break;
+                case "--load-snapshot":
+                    options.loadSnapshotPath = value(args, ++i, option);
+                    break;
+                case "--metrics":
+                    options.setMetricsEnabled(true);
+                    break;
+                case "--jfr":
+                    options.setJfrEvents(true);
+                    break;
+                case "--workers":
+                    options.numOfWorkers = parseInt(value(args, ++i, option), option);
+                    if (options.numOfWorkers < 0) {
+                        throw new IllegalArgumentException("Invalid value of option " + option + ": " + args[i]);
+                    }
+                    break;
+                case "--dedup":
+                    options.setDedup(true);
+                    break;
+                case "--clusters":
+                    options.setClustersPath(value(args, ++i, option));
+                    break;
+                case "--hash-bits":
+                    options.hashBits = parseInt(value(args, ++i, option), option);
+                    if (options.hashBits < 1 || options.hashBits > FeatureHasher.MAX_NUM_OF_BITS) {
+                        throw new IllegalArgumentException("Invalid value of option " + option + ": " + args[i]);
+                    }
+                    break;
+                case "--hash-bigrams":
+                    options.setHashBigrams(true);
+                    break;
+                case "--hash-report":
+                    options.setHashReport(true);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        if (options.getInputPath() == null && !options.isServe()) {
+            throw new IllegalArgumentException("Missing option: --input");
+        }
+        options.validate();
+        return options;
+    }
+
+    /**
+     * Checks that the scoring options can be combined and selects the scoring mode.
+     *
+     * <p>
+     * --lsh, --matrix, --early-exit and --workers each select a mode of their own, and without them the emails are
+     * compared through the postings of their terms unless --all-pairs or a negative threshold compares every pair.
+     * The other options only apply to some of the modes: --max-df to the postings, --dedup to the similar pairs found
+     * in this process, and --clusters to the modes finding all similar pairs. An option that a mode would ignore is
+     * rejected rather than dropped, whether it is parsed or set one by one.
+     * </p>
+     *
+     * @return The scoring mode.
+     * @throws IllegalArgumentException If an option cannot be combined with another one.
+     */
+    public ScoringMode validate() {
+        final boolean matrix = isMatrixStore();
+        final boolean workers = numOfWorkers > 0;
+        final boolean maxDf = maxDocFrequencyRatio < 1;
+        checkNotCombined(matrix && lshEnabled, "--matrix", "--lsh");
+        checkNotCombined(allPairs && lshEnabled, "--all-pairs", "--lsh");
+        checkNotCombined(maxDf && lshEnabled, "--max-df", "--lsh");
+        checkNotCombined(maxDf && matrix, "--max-df", "--matrix");
+        checkNotCombined(maxDf && allPairs, "--max-df", "--all-pairs");
+        checkNotCombined(maxDf && similarityThreshold < 0, "--max-df", "a negative --threshold");
+        checkNotCombined(earlyExit && lshEnabled, "--early-exit", "--lsh");
+        checkNotCombined(earlyExit && matrix, "--early-exit", "--matrix");
+        checkNotCombined(earlyExit && maxDf, "--early-exit", "--max-df");
+        checkNotCombined(workers && lshEnabled, "--workers", "--lsh");
+        checkNotCombined(workers && matrix, "--workers", "--matrix");
+        checkNotCombined(workers && allPairs, "--workers", "--all-pairs");
+        checkNotCombined(workers && earlyExit, "--workers", "--early-exit");
+        checkNotCombined(workers && similarityThreshold < 0, "--workers", "a negative --threshold");
+        checkNotCombined(dedup && matrix, "--dedup", "--matrix");
+        checkNotCombined(dedup && earlyExit, "--dedup", "--early-exit");
+        checkNotCombined(dedup && workers, "--dedup", "--workers");
+        checkNotCombined(dedup && maxDf, "--dedup", "--max-df");
+        // The similar pairs of the unique bodies cannot be saved as the ones of all emails
+        checkNotCombined(dedup && saveSnapshotPath != null, "--save-snapshot", "--dedup");
+        checkNotCombined(clustersPath != null && earlyExit, "--clusters", "--early-exit");
+        checkNotCombined(clustersPath != null && workers, "--clusters", "--workers");
+        checkNotCombined(clustersPath != null && dedup, "--clusters", "--dedup");
+        checkNotCombined(hashBits > 0 && workers, "--hash-bits", "--workers");
+        checkNotCombined(hashBits > 0 && saveSnapshotPath != null, "--save-snapshot", "--hash-bits");
+
+        if (lshEnabled) return ScoringMode.LSH;
+        if (matrix) return ScoringMode.MATRIX;
+        if (earlyExit) return ScoringMode.EARLY_EXIT;
+        if (workers) return ScoringMode.WORKERS;
+        return allPairs || similarityThreshold < 0 ? ScoringMode.ALL_PAIRS : ScoringMode.POSTINGS;
+    }
+
+    private static void checkNotCombined(boolean combined, String option, String otherOption) {
+        if (combined) {
+            throw new IllegalArgumentException("Option " + option + " cannot be combined with " + otherOption);
+        }
+    }
+
+    /**
+     * Returns the description of the command-line options.
+     *
+     * @return The usage text.
+     */
+    public static String usage() {
+        return "Usage: java -jar spam_checker.jar --input <emails.json> [options]\n"
+                + "  --threshold <value>        Similarity above which emails are similar (default 0.32)\n"
+                + "  --allowed <count>          Similar emails allowed before an email is spam (default 1)\n"
+                + "  --output <file>            Write the results to a file instead of the standard output\n"
+                + "  --format jsonl|csv|table   Format of the results (default jsonl)\n"
+                + "  --verbosity quiet|normal|verbose|debug\n"
+                + "                             Logging to the standard error (default normal)\n"
+                + "  --quiet                    Same as --verbosity quiet\n"
+                + "  --parallel, --sequential   Compute the similarities on all cores or on one (default parallel)\n"
+                + "  --lsh                      Only compare candidate pairs found by MinHash LSH\n"
+                + "  --lsh-bands <n>, --lsh-rows <n>, --lsh-shingle <n>\n"
+                + "                             LSH configuration (default 32, 2, 1)\n"
+                + "  --lsh-recall               Measure the recall of LSH against all pairs\n"
+                + "  --early-exit               Stop comparing emails once they are spam; the similar counts of\n"
+                + "                             spam emails are then lower bounds. Not with --lsh or --matrix\n"
+                + "  --all-pairs                Compare every pair of emails one by one instead of through the\n"
+                + "                             postings of their terms. Not with --lsh\n"
+                + "  --max-df <ratio>           Skip terms contained in more than this share of the emails when\n"
+                + "                             comparing the pairs sharing a term (default 1, skipping none). Not\n"
+                + "                             with --lsh, --matrix, --all-pairs, --early-exit or a negative\n"
+                + "                             --threshold\n"
+                + "  --workers <n>              Compare the pairs sharing a term in n worker processes, each\n"
+                + "                             reading a snapshot of the index (default 0, in this process). Not\n"
+                + "                             with --lsh, --matrix, --all-pairs, --early-exit or a negative\n"
+                + "                             --threshold\n"
+                + "  --dedup                    Compare every distinct body only once, counting its duplicates.\n"
+                + "                             Not with --matrix, --early-exit, --workers, --max-df or\n"
+                + "                             --save-snapshot\n"
+                + "  --clusters <file>          Write the campaigns, clusters of emails linked by similar pairs, as\n"
+                + "                             JSON lines to a file. Not with --early-exit, --workers or --dedup\n"
+                + "  --hash-bits <k>            Hash the words into 2^k buckets instead of keeping a vocabulary,\n"
+                + "                             between 1 and 24 (default: no hashing). Not with --workers or\n"
+                + "                             --save-snapshot\n"
+                + "  --hash-bigrams             Also hash the bigrams of consecutive words\n"
+                + "  --hash-report              Log the deviation of the hashed similarities from the exact ones\n"
+                + "  --matrix                   Keep the similarity of every pair instead of the similar pairs only.\n"
+                + "                             Not with --lsh\n"
+                + "  --matrix-file <file>       Keep the similarity of every pair in a memory-mapped file\n"
+                + "  --matrix-encoding FLOAT32|FLOAT16|BYTE\n"
+                + "                             Precision of the memory-mapped matrix (default FLOAT32)\n"
+                + "  --serve                    Run the HTTP scoring service, preloading the --input emails if given\n"
+                + "  --port <port>              Port of the service (default 8080)\n"
+                + "  --threads <n>|virtual      Request handler threads of the service (default: number of cores)\n"
+                + "  --epoch-growth <value>     Corpus growth after which the service refreshes the IDF values\n"
+                + "                             (default 0.1)\n"
+                + "  --save-snapshot <file>     Save the index, the similar pairs and the --matrix similarities to a\n"
+                + "                             binary snapshot after the check\n"
+                + "  --load-snapshot <file>     Preload the service from a binary snapshot instead of re-indexing,\n"
+                + "                             taking the similar counts from its similar pairs\n"
+                + "  --metrics                  Log the time, throughput and allocations of every pipeline stage\n"
+                + "  --jfr                      Same as --metrics, also committing the stages as JFR events\n"
+                + "Without options, the file path, threshold and allowed count are read interactively.";
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value of option: " + option);
+        }
+        return args[index];
+    }
+
+    private static float parseFloat(String value, String option) {
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value of option " + option + ": " + value);
+        }
+    }
+
+    private static int parseInt(String value, String option) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value of option " + option + ": " + value);
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value, String option) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value of option " + option + ": " + value);
+        }
+    }
+
+    public String getInputPath() {
+        return inputPath;
+    }
+
+    public void setInputPath(String inputPath) {
+        this.inputPath = inputPath;
+    }
+
+    /**
+     * Returns the file the results are written to.
+     *
+     * @return The path of the output file, or null for the standard output.
+     */
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    public void setOutputPath(String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    public float getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    public void setSimilarityThreshold(float similarityThreshold) {
+        this.similarityThreshold = similarityThreshold;
+    }
+
+    public int getNumOfSimilarEmailsAllowed() {
+        return numOfSimilarEmailsAllowed;
+    }
+
+    public void setNumOfSimilarEmailsAllowed(int numOfSimilarEmailsAllowed) {
+        this.numOfSimilarEmailsAllowed = numOfSimilarEmailsAllowed;
+    }
+
+    public Verbosity getVerbosity() {
+        return verbosity;
+    }
+
+    public void setVerbosity(Verbosity verbosity) {
+        this.verbosity = verbosity;
+    }
+
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isLshEnabled() {
+        return lshEnabled;
+    }
+
+    public void setLshEnabled(boolean lshEnabled) {
+        this.lshEnabled = lshEnabled;
+    }
+
+    public int getLshBands() {
+        return lshBands;
+    }
+
+    public int getLshRows() {
+        return lshRows;
+    }
+
+    public int getLshShingleSize() {
+        return lshShingleSize;
+    }
+
+    public boolean isLshRecall() {
+        return lshRecall;
+    }
+
+    /**
+     * Returns whether the emails are classified while comparing them, skipping comparisons that cannot change a spam
+     * flag. The similar-counts of spam emails are then lower bounds.
+     *
+     * @return True to classify with early exits.
+     */
+    public boolean isEarlyExit() {
+        return earlyExit;
+    }
+
+    public void setEarlyExit(boolean earlyExit) {
+        this.earlyExit = earlyExit;
+    }
+
+    /**
+     * Returns whether every pair of emails is compared, rather than only the pairs sharing a term found through the
+     * inverted index.
+     *
+     * @return True to compare every pair.
+     */
+    public boolean isAllPairs() {
+        return allPairs;
+    }
+
+    public void setAllPairs(boolean allPairs) {
+        this.allPairs = allPairs;
+    }
+
+    /**
+     * Returns the share of the emails above which a term is skipped when comparing the pairs sharing a term.
+     *
+     * @return The maximum document frequency ratio, 1 to skip no term.
+     */
+    public float getMaxDocFrequencyRatio() {
+        return maxDocFrequencyRatio;
+    }
+
+    public void setMaxDocFrequencyRatio(float maxDocFrequencyRatio) {
+        this.maxDocFrequencyRatio = maxDocFrequencyRatio;
+    }
+
+    /**
+     * Returns whether the similarity of every pair is kept in a matrix, which is implied by a matrix file.
+     *
+     * @return True if a similarity matrix is computed.
+     */
+    public boolean isMatrixStore() {
+        return matrixStore || matrixFile != null;
+    }
+
+    public void setMatrixStore(boolean matrixStore) {
+        this.matrixStore = matrixStore;
+    }
+
+    /**
+     * Returns the file the similarity matrix is mapped to.
+     *
+     * @return The path of the matrix file, or null to keep the matrix on the heap.
+     */
+    public String getMatrixFile() {
+        return matrixFile;
+    }
+
+    public void setMatrixFile(String matrixFile) {
+        this.matrixFile = matrixFile;
+    }
+
+    public MappedSymmetricMatrix.Encoding getMatrixEncoding() {
+        return matrixEncoding;
+    }
+
+    /**
+     * Returns whether the HTTP scoring service is run instead of a single check.
+     *
+     * @return True for the service mode.
+     */
+    public boolean isServe() {
+        return serve;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns the request handler threads of the service.
+     *
+     * @return The number of threads, or "virtual" for virtual threads.
+     */
+    public String getThreads() {
+        return threads;
+    }
+
+    public float getEpochGrowth() {
+        return epochGrowth;
+    }
+
+    /**
+     * Returns the file the index is saved to after a check.
+     *
+     * @return The path of the snapshot file, or null to save no snapshot.
+     */
+    public String getSaveSnapshotPath() {
+        return saveSnapshotPath;
+    }
+
+    public void setSaveSnapshotPath(String saveSnapshotPath) {
+        this.saveSnapshotPath = saveSnapshotPath;
+    }
+
+    /**
+     * Returns the snapshot file the service preloads its index from.
+     *
+     * @return The path of the snapshot file, or null to start from the --input emails only.
+     */
+    public String getLoadSnapshotPath() {
+        return loadSnapshotPath;
+    }
+
+    public void setLoadSnapshotPath(String loadSnapshotPath) {
+        this.loadSnapshotPath = loadSnapshotPath;
+    }
+
+    /**
+     * Returns whether the stages of the pipeline are measured and reported, which is implied by JFR events.
+     *
+     * @return True to log the pipeline metrics.
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled || jfrEvents;
+    }
+
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * Returns whether the stages of the pipeline are committed as {@code com.tuta.PipelineStage} JFR events.
+     *
+     * @return True to commit JFR events.
+     */
+    public boolean isJfrEvents() {
+        return jfrEvents;
+    }
+
+    public void setJfrEvents(boolean jfrEvents) {
+        this.jfrEvents = jfrEvents;
+    }
+
+    /**
+     * Returns the number of worker processes the pairs sharing a term are compared in.
+     *
+     * @return The number of workers, 0 to compare them in this process.
+     */
+    public int getNumOfWorkers() {
+        return numOfWorkers;
+    }
+
+    public void setNumOfWorkers(int numOfWorkers) {
+        this.numOfWorkers = numOfWorkers;
+    }
+
+    /**
+     * Returns whether emails with identical normalized bodies are grouped, so that only one email of every group is
+     * compared. Applies to the similar pairs computed in this process without a document frequency limit.
+     *
+     * @return True to compare every distinct body only once.
+     */
+    public boolean isDedup() {
+        return dedup;
+    }
+
+    public void setDedup(boolean dedup) {
+        this.dedup = dedup;
+    }
+
+    /**
+     * Returns the file the campaigns are written to. Clustering needs all similar pairs of all emails, so it cannot be
+     * combined with early exits, worker processes or deduplication.
+     *
+     * @return The path of the campaign file, or null to write no campaigns.
+     */
+    public String getClustersPath() {
+        return clustersPath;
+    }
+
+    public void setClustersPath(String clustersPath) {
+        this.clustersPath = clustersPath;
+    }
+
+    /**
+     * Returns the number of bits of the buckets the words are hashed into by a {@link FeatureHasher}. Worker processes
+     * and snapshots need the exact vocabulary, so hashing cannot be combined with either.
+     *
+     * @return The number of bits, 0 to keep every distinct word.
+     */
+    public int getHashBits() {
+        return hashBits;
+    }
+
+    public void setHashBits(int hashBits) {
+        this.hashBits = hashBits;
+    }
+
+    /**
+     * Returns whether the bigrams of consecutive words are hashed as well as the words.
+     *
+     * @return True to hash the bigrams.
+     */
+    public boolean isHashBigrams() {
+        return hashBigrams;
+    }
+
+    public void setHashBigrams(boolean hashBigrams) {
+        this.hashBigrams = hashBigrams;
+    }
+
+    /**
+     * Returns whether the similarities of the hashed vectors are compared to the ones of the exact vocabulary, which
+     * indexes the emails a second time. Bigrams have no exact counterpart, so they count towards the deviation.
+     *
+     * @return True to log the deviation report.
+     */
+    public boolean isHashReport() {
+        return hashReport;
+    }
+
+    public void setHashReport(boolean hashReport) {
+        this.hashReport = hashReport;
+    }
+}
@@ -0,0 +1,843 @@
+package com.tuta;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Index over a corpus of emails holding the term counts and document frequencies needed for TF-IDF.
+ *
+ * <p>
+ * Each email body is tokenized exactly once with a {@link Tokenizer}, applying the cleaning rules of
+ * {@link TextUtils#getCleanWords(String)}. Every distinct word is interned to an integer term id in order of first
+ * appearance, and the term counts, word counts and document frequencies are kept so TF-IDF weights can be computed
+ * without rescanning the corpus, which is what {@link SimilarityUtils#calcTFIDF(Email[], Email, String)} does for every
+ * single call.
+ * </p>
+ *
+ * <p>
+ * Emails can be added one at a time, for example while streaming them with {@link EmailStreamReader}. Only the
+ * receiver and the compact term data of each email are kept, never its body: the term ids and counts of all emails are
+ * stored back to back in primitive arrays, with the start of each email in {@link #docOffsets}, and so are the
+ * characters of the receivers. This keeps the number of objects independent of the corpus size and lets
+ * {@link IndexSnapshot} save and load the index with bulk copies.
+ * </p>
+ *
+ * <p>
+ * With a {@link FeatureHasher}, the words are hashed into a fixed number of buckets instead of being interned, and the
+ * buckets serve as term ids. The term counts are then signed sums and the document frequencies are kept per bucket,
+ * so the memory of the index no longer grows with the vocabulary. A bucket whose words cancel out in an email is left
+ * out of it.
+ * </p>
+ *
+ * <p>
+ * {@link #addAll(Email[], ExecutorService, int)} adds a batch of emails on several threads. Each thread tokenizes a
+ * range of the batch into a dictionary of its own, and the term ids are only assigned when the dictionaries are merged
+ * in order of the ranges, so the index is identical to adding the emails one at a time.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * CorpusIndex index = new CorpusIndex(emails);
+ * float weight = index.getTFIDF(0, "prize");
+ * SparseVector vector = index.getVector(0);
+ * }</pre>
+ */
+public class CorpusIndex {
+    /**
+     * Term id of each distinct word.
+     */
+    private final TermDictionary dictionary;
+
+    /**
+     * Hasher of the words into buckets, or null if the words are interned to the dictionary.
+     */
+    private final FeatureHasher hasher;
+
+    /**
+     * Tokenizer interning the words of the added emails to the dictionary.
+     */
+    private final Tokenizer tokenizer;
+
+    /**
+     * Term counter reused for every added email.
+     */
+    private final TermCounter termCounter;
+
+    /**
+     * Characters of the receivers of all emails, stored back to back.
+     */
+    private char[] receiverPool;
+
+    /**
+     * Start of the receiver of each email in {@link #receiverPool}.
+     */
+    private int[] receiverOffsets;
+
+    /**
+     * Length of the receiver of each email, or -1 if the email has none.
+     */
+    private int[] receiverLengths;
+
+    /**
+     * Number of emails containing each term id.
+     */
+    private int[] docFrequencies;
+
+    /**
+     * Term ids of all emails, strictly ascending within each email.
+     */
+    private int[] docTermIds;
+
+    /**
+     * Occurrences of each term of each email, aligned with {@link #docTermIds}.
+     */
+    private int[] docTermCounts;
+
+    /**
+     * Start of the terms of each email in {@link #docTermIds}. The terms of email {@code i} end where the terms of email
+     * {@code i + 1} start.
+     */
+    private int[] docOffsets;
+
+    /**
+     * Number of words of each email body, as counted by {@link TextUtils#countNumOfWords(String)}.
+     */
+    private int[] numOfWords;
+
+    /**
+     * Number of indexed emails.
+     */
+    private int numOfDocs;
+
+    /**
+     * Constructs an empty index to which emails are added one at a time.
+     */
+    public CorpusIndex() {
+        this((FeatureHasher) null);
+    }
+
+    /**
+     * Constructs an empty index hashing the words of the added emails into buckets.
+     *
+     * @param hasher The hasher of the words, or null to intern every distinct word to its own term id.
+     */
+    public CorpusIndex(FeatureHasher hasher) {
+        this.dictionary = new TermDictionary();
+        this.hasher = hasher;
+        this.tokenizer = hasher == null ? new Tokenizer(dictionary) : new Tokenizer();
+        this.termCounter = new TermCounter();
+        this.docFrequencies = new int[hasher == null ? 1024 : hasher.getNumOfBuckets()];
+        this.docTermIds = new int[4096];
+        this.docTermCounts = new int[4096];
+        this.docOffsets = new int[65];
+        this.numOfWords = new int[64];
+        this.receiverPool = new char[1024];
+        this.receiverOffsets = new int[64];
+        this.receiverLengths = new int[64];
+    }
+
+    /**
+     * Restores an index from its arrays, as written by {@link IndexSnapshot}. The arrays are used as they are and may
+     * be longer than needed.
+     */
+    CorpusIndex(TermDictionary dictionary, int numOfDocs, int[] docFrequencies, int[] docOffsets, int[] numOfWords,
+            int[] docTermIds, int[] docTermCounts, char[] receiverPool, int[] receiverOffsets, int[] receiverLengths) {
+        this.dictionary = dictionary;
+        this.hasher = null;
+        this.tokenizer = new Tokenizer(dictionary);
+        this.termCounter = new TermCounter();
+        this.numOfDocs = numOfDocs;
+        this.docFrequencies = docFrequencies;
+        this.docOffsets = docOffsets;
+        this.numOfWords = numOfWords;
+        this.docTermIds = docTermIds;
+        this.docTermCounts = docTermCounts;
+        this.receiverPool = receiverPool;
+        this.receiverOffsets = receiverOffsets;
+        this.receiverLengths = receiverLengths;
+    }
+
+    /**
+     * Builds the index by tokenizing every email body once.
+     *
+     * @param emails The emails to index. The position of each email is used as its index.
+     */
+    public CorpusIndex(Email[] emails) {
+        this();
+        for (Email email : emails) {
+            add(email);
+        }
+    }
+
+    /**
+     * Adds an email to the index. Its body is tokenized and not retained.
+     *
+     * @param email The email to add.
+     * @return The index assigned to the email.
+     */
+    public int add(Email email) {
+        final int emailIndex = numOfDocs;
+        int words = hasher == null ? tokenizer.tokenizeTermIds(email.getBody(), termCounter)
+                : hasher.hashFeatures(tokenizer, email.getBody(), termCounter::addFeature);
+        int[] ids = termCounter.getTermIds();
+
+        ensureDocCapacity(numOfDocs + 1);
+        final int start = docOffsets[emailIndex];
+        if (start + ids.length > docTermIds.length) {
+            docTermIds = Arrays.copyOf(docTermIds, Math.max(start + ids.length, docTermIds.length * 2));
+            docTermCounts = Arrays.copyOf(docTermCounts, docTermIds.length);
+        }
+        if (dictionary.size() > docFrequencies.length) {
+            docFrequencies = Arrays.copyOf(docFrequencies, Math.max(dictionary.size(), docFrequencies.length * 2));
+        }
+
+        int end = start;
+        for (int termId : ids) {
+            final int count = termCounter.getCount(termId);
+            // Only the signed counts of hashed words can cancel out
+            if (count == 0) continue;
+            docTermIds[end] = termId;
+            docTermCounts[end++] = count;
+            docFrequencies[termId]++;
+        }
+        termCounter.clear(ids);
+
+        docOffsets[emailIndex + 1] = end;
+        numOfWords[emailIndex] = words;
+        addReceiver(emailIndex, email.getReceiver());
+        return numOfDocs++;
+    }
+
+    /**
+     * Adds a batch of emails, tokenizing disjoint ranges of it in parallel. The index is identical to adding the
+     * emails one at a time with {@link #add(Email)}.
+     *
+     * <p>
+     * Each range is tokenized into a dictionary of its own, with term ids local to the range. The dictionaries are
+     * then merged on the calling thread in order of the ranges, each in order of its local term ids: a word new to the
+     * index appears first in the first range containing it, and within that range in order of first appearance, so
+     * it gets the same term id as when added sequentially. Only the distinct words of every range are merged, not
+     * every word. Finally, the ranges translate and sort the term ids of their emails in parallel, straight into the
+     * arrays of the index.
+     * </p>
+     *
+     * @param emails      The emails to add, in order.
+     * @param executor    The executor tokenizing the ranges, or null to add the emails on the calling thread.
+     * @param numOfRanges The number of ranges the batch is split into.
+     * @throws IllegalArgumentException If the number of ranges is not positive.
+     * @throws IllegalStateException    If tokenizing a range fails or is interrupted.
+     */
+    public void addAll(Email[] emails, ExecutorService executor, int numOfRanges) {
+        if (numOfRanges < 1) {
+            throw new IllegalArgumentException("Number of ranges must be positive");
+        }
+        if (executor == null || numOfRanges == 1 || emails.length < 2 * numOfRanges) {
+            for (Email email : emails) add(email);
+            return;
+        }
+
+        // Tokenize every range with its own dictionary, or straight into buckets when hashing
+        final int firstIndex = numOfDocs;
+        final PartialIndex[] partials = new PartialIndex[numOfRanges];
+        List<Callable<Void>> tasks = new ArrayList<>(numOfRanges);
+        for (int i = 0; i < numOfRanges; i++) {
+            final int range = i;
+            final int start = emails.length * range / numOfRanges;
+            final int end = emails.length * (range + 1) / numOfRanges;
+            tasks.add(() -> {
+                partials[range] = new PartialIndex(emails, start, end, hasher);
+                return null;
+            });
+        }
+        invokeAll(executor, tasks);
+
+        // Merge the dictionaries in order, lay out the emails and add the receivers
+        int numOfEmails = emails.length;
+        ensureDocCapacity(firstIndex + numOfEmails);
+        int entry = docOffsets[firstIndex];
+        for (PartialIndex partial : partials) {
+            partial.mergeDictionary(dictionary);
+            for (int i = 0; i < partial.numOfEmails; i++) {
+                final int emailIndex = firstIndex + partial.start + i;
+                entry += partial.rowOffsets[i + 1] - partial.rowOffsets[i];
+                docOffsets[emailIndex + 1] = entry;
+                numOfWords[emailIndex] = partial.numOfWords[i];
+                addReceiver(emailIndex, emails[partial.start + i].getReceiver());
+            }
+        }
+        if (entry > docTermIds.length) {
+            docTermIds = Arrays.copyOf(docTermIds, Math.max(entry, docTermIds.length * 2));
+            docTermCounts = Arrays.copyOf(docTermCounts, docTermIds.length);
+        }
+        if (getVocabularySize() > docFrequencies.length) {
+            docFrequencies = Arrays.copyOf(docFrequencies, Math.max(getVocabularySize(), docFrequencies.length * 2));
+        }
+
+        // Translate the term ids of every range into the arrays of the index
+        tasks.clear();
+        for (PartialIndex partial : partials) {
+            tasks.add(() -> {
+                partial.copyRows(docTermIds, docTermCounts, docOffsets[firstIndex + partial.start]);
+                return null;
+            });
+        }
+        invokeAll(executor, tasks);
+        for (int p = docOffsets[firstIndex]; p < entry; p++) {
+            docFrequencies[docTermIds[p]]++;
+        }
+        numOfDocs += numOfEmails;
+    }
+
+    private static void invokeAll(ExecutorService executor, List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Indexing interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Indexing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Grows the arrays holding one value per email to hold the given number of emails.
+     */
+    private void ensureDocCapacity(int capacity) {
+        if (capacity + 1 > docOffsets.length) {
+            docOffsets = Arrays.copyOf(docOffsets, Math.max(capacity + 1, docOffsets.length * 2));
+        }
+        if (capacity > numOfWords.length) {
+            numOfWords = Arrays.copyOf(numOfWords, docOffsets.length);
+            receiverOffsets = Arrays.copyOf(receiverOffsets, docOffsets.length);
+            receiverLengths = Arrays.copyOf(receiverLengths, docOffsets.length);
+        }
+    }
+
+    /**
+     * Returns the number of indexed emails.
+     *
+     * @return The number of emails in the corpus.
+     */
+    public int size() {
+        return numOfDocs;
+    }
+
+    /**
+     * Returns the number of distinct words in the corpus, or the number of buckets when hashing the words.
+     *
+     * @return The vocabulary size.
+     */
+    public int getVocabularySize() {
+        return hasher == null ? dictionary.size() : hasher.getNumOfBuckets();
+    }
+
+    /**
+     * Returns the hasher of the words.
+     *
+     * @return The feature hasher, or null if every distinct word has its own term id.
+     */
+    public FeatureHasher getHasher() {
+        return hasher;
+    }
+
+    /**
+     * Returns the receiver of an indexed email.
+     *
+     * @param emailIndex The index of the email.
+     * @return The receiver of the email.
+     */
+    public String getReceiver(int emailIndex) {
+        if (emailIndex < 0 || emailIndex >= numOfDocs) {
+            throw new IndexOutOfBoundsException("Invalid email index: " + emailIndex);
+        }
+        int length = receiverLengths[emailIndex];
+        return length < 0 ? null : new String(receiverPool, receiverOffsets[emailIndex], length);
+    }
+
+    /**
+     * Returns the term id of a word.
+     *
+     * @param word The cleaned word.
+     * @return The term id of the word, or -1 if it does not occur in the corpus. The bucket of the word when hashing
+     * the words, whether the word occurs or not.
+     */
+    public int getTermId(String word) {
+        return hasher == null ? dictionary.getId(word) : FeatureHasher.getBucket(hasher.getFeature(word));
+    }
+
+    /**
+     * Returns the word of a term id.
+     *
+     * @param termId The term id.
+     * @return The word the term id was assigned to.
+     * @throws IllegalStateException If the words are hashed, as they are not kept.
+     */
+    public String getTerm(int termId) {
+        if (hasher != null) {
+            throw new IllegalStateException("Words are not kept when hashing");
+        }
+        return dictionary.getTerm(termId);
+    }
+
+    /**
+     * Returns the number of emails containing the given word.
+     *
+     * @param word The cleaned word.
+     * @return The document frequency of the word, or 0 if it does not occur in the corpus.
+     */
+    public int getDocFrequency(String word) {
+        int termId = getTermId(word);
+        return termId < 0 ? 0 : docFrequencies[termId];
+    }
+
+    /**
+     * Calculates the TF-IDF value of a word within an indexed email.
+     * The result is identical to {@link SimilarityUtils#calcTFIDF(Email[], Email, String)} over the same corpus,
+     * unless the words are hashed, in which case it is the value of the bucket of the word.
+     *
+     * @param emailIndex The index of the email.
+     * @param word       The cleaned word.
+     * @return The TF-IDF value of the word within the email.
+     * @throws ArithmeticException If the word does not occur anywhere in the corpus.
+     */
+    public float getTFIDF(int emailIndex, String word) {
+        int termId = getTermId(word);
+        int position = termId < 0 ? -1
+                : Arrays.binarySearch(docTermIds, docOffsets[emailIndex], docOffsets[emailIndex + 1], termId);
+        return SimilarityUtils.calcTFIDF(
+                position < 0 ? 0 : docTermCounts[position],
+                numOfWords[emailIndex],
+                size(),
+                getDocFrequency(word)
+        );
+    }
+
+    /**
+     * Builds the sparse TF-IDF vector of an indexed email, keyed by term id.
+     *
+     * @param emailIndex The index of the email.
+     * @return The sparse vector holding the TF-IDF value of every word of the email.
+     */
+    public SparseVector getVector(int emailIndex) {
+        final int start = docOffsets[emailIndex];
+        final int end = docOffsets[emailIndex + 1];
+        int[] ids = Arrays.copyOfRange(docTermIds, start, end);
+        float[] weights = new float[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            weights[i] = SimilarityUtils.calcTFIDF(docTermCounts[start + i], numOfWords[emailIndex], size(),
+                    docFrequencies[ids[i]]);
+        }
+        return new SparseVector(ids, weights);
+    }
+
+    /**
+     * Builds the sparse TF-IDF vector an email body would have if it were added to the index, without adding it.
+     * Words not in the corpus get term ids from {@link #getVocabularySize()} upwards, in order of first appearance, so
+     * they count towards the norm of the vector without matching any indexed email.
+     *
+     * <p>
+     * Unlike {@link #add(Email)}, this method does not modify the index and can run concurrently with other reads.
+     * </p>
+     *
+     * @param body The body of the email.
+     * @return The sparse vector holding the TF-IDF value of every word of the body.
+     */
+    public SparseVector getVector(CharSequence body) {
+        if (hasher != null) return getHashedVector(body);
+        final Map<Integer, Integer> counts = new HashMap<>();
+        final Map<String, Integer> unknownTermIds = new HashMap<>();
+        final int vocabularySize = dictionary.size();
+        final int words = new Tokenizer().tokenize(body, (buffer, length) -> {
+            int termId = dictionary.getId(CharBuffer.wrap(buffer, 0, length));
+            if (termId < 0) {
+                termId = unknownTermIds.computeIfAbsent(new String(buffer, 0, length),
+                        word -> vocabularySize + unknownTermIds.size());
+            }
+            counts.merge(termId, 1, Integer::sum);
+        });
+
+        int[] ids = new int[counts.size()];
+        int numOfIds = 0;
+        for (int termId : counts.keySet()) ids[numOfIds++] = termId;
+        Arrays.sort(ids);
+        float[] weights = new float[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            int docFrequency = ids[i] < vocabularySize ? docFrequencies[ids[i]] : 0;
+            weights[i] = SimilarityUtils.calcTFIDF(counts.get(ids[i]), words, size() + 1, docFrequency + 1);
+        }
+        return new SparseVector(ids, weights);
+    }
+
+    /**
+     * Builds the hashed vector of a body that is not added. Every word has a bucket, so none is unknown.
+     */
+    private SparseVector getHashedVector(CharSequence body) {
+        final Map<Integer, Integer> counts = new HashMap<>();
+        final int words = hasher.hashFeatures(new Tokenizer(), body, feature -> counts.merge(
+                FeatureHasher.getBucket(feature), FeatureHasher.getSign(feature), Integer::sum));
+        counts.values().removeIf(count -> count == 0);
+
+        int[] ids = new int[counts.size()];
+        int numOfIds = 0;
+        for (int termId : counts.keySet()) ids[numOfIds++] = termId;
+        Arrays.sort(ids);
+        float[] weights = new float[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            weights[i] = SimilarityUtils.calcTFIDF(counts.get(ids[i]), words, size() + 1,
+                    docFrequencies[ids[i]] + 1);
+        }
+        return new SparseVector(ids, weights);
+    }
+
+    /**
+     * Builds the sparse TF-IDF vectors of all indexed emails.
+     *
+     * @return The sparse vectors, indexed by email index.
+     */
+    public SparseVector[] getVectors() {
+        SparseVector[] vectors = new SparseVector[size()];
+        for (int emailIndex = 0; emailIndex < vectors.length; emailIndex++) {
+            vectors[emailIndex] = getVector(emailIndex);
+        }
+        return vectors;
+    }
+
+    /**
+     * Builds the inverted index of the TF-IDF vectors of all indexed emails. The posting arrays of every term are
+     * sized by its document frequency, so they are allocated once and never grown.
+     *
+     * @return The inverted index, keyed by the term ids of this index.
+     */
+    public InvertedIndex buildInvertedIndex() {
+        InvertedIndex invertedIndex = new InvertedIndex(Arrays.copyOf(docFrequencies, getVocabularySize()), size());
+        for (int emailIndex = 0; emailIndex < size(); emailIndex++) {
+            invertedIndex.add(getVector(emailIndex));
+        }
+        return invertedIndex;
+    }
+
+    /**
+     * Builds the TF-IDF database mapping each word to the TF-IDF value it has in every email containing it.
+     * {@link #buildInvertedIndex()} holds the same values without boxing them.
+     *
+     * @return The TF-IDF database keyed by word and then by email index.
+     * @throws IllegalStateException If the words are hashed, as they are not kept.
+     */
+    public Map<String, Map<Integer, Float>> buildTFIDFDatabase() {
+        Map<String, Map<Integer, Float>> tfIdfDatabase = new HashMap<>();
+        for (int emailIndex = 0; emailIndex < size(); emailIndex++) {
+            SparseVector vector = getVector(emailIndex);
+            for (int i = 0; i < vector.size(); i++) {
+                tfIdfDatabase.computeIfAbsent(getTerm(vector.getTermIds()[i]), s -> new HashMap<>())
+                        .put(emailIndex, vector.getWeights()[i]);
+            }
+        }
+        return tfIdfDatabase;
+    }
+
+    /**
+     * Appends the receiver of an email to the pool, after the receiver of the previous email.
+     */
+    private void addReceiver(int emailIndex, String receiver) {
+        int start = emailIndex == 0 ? 0
+                : receiverOffsets[emailIndex - 1] + Math.max(0, receiverLengths[emailIndex - 1]);
+        int length = receiver == null ? -1 : receiver.length();
+        if (start + Math.max(0, length) > receiverPool.length) {
+            receiverPool = Arrays.copyOf(receiverPool, Math.max(start + length, receiverPool.length * 2));
+        }
+        if (receiver != null) receiver.getChars(0, length, receiverPool, start);
+        receiverOffsets[emailIndex] = start;
+        receiverLengths[emailIndex] = length;
+    }
+
+    TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    int[] getDocFrequencies() {
+        return docFrequencies;
+    }
+
+    int[] getDocOffsets() {
+        return docOffsets;
+    }
+
+    int[] getNumOfWords() {
+        return numOfWords;
+    }
+
+    int[] getDocTermIds() {
+        return docTermIds;
+    }
+
+    int[] getDocTermCounts() {
+        return docTermCounts;
+    }
+
+    char[] getReceiverPool() {
+        return receiverPool;
+    }
+
+    int[] getReceiverOffsets() {
+        return receiverOffsets;
+    }
+
+    int[] getReceiverLengths() {
+        return receiverLengths;
+    }
+
+    /**
+     * Returns the number of characters of all receivers.
+     */
+    int getReceiverPoolLength() {
+        return numOfDocs == 0 ? 0
+                : receiverOffsets[numOfDocs - 1] + Math.max(0, receiverLengths[numOfDocs - 1]);
+    }
+
+    /**
+     * Term counts of a range of a batch of emails, tokenized by one thread of {@link #addAll(Email[], ExecutorService,
+     * int)} with term ids local to the range.
+     */
+    private static class PartialIndex {
+        /**
+         * Position of the first email of the range in the batch.
+         */
+        final int start;
+
+        final int numOfEmails;
+
+        /**
+         * Dictionary of the words of the range, or null if the words are hashed into buckets.
+         */
+        private final TermDictionary localDictionary;
+
+        /**
+         * Local term ids, or buckets, of all emails of the range, stored back to back.
+         */
+        private int[] termIds = new int[4096];
+
+        /**
+         * Occurrences of each term, aligned with {@link #termIds}.
+         */
+        private int[] termCounts = new int[4096];
+
+        /**
+         * Start of the terms of each email in {@link #termIds}.
+         */
+        final int[] rowOffsets;
+
+        /**
+         * Number of words of each email body.
+         */
+        final int[] numOfWords;
+
+        /**
+         * Term id in the index of each local term id, once merged.
+         */
+        private int[] globalIds;
+
+        /**
+         * Tokenizes the emails of the range.
+         */
+        PartialIndex(Email[] emails, int start, int end, FeatureHasher hasher) {
+            this.start = start;
+            this.numOfEmails = end - start;
+            this.localDictionary = hasher == null ? new TermDictionary() : null;
+            this.rowOffsets = new int[numOfEmails + 1];
+            this.numOfWords = new int[numOfEmails];
+            final Tokenizer tokenizer = hasher == null ? new Tokenizer(localDictionary) : new Tokenizer();
+            final TermCounter termCounter = new TermCounter();
+            int entry = 0;
+            for (int i = 0; i < numOfEmails; i++) {
+                final String body = emails[start + i].getBody();
+                numOfWords[i] = hasher == null ? tokenizer.tokenizeTermIds(body, termCounter)
+                        : hasher.hashFeatures(tokenizer, body, termCounter::addFeature);
+                final int[] ids = termCounter.getTermIds();
+                if (entry + ids.length > termIds.length) {
+                    termIds = Arrays.copyOf(termIds, Math.max(entry + ids.length, termIds.length * 2));
+                    termCounts = Arrays.copyOf(termCounts, termIds.length);
+                }
+                for (int termId : ids) {
+                    final int count = termCounter.getCount(termId);
+                    if (count == 0) continue;
+                    termIds[entry] = termId;
+                    termCounts[entry++] = count;
+                }
+                termCounter.clear(ids);
+                rowOffsets[i + 1] = entry;
+            }
+        }
+
+        /**
+         * Interns the local words to the dictionary of the index in order of their local term ids.
+         */
+        void mergeDictionary(TermDictionary dictionary) {
+            if (localDictionary == null) return;
+            final char[] pool = localDictionary.getPool();
+            final int[] offsets = localDictionary.getOffsets();
+            final int[] hashes = localDictionary.getHashes();
+            globalIds = new int[localDictionary.size()];
+            for (int localId = 0; localId < globalIds.length; localId++) {
+                globalIds[localId] = dictionary.intern(pool, offsets[localId], offsets[localId + 1] - offsets[localId],
+                        hashes[localId]);
+            }
+        }
+
+        /**
+         * Writes the term ids of the index and the counts of the emails of the range from the given position, sorting
+         * the terms of every email by their term ids in the index.
+         */
+        void copyRows(int[] docTermIds, int[] docTermCounts, int position) {
+            final int numOfEntries = rowOffsets[numOfEmails];
+            if (globalIds == null) {
+                // Buckets are the same in every range and already ascending
+                System.arraycopy(termIds, 0, docTermIds, position, numOfEntries);
+                System.arraycopy(termCounts, 0, docTermCounts, position, numOfEntries);
+                return;
+            }
+            long[] row = new long[64];
+            for (int i = 0; i < numOfEmails; i++) {
+                final int rowStart = rowOffsets[i];
+                final int rowLength = rowOffsets[i + 1] - rowStart;
+                if (rowLength > row.length) row = new long[Math.max(rowLength, row.length * 2)];
+                // Sort the term ids with their counts, which are positive, in the low half
+                for (int j = 0; j < rowLength; j++) {
+                    row[j] = ((long) globalIds[termIds[rowStart + j]] << 32) | termCounts[rowStart + j];
+                }
+                Arrays.sort(row, 0, rowLength);
+                for (int j = 0; j < rowLength; j++) {
+                    docTermIds[position + rowStart + j] = (int) (row[j] >>> 32);
+                    docTermCounts[position + rowStart + j] = (int) row[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the term ids of one email at a time, reusing its arrays across emails.
+     */
+    private static class TermCounter implements IntConsumer {
+        /**
+         * Occurrences of each term id in the current email, when the words are interned.
+         */
+        private int[] counts = new int[1024];
+
+        /**
+         * Distinct term ids of the current email, in order of first appearance.
+         */
+        private int[] termIds = new int[256];
+
+        /**
+         * Number of distinct term ids of the current email.
+         */
+        private int numOfTermIds;
+
+        /**
+         * Signed features of the current email, only used when hashing. They are counted once the email is complete,
+         * so the memory is bounded by the length of the longest email rather than by the number of buckets.
+         */
+        private int[] features = new int[256];
+
+        /**
+         * Number of features of the current email.
+         */
+        private int numOfFeatures;
+
+        /**
+         * Signed count of each bucket listed in {@link #termIds}, once the features are counted.
+         */
+        private int[] bucketCounts = new int[256];
+
+        @Override
+        public void accept(int termId) {
+            if (termId >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(termId + 1, counts.length * 2));
+            }
+            if (counts[termId]++ == 0) {
+                list(termId);
+            }
+        }
+
+        /**
+         * Adds the sign of a hashed word or bigram to the count of its bucket.
+         *
+         * @param feature The signed feature, as produced by {@link FeatureHasher}.
+         */
+        void addFeature(int feature) {
+            if (numOfFeatures == features.length) {
+                features = Arrays.copyOf(features, features.length * 2);
+            }
+            features[numOfFeatures++] = feature;
+        }
+
+        /**
+         * Lists the distinct buckets of the features of the current email in ascending order with their signed counts.
+         */
+        private void countFeatures() {
+            // The bucket in the high bits sorts the features of a bucket together, the low bit keeps their sign
+            for (int i = 0; i < numOfFeatures; i++) {
+                features[i] = FeatureHasher.getBucket(features[i]) << 1 | (features[i] < 0 ? 1 : 0);
+            }
+            Arrays.sort(features, 0, numOfFeatures);
+            if (numOfFeatures > bucketCounts.length) {
+                bucketCounts = new int[Math.max(numOfFeatures, bucketCounts.length * 2)];
+            }
+            for (int i = 0; i < numOfFeatures; i++) {
+                final int bucket = features[i] >>> 1;
+                if (numOfTermIds == 0 || termIds[numOfTermIds - 1] != bucket) {
+                    bucketCounts[numOfTermIds] = 0;
+                    list(bucket);
+                }
+                bucketCounts[numOfTermIds - 1] += (features[i] & 1) == 0 ? 1 : -1;
+            }
+        }
+
+        private void list(int termId) {
+            if (numOfTermIds == termIds.length) {
+                termIds = Arrays.copyOf(termIds, termIds.length * 2);
+            }
+            termIds[numOfTermIds++] = termId;
+        }
+
+        /**
+         * Returns the distinct term ids of the current email in ascending order.
+         */
+        int[] getTermIds() {
+            if (numOfFeatures > 0 && numOfTermIds == 0) countFeatures();
+            int[] ids = Arrays.copyOf(termIds, numOfTermIds);
+            Arrays.sort(ids);
+            return ids;
+        }
+
+        /**
+         * Returns the occurrences of a term id in the current email.
+         */
+        int getCount(int termId) {
+            if (numOfFeatures > 0) return bucketCounts[Arrays.binarySearch(termIds, 0, numOfTermIds, termId)];
+            return counts[termId];
+        }
+
+        /**
+         * Resets the counts of the given term ids to start counting the next email.
+         */
+        void clear(int[] ids) {
+            if (numOfFeatures > 0) {
+                numOfFeatures = 0;
+            } else {
+                for (int termId : ids) counts[termId] = 0;
+            }
+            numOfTermIds = 0;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.tuta;
+
+/**
+ * Kernel computing dot products and cosine similarities of dense vectors, such as those built by
+ * {@link SimilarityUtils#getVector(InvertedIndex, int)}.
+ *
+ * <p>
+ * {@link DenseKernels#get()} returns the fastest kernel supported by the runtime: a SIMD kernel built on the
+ * {@code jdk.incubator.vector} module when it is available, and {@link ScalarKernel} otherwise. It backs
+ * {@link SimilarityUtils#calcCosineSimilarity(float[], float[])}. Kernels sum in different orders, so their results
+ * agree with each other up to floating-point rounding.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * DenseKernel kernel = DenseKernels.get();
+ * float similarityScore = kernel.calcCosineSimilarity(currentEmailVector, otherEmailVector);
+ * }</pre>
+ */
+public interface DenseKernel {
+
+    /**
+     * Calculates the dot product of two vectors.
+     *
+     * @param a The first vector.
+     * @param b The second vector, at least as long as the first one.
+     * @return The dot product over the length of the first vector.
+     */
+    double dot(float[] a, float[] b);
+
+    /**
+     * Calculates the cosine similarity of two vectors in a single pass.
+     *
+     * @param a The first vector.
+     * @param b The second vector, at least as long as the first one.
+     * @return The cosine similarity, or 0 if either vector is zero.
+     */
+    float calcCosineSimilarity(float[] a, float[] b);
+
+    /**
+     * Returns the name of the kernel, for logging.
+     *
+     * @return The name of the kernel.
+     */
+    String getName();
+}
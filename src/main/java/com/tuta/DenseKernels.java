@@ -0,0 +1,54 @@
+package com.tuta;
+
+/**
+ * Selects the {@link DenseKernel} used by the dense-vector path.
+ *
+ * <p>
+ * The SIMD kernel {@code com.tuta.VectorKernel} is only compiled by the {@code vector} Maven profile, as it needs Java
+ * 17 and the incubating {@code jdk.incubator.vector} module, which also has to be enabled at runtime with
+ * {@code --add-modules jdk.incubator.vector}. It is therefore loaded by name, and {@link ScalarKernel} is used whenever
+ * the class is missing or the module is not available. Setting the system property {@code spamchecker.kernel} to
+ * {@code scalar} forces the scalar kernel.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * // java --add-modules jdk.incubator.vector -jar spam_checker.jar ...
+ * DenseKernel kernel = DenseKernels.get();
+ * }</pre>
+ */
+public class DenseKernels {
+    /**
+     * Name of the SIMD kernel class.
+     */
+    static final String VECTOR_KERNEL = "com.tuta.VectorKernel";
+
+    private static final DenseKernel DEFAULT_KERNEL = "scalar".equals(System.getProperty("spamchecker.kernel"))
+            ? new ScalarKernel() : load(VECTOR_KERNEL);
+
+    private DenseKernels() {
+    }
+
+    /**
+     * Returns the fastest kernel supported by the runtime.
+     *
+     * @return The SIMD kernel if it can be loaded, the scalar kernel otherwise.
+     */
+    public static DenseKernel get() {
+        return DEFAULT_KERNEL;
+    }
+
+    /**
+     * Loads a kernel by its class name, falling back to the scalar kernel.
+     *
+     * @param className The name of a {@link DenseKernel} class with a public no-argument constructor.
+     * @return The loaded kernel, or a {@link ScalarKernel} if the class or one of its dependencies cannot be loaded.
+     */
+    static DenseKernel load(String className) {
+        try {
+            return (DenseKernel) Class.forName(className).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            return new ScalarKernel();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.tuta;
+
+import java.util.Arrays;
+
+/**
+ * Groups of the emails of a {@link CorpusIndex} with identical bodies after normalization, so the TF-IDF vectors and
+ * the similarities only need to be computed once per unique body.
+ *
+ * <p>
+ * Two bodies are duplicates if they have the same number of words and the same count of every term, which is exactly
+ * what determines their TF-IDF vectors. The key of a body is a 64-bit hash of its term ids and counts, as kept by the
+ * index, looked up in an open addressing table. Bodies with the same key are compared term by term before being
+ * grouped, so a hash collision never merges different bodies. The first email of every group represents it.
+ * </p>
+ *
+ * <p>
+ * Since all emails of a group have the same vector, an email is similar to every email of a group similar to its own
+ * representative, and to the other emails of its own group if a vector is similar to itself. The similar-counts of a
+ * graph over the unique bodies are expanded this way by {@link #getSimilarCounts(SimilarityGraph, SparseVector[])},
+ * giving the counts a graph over all emails would have.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * DuplicateGroups duplicates = new DuplicateGroups(corpusIndex);
+ * SparseVector[] vectors = duplicates.getUniqueVectors();
+ * SimilarityGraph graph = engine.computeGraph(vectors, new InvertedIndex(vectors), 0.32f);
+ * int[] similarCounts = duplicates.getSimilarCounts(graph, vectors);
+ * }</pre>
+ */
+public class DuplicateGroups {
+    private final CorpusIndex corpusIndex;
+
+    /**
+     * Index of the group of each email.
+     */
+    private final int[] groups;
+
+    /**
+     * First email of each group.
+     */
+    private final int[] representatives;
+
+    /**
+     * Number of emails of each group.
+     */
+    private final int[] multiplicities;
+
+    /**
+     * Groups the emails of an index. The index must not be changed while the groups are used.
+     *
+     * @param corpusIndex The index of the emails.
+     */
+    public DuplicateGroups(CorpusIndex corpusIndex) {
+        this.corpusIndex = corpusIndex;
+        final int numOfEmails = corpusIndex.size();
+        final int[] docOffsets = corpusIndex.getDocOffsets();
+        final int[] docTermIds = corpusIndex.getDocTermIds();
+        final int[] docTermCounts = corpusIndex.getDocTermCounts();
+        final int[] numOfWords = corpusIndex.getNumOfWords();
+
+        // Open addressing table of the groups, at most half full
+        int capacity = Integer.highestOneBit(Math.max(1, numOfEmails)) * 4;
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        long[] keys = new long[numOfEmails];
+        int[] groupRepresentatives = new int[numOfEmails];
+        int[] groupSizes = new int[numOfEmails];
+        groups = new int[numOfEmails];
+        int numOfGroups = 0;
+
+        for (int emailIndex = 0; emailIndex < numOfEmails; emailIndex++) {
+            final int start = docOffsets[emailIndex];
+            final int end = docOffsets[emailIndex + 1];
+            long key = mix(numOfWords[emailIndex]);
+            for (int i = start; i < end; i++) {
+                key = mix(key * 31 + (((long) docTermIds[i] << 32) | docTermCounts[i]));
+            }
+
+            int slot = (int) key & (capacity - 1);
+            int group;
+            while (true) {
+                group = table[slot];
+                if (group < 0) {
+                    group = numOfGroups++;
+                    table[slot] = group;
+                    keys[group] = key;
+                    groupRepresentatives[group] = emailIndex;
+                    break;
+                }
+                final int representative = groupRepresentatives[group];
+                if (keys[group] == key && numOfWords[representative] == numOfWords[emailIndex]
+                        && docOffsets[representative + 1] - docOffsets[representative] == end - start
+                        && rangeEquals(docTermIds, docOffsets[representative], start, end - start)
+                        && rangeEquals(docTermCounts, docOffsets[representative], start, end - start)) {
+                    break;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            groups[emailIndex] = group;
+            groupSizes[group]++;
+        }
+        representatives = Arrays.copyOf(groupRepresentatives, numOfGroups);
+        multiplicities = Arrays.copyOf(groupSizes, numOfGroups);
+    }
+
+    /**
+     * Returns the number of grouped emails.
+     *
+     * @return The number of emails of the index.
+     */
+    public int size() {
+        return groups.length;
+    }
+
+    /**
+     * Returns the number of unique bodies, which is the number of groups.
+     *
+     * @return The number of groups.
+     */
+    public int getNumOfUniqueBodies() {
+        return representatives.length;
+    }
+
+    /**
+     * Returns the group of an email.
+     *
+     * @param emailIndex The index of the email.
+     * @return The index of the group holding the email.
+     */
+    public int getGroup(int emailIndex) {
+        return groups[emailIndex];
+    }
+
+    /**
+     * Returns the email representing a group.
+     *
+     * @param group The index of the group.
+     * @return The index of the first email of the group.
+     */
+    public int getRepresentative(int group) {
+        return representatives[group];
+    }
+
+    /**
+     * Returns the number of emails of a group.
+     *
+     * @param group The index of the group.
+     * @return The number of emails with the body of the group.
+     */
+    public int getMultiplicity(int group) {
+        return multiplicities[group];
+    }
+
+    /**
+     * Builds the TF-IDF vector of every group from its representative. The document frequencies are those of all
+     * emails, so the vectors are the same as the vectors of {@link CorpusIndex#getVectors()}.
+     *
+     * @return The sparse vectors, indexed by group.
+     */
+    public SparseVector[] getUniqueVectors() {
+        SparseVector[] vectors = new SparseVector[representatives.length];
+        for (int group = 0; group < vectors.length; group++) {
+            vectors[group] = corpusIndex.getVector(representatives[group]);
+        }
+        return vectors;
+    }
+
+    /**
+     * Expands the similar-counts of a graph over the groups to all emails.
+     *
+     * @param uniqueGraph   The similar pairs of the groups.
+     * @param uniqueVectors The vectors of the groups the graph was computed from.
+     * @return The number of similar emails of each email.
+     * @throws IllegalArgumentException If the graph or the vectors do not match the number of groups.
+     */
+    public int[] getSimilarCounts(SimilarityGraph uniqueGraph, SparseVector[] uniqueVectors) {
+        if (uniqueGraph.size() != representatives.length || uniqueVectors.length != representatives.length) {
+            throw new IllegalArgumentException("Graph must match the number of unique bodies");
+        }
+        final float similarityThreshold = uniqueGraph.getSimilarityThreshold();
+        int[] groupCounts = new int[representatives.length];
+        for (int group = 0; group < groupCounts.length; group++) {
+            int count = 0;
+            for (int similarGroup : uniqueGraph.getSimilarEmails(group)) {
+                count += multiplicities[similarGroup];
+            }
+            // The other emails of the group are compared with the same vector
+            if (multiplicities[group] > 1 && SimilarityUtils.calcCosineSimilarity(uniqueVectors[group],
+                    uniqueVectors[group]) > similarityThreshold) {
+                count += multiplicities[group] - 1;
+            }
+            groupCounts[group] = count;
+        }
+
+        int[] similarCounts = new int[groups.length];
+        for (int emailIndex = 0; emailIndex < similarCounts.length; emailIndex++) {
+            similarCounts[emailIndex] = groupCounts[groups[emailIndex]];
+        }
+        return similarCounts;
+    }
+
+    @Override
+    public String toString() {
+        return groups.length + " emails with " + representatives.length + " unique bodies";
+    }
+
+    private static boolean rangeEquals(int[] values, int start, int otherStart, int length) {
+        for (int i = 0; i < length; i++) {
+            if (values[start + i] != values[otherStart + i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finalizer of SplitMix64, turning a value into a well distributed 64-bit hash.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,165 @@
+package com.tuta;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Clusters of emails linked by similar pairs, the connected components of the {@link SimilarityGraph}, kept in a
+ * concurrent union-find.
+ *
+ * <p>
+ * Every email starts in its own cluster and {@link #union(int, int)} merges the clusters of a similar pair. The parent
+ * of every email is kept in an {@link AtomicIntegerArray} and only ever changed by compare-and-set, so the tiles of
+ * {@link SimilarityEngine#computeGraph(SparseVector[], InvertedIndex, float, int, EmailClusters)} merge the pairs
+ * they find concurrently and without locks. A root is always linked below the smaller root, and paths are halved
+ * while searching, so every parent is smaller than its child and the root of a cluster is its first email, whatever
+ * the order of the merges.
+ * </p>
+ *
+ * <p>
+ * Once all pairs are merged, {@link #forEachCluster(int, ClusterConsumer)} passes the clusters one at a time in order
+ * of their first email, so they can be written as they are enumerated.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * EmailClusters clusters = new EmailClusters(vectors.length);
+ * engine.computeGraph(vectors, invertedIndex, 0.32f, Integer.MAX_VALUE, clusters);
+ * clusters.forEachCluster(2, (clusterId, members) -> System.out.println(clusterId + ": " + members.length));
+ * }</pre>
+ */
+public class EmailClusters {
+    /**
+     * Parent of each email, the email itself for the root of a cluster.
+     */
+    private final AtomicIntegerArray parents;
+
+    /**
+     * Receiver of the clusters enumerated by {@link #forEachCluster(int, ClusterConsumer)}.
+     */
+    public interface ClusterConsumer {
+        /**
+         * Receives a cluster.
+         *
+         * @param clusterId The number of the cluster, counting from 0 in order of the first emails.
+         * @param members   The emails of the cluster in ascending order.
+         * @throws IOException If the cluster cannot be written.
+         */
+        void accept(int clusterId, int[] members) throws IOException;
+    }
+
+    /**
+     * Constructs the clusters of emails that are not linked yet, each in its own cluster.
+     *
+     * @param numOfEmails The number of emails.
+     */
+    public EmailClusters(int numOfEmails) {
+        parents = new AtomicIntegerArray(numOfEmails);
+        for (int i = 0; i < numOfEmails; i++) {
+            parents.set(i, i);
+        }
+    }
+
+    /**
+     * Returns the number of emails.
+     *
+     * @return The number of emails.
+     */
+    public int size() {
+        return parents.length();
+    }
+
+    /**
+     * Returns the root of the cluster of an email. Can run concurrently with {@link #union(int, int)}, the root may
+     * then be outdated as soon as it is returned.
+     *
+     * @param emailIndex The index of the email.
+     * @return The first email of the cluster.
+     */
+    public int find(int emailIndex) {
+        int email = emailIndex;
+        while (true) {
+            final int parent = parents.get(email);
+            if (parent == email) return email;
+            final int grandparent = parents.get(parent);
+            // Path halving, lost races are harmless as the grandparent is still an ancestor
+            if (grandparent != parent) parents.compareAndSet(email, parent, grandparent);
+            email = grandparent;
+        }
+    }
+
+    /**
+     * Merges the clusters of two emails. Thread-safe and lock-free.
+     *
+     * @param a The index of an email.
+     * @param b The index of the other email.
+     * @return True if the emails were in different clusters.
+     */
+    public boolean union(int a, int b) {
+        while (true) {
+            final int rootA = find(a);
+            final int rootB = find(b);
+            if (rootA == rootB) return false;
+            final int smaller = Math.min(rootA, rootB);
+            final int larger = Math.max(rootA, rootB);
+            // Fails if the larger root got linked meanwhile, in which case the roots are searched again
+            if (parents.compareAndSet(larger, larger, smaller)) return true;
+        }
+    }
+
+    /**
+     * Merges the clusters of the emails of every pair of a graph.
+     *
+     * @param graph The similar pairs of the same emails.
+     * @throws IllegalArgumentException If the graph does not match the number of emails.
+     */
+    public void addAll(SimilarityGraph graph) {
+        if (graph.size() != size()) {
+            throw new IllegalArgumentException("Graph must match the number of emails");
+        }
+        for (int row = 0; row < graph.size(); row++) {
+            for (int col : graph.getSimilarEmails(row)) {
+                if (col >= row) break;
+                union(row, col);
+            }
+        }
+    }
+
+    /**
+     * Passes every cluster of at least the given size to a consumer, in order of the first emails. Must not run
+     * concurrently with {@link #union(int, int)}.
+     *
+     * @param minSize  The smallest number of emails of a passed cluster, 2 to skip the emails similar to no other.
+     * @param consumer The consumer of the clusters.
+     * @return The number of passed clusters.
+     * @throws IOException If the consumer fails to write a cluster.
+     */
+    public int forEachCluster(int minSize, ClusterConsumer consumer) throws IOException {
+        final int numOfEmails = size();
+        // Group the emails by root with a counting sort, keeping them ascending within each cluster
+        int[] roots = new int[numOfEmails];
+        int[] offsets = new int[numOfEmails + 1];
+        for (int i = 0; i < numOfEmails; i++) {
+            roots[i] = find(i);
+            offsets[roots[i] + 1]++;
+        }
+        for (int i = 0; i < numOfEmails; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] members = new int[numOfEmails];
+        int[] next = new int[numOfEmails];
+        System.arraycopy(offsets, 0, next, 0, numOfEmails);
+        for (int i = 0; i < numOfEmails; i++) {
+            members[next[roots[i]]++] = i;
+        }
+
+        int numOfClusters = 0;
+        for (int root = 0; root < numOfEmails; root++) {
+            final int clusterSize = offsets[root + 1] - offsets[root];
+            if (clusterSize == 0 || clusterSize < minSize) continue;
+            consumer.accept(numOfClusters++, Arrays.copyOfRange(members, offsets[root], offsets[root + 1]));
+        }
+        return numOfClusters;
+    }
+}
@@ -0,0 +1,68 @@
+package com.tuta;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Reads a JSON array of emails one email at a time.
+ *
+ * <p>
+ * Unlike {@code gson.fromJson(reader, Email[].class)}, the input is never materialized as a whole: each
+ * {@code {"receiver": ..., "body": ...}} object is parsed with a {@link JsonReader} and handed to a consumer before the
+ * next one is read, so memory stays bounded by the largest single email. Unknown fields are skipped.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * CorpusIndex corpusIndex = new CorpusIndex();
+ * try (Reader reader = new FileReader(filePath)) {
+ *     EmailStreamReader.readEmails(reader, corpusIndex::add);
+ * }
+ * }</pre>
+ */
+public class EmailStreamReader {
+
+    /**
+     * Reads all emails of a JSON array, handing them to the consumer in order.
+     *
+     * @param reader        The reader providing the JSON array of emails.
+     * @param emailConsumer Receives every email as soon as it is read.
+     * @return The number of emails read.
+     * @throws IOException           If the input cannot be read or is malformed JSON.
+     * @throws IllegalStateException If the JSON is not an array of email objects.
+     */
+    public static int readEmails(Reader reader, Consumer<Email> emailConsumer) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        int numOfEmails = 0;
+
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            String receiver = null;
+            String body = null;
+
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String name = jsonReader.nextName();
+                if (jsonReader.peek() == JsonToken.NULL) {
+                    jsonReader.nextNull();
+                } else if ("receiver".equals(name)) {
+                    receiver = jsonReader.nextString();
+                } else if ("body".equals(name)) {
+                    body = jsonReader.nextString();
+                } else {
+                    jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+
+            emailConsumer.accept(new Email(receiver, body));
+            numOfEmails++;
+        }
+        jsonReader.endArray();
+        return numOfEmails;
+    }
+}
@@ -0,0 +1,318 @@
+package com.tuta;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Maps the cleaned words of an email, and optionally its word bigrams, into a fixed number of buckets with the hashing
+ * trick, so TF-IDF vectors can be built without a global vocabulary.
+ *
+ * <p>
+ * Every word is hashed from its characters, so the same word always falls into the same bucket, in every process and
+ * without any shared state. The bucket is taken from the low bits of the hash and a sign from its highest bit: a word
+ * adds +1 or -1 to the count of its bucket, so the words colliding in a bucket cancel out rather than add up on
+ * average, which keeps the dot products of the hashed vectors unbiased. A bigram is hashed from the hashes of its two
+ * words into the same buckets.
+ * </p>
+ *
+ * <p>
+ * Each word or bigram is passed on as a signed feature: its bucket if the sign is positive, and the complement
+ * {@code ~bucket}, which is negative, otherwise. Memory is bounded by the number of buckets, whatever the number of
+ * distinct words, at the price of collisions, which {@link #measureDeviation(SparseVector[], SparseVector[],
+ * SimilarityGraph, SimilarityGraph, int)} measures against the exact vocabulary.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * CorpusIndex index = new CorpusIndex(new FeatureHasher(20, true));
+ * index.add(email);
+ * SparseVector vector = index.getVector(0);
+ * }</pre>
+ */
+public class FeatureHasher {
+    /**
+     * Largest number of bits. An index sizes its document frequencies and postings by the number of buckets, so every
+     * such array is capped at 2^24 entries, 64 MB of ints, however few buckets a corpus uses.
+     */
+    public static final int MAX_NUM_OF_BITS = 24;
+
+    /**
+     * Seed of the word hashes, the offset basis of FNV-1a.
+     */
+    private static final int WORD_SEED = 0x811c9dc5;
+
+    /**
+     * Odd constant combining the hashes of the two words of a bigram.
+     */
+    private static final int BIGRAM_MULTIPLIER = 0x9e3779b1;
+
+    private final int numOfBits;
+    private final boolean bigrams;
+
+    /**
+     * Constructs a feature hasher.
+     *
+     * @param numOfBits The number of bits of the buckets, so there are {@code 2^numOfBits} buckets.
+     * @param bigrams   Whether the bigrams of consecutive words are hashed as well as the words.
+     * @throws IllegalArgumentException If the number of bits is not between 1 and {@link #MAX_NUM_OF_BITS}.
+     */
+    public FeatureHasher(int numOfBits, boolean bigrams) {
+        if (numOfBits < 1 || numOfBits > MAX_NUM_OF_BITS) {
+            throw new IllegalArgumentException("Number of bits must be between 1 and " + MAX_NUM_OF_BITS);
+        }
+        this.numOfBits = numOfBits;
+        this.bigrams = bigrams;
+    }
+
+    public int getNumOfBits() {
+        return numOfBits;
+    }
+
+    /**
+     * Returns the number of buckets, the dimension of the hashed vectors.
+     *
+     * @return The number of buckets, {@code 2^numOfBits}.
+     */
+    public int getNumOfBuckets() {
+        return 1 << numOfBits;
+    }
+
+    public boolean isBigrams() {
+        return bigrams;
+    }
+
+    /**
+     * Tokenizes a text and hashes every cleaned word, and every bigram if enabled, to a signed feature.
+     *
+     * @param tokenizer       The tokenizer splitting the text, which must not be used by another thread meanwhile.
+     * @param text            The text to hash.
+     * @param featureConsumer Receives the signed feature of every word and bigram, in order.
+     * @return The number of words, as counted by {@link TextUtils#countNumOfWords(String)}. Bigrams are not counted,
+     * so the term frequencies are relative to the number of words as in the exact mode.
+     */
+    public int hashFeatures(Tokenizer tokenizer, CharSequence text, IntConsumer featureConsumer) {
+        return tokenizer.tokenize(text, new FeatureSink(featureConsumer));
+    }
+
+    /**
+     * Returns the signed feature of a single cleaned word.
+     *
+     * @param word The cleaned word.
+     * @return The bucket of the word if its sign is positive, or the complement of the bucket otherwise.
+     */
+    public int getFeature(CharSequence word) {
+        char[] chars = new char[word.length()];
+        for (int i = 0; i < chars.length; i++) chars[i] = word.charAt(i);
+        return toFeature(hashWord(chars, chars.length), getNumOfBuckets() - 1);
+    }
+
+    /**
+     * Returns the bucket of a signed feature.
+     *
+     * @param feature The signed feature.
+     * @return The bucket, between 0 and the number of buckets.
+     */
+    public static int getBucket(int feature) {
+        return feature < 0 ? ~feature : feature;
+    }
+
+    /**
+     * Returns the sign of a signed feature.
+     *
+     * @param feature The signed feature.
+     * @return +1 or -1.
+     */
+    public static int getSign(int feature) {
+        return feature < 0 ? -1 : 1;
+    }
+
+    /**
+     * Measures how far the collisions of the hashed vectors move the similarities away from the exact ones.
+     *
+     * <p>
+     * The similarity of every pair above the threshold in either mode is computed from both the exact and the hashed
+     * vectors. Pairs below the threshold in both modes do not change the classification and are not measured. The
+     * exact vocabulary has no bigrams, so with bigrams the deviation is that of the bigrams and collisions together.
+     * </p>
+     *
+     * @param exactVectors              The vectors of the emails over the exact vocabulary.
+     * @param hashedVectors             The hashed vectors of the same emails.
+     * @param exactGraph                The similar pairs of the exact vectors.
+     * @param hashedGraph               The similar pairs of the hashed vectors, with the same threshold.
+     * @param numOfSimilarEmailsAllowed Number of similar emails an email may have before it is considered spam.
+     * @return The deviation of the similarities and of the classification.
+     * @throws IllegalArgumentException If the vectors and graphs do not cover the same emails.
+     */
+    public static DeviationReport measureDeviation(SparseVector[] exactVectors, SparseVector[] hashedVectors,
+            SimilarityGraph exactGraph, SimilarityGraph hashedGraph, int numOfSimilarEmailsAllowed) {
+        final int numOfEmails = exactVectors.length;
+        if (hashedVectors.length != numOfEmails || exactGraph.size() != numOfEmails
+                || hashedGraph.size() != numOfEmails) {
+            throw new IllegalArgumentException("Vectors and graphs must cover the same emails");
+        }
+        int numOfMeasuredPairs = 0;
+        int numOfLostPairs = 0;
+        int numOfGainedPairs = 0;
+        double sumOfDeviations = 0;
+        double maxDeviation = 0;
+        for (int row = 0; row < numOfEmails; row++) {
+            // Merge the ascending neighbors of both modes, measuring every pair once from its larger email
+            final int[] exactNeighbors = exactGraph.getSimilarEmails(row);
+            final int[] hashedNeighbors = hashedGraph.getSimilarEmails(row);
+            int e = 0;
+            int h = 0;
+            while (true) {
+                final int exactCol = e < exactNeighbors.length ? exactNeighbors[e] : Integer.MAX_VALUE;
+                final int hashedCol = h < hashedNeighbors.length ? hashedNeighbors[h] : Integer.MAX_VALUE;
+                final int col = Math.min(exactCol, hashedCol);
+                if (col >= row) break;
+                if (exactCol != hashedCol) {
+                    if (col == exactCol) numOfLostPairs++;
+                    else numOfGainedPairs++;
+                }
+                if (col == exactCol) e++;
+                if (col == hashedCol) h++;
+
+                final double deviation = Math.abs(
+                        (double) SimilarityUtils.calcCosineSimilarity(hashedVectors[row], hashedVectors[col])
+                                - SimilarityUtils.calcCosineSimilarity(exactVectors[row], exactVectors[col]));
+                sumOfDeviations += deviation;
+                maxDeviation = Math.max(maxDeviation, deviation);
+                numOfMeasuredPairs++;
+            }
+        }
+
+        boolean[] exactSpam = exactGraph.classify(numOfSimilarEmailsAllowed);
+        boolean[] hashedSpam = hashedGraph.classify(numOfSimilarEmailsAllowed);
+        int numOfFlippedEmails = 0;
+        for (int i = 0; i < numOfEmails; i++) {
+            if (exactSpam[i] != hashedSpam[i]) numOfFlippedEmails++;
+        }
+        return new DeviationReport(numOfMeasuredPairs, numOfLostPairs, numOfGainedPairs,
+                numOfMeasuredPairs == 0 ? 0 : sumOfDeviations / numOfMeasuredPairs, maxDeviation, numOfFlippedEmails,
+                numOfEmails);
+    }
+
+    /**
+     * Hashes the characters of a word with FNV-1a, finalized to spread the bits over the whole hash.
+     */
+    private static int hashWord(char[] word, int length) {
+        int hash = WORD_SEED;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ word[i]) * 0x01000193;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Finalizer of MurmurHash3, turning a value into a well distributed 32-bit hash.
+     */
+    private static int mix(int value) {
+        value = (value ^ (value >>> 16)) * 0x85ebca6b;
+        value = (value ^ (value >>> 13)) * 0xc2b2ae35;
+        return value ^ (value >>> 16);
+    }
+
+    /**
+     * Turns a hash into a signed feature: the bucket from its low bits and the sign from its highest bit.
+     */
+    private static int toFeature(int hash, int mask) {
+        return hash < 0 ? ~(hash & mask) : hash & mask;
+    }
+
+    /**
+     * Hashes the words of one text, remembering the hash of the previous word to hash the bigrams.
+     */
+    private class FeatureSink implements Tokenizer.TokenConsumer {
+        private final IntConsumer featureConsumer;
+        private final int mask = getNumOfBuckets() - 1;
+        private int previousHash;
+        private boolean hasPrevious;
+
+        FeatureSink(IntConsumer featureConsumer) {
+            this.featureConsumer = featureConsumer;
+        }
+
+        @Override
+        public void accept(char[] buffer, int length) {
+            final int hash = hashWord(buffer, length);
+            featureConsumer.accept(toFeature(hash, mask));
+            if (!bigrams) return;
+            if (hasPrevious) featureConsumer.accept(toFeature(mix(previousHash * BIGRAM_MULTIPLIER + hash), mask));
+            previousHash = hash;
+            hasPrevious = true;
+        }
+    }
+
+    /**
+     * Deviation of the similarities of the hashed vectors from the exact ones.
+     */
+    public static class DeviationReport {
+        private final int numOfMeasuredPairs;
+        private final int numOfLostPairs;
+        private final int numOfGainedPairs;
+        private final double meanDeviation;
+        private final double maxDeviation;
+        private final int numOfFlippedEmails;
+        private final int numOfEmails;
+
+        DeviationReport(int numOfMeasuredPairs, int numOfLostPairs, int numOfGainedPairs, double meanDeviation,
+                double maxDeviation, int numOfFlippedEmails, int numOfEmails) {
+            this.numOfMeasuredPairs = numOfMeasuredPairs;
+            this.numOfLostPairs = numOfLostPairs;
+            this.numOfGainedPairs = numOfGainedPairs;
+            this.meanDeviation = meanDeviation;
+            this.maxDeviation = maxDeviation;
+            this.numOfFlippedEmails = numOfFlippedEmails;
+            this.numOfEmails = numOfEmails;
+        }
+
+        /**
+         * Returns the number of pairs above the similarity threshold in either mode.
+         */
+        public int getNumOfMeasuredPairs() {
+            return numOfMeasuredPairs;
+        }
+
+        /**
+         * Returns the number of pairs above the similarity threshold in the exact mode only.
+         */
+        public int getNumOfLostPairs() {
+            return numOfLostPairs;
+        }
+
+        /**
+         * Returns the number of pairs above the similarity threshold in the hashed mode only.
+         */
+        public int getNumOfGainedPairs() {
+            return numOfGainedPairs;
+        }
+
+        /**
+         * Returns the mean absolute difference between the hashed and the exact similarity of the measured pairs.
+         */
+        public double getMeanDeviation() {
+            return meanDeviation;
+        }
+
+        /**
+         * Returns the largest absolute difference between the hashed and the exact similarity of the measured pairs.
+         */
+        public double getMaxDeviation() {
+            return maxDeviation;
+        }
+
+        /**
+         * Returns the number of emails classified differently in the hashed mode.
+         */
+        public int getNumOfFlippedEmails() {
+            return numOfFlippedEmails;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Hashing deviation: mean %.6f, max %.6f over %d pairs, lost pairs: %d, "
+                            + "gained pairs: %d, reclassified emails: %d of %d", meanDeviation, maxDeviation,
+                    numOfMeasuredPairs, numOfLostPairs, numOfGainedPairs, numOfFlippedEmails, numOfEmails);
+        }
+    }
+}
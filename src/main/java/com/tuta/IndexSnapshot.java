@@ -0,0 +1,378 @@
+package com.tuta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Versioned binary snapshot of a {@link CorpusIndex}, optionally with its {@link SimilarityGraph} and
+ * {@link SymmetricMatrix}, so a restarted process can classify new emails without re-indexing the corpus.
+ *
+ * <p>
+ * The snapshot holds the term dictionary (character pool, offsets, hashes and hash table), the document frequencies,
+ * the term ids and counts of every email in compressed sparse row form, the word counts and the receivers. The TF-IDF
+ * vectors are derived from these exactly as after a fresh build. All index data lives in primitive arrays, so every
+ * section is written and read with a single bulk copy through a memory-mapped {@link FileChannel}, without allocating
+ * an object per term or email.
+ * </p>
+ *
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes: the magic number {@code SPIX}, the format version, the
+ * flags of the optional sections and the sizes of all sections. All values are little-endian and every section starts
+ * at a multiple of 8 bytes. Memory-mapped matrices are not included, as {@link MappedSymmetricMatrix} is already
+ * backed by its own file.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * new IndexSnapshot(corpusIndex, similarityGraph, null).write(file);
+ * CorpusIndex restoredIndex = IndexSnapshot.read(file).getCorpusIndex();
+ * }</pre>
+ */
+public class IndexSnapshot {
+    /**
+     * Magic number identifying snapshot files, "SPIX" in ASCII.
+     */
+    public static final int MAGIC = 0x58495053;
+
+    /**
+     * Version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Size of the header in bytes.
+     */
+    static final int HEADER_SIZE = 48;
+
+    private static final int FLAG_GRAPH = 1;
+    private static final int FLAG_MATRIX = 2;
+
+    /**
+     * Maximum number of bytes mapped at once while reading a section.
+     */
+    private static final int CHUNK_SIZE = 1 << 28;
+
+    private final CorpusIndex corpusIndex;
+    private final SimilarityGraph similarityGraph;
+    private final SymmetricMatrix similarityMatrix;
+
+    /**
+     * Constructs a snapshot of an index.
+     *
+     * @param corpusIndex      The corpus index.
+     * @param similarityGraph  The similarity graph of the corpus, or null.
+     * @param similarityMatrix The similarity matrix of the corpus, or null.
+     * @throws IllegalArgumentException If the graph or matrix size does not match the corpus size, or if the index
+     *                                  hashes its words, which the format does not hold.
+     */
+    public IndexSnapshot(CorpusIndex corpusIndex, SimilarityGraph similarityGraph, SymmetricMatrix similarityMatrix) {
+        if (corpusIndex.getHasher() != null) {
+            throw new IllegalArgumentException("Snapshots of hashed indices are not supported");
+        }
+        if ((similarityGraph != null && similarityGraph.size() != corpusIndex.size())
+                || (similarityMatrix != null && similarityMatrix.size() != corpusIndex.size())) {
+            throw new IllegalArgumentException("Similarities must match the corpus size");
+        }
+        this.corpusIndex = corpusIndex;
+        this.similarityGraph = similarityGraph;
+        this.similarityMatrix = similarityMatrix;
+    }
+
+    /**
+     * Returns the index of the corpus.
+     *
+     * @return The corpus index.
+     */
+    public CorpusIndex getCorpusIndex() {
+        return corpusIndex;
+    }
+
+    /**
+     * Returns the similarity graph of the corpus.
+     *
+     * @return The similarity graph, or null if the snapshot has none.
+     */
+    public SimilarityGraph getSimilarityGraph() {
+        return similarityGraph;
+    }
+
+    /**
+     * Returns the similarity matrix of the corpus.
+     *
+     * @return The similarity matrix, or null if the snapshot has none.
+     */
+    public SymmetricMatrix getSimilarityMatrix() {
+        return similarityMatrix;
+    }
+
+    /**
+     * Writes the snapshot to a file, which is created or truncated.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(Path file) throws IOException {
+        final TermDictionary dictionary = corpusIndex.getDictionary();
+        final int numOfDocs = corpusIndex.size();
+        final int vocabularySize = dictionary.size();
+        final int numOfTermEntries = corpusIndex.getDocOffsets()[numOfDocs];
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SectionWriter out = new SectionWriter(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt((similarityGraph != null ? FLAG_GRAPH : 0) | (similarityMatrix != null ? FLAG_MATRIX : 0));
+            out.putInt(numOfDocs);
+            out.putInt(vocabularySize);
+            out.putInt(dictionary.getOffsets()[vocabularySize]);
+            out.putInt(dictionary.getTable().length);
+            out.putInt(numOfTermEntries);
+            out.putInt(corpusIndex.getReceiverPoolLength());
+            out.putInt(similarityGraph != null ? similarityGraph.getNeighbors().length : 0);
+            out.putFloat(similarityGraph != null ? similarityGraph.getSimilarityThreshold() : 0);
+            out.putInt(0);
+
+            out.putChars(dictionary.getPool(), dictionary.getOffsets()[vocabularySize]);
+            out.putInts(dictionary.getOffsets(), vocabularySize + 1);
+            out.putInts(dictionary.getHashes(), vocabularySize);
+            out.putInts(dictionary.getTable(), dictionary.getTable().length);
+            out.putInts(corpusIndex.getDocFrequencies(), vocabularySize);
+            out.putInts(corpusIndex.getDocOffsets(), numOfDocs + 1);
+            out.putInts(corpusIndex.getNumOfWords(), numOfDocs);
+            out.putInts(corpusIndex.getDocTermIds(), numOfTermEntries);
+            out.putInts(corpusIndex.getDocTermCounts(), numOfTermEntries);
+            out.putChars(corpusIndex.getReceiverPool(), corpusIndex.getReceiverPoolLength());
+            out.putInts(corpusIndex.getReceiverOffsets(), numOfDocs);
+            out.putInts(corpusIndex.getReceiverLengths(), numOfDocs);
+            if (similarityGraph != null) {
+                out.putInts(similarityGraph.getOffsets(), numOfDocs + 1);
+                out.putInts(similarityGraph.getNeighbors(), similarityGraph.getNeighbors().length);
+                out.putFloats(similarityGraph.getSimilarities(), similarityGraph.getSimilarities().length);
+            }
+            if (similarityMatrix != null) {
+                out.putFloats(similarityMatrix.getData(), similarityMatrix.getData().length);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads a snapshot from a file.
+     *
+     * @param file The file to read.
+     * @return The snapshot.
+     * @throws IOException If the file cannot be read, is not a snapshot, has an unsupported version or is truncated.
+     */
+    public static IndexSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not an index snapshot: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an index snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            final int flags = header.getInt();
+            final int numOfDocs = header.getInt();
+            final int vocabularySize = header.getInt();
+            final int dictionaryPoolLength = header.getInt();
+            final int tableLength = header.getInt();
+            final int numOfTermEntries = header.getInt();
+            final int receiverPoolLength = header.getInt();
+            final int numOfGraphEntries = header.getInt();
+            final float similarityThreshold = header.getFloat();
+            if (numOfDocs < 0 || vocabularySize < 0 || dictionaryPoolLength < 0 || tableLength < 1
+                    || numOfTermEntries < 0 || receiverPoolLength < 0 || numOfGraphEntries < 0) {
+                throw new IOException("Corrupt snapshot header: " + file);
+            }
+
+            SectionReader in = new SectionReader(channel, HEADER_SIZE);
+            TermDictionary dictionary;
+            CorpusIndex corpusIndex;
+            try {
+                dictionary = new TermDictionary(in.getChars(dictionaryPoolLength), in.getInts(vocabularySize + 1),
+                        in.getInts(vocabularySize), in.getInts(tableLength), vocabularySize);
+                int[] docFrequencies = in.getInts(vocabularySize);
+                int[] docOffsets = in.getInts(numOfDocs + 1);
+                int[] numOfWords = in.getInts(numOfDocs);
+                int[] docTermIds = in.getInts(numOfTermEntries);
+                int[] docTermCounts = in.getInts(numOfTermEntries);
+                char[] receiverPool = in.getChars(receiverPoolLength);
+                int[] receiverOffsets = in.getInts(numOfDocs);
+                int[] receiverLengths = in.getInts(numOfDocs);
+                corpusIndex = new CorpusIndex(dictionary, numOfDocs, docFrequencies, docOffsets, numOfWords,
+                        docTermIds, docTermCounts, receiverPool, receiverOffsets, receiverLengths);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt snapshot: " + file, e);
+            }
+
+            SimilarityGraph similarityGraph = null;
+            if ((flags & FLAG_GRAPH) != 0) {
+                try {
+                    similarityGraph = new SimilarityGraph(numOfDocs, similarityThreshold, in.getInts(numOfDocs + 1),
+                            in.getInts(numOfGraphEntries), in.getFloats(numOfGraphEntries));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Corrupt snapshot: " + file, e);
+                }
+            }
+            SymmetricMatrix similarityMatrix = null;
+            if ((flags & FLAG_MATRIX) != 0) {
+                similarityMatrix = new SymmetricMatrix(numOfDocs);
+                in.getFloats(similarityMatrix.getData());
+            }
+            return new IndexSnapshot(corpusIndex, similarityGraph, similarityMatrix);
+        }
+    }
+
+    /**
+     * Writes the sections through a direct buffer, padding every section to a multiple of 8 bytes.
+     */
+    private static class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        SectionWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        void putFloat(float value) throws IOException {
+            ensureRemaining(4);
+            buffer.putFloat(value);
+            position += 4;
+        }
+
+        void putInts(int[] values, int length) throws IOException {
+            for (int offset = 0; offset < length; ) {
+                ensureRemaining(4);
+                int chunk = Math.min(length - offset, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, offset, chunk);
+                buffer.position(buffer.position() + chunk * 4);
+                offset += chunk;
+            }
+            position += 4L * length;
+            align();
+        }
+
+        void putFloats(float[] values, int length) throws IOException {
+            for (int offset = 0; offset < length; ) {
+                ensureRemaining(4);
+                int chunk = Math.min(length - offset, buffer.remaining() / 4);
+                buffer.asFloatBuffer().put(values, offset, chunk);
+                buffer.position(buffer.position() + chunk * 4);
+                offset += chunk;
+            }
+            position += 4L * length;
+            align();
+        }
+
+        void putChars(char[] values, int length) throws IOException {
+            for (int offset = 0; offset < length; ) {
+                ensureRemaining(2);
+                int chunk = Math.min(length - offset, buffer.remaining() / 2);
+                buffer.asCharBuffer().put(values, offset, chunk);
+                buffer.position(buffer.position() + chunk * 2);
+                offset += chunk;
+            }
+            position += 2L * length;
+            align();
+        }
+
+        private void align() throws IOException {
+            while (position % 8 != 0) {
+                ensureRemaining(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        private void ensureRemaining(int numOfBytes) throws IOException {
+            if (buffer.remaining() < numOfBytes) flush();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads the sections by mapping them into memory and copying them into arrays in bulk.
+     */
+    private static class SectionReader {
+        private final FileChannel channel;
+        private long position;
+
+        SectionReader(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        int[] getInts(int length) throws IOException {
+            int[] values = new int[length];
+            for (int offset = 0; offset < length; ) {
+                int chunk = Math.min(length - offset, CHUNK_SIZE / 4);
+                map(4L * chunk).asIntBuffer().get(values, offset, chunk);
+                offset += chunk;
+            }
+            align();
+            return values;
+        }
+
+        float[] getFloats(int length) throws IOException {
+            return getFloats(new float[length]);
+        }
+
+        float[] getFloats(float[] values) throws IOException {
+            for (int offset = 0; offset < values.length; ) {
+                int chunk = Math.min(values.length - offset, CHUNK_SIZE / 4);
+                map(4L * chunk).asFloatBuffer().get(values, offset, chunk);
+                offset += chunk;
+            }
+            align();
+            return values;
+        }
+
+        char[] getChars(int length) throws IOException {
+            char[] values = new char[length];
+            for (int offset = 0; offset < length; ) {
+                int chunk = Math.min(length - offset, CHUNK_SIZE / 2);
+                map(2L * chunk).asCharBuffer().get(values, offset, chunk);
+                offset += chunk;
+            }
+            align();
+            return values;
+        }
+
+        private ByteBuffer map(long numOfBytes) throws IOException {
+            if (position + numOfBytes > channel.size()) {
+                throw new IOException("Truncated snapshot");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, numOfBytes);
+            position += numOfBytes;
+            return buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void align() {
+            position = (position + 7) & ~7L;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.tuta;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index mapping every term id to the emails containing it and the TF-IDF weight the term has in each of them.
+ *
+ * <p>
+ * The postings of each term are kept in a pair of primitive arrays, {@code int} email indices and {@code float}
+ * weights, that grow as emails are added. Nothing is boxed, so a posting costs 8 bytes instead of the dozens of bytes
+ * of an entry in the {@code Map<String, Map<Integer, Float>>} built by {@link CorpusIndex#buildTFIDFDatabase()}. Words
+ * are mapped to term ids by the {@link TermDictionary} of the {@link CorpusIndex} the vectors come from.
+ * </p>
+ *
+ * <p>
+ * Emails are added in ascending order of their index, so the postings of every term are sorted by email index. The
+ * Euclidean norm of every added vector is kept as well, which is all {@link SimilarityUtils} needs besides the weights.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * InvertedIndex invertedIndex = corpusIndex.buildInvertedIndex();
+ * float weight = invertedIndex.getWeight(corpusIndex.getTermId("prize"), 0);
+ * float[] vector = SimilarityUtils.getVector(invertedIndex, 0);
+ * }</pre>
+ *
+ * <p>
+ * Note: This class is not thread-safe. Concurrent reads are safe while no email is added.
+ * </p>
+ */
+public class InvertedIndex {
+    private static final int[] NO_DOC_IDS = new int[0];
+    private static final float[] NO_WEIGHTS = new float[0];
+
+    /**
+     * Email indices of the postings of each term id, in ascending order.
+     */
+    private int[][] postingDocIds;
+
+    /**
+     * Weights of the postings of each term id, aligned with {@link #postingDocIds}.
+     */
+    private float[][] postingWeights;
+
+    /**
+     * Number of postings of each term id.
+     */
+    private int[] postingLengths;
+
+    /**
+     * Number of term ids postings are kept for, which is one more than the highest term id added.
+     */
+    private int vocabularySize;
+
+    /**
+     * Euclidean norm of the vector of each email.
+     */
+    private double[] norms;
+
+    /**
+     * Number of indexed emails.
+     */
+    private int numOfDocs;
+
+    /**
+     * Total number of postings.
+     */
+    private long numOfPostings;
+
+    /**
+     * Constructs an empty inverted index.
+     */
+    public InvertedIndex() {
+        this.postingDocIds = new int[1024][];
+        this.postingWeights = new float[1024][];
+        this.postingLengths = new int[1024];
+        this.norms = new double[64];
+    }
+
+    /**
+     * Constructs an empty inverted index with room for the given number of postings per term id, so adding the emails
+     * never grows the posting arrays.
+     *
+     * @param expectedPostingLengths The expected number of postings of each term id, e.g. its document frequency.
+     * @param expectedNumOfDocs      The expected number of emails.
+     */
+    public InvertedIndex(int[] expectedPostingLengths, int expectedNumOfDocs) {
+        final int numOfTerms = Math.max(1, expectedPostingLengths.length);
+        this.postingDocIds = new int[numOfTerms][];
+        this.postingWeights = new float[numOfTerms][];
+        this.postingLengths = new int[numOfTerms];
+        for (int termId = 0; termId < expectedPostingLengths.length; termId++) {
+            postingDocIds[termId] = new int[expectedPostingLengths[termId]];
+            postingWeights[termId] = new float[expectedPostingLengths[termId]];
+        }
+        this.norms = new double[Math.max(1, expectedNumOfDocs)];
+    }
+
+    /**
+     * Builds the inverted index of the given vectors.
+     *
+     * @param vectors The vector of each email, indexed by email index.
+     */
+    public InvertedIndex(SparseVector[] vectors) {
+        this();
+        for (SparseVector vector : vectors) {
+            add(vector);
+        }
+    }
+
+    /**
+     * Adds the vector of the next email to the index.
+     *
+     * @param vector The vector of the email.
+     * @return The index assigned to the email.
+     */
+    public int add(SparseVector vector) {
+        final int emailIndex = numOfDocs;
+        final int[] termIds = vector.getTermIds();
+        final float[] weights = vector.getWeights();
+        if (termIds.length > 0) ensureVocabularySize(termIds[termIds.length - 1] + 1);
+        if (emailIndex == norms.length) norms = Arrays.copyOf(norms, norms.length * 2);
+
+        for (int i = 0; i < termIds.length; i++) {
+            final int termId = termIds[i];
+            final int length = postingLengths[termId];
+            if (postingDocIds[termId] == null) {
+                postingDocIds[termId] = new int[4];
+                postingWeights[termId] = new float[4];
+            } else if (length == postingDocIds[termId].length) {
+                postingDocIds[termId] = Arrays.copyOf(postingDocIds[termId], Math.max(4, length * 2));
+                postingWeights[termId] = Arrays.copyOf(postingWeights[termId], postingDocIds[termId].length);
+            }
+            postingDocIds[termId][length] = emailIndex;
+            postingWeights[termId][length] = weights[i];
+            postingLengths[termId] = length + 1;
+        }
+        norms[emailIndex] = vector.getNorm();
+        numOfPostings += termIds.length;
+        return numOfDocs++;
+    }
+
+    /**
+     * Returns the number of indexed emails.
+     *
+     * @return The number of emails.
+     */
+    public int size() {
+        return numOfDocs;
+    }
+
+    /**
+     * Returns the number of term ids postings are kept for, which is one more than the highest term id added.
+     *
+     * @return The vocabulary size.
+     */
+    public int getVocabularySize() {
+        return vocabularySize;
+    }
+
+    /**
+     * Returns the total number of postings, which is the number of non-zero weights of all emails.
+     *
+     * @return The number of postings.
+     */
+    public long getNumOfPostings() {
+        return numOfPostings;
+    }
+
+    /**
+     * Returns the number of emails containing a term.
+     *
+     * @param termId The term id.
+     * @return The number of postings of the term, or 0 if it was never added.
+     */
+    public int getPostingLength(int termId) {
+        return termId >= 0 && termId < vocabularySize ? postingLengths[termId] : 0;
+    }
+
+    /**
+     * Returns the emails containing a term.
+     *
+     * @param termId The term id.
+     * @return A copy of the ascending email indices of the postings of the term.
+     */
+    public int[] getDocIds(int termId) {
+        return Arrays.copyOf(getPostingDocIds(termId), getPostingLength(termId));
+    }
+
+    /**
+     * Returns the weights of a term in the emails containing it.
+     *
+     * @param termId The term id.
+     * @return A copy of the weights of the postings of the term, aligned with {@link #getDocIds(int)}.
+     */
+    public float[] getWeights(int termId) {
+        return Arrays.copyOf(getPostingWeights(termId), getPostingLength(termId));
+    }
+
+    /**
+     * Returns the weight of a term within an email.
+     *
+     * @param termId     The term id.
+     * @param emailIndex The index of the email.
+     * @return The weight of the term, or 0 if the email does not contain it.
+     */
+    public float getWeight(int termId, int emailIndex) {
+        int position = Arrays.binarySearch(getPostingDocIds(termId), 0, getPostingLength(termId), emailIndex);
+        return position < 0 ? 0f : postingWeights[termId][position];
+    }
+
+    /**
+     * Returns the Euclidean norm of the vector of an email.
+     *
+     * @param emailIndex The index of the email.
+     * @return The Euclidean norm.
+     */
+    public double getNorm(int emailIndex) {
+        if (emailIndex < 0 || emailIndex >= numOfDocs) {
+            throw new IndexOutOfBoundsException("Invalid email index: " + emailIndex);
+        }
+        return norms[emailIndex];
+    }
+
+    /**
+     * Returns the backing array of the norms, of which the first {@link #size()} entries are valid.
+     */
+    double[] getNorms() {
+        return norms;
+    }
+
+    /**
+     * Returns the backing array of the email indices of a term, of which the first
+     * {@link #getPostingLength(int)} entries are valid.
+     */
+    int[] getPostingDocIds(int termId) {
+        return getPostingLength(termId) == 0 ? NO_DOC_IDS : postingDocIds[termId];
+    }
+
+    /**
+     * Returns the backing array of the weights of a term, of which the first {@link #getPostingLength(int)} entries
+     * are valid.
+     */
+    float[] getPostingWeights(int termId) {
+        return getPostingLength(termId) == 0 ? NO_WEIGHTS : postingWeights[termId];
+    }
+
+    private void ensureVocabularySize(int minVocabularySize) {
+        if (minVocabularySize > postingLengths.length) {
+            int capacity = Math.max(minVocabularySize, postingLengths.length * 2);
+            postingDocIds = Arrays.copyOf(postingDocIds, capacity);
+            postingWeights = Arrays.copyOf(postingWeights, capacity);
+            postingLengths = Arrays.copyOf(postingLengths, capacity);
+        }
+        vocabularySize = Math.max(vocabularySize, minVocabularySize);
+    }
+}
@@ -0,0 +1,115 @@
+package com.tuta;
+
+import java.util.Arrays;
+
+/**
+ * Records request latencies and reports their percentiles over a sliding window of the most recent requests.
+ *
+ * Usage Example:
+ * <pre>{@code
+ * LatencyRecorder latencies = new LatencyRecorder(10_000);
+ * long start = System.nanoTime();
+ * handle(request);
+ * latencies.record(System.nanoTime() - start);
+ * double p99Millis = latencies.getPercentile(99) / 1e6;
+ * }</pre>
+ *
+ * <p>
+ * Note: This class is thread-safe.
+ * </p>
+ */
+public class LatencyRecorder {
+    /**
+     * Most recent latencies in nanoseconds, used as a ring buffer.
+     */
+    private final long[] window;
+
+    /**
+     * Number of latencies recorded since construction.
+     */
+    private long count;
+
+    /**
+     * Highest latency recorded since construction.
+     */
+    private long max;
+
+    /**
+     * Constructs a recorder.
+     *
+     * @param windowSize The number of most recent latencies the percentiles are calculated over.
+     * @throws IllegalArgumentException If the window size is not positive.
+     */
+    public LatencyRecorder(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+        this.window = new long[windowSize];
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+        window[(int) (count++ % window.length)] = nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    /**
+     * Returns the number of latencies recorded since construction.
+     *
+     * @return The number of recorded latencies.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the highest latency recorded since construction.
+     *
+     * @return The highest latency in nanoseconds, 0 if none was recorded.
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns a percentile of the latencies in the window, using the nearest-rank method.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The latency in nanoseconds below or at which the given share of the latencies lie, 0 if none was
+     * recorded.
+     * @throws IllegalArgumentException If the percentile is out of range.
+     */
+    public long getPercentile(double percentile) {
+        return getPercentiles(percentile)[0];
+    }
+
+    /**
+     * Returns several percentiles of the latencies in the window, sorting the window only once.
+     *
+     * @param percentiles The percentiles, from 0 to 100.
+     * @return The latency in nanoseconds of each percentile, 0 if none was recorded.
+     * @throws IllegalArgumentException If a percentile is out of range.
+     */
+    public long[] getPercentiles(double... percentiles) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(window, (int) Math.min(count, window.length));
+        }
+        Arrays.sort(sorted);
+
+        long[] latencies = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            if (percentiles[i] < 0 || percentiles[i] > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100");
+            }
+            if (sorted.length == 0) continue;
+            int rank = (int) Math.ceil(percentiles[i] / 100 * sorted.length);
+            latencies[i] = sorted[Math.max(0, rank - 1)];
+        }
+        return latencies;
+    }
+}
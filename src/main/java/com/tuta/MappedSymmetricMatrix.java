@@ -0,0 +1,391 @@
+package com.tuta;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Disk-backed symmetric matrix for corpora whose similarities do not fit on the heap.
+ *
+ * <p>
+ * Like {@link SymmetricMatrix}, only the lower triangular part is stored and the diagonal is assumed to be 1, but the
+ * values live in a file mapped into memory with {@link FileChannel#map}. The pair {@code (row, col)} with
+ * {@code col < row} is stored at the {@code long} index {@code row * (row - 1) / 2 + col}, so the matrix is not limited
+ * by the size of a Java array. The file is mapped in segments of {@link #SEGMENT_SIZE} bytes and the operating system
+ * pages them in and out as needed.
+ * </p>
+ *
+ * <p>
+ * To reduce the file size, the values can be stored with a lower precision (see {@link Encoding}). A matrix for 200k
+ * emails takes about 80GB with {@link Encoding#FLOAT32}, 40GB with {@link Encoding#FLOAT16} and 20GB with
+ * {@link Encoding#BYTE}. Values that were never set read as {@link Float#NaN} with every encoding.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * try (MappedSymmetricMatrix matrix = new MappedSymmetricMatrix(file, numOfEmails, Encoding.FLOAT16)) {
+ *     new SimilarityEngine(true).computeAll(vectors, matrix);
+ *     float similarity = matrix.get(1, 0);
+ * }
+ * }</pre>
+ *
+ * <p>
+ * Note: Concurrent calls to {@link #set(int, int, float)} are safe as long as they write different pairs.
+ * </p>
+ */
+public class MappedSymmetricMatrix implements SimilarityMatrix, Closeable {
+    /**
+     * Number of bytes mapped per segment. A power of two, so no value crosses a segment boundary.
+     */
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    /**
+     * Storage format of the similarity values.
+     */
+    public enum Encoding {
+        /**
+         * 32-bit floats, storing the values exactly.
+         */
+        FLOAT32(4),
+
+        /**
+         * 16-bit half-precision floats, with a relative error of at most 2^-11.
+         */
+        FLOAT16(2),
+
+        /**
+         * Bytes holding values in {@code [-1, 1]} in 254 steps, with an absolute error of at most 1/254.
+         * Values outside of the range are clamped.
+         */
+        BYTE(1);
+
+        private final int bytesPerValue;
+
+        Encoding(int bytesPerValue) {
+            this.bytesPerValue = bytesPerValue;
+        }
+
+        public int getBytesPerValue() {
+            return bytesPerValue;
+        }
+    }
+
+    /**
+     * Half-float bits of {@link Float#NaN}.
+     */
+    private static final short FLOAT16_NAN = 0x7e00;
+
+    /**
+     * Byte code of {@link Float#NaN}.
+     */
+    private static final byte BYTE_NAN = (byte) 0xff;
+
+    /**
+     * Number of byte codes per unit of the value range {@code [-1, 1]}.
+     */
+    private static final float BYTE_SCALE = 127f;
+
+    /**
+     * The channel of the mapped file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The mapped segments of the file.
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * The size of the symmetric matrix (number of rows or columns).
+     */
+    private final int symMatrixSize;
+
+    /**
+     * The storage format of the values.
+     */
+    private final Encoding encoding;
+
+    /**
+     * Log2 of the bytes per value, to turn indices into byte offsets.
+     */
+    private final int valueShift;
+
+    /**
+     * Creates a matrix backed by the given file, which is created or truncated. All values are initialized to
+     * {@link Float#NaN}.
+     *
+     * @param file          The file backing the matrix.
+     * @param symMatrixSize The size (number of rows or columns) of the symmetric matrix.
+     * @param encoding      The storage format of the values.
+     * @throws IOException              If the file cannot be created or mapped.
+     * @throws IllegalArgumentException If the size is negative.
+     */
+    public MappedSymmetricMatrix(Path file, int symMatrixSize, Encoding encoding) throws IOException {
+        if (symMatrixSize < 0) {
+            throw new IllegalArgumentException("Invalid matrix size");
+        }
+        this.symMatrixSize = symMatrixSize;
+        this.encoding = encoding;
+        this.valueShift = Integer.numberOfTrailingZeros(encoding.getBytesPerValue());
+
+        final long numOfBytes = getNumOfValues() << valueShift;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            this.segments = new MappedByteBuffer[(int) ((numOfBytes + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = (long) i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                        Math.min(SEGMENT_SIZE, numOfBytes - position));
+                segments[i].order(ByteOrder.nativeOrder());
+                fillNaN(segments[i]);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the size of the symmetric matrix.
+     *
+     * @return The number of rows or columns of the matrix.
+     */
+    @Override
+    public int size() {
+        return symMatrixSize;
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Returns the number of values stored, which is the size of the lower triangular part.
+     *
+     * @return The number of pairs of the matrix.
+     */
+    public long getNumOfValues() {
+        return (long) symMatrixSize * (symMatrixSize - 1) / 2;
+    }
+
+    /**
+     * Sets the value at the specified row and column indices in the symmetric matrix.
+     *
+     * @param row   The row index.
+     * @param col   The column index.
+     * @param value The value to be set, rounded to the precision of the encoding.
+     * @throws IllegalArgumentException If the row or column indices are invalid. Indices must be non-negative
+     *                                  and less than the original matrix size.
+     */
+    @Override
+    public void set(int row, int col, float value) {
+        // Ensure row and col are valid indices
+        if (row < 0 || col < 0 || row >= symMatrixSize || col >= symMatrixSize) {
+            throw new IllegalArgumentException("Invalid indices");
+        }
+
+        set(mapIndex(row, col), value);
+    }
+
+    /**
+     * Gets the value at the specified row and column indices in the symmetric matrix.
+     *
+     * @param row The row index.
+     * @param col The column index.
+     * @return The value at the specified indices, rounded to the precision of the encoding.
+     * @throws IllegalArgumentException If the row or column indices are invalid. Indices must be non-negative
+     *                                  and less than the original matrix size.
+     */
+    @Override
+    public float get(int row, int col) {
+        // Ensure row and col are valid indices
+        if (row < 0 || col < 0 || row >= symMatrixSize || col >= symMatrixSize) {
+            throw new IllegalArgumentException("Invalid indices");
+        }
+
+        if (row == col) return 1;
+
+        return get(mapIndex(row, col));
+    }
+
+    /**
+     * Sets the value at a one-dimensional index of the lower triangular part.
+     *
+     * @param index The one-dimensional index, as returned by {@link #mapIndex(int, int)}.
+     * @param value The value to be set.
+     */
+    void set(long index, float value) {
+        final long offset = index << valueShift;
+        final MappedByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)];
+        final int position = (int) (offset % SEGMENT_SIZE);
+        switch (encoding) {
+            case FLOAT32:
+                segment.putFloat(position, value);
+                break;
+            case FLOAT16:
+                segment.putShort(position, floatToHalf(value));
+                break;
+            default:
+                segment.put(position, floatToByte(value));
+        }
+    }
+
+    /**
+     * Gets the value at a one-dimensional index of the lower triangular part.
+     *
+     * @param index The one-dimensional index, as returned by {@link #mapIndex(int, int)}.
+     * @return The value at the index.
+     */
+    float get(long index) {
+        final long offset = index << valueShift;
+        final MappedByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)];
+        final int position = (int) (offset % SEGMENT_SIZE);
+        switch (encoding) {
+            case FLOAT32:
+                return segment.getFloat(position);
+            case FLOAT16:
+                return halfToFloat(segment.getShort(position));
+            default:
+                return byteToFloat(segment.get(position));
+        }
+    }
+
+    /**
+     * Helper method to map row and col indices to the one-dimensional index.
+     *
+     * @param row The row index.
+     * @param col The column index.
+     * @return The one-dimensional index corresponding to the row and column indices.
+     * @throws IllegalArgumentException If the indices are invalid for the lower triangular part.
+     */
+    static long mapIndex(int row, int col) {
+        if (col == row) {
+            throw new IllegalArgumentException("Invalid indices for the lower triangular part");
+        }
+
+        // Ensure col is less than row to handle the lower triangular part
+        if (col > row) {
+            int temp = col;
+            col = row;
+            row = temp;
+        }
+
+        return (long) row * (row - 1) / 2 + col;
+    }
+
+    /**
+     * Writes all modified values to the file.
+     */
+    public void flush() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Closes the file. The mapped segments are released by the garbage collector, the matrix must not be used anymore.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void fillNaN(MappedByteBuffer segment) {
+        final int limit = segment.limit();
+        switch (encoding) {
+            case FLOAT32:
+                for (int position = 0; position < limit; position += 4) segment.putFloat(position, Float.NaN);
+                break;
+            case FLOAT16:
+                for (int position = 0; position < limit; position += 2) segment.putShort(position, FLOAT16_NAN);
+                break;
+            default:
+                for (int position = 0; position < limit; position++) segment.put(position, BYTE_NAN);
+        }
+    }
+
+    /**
+     * Converts a float to the bits of the nearest half-precision float, rounding half to even.
+     *
+     * @param value The float value.
+     * @return The half-float bits.
+     */
+    static short floatToHalf(float value) {
+        final int bits = Float.floatToRawIntBits(value);
+        final short sign = (short) ((bits >>> 16) & 0x8000);
+        if (Float.isNaN(value)) return (short) (sign | FLOAT16_NAN);
+
+        final float abs = Math.abs(value);
+        // Values from the largest half-float plus half an ulp upwards overflow to infinity
+        if (abs >= 65520f) return (short) (sign | 0x7c00);
+        // Values up to half of the smallest subnormal half-float round to zero
+        if (abs <= 0x1p-25f) return sign;
+
+        int exponent = Math.getExponent(abs);
+        int shift = 13;
+        int significand = bits & 0x007fffff;
+        if (exponent < -14) {
+            // Subnormal half-float, the implicit leading bit becomes explicit
+            shift += -14 - exponent;
+            exponent = -15;
+            significand |= 0x00800000;
+        }
+        int half = significand >> shift;
+        final int lsb = significand & (1 << shift);
+        final int round = significand & (1 << (shift - 1));
+        final int sticky = significand & ((1 << (shift - 1)) - 1);
+        if (round != 0 && (lsb | sticky) != 0) half++;
+        // A carry out of the significand correctly increments the exponent
+        return (short) (sign | (((exponent + 15) << 10) + half));
+    }
+
+    /**
+     * Converts the bits of a half-precision float to a float.
+     *
+     * @param half The half-float bits.
+     * @return The float value.
+     */
+    static float halfToFloat(short half) {
+        final int sign = (half & 0x8000) << 16;
+        final int exponent = (half >>> 10) & 0x1f;
+        final int significand = half & 0x03ff;
+        if (exponent == 0) {
+            float value = significand * 0x1p-24f;
+            return sign == 0 ? value : -value;
+        }
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (significand << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (significand << 13));
+    }
+
+    /**
+     * Quantizes a value of the range {@code [-1, 1]} to a byte code from 0 to 254.
+     *
+     * @param value The value, clamped to the range.
+     * @return The byte code.
+     */
+    static byte floatToByte(float value) {
+        if (Float.isNaN(value)) return BYTE_NAN;
+        float clamped = Math.max(-1f, Math.min(1f, value));
+        return (byte) Math.round((clamped + 1f) * BYTE_SCALE);
+    }
+
+    /**
+     * Converts a byte code back to its value of the range {@code [-1, 1]}.
+     *
+     * @param code The byte code.
+     * @return The value.
+     */
+    static float byteToFloat(byte code) {
+        if (code == BYTE_NAN) return Float.NaN;
+        return (code & 0xff) / BYTE_SCALE - 1f;
+    }
+}
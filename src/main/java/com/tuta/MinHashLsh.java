@@ -0,0 +1,368 @@
+package com.tuta;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates candidate pairs of similar emails with MinHash signatures and banded locality-sensitive hashing (LSH).
+ *
+ * <p>
+ * Every email body is cleaned with the rules of {@link TextUtils#getCleanWords(String)} and turned into shingles of
+ * {@code shingleSize} consecutive words. Its signature holds, for each of {@code numOfBands * rowsPerBand} hash
+ * functions, the minimum hash over all its shingles. The signature is cut into bands of {@code rowsPerBand} values and
+ * two emails become a candidate pair as soon as one of their bands is identical. A pair with Jaccard similarity
+ * {@code s} is therefore found with probability {@code 1 - (1 - s^rowsPerBand)^numOfBands}.
+ * </p>
+ *
+ * <p>
+ * Only the candidate pairs need an exact cosine similarity, which avoids comparing all pairs of emails. Candidate pairs
+ * are encoded as {@code long} values by {@link #encodePair(int, int)}.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * MinHashLsh lsh = new MinHashLsh(32, 2, 1, 42);
+ * for (Email email : emails) lsh.add(email.getBody());
+ * long[] candidatePairs = lsh.getCandidatePairs();
+ * }</pre>
+ */
+public class MinHashLsh {
+    /**
+     * Largest number of candidate pairs, the largest length of an array.
+     */
+    private static final int MAX_NUM_OF_PAIRS = Integer.MAX_VALUE - 8;
+
+    /**
+     * Number of bands the signatures are split into.
+     */
+    private final int numOfBands;
+
+    /**
+     * Number of signature values per band.
+     */
+    private final int rowsPerBand;
+
+    /**
+     * Number of consecutive words forming a shingle.
+     */
+    private final int shingleSize;
+
+    /**
+     * Seeds of the hash functions, one per signature value.
+     */
+    private final long[] seeds;
+
+    /**
+     * Signatures of all documents, stored back to back.
+     */
+    private int[] signatures;
+
+    /**
+     * Number of documents the signatures are stored for.
+     */
+    private int numOfDocs;
+
+    /**
+     * Tokenizer producing the cleaned words of the bodies.
+     */
+    private final Tokenizer tokenizer = new Tokenizer();
+
+    /**
+     * Hashes of the cleaned words of the current body.
+     */
+    private long[] wordHashes = new long[256];
+
+    /**
+     * Number of cleaned words of the current body.
+     */
+    private int numOfWords;
+
+    /**
+     * Constructs an empty LSH index.
+     *
+     * @param numOfBands  The number of bands the signatures are split into.
+     * @param rowsPerBand The number of signature values per band.
+     * @param shingleSize The number of consecutive words forming a shingle.
+     * @param seed        The seed of the hash functions.
+     * @throws IllegalArgumentException If any of the sizes is not positive.
+     */
+    public MinHashLsh(int numOfBands, int rowsPerBand, int shingleSize, long seed) {
+        if (numOfBands < 1 || rowsPerBand < 1 || shingleSize < 1) {
+            throw new IllegalArgumentException("Invalid LSH configuration");
+        }
+        this.numOfBands = numOfBands;
+        this.rowsPerBand = rowsPerBand;
+        this.shingleSize = shingleSize;
+        this.seeds = new Random(seed).longs(numOfBands * rowsPerBand).toArray();
+        this.signatures = new int[64 * numOfBands * rowsPerBand];
+    }
+
+    public int getNumOfBands() {
+        return numOfBands;
+    }
+
+    public int getRowsPerBand() {
+        return rowsPerBand;
+    }
+
+    public int getShingleSize() {
+        return shingleSize;
+    }
+
+    /**
+     * Returns the number of documents added to the index.
+     *
+     * @return The number of documents.
+     */
+    public int size() {
+        return numOfDocs;
+    }
+
+    /**
+     * Calculates and stores the MinHash signature of a document.
+     *
+     * @param body The body of the document.
+     * @return The index assigned to the document, in order of addition.
+     */
+    public int add(CharSequence body) {
+        numOfWords = 0;
+        tokenizer.tokenize(body, this::addWordHash);
+
+        final int signatureLength = seeds.length;
+        final int offset = numOfDocs * signatureLength;
+        if (offset + signatureLength > signatures.length) {
+            signatures = Arrays.copyOf(signatures, signatures.length * 2);
+        }
+        Arrays.fill(signatures, offset, offset + signatureLength, Integer.MAX_VALUE);
+        int numOfShingles = Math.max(1, numOfWords - shingleSize + 1);
+        for (int shingle = 0; shingle < numOfShingles; shingle++) {
+            long shingleHash = 0;
+            for (int word = shingle; word < Math.min(numOfWords, shingle + shingleSize); word++) {
+                shingleHash = mix(shingleHash * 31 + wordHashes[word]);
+            }
+            for (int i = 0; i < signatureLength; i++) {
+                int value = (int) (mix(shingleHash ^ seeds[i]) >>> 33);
+                if (value < signatures[offset + i]) signatures[offset + i] = value;
+            }
+        }
+        return numOfDocs++;
+    }
+
+    /**
+     * Returns the candidate pairs, which are the pairs of documents sharing at least one band.
+     *
+     * @return The distinct candidate pairs encoded by {@link #encodePair(int, int)}, in ascending order.
+     * @throws IllegalStateException If there are more candidate pairs than an array can hold.
+     */
+    public long[] getCandidatePairs() {
+        return getCandidatePairs(null);
+    }
+
+    /**
+     * Returns the candidate pairs among some of the documents, such as the first document of every group of identical
+     * bodies, which would otherwise fall into the same bucket of every band.
+     *
+     * <p>
+     * The pairs of every band are distinct, since a document falls into a single bucket per band, and are merged into
+     * the distinct pairs of the previous bands right away. A pair found by several bands is therefore stored once,
+     * whatever the number of bands.
+     * </p>
+     *
+     * @param docIds The documents to pair, or null to pair all documents. A pair is encoded with the positions of its
+     *               documents in this array, so it matches the vectors of these documents only.
+     * @return The distinct candidate pairs encoded by {@link #encodePair(int, int)}, in ascending order.
+     * @throws IllegalStateException If there are more candidate pairs than an array can hold.
+     */
+    public long[] getCandidatePairs(int[] docIds) {
+        final int numOfKeys = docIds == null ? numOfDocs : docIds.length;
+        long[] pairs = new long[16];
+        int numOfPairs = 0;
+        long[] bandPairs = new long[Math.max(16, numOfKeys)];
+        long[] mergedPairs = new long[16];
+        long[] bucketKeys = new long[numOfKeys];
+        final int signatureLength = seeds.length;
+
+        for (int band = 0; band < numOfBands; band++) {
+            for (int key = 0; key < numOfKeys; key++) {
+                long bandHash = band;
+                int offset = (docIds == null ? key : docIds[key]) * signatureLength + band * rowsPerBand;
+                for (int row = 0; row < rowsPerBand; row++) {
+                    bandHash = mix(bandHash * 31 + signatures[offset + row]);
+                }
+                bucketKeys[key] = (bandHash & 0xFFFFFFFF00000000L) | key;
+            }
+            Arrays.sort(bucketKeys);
+
+            int numOfBandPairs = 0;
+            int bucketStart = 0;
+            for (int i = 1; i <= numOfKeys; i++) {
+                if (i < numOfKeys && (bucketKeys[i] >>> 32) == (bucketKeys[bucketStart] >>> 32)) continue;
+                final long bucketSize = i - bucketStart;
+                bandPairs = ensureCapacity(bandPairs, numOfBandPairs + bucketSize * (bucketSize - 1) / 2);
+                for (int a = bucketStart; a < i; a++) {
+                    for (int b = a + 1; b < i; b++) {
+                        bandPairs[numOfBandPairs++] = encodePair((int) bucketKeys[a], (int) bucketKeys[b]);
+                    }
+                }
+                bucketStart = i;
+            }
+            if (numOfBandPairs == 0) continue;
+            Arrays.sort(bandPairs, 0, numOfBandPairs);
+
+            // Merge the pairs of the band into the distinct pairs found so far
+            mergedPairs = ensureCapacity(mergedPairs, (long) numOfPairs + numOfBandPairs);
+            int numOfMergedPairs = 0;
+            int p = 0;
+            int q = 0;
+            while (p < numOfPairs || q < numOfBandPairs) {
+                long pair;
+                if (q == numOfBandPairs || (p < numOfPairs && pairs[p] < bandPairs[q])) {
+                    pair = pairs[p++];
+                } else if (p == numOfPairs || bandPairs[q] < pairs[p]) {
+                    pair = bandPairs[q++];
+                } else {
+                    pair = pairs[p++];
+                    q++;
+                }
+                mergedPairs[numOfMergedPairs++] = pair;
+            }
+            long[] swap = pairs;
+            pairs = mergedPairs;
+            mergedPairs = swap;
+            numOfPairs = numOfMergedPairs;
+        }
+        return Arrays.copyOf(pairs, numOfPairs);
+    }
+
+    /**
+     * Measures which share of the pairs above the similarity threshold in the exact matrix is found by the candidates.
+     *
+     * @param exactSimilarity     The matrix holding the exact similarity of all pairs.
+     * @param candidatePairs      The candidate pairs, encoded by {@link #encodePair(int, int)} and in ascending order.
+     * @param similarityThreshold The similarity threshold.
+     * @return The recall report.
+     */
+    public static RecallReport measureRecall(SimilarityMatrix exactSimilarity, long[] candidatePairs,
+            float similarityThreshold) {
+        int numOfSimilarPairs = 0;
+        int numOfFoundPairs = 0;
+        for (int row = 1; row < exactSimilarity.size(); row++) {
+            for (int col = 0; col < row; col++) {
+                if (exactSimilarity.get(row, col) > similarityThreshold) {
+                    numOfSimilarPairs++;
+                    if (Arrays.binarySearch(candidatePairs, encodePair(row, col)) >= 0) numOfFoundPairs++;
+                }
+            }
+        }
+        long numOfPairs = (long) exactSimilarity.size() * (exactSimilarity.size() - 1) / 2;
+        return new RecallReport(numOfSimilarPairs, numOfFoundPairs, candidatePairs.length, numOfPairs);
+    }
+
+    /**
+     * Encodes a pair of document indices into a single value, with the larger index in the upper 32 bits.
+     *
+     * @param row The index of one document.
+     * @param col The index of the other document.
+     * @return The encoded pair.
+     */
+    public static long encodePair(int row, int col) {
+        return row > col ? ((long) row << 32) | col : ((long) col << 32) | row;
+    }
+
+    /**
+     * Returns the larger document index of an encoded pair.
+     *
+     * @param pair The encoded pair.
+     * @return The row of the pair in the lower triangular part.
+     */
+    public static int pairRow(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    /**
+     * Returns the smaller document index of an encoded pair.
+     *
+     * @param pair The encoded pair.
+     * @return The column of the pair in the lower triangular part.
+     */
+    public static int pairCol(long pair) {
+        return (int) pair;
+    }
+
+    /**
+     * Grows an array of pairs to hold at least the given number of pairs, doubling its length where possible.
+     */
+    private static long[] ensureCapacity(long[] pairs, long minCapacity) {
+        if (minCapacity <= pairs.length) return pairs;
+        if (minCapacity > MAX_NUM_OF_PAIRS) {
+            throw new IllegalStateException("Too many candidate pairs: " + minCapacity);
+        }
+        return Arrays.copyOf(pairs, (int) Math.max(minCapacity, Math.min(2L * pairs.length, MAX_NUM_OF_PAIRS)));
+    }
+
+    private void addWordHash(char[] word, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ word[i]) * 0x100000001b3L;
+        }
+        if (numOfWords == wordHashes.length) wordHashes = Arrays.copyOf(wordHashes, numOfWords * 2);
+        wordHashes[numOfWords++] = hash;
+    }
+
+    /**
+     * Finalizer of SplitMix64, turning a value into a well distributed 64-bit hash.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Recall of the candidate pairs measured against the exact similarity of all pairs.
+     */
+    public static class RecallReport {
+        private final int numOfSimilarPairs;
+        private final int numOfFoundPairs;
+        private final int numOfCandidatePairs;
+        private final long numOfPairs;
+
+        RecallReport(int numOfSimilarPairs, int numOfFoundPairs, int numOfCandidatePairs, long numOfPairs) {
+            this.numOfSimilarPairs = numOfSimilarPairs;
+            this.numOfFoundPairs = numOfFoundPairs;
+            this.numOfCandidatePairs = numOfCandidatePairs;
+            this.numOfPairs = numOfPairs;
+        }
+
+        /**
+         * Returns the number of pairs above the similarity threshold in the exact mode.
+         */
+        public int getNumOfSimilarPairs() {
+            return numOfSimilarPairs;
+        }
+
+        /**
+         * Returns the number of pairs above the similarity threshold that are candidate pairs.
+         */
+        public int getNumOfFoundPairs() {
+            return numOfFoundPairs;
+        }
+
+        public int getNumOfCandidatePairs() {
+            return numOfCandidatePairs;
+        }
+
+        /**
+         * Returns the share of pairs above the similarity threshold found by the candidates, 1 if there are none.
+         */
+        public double getRecall() {
+            return numOfSimilarPairs == 0 ? 1 : (double) numOfFoundPairs / numOfSimilarPairs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Recall: %.4f (%d of %d similar pairs), candidate pairs: %d of %d",
+                    getRecall(), numOfFoundPairs, numOfSimilarPairs, numOfCandidatePairs, numOfPairs);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.tuta;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Answers top-k nearest-neighbour queries, finding the emails most similar to an indexed email or to a new one.
+ *
+ * <p>
+ * A query walks the postings of the terms of the queried vector in the {@link InvertedIndex} and sums the products of
+ * the weights into one accumulator per email, so only the emails sharing a term with the query are ever visited,
+ * without scanning a matrix. Each of them is offered to a {@link TopKHeap} with its cosine similarity, which is exactly
+ * the one of {@link SimilarityUtils#calcCosineSimilarity(SparseVector, SparseVector)}, and the heap keeps the
+ * {@code k} most similar ones. The accumulators are kept per thread and reset by tracking the visited emails, so a
+ * query only costs the length of the walked postings, not the size of the index.
+ * </p>
+ *
+ * <p>
+ * {@link #queryAll(int)} answers the query of every indexed email with the tiles of a {@link SimilarityEngine}.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * NeighborIndex neighborIndex = new NeighborIndex(corpusIndex, new SimilarityEngine(true));
+ * Neighbors neighbors = neighborIndex.query(0, 10);
+ * Neighbors ofNewEmail = neighborIndex.query(new Email("john.doe@example.com", "You won a prize!"), 10);
+ * }</pre>
+ *
+ * <p>
+ * Note: The vectors are built on construction, emails added to the corpus index afterwards are not found. Concurrent
+ * queries are safe as long as the corpus index is not modified.
+ * </p>
+ */
+public class NeighborIndex {
+    private final CorpusIndex corpusIndex;
+    private final SparseVector[] vectors;
+    private final InvertedIndex invertedIndex;
+    private final SimilarityEngine similarityEngine;
+
+    /**
+     * Largest normalized weight of each term, see {@link #getMaxNormalizedWeights(InvertedIndex)}.
+     */
+    private final double[] maxWeights;
+
+    /**
+     * Accumulators of the queries of each thread.
+     */
+    private final ThreadLocal<Scorer> scorers;
+
+    /**
+     * Builds the vectors and the inverted index of all emails of a corpus.
+     *
+     * @param corpusIndex      The index of the emails.
+     * @param similarityEngine The engine answering the queries of all emails.
+     */
+    public NeighborIndex(CorpusIndex corpusIndex, SimilarityEngine similarityEngine) {
+        this.corpusIndex = corpusIndex;
+        this.vectors = corpusIndex.getVectors();
+        this.invertedIndex = new InvertedIndex(vectors);
+        this.similarityEngine = similarityEngine;
+        this.maxWeights = getMaxNormalizedWeights(invertedIndex);
+        this.scorers = ThreadLocal.withInitial(() -> new Scorer(vectors, invertedIndex, maxWeights));
+    }
+
+    /**
+     * Returns the number of indexed emails.
+     *
+     * @return The number of emails.
+     */
+    public int size() {
+        return vectors.length;
+    }
+
+    /**
+     * Finds the emails most similar to an indexed email, not counting the email itself.
+     *
+     * @param emailIndex The index of the email.
+     * @param k          The number of neighbors.
+     * @return Up to {@code k} emails sharing a term with the email, ranked from the most similar one.
+     * @throws IllegalArgumentException If the email index is invalid or {@code k} is not positive.
+     */
+    public Neighbors query(int emailIndex, int k) {
+        if (emailIndex < 0 || emailIndex >= vectors.length) {
+            throw new IllegalArgumentException("Invalid email index: " + emailIndex);
+        }
+        return scorers.get().score(vectors[emailIndex], emailIndex, new TopKHeap(k));
+    }
+
+    /**
+     * Finds the indexed emails most similar to a new email, without adding it. Its vector is the one
+     * {@link CorpusIndex#getVector(CharSequence)} gives it.
+     *
+     * @param email The new email.
+     * @param k     The number of neighbors.
+     * @return Up to {@code k} emails sharing a term with the email, ranked from the most similar one.
+     * @throws IllegalArgumentException If {@code k} is not positive.
+     */
+    public Neighbors query(Email email, int k) {
+        TopKHeap heap = new TopKHeap(k);
+        return scorers.get().score(corpusIndex.getVector(email.getBody()), -1, heap);
+    }
+
+    /**
+     * Finds the emails most similar to every indexed email, in parallel if the engine is.
+     *
+     * @param k The number of neighbors.
+     * @return The neighbors of each email, indexed by email index.
+     * @throws IllegalArgumentException If {@code k} is not positive.
+     */
+    public Neighbors[] queryAll(int k) {
+        return similarityEngine.computeNeighbors(vectors, invertedIndex, k);
+    }
+
+    /**
+     * Returns the largest weight of every term relative to the norm of its email, bounding what the term can add to
+     * the similarity of any email with a query.
+     *
+     * @param invertedIndex The inverted index of all emails.
+     * @return The largest normalized weight of each term id.
+     */
+    static double[] getMaxNormalizedWeights(InvertedIndex invertedIndex) {
+        final double[] norms = invertedIndex.getNorms();
+        double[] maxWeights = new double[invertedIndex.getVocabularySize()];
+        for (int termId = 0; termId < maxWeights.length; termId++) {
+            final int length = invertedIndex.getPostingLength(termId);
+            final int[] docIds = invertedIndex.getPostingDocIds(termId);
+            final float[] docWeights = invertedIndex.getPostingWeights(termId);
+            double maxWeight = 0;
+            for (int p = 0; p < length; p++) {
+                if (norms[docIds[p]] > 0) maxWeight = Math.max(maxWeight, Math.abs(docWeights[p]) / norms[docIds[p]]);
+            }
+            maxWeights[termId] = maxWeight;
+        }
+        return maxWeights;
+    }
+
+    /**
+     * Accumulators of the dot products of a query with all emails, reused by the queries of one thread.
+     *
+     * <p>
+     * The terms contained in more than {@code 1 / COMMON_TERM_SHARE} of the emails have the longest postings but add
+     * the least to the similarities. They are first left out: the other terms give the partial dot product of every
+     * email sharing one of them, and the {@code k} emails with the highest partial similarity are scored exactly. Their
+     * lowest similarity is a lower bound of the similarity of the k-th neighbor. An email can only exceed it if its
+     * partial similarity plus the largest normalized weights of the common terms, times their query weights, does, so
+     * only those emails are scored exactly too. Emails sharing only common terms with the query have just the latter
+     * bound, and if it does not stay below the lower bound, the postings of all terms are walked instead. The
+     * neighbors are therefore always exactly those of the full walk.
+     * </p>
+     */
+    static class Scorer {
+        /**
+         * Share of the emails above which a term is common, as its reciprocal.
+         */
+        private static final int COMMON_TERM_SHARE = 64;
+
+        /**
+         * Share of the emails, as its reciprocal, above which the postings of a query are summed block by block
+         * without listing the touched emails, which are found by scanning the blocks instead.
+         */
+        private static final int DENSE_SCAN_SHARE = 4;
+
+        /**
+         * Number of emails whose accumulators are summed together, keeping them within the L2 cache.
+         */
+        private static final int BLOCK_SIZE = 8192;
+
+        /**
+         * Relative margin of the bounds covering the rounding of the exact similarities to float.
+         */
+        private static final double BOUND_MARGIN = 1e-6;
+
+        private final SparseVector[] vectors;
+        private final InvertedIndex invertedIndex;
+
+        /**
+         * Largest normalized weight of each term, see {@link #getMaxNormalizedWeights(InvertedIndex)}.
+         */
+        private final double[] maxWeights;
+
+        private final double[] accumulators;
+
+        /**
+         * Emails with a non-zero accumulator, in order of their first product.
+         */
+        private final int[] touched;
+
+        /**
+         * Whether each email is in {@link #touched}.
+         */
+        private final boolean[] isTouched;
+
+        /**
+         * Constructs the accumulators of as many emails as there are vectors. The largest normalized weights are only
+         * needed by {@link #score(SparseVector, int, TopKHeap)} and may be null if only similar emails are counted.
+         */
+        Scorer(SparseVector[] vectors, InvertedIndex invertedIndex, double[] maxWeights) {
+            this.vectors = vectors;
+            this.invertedIndex = invertedIndex;
+            this.maxWeights = maxWeights;
+            accumulators = new double[vectors.length];
+            touched = new int[vectors.length];
+            isTouched = new boolean[vectors.length];
+        }
+
+        /**
+         * Scores a vector against all emails sharing a term with it, offering all but the excluded email to the heap,
+         * and resets the accumulators.
+         */
+        Neighbors score(SparseVector vector, int excluded, TopKHeap heap) {
+            final int[] termIds = vector.getTermIds();
+            final float[] weights = vector.getWeights();
+            final double norm = vector.getNorm();
+            final int commonLength = vectors.length / COMMON_TERM_SHARE;
+            double commonBound = 0;
+            for (int i = 0; i < termIds.length; i++) {
+                if (invertedIndex.getPostingLength(termIds[i]) > commonLength) {
+                    commonBound += Math.abs(weights[i]) * maxWeights[termIds[i]];
+                }
+            }
+            if (commonBound == 0 || norm == 0 || !scorePruned(vector, excluded, heap, commonLength,
+                    commonBound / norm)) {
+                heap.clear();
+                scoreAll(vector, excluded, heap);
+            }
+            return heap.toNeighbors();
+        }
+
+        /**
+         * Offers every email sharing a term with the vector, walking the postings of all terms.
+         */
+        private void scoreAll(SparseVector vector, int excluded, TopKHeap heap) {
+            final double norm = vector.getNorm();
+            final double[] norms = invertedIndex.getNorms();
+            long numOfPostings = 0;
+            for (int termId : vector.getTermIds()) {
+                numOfPostings += invertedIndex.getPostingLength(termId);
+            }
+            if (numOfPostings > vectors.length / DENSE_SCAN_SHARE) {
+                scoreBlocked(vector, excluded, heap);
+                return;
+            }
+
+            final int numOfTouched = accumulate(vector, Integer.MAX_VALUE, Integer.MAX_VALUE);
+            for (int i = 0; i < numOfTouched; i++) {
+                final int doc = touched[i];
+                if (doc != excluded) {
+                    final double normProduct = norm * norms[doc];
+                    heap.offer(doc, normProduct == 0 ? 0f : (float) (accumulators[doc] / normProduct));
+                }
+                accumulators[doc] = 0;
+                isTouched[doc] = false;
+            }
+        }
+
+        /**
+         * Offers the emails that can be neighbors, walking only the postings of the terms that are not common.
+         *
+         * @return False if the emails sharing only common terms with the vector cannot be ruled out.
+         */
+        private boolean scorePruned(SparseVector vector, int excluded, TopKHeap heap, int commonLength,
+                double commonBound) {
+            final int numOfTouched = accumulate(vector, commonLength, Integer.MAX_VALUE);
+            final double norm = vector.getNorm();
+            final double[] norms = invertedIndex.getNorms();
+            try {
+                // Exact similarities of the emails with the highest partial similarity
+                TopKHeap partialHeap = new TopKHeap(heap.getCapacity());
+                for (int i = 0; i < numOfTouched; i++) {
+                    final int doc = touched[i];
+                    if (doc != excluded && norms[doc] > 0) {
+                        partialHeap.offer(doc, (float) (accumulators[doc] / (norm * norms[doc])));
+                    }
+                }
+                Neighbors candidates = partialHeap.toNeighbors();
+                if (candidates.size() < heap.getCapacity()) return false;
+                for (int rank = 0; rank < candidates.size(); rank++) {
+                    final int doc = candidates.getEmailIndex(rank);
+                    heap.offer(doc, SimilarityUtils.calcCosineSimilarity(vector, vectors[doc]));
+                    accumulators[doc] = Double.NaN;
+                }
+                final double lowerBound = heap.getLowestSimilarity();
+                if (commonBound * (1 + BOUND_MARGIN) >= lowerBound) return false;
+
+                for (int i = 0; i < numOfTouched; i++) {
+                    final int doc = touched[i];
+                    final double partial = accumulators[doc];
+                    if (doc == excluded || Double.isNaN(partial)) continue;
+                    final double bound = norms[doc] == 0 ? 0 : partial / (norm * norms[doc]) + commonBound;
+                    if (bound * (1 + BOUND_MARGIN) + BOUND_MARGIN >= heap.getLowestSimilarity()) {
+                        heap.offer(doc, SimilarityUtils.calcCosineSimilarity(vector, vectors[doc]));
+                    }
+                }
+                return true;
+            } finally {
+                for (int i = 0; i < numOfTouched; i++) {
+                    accumulators[touched[i]] = 0;
+                    isTouched[touched[i]] = false;
+                }
+            }
+        }
+
+        /**
+         * Offers every email sharing a term with the vector, summing the postings of all terms block by block of
+         * emails. The accumulators of a block stay in the cache while the postings of all terms are summed into them,
+         * in ascending term order, and the touched emails are found by scanning the block.
+         */
+        private void scoreBlocked(SparseVector vector, int excluded, TopKHeap heap) {
+            final int[] termIds = vector.getTermIds();
+            final float[] weights = vector.getWeights();
+            final double norm = vector.getNorm();
+            final double[] norms = invertedIndex.getNorms();
+            final int[] cursors = new int[termIds.length];
+            for (int blockStart = 0; blockStart < vectors.length; blockStart += BLOCK_SIZE) {
+                final int blockEnd = Math.min(blockStart + BLOCK_SIZE, vectors.length);
+                for (int i = 0; i < termIds.length; i++) {
+                    final int length = invertedIndex.getPostingLength(termIds[i]);
+                    final int[] docIds = invertedIndex.getPostingDocIds(termIds[i]);
+                    final float[] docWeights = invertedIndex.getPostingWeights(termIds[i]);
+                    final double weight = weights[i];
+                    int p = cursors[i];
+                    for (; p < length && docIds[p] < blockEnd; p++) {
+                        final int doc = docIds[p];
+                        isTouched[doc] = true;
+                        accumulators[doc] += weight * docWeights[p];
+                    }
+                    cursors[i] = p;
+                }
+                for (int doc = blockStart; doc < blockEnd; doc++) {
+                    if (!isTouched[doc]) continue;
+                    if (doc != excluded) {
+                        final double normProduct = norm * norms[doc];
+                        heap.offer(doc, normProduct == 0 ? 0f : (float) (accumulators[doc] / normProduct));
+                    }
+                    accumulators[doc] = 0;
+                    isTouched[doc] = false;
+                }
+            }
+        }
+
+        /**
+         * Counts the emails before the limit whose similarity with the vector is above the threshold, walking the
+         * postings of all terms, passes each of them to the consumer and resets the accumulators. The similarities are
+         * exactly those of {@link SimilarityUtils#calcCosineSimilarity(SparseVector, SparseVector)}, but the emails
+         * sharing no term with the vector are never visited, so the threshold must not be negative.
+         *
+         * @return The number of similar emails.
+         */
+        int countSimilar(SparseVector vector, int limit, float similarityThreshold,
+                IntConsumer similarEmailConsumer) {
+            final int numOfTouched = accumulate(vector, Integer.MAX_VALUE, limit);
+            final double norm = vector.getNorm();
+            final double[] norms = invertedIndex.getNorms();
+            int numOfSimilarEmails = 0;
+            for (int i = 0; i < numOfTouched; i++) {
+                final int doc = touched[i];
+                final double normProduct = norm * norms[doc];
+                if (normProduct != 0 && (float) (accumulators[doc] / normProduct) > similarityThreshold) {
+                    numOfSimilarEmails++;
+                    similarEmailConsumer.accept(doc);
+                }
+                accumulators[doc] = 0;
+                isTouched[doc] = false;
+            }
+            return numOfSimilarEmails;
+        }
+
+        /**
+         * Sums the products of the postings of the terms with at most the given number of postings into the
+         * accumulators, in ascending term order, skipping the emails from the limit on.
+         *
+         * @return The number of touched emails.
+         */
+        private int accumulate(SparseVector vector, int maxLength, int limit) {
+            final int[] termIds = vector.getTermIds();
+            final float[] weights = vector.getWeights();
+            int numOfTouched = 0;
+            for (int i = 0; i < termIds.length; i++) {
+                final int length = invertedIndex.getPostingLength(termIds[i]);
+                if (length > maxLength) continue;
+                final int[] docIds = invertedIndex.getPostingDocIds(termIds[i]);
+                final float[] docWeights = invertedIndex.getPostingWeights(termIds[i]);
+                final double weight = weights[i];
+                for (int p = 0; p < length && docIds[p] < limit; p++) {
+                    final int doc = docIds[p];
+                    if (!isTouched[doc]) {
+                        isTouched[doc] = true;
+                        touched[numOfTouched++] = doc;
+                    }
+                    accumulators[doc] += weight * docWeights[p];
+                }
+            }
+            return numOfTouched;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.tuta;
+
+/**
+ * Represents the emails most similar to a queried email, ranked from the most similar one.
+ */
+public class Neighbors {
+    private final int[] emailIndices;
+    private final float[] similarities;
+
+    /**
+     * Constructs the neighbors of an email.
+     *
+     * @param emailIndices The indices of the similar emails, ranked from the most similar one.
+     * @param similarities The similarity of each email.
+     * @throws IllegalArgumentException If the arrays have different lengths.
+     */
+    public Neighbors(int[] emailIndices, float[] similarities) {
+        if (emailIndices.length != similarities.length) {
+            throw new IllegalArgumentException("Email indices and similarities must have the same length");
+        }
+        this.emailIndices = emailIndices;
+        this.similarities = similarities;
+    }
+
+    /**
+     * Returns the number of neighbors, which is less than the requested number if fewer emails share a term with the
+     * queried email.
+     *
+     * @return The number of neighbors.
+     */
+    public int size() {
+        return emailIndices.length;
+    }
+
+    /**
+     * Returns the email of a rank.
+     *
+     * @param rank The rank, 0 for the most similar email.
+     * @return The index of the email.
+     */
+    public int getEmailIndex(int rank) {
+        return emailIndices[rank];
+    }
+
+    /**
+     * Returns the similarity of the email of a rank.
+     *
+     * @param rank The rank, 0 for the most similar email.
+     * @return The cosine similarity to the queried email.
+     */
+    public float getSimilarity(int rank) {
+        return similarities[rank];
+    }
+
+    /**
+     * Returns a string representation of the neighbors in the format: "[index] ([similarity]), ..."
+     *
+     * @return String representation of the neighbors.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int rank = 0; rank < emailIndices.length; rank++) {
+            if (rank > 0) builder.append(", ");
+            builder.append(emailIndices[rank]).append(" (").append(String.format("%.4f", similarities[rank]))
+                    .append(')');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,340 @@
+package com.tuta;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Long-lived spam index classifying new emails as they arrive, without rebuilding the whole corpus.
+ *
+ * <p>
+ * Every new email is added to a {@link CorpusIndex}, which updates the document frequencies, and its TF-IDF vector is
+ * compared only against the emails already indexed. The email is spam if more than {@code numOfSimilarEmailsAllowed}
+ * of them have a similarity above {@code similarityThreshold}, the same rule applied by {@link App}.
+ * </p>
+ *
+ * <p>
+ * The cached vectors are kept in an {@link InvertedIndex} as well, extended by every new email. A new email is scored
+ * by walking the postings of its terms and summing the products into one accumulator per email, so only the emails
+ * sharing a term with it are visited and the cost of a message is the length of those postings, not the size of the
+ * corpus. A negative threshold makes even the emails sharing no term similar, so they are then compared one by one.
+ * </p>
+ *
+ * <p>
+ * Recomputing the vectors of all indexed emails after every addition would defeat the purpose, so their IDF values are
+ * corrected on an epoch basis: the cached vectors are rebuilt once the corpus has grown by {@code epochGrowth} since
+ * the last epoch, or when {@link #refresh()} is called. In between, the vector of each new email uses the current
+ * document frequencies while the vectors it is compared against may use slightly outdated ones. With an epoch growth
+ * of 0 every email is classified exactly like the last email of a batch run over the same corpus, at the cost of
+ * rebuilding all vectors and the inverted index for every email, which only suits small corpora. The number of similar
+ * emails of every indexed email is kept up to date as new emails arrive, each pair being judged once when the later of
+ * both emails is classified. The counts of the emails of an existing corpus are computed once on construction.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * OnlineSpamIndex spamIndex = new OnlineSpamIndex(0.32f, 1, 0.1f);
+ * SpamVerdict verdict = spamIndex.classify(email);
+ * if (verdict.isSpam()) quarantine(email);
+ * }</pre>
+ *
+ * <p>
+ * Note: Adding an email with {@link #add(Email)} and {@link #refresh()} need exclusive access to the index. All other
+ * methods, including {@link #classify(int)} of the added emails, only read the index and update the similar-counts
+ * atomically, so they can run concurrently with each other while no email is added. {@link #classify(Email)} does
+ * both steps at once, see {@link SpamCheckServer} for a guarded use of each step.
+ * </p>
+ */
+public class OnlineSpamIndex {
+    /**
+     * Index holding the term data and document frequencies of all emails.
+     */
+    private final CorpusIndex corpusIndex;
+
+    /**
+     * If the similarity between two emails is higher than this value they are considered similar.
+     */
+    private final float similarityThreshold;
+
+    /**
+     * Number of similar emails an email may have before it is considered spam.
+     */
+    private final int numOfSimilarEmailsAllowed;
+
+    /**
+     * Relative growth of the corpus after which the cached vectors are rebuilt.
+     */
+    private final float epochGrowth;
+
+    /**
+     * Cached vector of each indexed email.
+     */
+    private SparseVector[] vectors;
+
+    /**
+     * Inverted index of the cached vectors.
+     */
+    private InvertedIndex invertedIndex;
+
+    /**
+     * Accumulators of the scoring of each thread, replaced along with the cached vectors and the inverted index.
+     */
+    private ThreadLocal<NeighborIndex.Scorer> scorers;
+
+    /**
+     * Number of similar emails of each indexed email, incremented by concurrent classifications.
+     */
+    private AtomicIntegerArray similarCounts;
+
+    /**
+     * Size of the corpus when the cached vectors were last rebuilt.
+     */
+    private int epochSize;
+
+    /**
+     * Number of times the cached vectors were built, starting with the construction of the index.
+     */
+    private int epoch;
+
+    /**
+     * Constructs an empty online spam index.
+     *
+     * @param similarityThreshold       If the similarity between two emails is higher than this value they are
+     *                                  considered similar.
+     * @param numOfSimilarEmailsAllowed Number of similar emails an email may have before it is considered spam.
+     * @param epochGrowth               Relative growth of the corpus after which the IDF values of all cached vectors
+     *                                  are corrected, e.g. 0.1 for every 10%. Use 0 to correct them on every email.
+     * @throws IllegalArgumentException If the epoch growth is negative.
+     */
+    public OnlineSpamIndex(float similarityThreshold, int numOfSimilarEmailsAllowed, float epochGrowth) {
+        this(new CorpusIndex(), similarityThreshold, numOfSimilarEmailsAllowed, epochGrowth);
+    }
+
+    /**
+     * Constructs an online spam index on top of an existing corpus. The similar-counts of the existing emails are
+     * computed once from their pairs above the similarity threshold, in parallel, so they are spam exactly if a batch
+     * run over the corpus flags them.
+     *
+     * @param corpusIndex               The existing corpus, which is extended by this index.
+     * @param similarityThreshold       If the similarity between two emails is higher than this value they are
+     *                                  considered similar.
+     * @param numOfSimilarEmailsAllowed Number of similar emails an email may have before it is considered spam.
+     * @param epochGrowth               Relative growth of the corpus after which the IDF values of all cached vectors
+     *                                  are corrected, e.g. 0.1 for every 10%. Use 0 to correct them on every email.
+     * @throws IllegalArgumentException If the epoch growth is negative.
+     */
+    public OnlineSpamIndex(CorpusIndex corpusIndex, float similarityThreshold, int numOfSimilarEmailsAllowed,
+            float epochGrowth) {
+        this(corpusIndex, null, similarityThreshold, numOfSimilarEmailsAllowed, epochGrowth);
+    }
+
+    /**
+     * Constructs an online spam index on top of an existing corpus whose similar pairs are known, such as the corpus
+     * and graph of an {@link IndexSnapshot}. The similar-counts of the existing emails are taken from the graph if it
+     * covers all of them with a threshold up to the similarity threshold, and computed like
+     * {@link #OnlineSpamIndex(CorpusIndex, float, int, float)} otherwise.
+     *
+     * @param corpusIndex               The existing corpus, which is extended by this index.
+     * @param similarityGraph           The similar pairs of the existing corpus, or null.
+     * @param similarityThreshold       If the similarity between two emails is higher than this value they are
+     *                                  considered similar.
+     * @param numOfSimilarEmailsAllowed Number of similar emails an email may have before it is considered spam.
+     * @param epochGrowth               Relative growth of the corpus after which the IDF values of all cached vectors
+     *                                  are corrected, e.g. 0.1 for every 10%. Use 0 to correct them on every email.
+     * @throws IllegalArgumentException If the epoch growth is negative.
+     */
+    public OnlineSpamIndex(CorpusIndex corpusIndex, SimilarityGraph similarityGraph, float similarityThreshold,
+            int numOfSimilarEmailsAllowed, float epochGrowth) {
+        if (epochGrowth < 0) {
+            throw new IllegalArgumentException("Epoch growth must not be negative");
+        }
+        this.corpusIndex = corpusIndex;
+        this.similarityThreshold = similarityThreshold;
+        this.numOfSimilarEmailsAllowed = numOfSimilarEmailsAllowed;
+        this.epochGrowth = epochGrowth;
+        this.similarCounts = new AtomicIntegerArray(0);
+        refresh();
+
+        final int numOfEmails = corpusIndex.size();
+        if (similarityGraph == null || similarityGraph.size() != numOfEmails
+                || similarityGraph.getSimilarityThreshold() > similarityThreshold) {
+            if (numOfEmails < 2) return;
+            SparseVector[] indexedVectors = Arrays.copyOf(vectors, numOfEmails);
+            SimilarityEngine similarityEngine = new SimilarityEngine(true);
+            similarityGraph = similarityThreshold < 0
+                    ? similarityEngine.computeGraph(indexedVectors, similarityThreshold)
+                    : similarityEngine.computeGraph(indexedVectors, invertedIndex, similarityThreshold);
+        }
+        // A graph with a lower threshold holds every pair above this one
+        final int[] offsets = similarityGraph.getOffsets();
+        final float[] similarities = similarityGraph.getSimilarities();
+        for (int i = 0; i < numOfEmails; i++) {
+            int similarEmailsCount = 0;
+            for (int p = offsets[i]; p < offsets[i + 1]; p++) {
+                if (similarities[p] > similarityThreshold) similarEmailsCount++;
+            }
+            similarCounts.set(i, similarEmailsCount);
+        }
+    }
+
+    /**
+     * Returns the number of indexed emails.
+     *
+     * @return The number of emails in the corpus.
+     */
+    public int size() {
+        return corpusIndex.size();
+    }
+
+    /**
+     * Returns the index of all emails added so far, which must only be read while no email is added.
+     *
+     * @return The corpus index.
+     */
+    public CorpusIndex getCorpusIndex() {
+        return corpusIndex;
+    }
+
+    /**
+     * Returns the current epoch, which is the number of times the cached vectors were built including the construction
+     * of the index.
+     *
+     * @return The current epoch.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the number of emails found similar to an indexed email so far.
+     *
+     * @param emailIndex The index of the email.
+     * @return The number of similar emails.
+     */
+    public int getSimilarCount(int emailIndex) {
+        return similarCounts.get(emailIndex);
+    }
+
+    /**
+     * Returns whether an indexed email is currently considered spam.
+     *
+     * @param emailIndex The index of the email.
+     * @return True if the email has more similar emails than allowed.
+     */
+    public boolean isSpam(int emailIndex) {
+        return similarCounts.get(emailIndex) > numOfSimilarEmailsAllowed;
+    }
+
+    /**
+     * Adds an email to the index and classifies it against all emails indexed before it.
+     *
+     * @param email The new email.
+     * @return The verdict of the new email.
+     */
+    public SpamVerdict classify(Email email) {
+        return classify(add(email));
+    }
+
+    /**
+     * Adds an email to the index without classifying it, starting a new epoch if the corpus has grown enough. The
+     * email must then be classified with {@link #classify(int)}, once.
+     *
+     * @param email The new email.
+     * @return The index of the new email.
+     */
+    public int add(Email email) {
+        final int emailIndex = corpusIndex.add(email);
+        if (corpusIndex.size() > epochSize * (1 + epochGrowth)) {
+            refresh();
+        } else {
+            if (emailIndex >= vectors.length) {
+                vectors = Arrays.copyOf(vectors, vectors.length * 2);
+                similarCounts = copyOf(similarCounts, vectors.length);
+                resetScorers();
+            }
+            vectors[emailIndex] = corpusIndex.getVector(emailIndex);
+            invertedIndex.add(vectors[emailIndex]);
+        }
+        return emailIndex;
+    }
+
+    /**
+     * Classifies an added email against all emails indexed before it, incrementing the similar-counts of the emails
+     * similar to it. Emails added later are judged against this one when they are classified themselves.
+     *
+     * @param emailIndex The index returned by {@link #add(Email)}.
+     * @return The verdict of the email.
+     * @throws IllegalArgumentException If the email index is invalid.
+     */
+    public SpamVerdict classify(int emailIndex) {
+        if (emailIndex < 0 || emailIndex >= corpusIndex.size()) {
+            throw new IllegalArgumentException("Invalid email index: " + emailIndex);
+        }
+        final AtomicIntegerArray counts = similarCounts;
+        final int similarEmailsCount = countSimilar(vectors[emailIndex], emailIndex, counts::incrementAndGet);
+        // Emails added meanwhile may already have counted this one
+        counts.addAndGet(emailIndex, similarEmailsCount);
+        return new SpamVerdict(emailIndex, similarEmailsCount, similarEmailsCount > numOfSimilarEmailsAllowed);
+    }
+
+    /**
+     * Scores an email against all indexed emails without adding it. The verdict is the one {@link #classify(Email)}
+     * would return if no new epoch started, but neither the index nor the similar-counts are modified, so this method
+     * can run concurrently with other calls to it as long as no email is added meanwhile.
+     *
+     * @param email The email to score.
+     * @return The verdict of the email, with an email index of -1.
+     */
+    public SpamVerdict score(Email email) {
+        final SparseVector vector = corpusIndex.getVector(email.getBody());
+        final int similarEmailsCount = countSimilar(vector, corpusIndex.size(), i -> { });
+        return new SpamVerdict(-1, similarEmailsCount, similarEmailsCount > numOfSimilarEmailsAllowed);
+    }
+
+    /**
+     * Starts a new epoch, rebuilding the cached vectors of all indexed emails with the current document frequencies.
+     */
+    public void refresh() {
+        SparseVector[] refreshedVectors = corpusIndex.getVectors();
+        vectors = Arrays.copyOf(refreshedVectors, Math.max(64, refreshedVectors.length * 2));
+        invertedIndex = new InvertedIndex(refreshedVectors);
+        similarCounts = copyOf(similarCounts, vectors.length);
+        resetScorers();
+        epochSize = refreshedVectors.length;
+        epoch++;
+    }
+
+    /**
+     * Counts the indexed emails before the limit that are similar to a vector, passing each of them to the consumer.
+     */
+    private int countSimilar(SparseVector vector, int limit, IntConsumer similarEmailConsumer) {
+        if (similarityThreshold >= 0) {
+            return scorers.get().countSimilar(vector, limit, similarityThreshold, similarEmailConsumer);
+        }
+        int similarEmailsCount = 0;
+        for (int i = 0; i < limit; i++) {
+            if (SimilarityUtils.calcCosineSimilarity(vector, vectors[i]) > similarityThreshold) {
+                similarEmailsCount++;
+                similarEmailConsumer.accept(i);
+            }
+        }
+        return similarEmailsCount;
+    }
+
+    private static AtomicIntegerArray copyOf(AtomicIntegerArray counts, int length) {
+        AtomicIntegerArray copy = new AtomicIntegerArray(length);
+        for (int i = 0; i < Math.min(length, counts.length()); i++) {
+            copy.set(i, counts.get(i));
+        }
+        return copy;
+    }
+
+    /**
+     * Discards the accumulators of all threads, which are sized for the current cached vectors.
+     */
+    private void resetScorers() {
+        final SparseVector[] scoredVectors = vectors;
+        final InvertedIndex scoredIndex = invertedIndex;
+        scorers = ThreadLocal.withInitial(() -> new NeighborIndex.Scorer(scoredVectors, scoredIndex, null));
+    }
+}
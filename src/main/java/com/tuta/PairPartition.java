@@ -0,0 +1,130 @@
+package com.tuta;
+
+/**
+ * Block of the lower triangular part of the similarity matrix, holding the pairs of a range of rows with a range of
+ * columns.
+ *
+ * <p>
+ * {@link #split(int, int)} cuts the emails into {@code numOfBlocks} ranges of equal length and pairs every range with
+ * itself and with every earlier range. The {@code numOfBlocks * (numOfBlocks + 1) / 2} partitions cover every pair of
+ * emails exactly once, so similar-counts computed per partition can simply be summed. Blocks on the diagonal hold only
+ * the pairs below it and are therefore about half as large as the others.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * for (PairPartition partition : PairPartition.split(vectors.length, 4)) {
+ *     SimilarityGraph graph = engine.computeGraph(vectors, invertedIndex, 0.32f, Integer.MAX_VALUE, partition);
+ * }
+ * }</pre>
+ */
+public class PairPartition {
+    private final int index;
+    private final int rowStart;
+    private final int rowEnd;
+    private final int colStart;
+    private final int colEnd;
+
+    /**
+     * Constructs a partition of the pairs {@code (row, col)} with {@code rowStart <= row < rowEnd},
+     * {@code colStart <= col < colEnd} and {@code col < row}.
+     *
+     * @param index    The index of the partition.
+     * @param rowStart The first row.
+     * @param rowEnd   The row after the last row.
+     * @param colStart The first column.
+     * @param colEnd   The column after the last column.
+     * @throws IllegalArgumentException If a range is negative or the columns start after the rows.
+     */
+    public PairPartition(int index, int rowStart, int rowEnd, int colStart, int colEnd) {
+        if (rowStart < 0 || rowEnd < rowStart || colStart < 0 || colEnd < colStart || colStart > rowStart) {
+            throw new IllegalArgumentException("Invalid partition");
+        }
+        this.index = index;
+        this.rowStart = rowStart;
+        this.rowEnd = rowEnd;
+        this.colStart = colStart;
+        this.colEnd = colEnd;
+    }
+
+    /**
+     * Splits all pairs of emails into block partitions, numbered row block by row block.
+     *
+     * @param numOfEmails The number of emails.
+     * @param numOfBlocks The number of ranges the emails are cut into.
+     * @return The {@code numOfBlocks * (numOfBlocks + 1) / 2} partitions.
+     * @throws IllegalArgumentException If the number of blocks is not positive.
+     */
+    public static PairPartition[] split(int numOfEmails, int numOfBlocks) {
+        if (numOfBlocks < 1) {
+            throw new IllegalArgumentException("Number of blocks must be positive");
+        }
+        PairPartition[] partitions = new PairPartition[numOfBlocks * (numOfBlocks + 1) / 2];
+        int index = 0;
+        for (int rowBlock = 0; rowBlock < numOfBlocks; rowBlock++) {
+            int rowStart = blockStart(numOfEmails, numOfBlocks, rowBlock);
+            int rowEnd = blockStart(numOfEmails, numOfBlocks, rowBlock + 1);
+            for (int colBlock = 0; colBlock <= rowBlock; colBlock++) {
+                partitions[index] = new PairPartition(index, rowStart, rowEnd,
+                        blockStart(numOfEmails, numOfBlocks, colBlock),
+                        blockStart(numOfEmails, numOfBlocks, colBlock + 1));
+                index++;
+            }
+        }
+        return partitions;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getRowStart() {
+        return rowStart;
+    }
+
+    public int getRowEnd() {
+        return rowEnd;
+    }
+
+    public int getColStart() {
+        return colStart;
+    }
+
+    public int getColEnd() {
+        return colEnd;
+    }
+
+    /**
+     * Returns whether a pair belongs to this partition.
+     *
+     * @param row The larger index of the pair.
+     * @param col The smaller index of the pair.
+     * @return True if the pair lies within the rows and columns of this partition.
+     */
+    public boolean contains(int row, int col) {
+        return row >= rowStart && row < rowEnd && col >= colStart && col < colEnd && col < row;
+    }
+
+    /**
+     * Returns the number of pairs of this partition.
+     *
+     * @return The number of pairs.
+     */
+    public long getNumOfPairs() {
+        long numOfPairs = 0;
+        for (int row = rowStart; row < rowEnd; row++) {
+            numOfPairs += Math.max(0, Math.min(row, colEnd) - colStart);
+        }
+        return numOfPairs;
+    }
+
+    @Override
+    public String toString() {
+        return "Partition " + index + " [rows " + rowStart + "-" + rowEnd + ", columns " + colStart + "-" + colEnd
+                + "]";
+    }
+
+    private static int blockStart(int numOfEmails, int numOfBlocks, int block) {
+        return (int) ((long) numOfEmails * block / numOfBlocks);
+    }
+}
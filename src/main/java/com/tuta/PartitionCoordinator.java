@@ -0,0 +1,186 @@
+package com.tuta;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Computes the similar-counts of all emails with several local worker processes, each scoring some partitions of the
+ * pairs.
+ *
+ * <p>
+ * The pairs are split into block partitions by {@link PairPartition#split(int, int)}. The partitions are assigned to
+ * the workers largest first, each to the worker with the fewest pairs so far, so the workers finish at about the same
+ * time although the blocks on the diagonal are half as large. Every worker is a separate JVM running
+ * {@link PartitionWorker} with the classpath of this JVM. It reads the corpus from a shared {@link IndexSnapshot} and
+ * writes the similar-counts of its partitions to a file in the work directory, next to its log. The coordinator waits
+ * for all workers and sums their counts, which are then exactly the similar-counts of a single-process run.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * new IndexSnapshot(corpusIndex, null, null).write(snapshotFile);
+ * PartitionCoordinator coordinator = new PartitionCoordinator(4, 8);
+ * int[] similarCounts = coordinator.computeSimilarCounts(snapshotFile, corpusIndex.size(), 0.32f,
+ *         Integer.MAX_VALUE, workDir);
+ * }</pre>
+ */
+public class PartitionCoordinator {
+    private final int numOfWorkers;
+    private final int numOfBlocks;
+
+    /**
+     * Number of threads each worker computes its partitions with.
+     */
+    private int threadsPerWorker = 1;
+
+    /**
+     * Constructs a coordinator.
+     *
+     * @param numOfWorkers The number of worker processes.
+     * @param numOfBlocks  The number of ranges the emails are cut into, giving
+     *                     {@code numOfBlocks * (numOfBlocks + 1) / 2} partitions.
+     * @throws IllegalArgumentException If the number of workers or blocks is not positive.
+     */
+    public PartitionCoordinator(int numOfWorkers, int numOfBlocks) {
+        if (numOfWorkers < 1) {
+            throw new IllegalArgumentException("Number of workers must be positive");
+        }
+        if (numOfBlocks < 1) {
+            throw new IllegalArgumentException("Number of blocks must be positive");
+        }
+        this.numOfWorkers = numOfWorkers;
+        this.numOfBlocks = numOfBlocks;
+    }
+
+    public int getNumOfWorkers() {
+        return numOfWorkers;
+    }
+
+    public int getNumOfBlocks() {
+        return numOfBlocks;
+    }
+
+    public int getThreadsPerWorker() {
+        return threadsPerWorker;
+    }
+
+    public void setThreadsPerWorker(int threadsPerWorker) {
+        if (threadsPerWorker < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.threadsPerWorker = threadsPerWorker;
+    }
+
+    /**
+     * Assigns the partitions to the workers, largest first to the worker with the fewest pairs.
+     *
+     * @param numOfEmails The number of emails.
+     * @return The indices of the partitions of each worker, in ascending order.
+     */
+    public int[][] assignPartitions(int numOfEmails) {
+        PairPartition[] partitions = PairPartition.split(numOfEmails, numOfBlocks);
+        PairPartition[] bySize = partitions.clone();
+        Arrays.sort(bySize, Comparator.comparingLong(PairPartition::getNumOfPairs).reversed()
+                .thenComparingInt(PairPartition::getIndex));
+
+        long[] numOfPairs = new long[numOfWorkers];
+        List<List<Integer>> assigned = new ArrayList<>(numOfWorkers);
+        for (int worker = 0; worker < numOfWorkers; worker++) {
+            assigned.add(new ArrayList<>());
+        }
+        for (PairPartition partition : bySize) {
+            int worker = 0;
+            for (int i = 1; i < numOfWorkers; i++) {
+                if (numOfPairs[i] < numOfPairs[worker]) worker = i;
+            }
+            assigned.get(worker).add(partition.getIndex());
+            numOfPairs[worker] += partition.getNumOfPairs();
+        }
+
+        int[][] assignment = new int[numOfWorkers][];
+        for (int worker = 0; worker < numOfWorkers; worker++) {
+            assignment[worker] = assigned.get(worker).stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+        return assignment;
+    }
+
+    /**
+     * Runs the workers over a snapshot and sums their similar-counts.
+     *
+     * @param snapshotFile        The snapshot of the corpus, readable by all workers.
+     * @param numOfEmails         The number of emails of the snapshot.
+     * @param similarityThreshold Pairs with a similarity higher than this value are similar.
+     * @param maxDocFrequency     The number of emails above which a term is skipped, or {@link Integer#MAX_VALUE} to
+     *                            skip none.
+     * @param workDir             The directory receiving the result file and log of every worker.
+     * @return The number of similar emails of each email.
+     * @throws IOException              If a worker cannot be started, fails or writes no valid result.
+     * @throws IllegalArgumentException If the similarity threshold is negative.
+     * @throws IllegalStateException    If the coordinator is interrupted while waiting for the workers.
+     */
+    public int[] computeSimilarCounts(Path snapshotFile, int numOfEmails, float similarityThreshold,
+            int maxDocFrequency, Path workDir) throws IOException {
+        if (similarityThreshold < 0) {
+            throw new IllegalArgumentException("Similarity threshold must not be negative");
+        }
+        final int[][] assignment = assignPartitions(numOfEmails);
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process[] workers = new Process[numOfWorkers];
+        try {
+            for (int worker = 0; worker < numOfWorkers; worker++) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(PartitionWorker.class.getName());
+                command.add(snapshotFile.toAbsolutePath().toString());
+                command.add(getResultFile(workDir, worker).toAbsolutePath().toString());
+                command.add(Float.toString(similarityThreshold));
+                command.add(Integer.toString(maxDocFrequency));
+                command.add(Integer.toString(numOfBlocks));
+                command.add(Integer.toString(threadsPerWorker));
+                for (int partition : assignment[worker]) {
+                    command.add(Integer.toString(partition));
+                }
+                workers[worker] = new ProcessBuilder(command)
+                        .redirectErrorStream(true)
+                        .redirectOutput(getLogFile(workDir, worker).toFile())
+                        .start();
+            }
+
+            for (int worker = 0; worker < numOfWorkers; worker++) {
+                int exitCode = workers[worker].waitFor();
+                if (exitCode != 0) {
+                    throw new IOException("Partition worker " + worker + " failed with exit code " + exitCode
+                            + ", see " + getLogFile(workDir, worker));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Partition workers interrupted", e);
+        } finally {
+            for (Process worker : workers) {
+                if (worker != null) worker.destroy();
+            }
+        }
+
+        int[] similarCounts = new int[numOfEmails];
+        for (int worker = 0; worker < numOfWorkers; worker++) {
+            PartitionWorker.addCounts(getResultFile(workDir, worker), similarCounts);
+        }
+        return similarCounts;
+    }
+
+    private static Path getResultFile(Path workDir, int worker) {
+        return workDir.resolve("counts-" + worker + ".bin");
+    }
+
+    private static Path getLogFile(Path workDir, int worker) {
+        return workDir.resolve("worker-" + worker + ".log");
+    }
+}
@@ -0,0 +1,166 @@
+package com.tuta;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Worker process computing the similar-counts of some partitions of the pairs, started by
+ * {@link PartitionCoordinator}.
+ *
+ * <p>
+ * The worker reads the corpus from a shared {@link IndexSnapshot}, derives the TF-IDF vectors and the inverted index
+ * exactly like the coordinator would, and computes the pairs of its partitions of {@link PairPartition#split(int, int)}
+ * above the similarity threshold. For every email it counts the similar emails found in these partitions and writes
+ * the counts to its result file. As every pair belongs to exactly one partition, the coordinator gets the full
+ * similar-counts by summing the results of all workers.
+ * </p>
+ *
+ * <p>
+ * The arguments are positional, as they are only written by the coordinator:
+ * {@code <snapshot> <result> <threshold> <maxDocFrequency> <numOfBlocks> <threads> <partition>...}. The result file
+ * holds the magic number {@code PWRC}, the number of emails and one count per email, all as big-endian integers. The
+ * exit code is 0 on success, 1 if the computation failed and 2 if the arguments are invalid.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * java -cp spam_checker.jar com.tuta.PartitionWorker index.snapshot counts-0.bin 0.32 2147483647 4 2 0 3 7
+ * }</pre>
+ */
+public class PartitionWorker {
+    /**
+     * Magic number identifying result files, "PWRC" in ASCII.
+     */
+    static final int MAGIC = 0x50575243;
+
+    public static void main(String[] args) {
+        try {
+            run(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        } catch (Exception e) {
+            System.err.println("Partition worker failed: " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Computes the partitions given by the arguments and writes their similar-counts.
+     *
+     * @param args The positional arguments, see the class documentation.
+     * @throws IOException              If the snapshot cannot be read or the result cannot be written.
+     * @throws IllegalArgumentException If the arguments are invalid.
+     */
+    static void run(String[] args) throws IOException {
+        if (args.length < 6) {
+            throw new IllegalArgumentException("Usage: PartitionWorker <snapshot> <result> <threshold> "
+                    + "<maxDocFrequency> <numOfBlocks> <threads> <partition>...");
+        }
+        final Path snapshotFile = Paths.get(args[0]);
+        final Path resultFile = Paths.get(args[1]);
+        final float similarityThreshold = parseFloat(args[2]);
+        final int maxDocFrequency = parseInt(args[3]);
+        final int numOfBlocks = parseInt(args[4]);
+        final int numOfThreads = parseInt(args[5]);
+
+        SparseVector[] vectors = IndexSnapshot.read(snapshotFile).getCorpusIndex().getVectors();
+        InvertedIndex invertedIndex = new InvertedIndex(vectors);
+        PairPartition[] partitions = PairPartition.split(vectors.length, numOfBlocks);
+        int[] similarCounts = new int[vectors.length];
+
+        ExecutorService executor = numOfThreads > 1 ? Executors.newFixedThreadPool(numOfThreads) : null;
+        try {
+            SimilarityEngine engine = executor == null ? new SimilarityEngine(false)
+                    : new SimilarityEngine(executor, numOfThreads * 4);
+            for (int i = 6; i < args.length; i++) {
+                final int partitionIndex = parseInt(args[i]);
+                if (partitionIndex < 0 || partitionIndex >= partitions.length) {
+                    throw new IllegalArgumentException("Invalid partition: " + args[i]);
+                }
+                PairPartition partition = partitions[partitionIndex];
+                SimilarityGraph graph = engine.computeGraph(vectors, invertedIndex, similarityThreshold,
+                        maxDocFrequency, partition);
+                addSimilarCounts(graph, partition, similarCounts);
+            }
+        } finally {
+            if (executor != null) executor.shutdown();
+        }
+        writeCounts(resultFile, similarCounts);
+    }
+
+    /**
+     * Writes the similar-counts of all emails to a result file.
+     *
+     * @param file          The result file.
+     * @param similarCounts The number of similar emails of each email.
+     * @throws IOException If the file cannot be written.
+     */
+    static void writeCounts(Path file, int[] similarCounts) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(similarCounts.length);
+            for (int count : similarCounts) {
+                out.writeInt(count);
+            }
+        }
+    }
+
+    /**
+     * Reads the similar-counts of a result file and adds them to the given counts.
+     *
+     * @param file          The result file.
+     * @param similarCounts The counts of all emails, incremented by the counts of the file.
+     * @throws IOException If the file cannot be read, is no result file or holds a different number of emails.
+     */
+    static void addCounts(Path file, int[] similarCounts) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a partition result: " + file);
+            }
+            if (in.readInt() != similarCounts.length) {
+                throw new IOException("Partition result does not match the number of emails: " + file);
+            }
+            for (int i = 0; i < similarCounts.length; i++) {
+                similarCounts[i] += in.readInt();
+            }
+        }
+    }
+
+    /**
+     * Adds the similar-counts of the emails of a partition, which are the only ones its graph has edges for.
+     */
+    private static void addSimilarCounts(SimilarityGraph graph, PairPartition partition, int[] similarCounts) {
+        for (int i = partition.getColStart(); i < partition.getColEnd(); i++) {
+            similarCounts[i] += graph.getSimilarCount(i);
+        }
+        // Rows that are also columns, as on the diagonal, are counted once
+        for (int i = Math.max(partition.getRowStart(), partition.getColEnd()); i < partition.getRowEnd(); i++) {
+            similarCounts[i] += graph.getSimilarCount(i);
+        }
+    }
+
+    private static float parseFloat(String value) {
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + value);
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + value);
+        }
+    }
+}
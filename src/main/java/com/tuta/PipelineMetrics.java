@@ -0,0 +1,404 @@
+package com.tuta;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Records where the time and memory of a spam check run go, stage by stage.
+ *
+ * <p>
+ * Every {@link Stage} of the pipeline accumulates its wall time, the number of items it processed and the bytes
+ * allocated meanwhile, as reported by {@link com.sun.management.ThreadMXBean}. Coarse stages are measured with
+ * {@link #start(Stage)} and {@link #stop(Stage, long)}, which sum the allocations of all live threads so that stages
+ * running on a thread pool are covered. Fine-grained spans, such as tokenizing a single email, are added with
+ * {@link #record(Stage, long, long, long)} and measured on the calling thread only. Time and allocations recorded while
+ * another stage is started are subtracted from that stage, so every stage reports its exclusive share and the stages
+ * add up to the whole run. The vocabulary size and the fill ratios of the TF-IDF and the similarity matrix are
+ * reported along with the stages.
+ * </p>
+ *
+ * <p>
+ * A disabled instance, {@link #DISABLED}, returns from every method after a single branch, so the instrumentation can
+ * stay in the hot paths. With JFR events enabled, every stage additionally commits a {@code com.tuta.PipelineStage}
+ * event to running flight recordings, see {@link PipelineStageEvent}.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * PipelineMetrics metrics = new PipelineMetrics(false);
+ * metrics.start(PipelineMetrics.Stage.TFIDF);
+ * SparseVector[] vectors = corpusIndex.getVectors();
+ * metrics.stop(PipelineMetrics.Stage.TFIDF, vectors.length);
+ * log.println(metrics.getReport());
+ * }</pre>
+ *
+ * <p>
+ * Note: This class is not thread-safe, stages are started and stopped by the thread driving the pipeline.
+ * </p>
+ */
+public class PipelineMetrics {
+    /**
+     * Stages of the classification pipeline.
+     */
+    public enum Stage {
+        /**
+         * Reading and parsing the JSON emails, counted in emails.
+         */
+        PARSE,
+
+        /**
+         * Cleaning, splitting and counting the words of the bodies, counted in words.
+         */
+        TOKENIZE,
+
+        /**
+         * Calculating the TF-IDF vectors, counted in emails.
+         */
+        TFIDF,
+
+        /**
+         * Calculating the cosine similarities, counted in pairs of emails.
+         */
+        SIMILARITY,
+
+        /**
+         * Tagging the emails as spam, counted in emails.
+         */
+        CLASSIFY
+    }
+
+    /**
+     * Metrics recording nothing, for runs without instrumentation.
+     */
+    public static final PipelineMetrics DISABLED = new PipelineMetrics();
+
+    private final boolean enabled;
+
+    /**
+     * Whether JFR events are committed, false if JFR is not available.
+     */
+    private final boolean jfrEvents;
+
+    /**
+     * Thread bean measuring allocations, or null if the JVM does not support it.
+     */
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    private final long[] wallNanos = new long[Stage.values().length];
+    private final long[] allocatedBytes = new long[Stage.values().length];
+    private final long[] numOfItems = new long[Stage.values().length];
+    private final int[] numOfRuns = new int[Stage.values().length];
+
+    /**
+     * Stage started and not yet stopped, or null.
+     */
+    private Stage openStage;
+    private long openStartNanos;
+    private long openStartBytes;
+
+    /**
+     * Time and allocations recorded for other stages while the open stage runs.
+     */
+    private long nestedNanos;
+    private long nestedBytes;
+
+    /**
+     * JFR event of the open stage, kept as an {@link Object} so that this class loads without JFR.
+     */
+    private Object openEvent;
+
+    private int vocabularySize = -1;
+    private long numOfPostings = -1;
+    private int numOfEmails = -1;
+    private long numOfSimilarPairs = -1;
+
+    private PipelineMetrics() {
+        this.enabled = false;
+        this.jfrEvents = false;
+        this.threadBean = null;
+    }
+
+    /**
+     * Constructs enabled metrics.
+     *
+     * @param jfrEvents Whether every stage also commits a JFR event. Ignored if the JVM has no JFR.
+     */
+    public PipelineMetrics(boolean jfrEvents) {
+        this.enabled = true;
+        this.jfrEvents = jfrEvents && isJfrAvailable();
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            this.threadBean = (com.sun.management.ThreadMXBean) bean;
+            this.threadBean.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.threadBean = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns whether the stages are committed as JFR events.
+     *
+     * @return True if JFR events were requested and JFR is available.
+     */
+    public boolean isJfrEvents() {
+        return jfrEvents;
+    }
+
+    /**
+     * Returns whether allocations are measured.
+     *
+     * @return True if the JVM reports the bytes allocated per thread.
+     */
+    public boolean isAllocationMeasured() {
+        return threadBean != null;
+    }
+
+    /**
+     * Starts measuring a stage.
+     *
+     * @param stage The stage.
+     * @throws IllegalStateException If another stage is still started.
+     */
+    public void start(Stage stage) {
+        if (!enabled) return;
+        if (openStage != null) {
+            throw new IllegalStateException("Stage " + openStage + " is still started");
+        }
+        openStage = stage;
+        nestedNanos = 0;
+        nestedBytes = 0;
+        if (jfrEvents) openEvent = PipelineStageEvent.start();
+        openStartBytes = getAllocatedBytes();
+        openStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Stops measuring the started stage, adding its exclusive time and allocations.
+     *
+     * @param stage      The stage, which must be the started one.
+     * @param numOfItems The number of items the stage processed.
+     * @throws IllegalStateException If the stage is not started.
+     */
+    public void stop(Stage stage, long numOfItems) {
+        if (!enabled) return;
+        final long nanos = System.nanoTime() - openStartNanos;
+        if (openStage != stage) {
+            throw new IllegalStateException("Stage " + stage + " is not started");
+        }
+        final long bytes = threadBean == null ? 0 : Math.max(0, getAllocatedBytes() - openStartBytes);
+        final long exclusiveNanos = Math.max(0, nanos - nestedNanos);
+        final long exclusiveBytes = Math.max(0, bytes - nestedBytes);
+        openStage = null;
+        add(stage, exclusiveNanos, exclusiveBytes, numOfItems);
+        if (jfrEvents) {
+            PipelineStageEvent.finish(openEvent, stage, exclusiveNanos, exclusiveBytes, numOfItems);
+            openEvent = null;
+        }
+    }
+
+    /**
+     * Adds a span measured by the caller, e.g. with {@link System#nanoTime()} and
+     * {@link #getThreadAllocatedBytes()} around a single email. The span is subtracted from the started stage, if any.
+     *
+     * @param stage          The stage of the span.
+     * @param nanos          The wall time of the span.
+     * @param allocatedBytes The bytes allocated during the span.
+     * @param numOfItems     The number of items processed during the span.
+     */
+    public void record(Stage stage, long nanos, long allocatedBytes, long numOfItems) {
+        if (!enabled) return;
+        add(stage, nanos, allocatedBytes, numOfItems);
+        if (openStage != null) {
+            nestedNanos += nanos;
+            nestedBytes += allocatedBytes;
+        }
+    }
+
+    /**
+     * Commits the JFR event of a stage recorded with {@link #record(Stage, long, long, long)}, covering all its spans.
+     * Does nothing if JFR events are disabled.
+     *
+     * @param stage The stage.
+     */
+    public void commitRecorded(Stage stage) {
+        if (!jfrEvents) return;
+        final int i = stage.ordinal();
+        PipelineStageEvent.finish(PipelineStageEvent.start(), stage, wallNanos[i], allocatedBytes[i], numOfItems[i]);
+    }
+
+    /**
+     * Returns the bytes allocated so far by the calling thread, to measure spans for
+     * {@link #record(Stage, long, long, long)}.
+     *
+     * @return The allocated bytes, or 0 if disabled or not supported.
+     */
+    public long getThreadAllocatedBytes() {
+        if (threadBean == null) return 0;
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public void setVocabularySize(int vocabularySize) {
+        this.vocabularySize = vocabularySize;
+    }
+
+    /**
+     * Sets the size of the TF-IDF matrix, from which its fill ratio is calculated.
+     *
+     * @param numOfEmails   The number of emails, which are the rows of the matrix.
+     * @param numOfPostings The number of non-zero entries of the matrix.
+     */
+    public void setTermMatrixSize(int numOfEmails, long numOfPostings) {
+        this.numOfEmails = numOfEmails;
+        this.numOfPostings = numOfPostings;
+    }
+
+    /**
+     * Sets the number of pairs of emails above the similarity threshold, from which the fill ratio of the similarity
+     * matrix is calculated.
+     *
+     * @param numOfSimilarPairs The number of similar pairs.
+     */
+    public void setNumOfSimilarPairs(long numOfSimilarPairs) {
+        this.numOfSimilarPairs = numOfSimilarPairs;
+    }
+
+    /**
+     * Returns the exclusive wall time of a stage.
+     *
+     * @param stage The stage.
+     * @return The wall time in nanoseconds, summed over all runs of the stage.
+     */
+    public long getWallNanos(Stage stage) {
+        return wallNanos[stage.ordinal()];
+    }
+
+    /**
+     * Returns the bytes allocated during a stage, excluding the other stages recorded meanwhile.
+     *
+     * @param stage The stage.
+     * @return The allocated bytes, 0 if allocations are not measured.
+     */
+    public long getAllocatedBytes(Stage stage) {
+        return allocatedBytes[stage.ordinal()];
+    }
+
+    public long getNumOfItems(Stage stage) {
+        return numOfItems[stage.ordinal()];
+    }
+
+    /**
+     * Returns the throughput of a stage.
+     *
+     * @param stage The stage.
+     * @return The items per second, 0 if the stage took no time.
+     */
+    public double getItemsPerSecond(Stage stage) {
+        final long nanos = wallNanos[stage.ordinal()];
+        return nanos == 0 ? 0 : numOfItems[stage.ordinal()] * 1e9 / nanos;
+    }
+
+    /**
+     * Returns whether a stage was measured at least once.
+     *
+     * @param stage The stage.
+     * @return True if the stage was stopped or recorded.
+     */
+    public boolean isRecorded(Stage stage) {
+        return numOfRuns[stage.ordinal()] > 0;
+    }
+
+    /**
+     * Returns the share of non-zero entries of the TF-IDF matrix.
+     *
+     * @return The fill ratio, or NaN if the size of the matrix is unknown or empty.
+     */
+    public double getTermMatrixFillRatio() {
+        if (numOfPostings < 0 || numOfEmails <= 0 || vocabularySize <= 0) return Double.NaN;
+        return (double) numOfPostings / ((double) numOfEmails * vocabularySize);
+    }
+
+    /**
+     * Returns the share of pairs above the similarity threshold, which are the entries of the similarity matrix that
+     * matter for the classification.
+     *
+     * @return The fill ratio, or NaN if the number of similar pairs is unknown or there are no pairs.
+     */
+    public double getSimilarityFillRatio() {
+        final long numOfPairs = numOfEmails < 2 ? 0 : (long) numOfEmails * (numOfEmails - 1) / 2;
+        if (numOfSimilarPairs < 0 || numOfPairs == 0) return Double.NaN;
+        return (double) numOfSimilarPairs / numOfPairs;
+    }
+
+    /**
+     * Returns the summary report of all measured stages.
+     *
+     * @return The report, one line per stage followed by the sizes and fill ratios.
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder("--> Pipeline metrics\n");
+        report.append(String.format(Locale.ROOT, "    %-10s %12s %14s %14s %14s%n",
+                "stage", "time ms", "items", "items/s", "allocated MB"));
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (Stage stage : Stage.values()) {
+            if (!isRecorded(stage)) continue;
+            final int i = stage.ordinal();
+            totalNanos += wallNanos[i];
+            totalBytes += allocatedBytes[i];
+            report.append(String.format(Locale.ROOT, "    %-10s %12.1f %14d %14.0f %14s%n",
+                    stage.name().toLowerCase(Locale.ROOT), wallNanos[i] / 1e6, numOfItems[i], getItemsPerSecond(stage),
+                    formatMegabytes(allocatedBytes[i])));
+        }
+        report.append(String.format(Locale.ROOT, "    %-10s %12.1f %14s %14s %14s%n",
+                "total", totalNanos / 1e6, "", "", formatMegabytes(totalBytes)));
+        report.append(String.format(Locale.ROOT,
+                "    vocabulary: %d terms, TF-IDF matrix fill ratio: %.6f, similarity fill ratio: %.6f",
+                vocabularySize, getTermMatrixFillRatio(), getSimilarityFillRatio()));
+        return report.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getReport();
+    }
+
+    private String formatMegabytes(long bytes) {
+        return threadBean == null ? "n/a" : String.format(Locale.ROOT, "%.1f", bytes / (1024.0 * 1024.0));
+    }
+
+    private void add(Stage stage, long nanos, long bytes, long items) {
+        final int i = stage.ordinal();
+        wallNanos[i] += nanos;
+        allocatedBytes[i] += bytes;
+        numOfItems[i] += items;
+        numOfRuns[i]++;
+    }
+
+    /**
+     * Returns the bytes allocated so far by all live threads, to measure spans running on several threads. Threads
+     * ending during a span take their allocations with them, which is why the difference is clamped to 0.
+     */
+    long getAllocatedBytes() {
+        if (threadBean == null) return 0;
+        long bytes = 0;
+        for (long allocated : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+            if (allocated > 0) bytes += allocated;
+        }
+        return bytes;
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
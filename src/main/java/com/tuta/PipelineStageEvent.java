@@ -0,0 +1,72 @@
+package com.tuta;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of a stage of the classification pipeline, committed by {@link PipelineMetrics} when JFR events are
+ * enabled.
+ *
+ * <p>
+ * The duration of the event spans the stage as started and stopped, while {@link #exclusiveTime} excludes the stages
+ * recorded meanwhile. Stages made of many small spans, such as tokenizing, are committed once with all spans summed
+ * and a duration close to 0. Only {@link PipelineMetrics} refers to this class, and only after checking that JFR is
+ * available, so the rest of the pipeline runs on JVMs without JFR.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * java -XX:StartFlightRecording=filename=run.jfr -jar spam_checker.jar --input emails.json --jfr
+ * jfr print --events com.tuta.PipelineStage run.jfr
+ * }</pre>
+ */
+@Name("com.tuta.PipelineStage")
+@Label("Pipeline Stage")
+@Category("Spam Checker")
+@Description("Stage of the spam classification pipeline")
+@StackTrace(false)
+class PipelineStageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Exclusive Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long exclusiveTime;
+
+    @Label("Allocated")
+    @DataAmount(DataAmount.BYTES)
+    long allocated;
+
+    @Label("Items")
+    long items;
+
+    /**
+     * Creates and begins an event at the start of a stage.
+     */
+    static Object start() {
+        PipelineStageEvent event = new PipelineStageEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits an event created by {@link #start()}.
+     */
+    static void finish(Object begunEvent, PipelineMetrics.Stage stage, long exclusiveNanos, long allocatedBytes,
+            long numOfItems) {
+        PipelineStageEvent event = (PipelineStageEvent) begunEvent;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.stage = stage.name();
+        event.exclusiveTime = exclusiveNanos;
+        event.allocated = allocatedBytes;
+        event.items = numOfItems;
+        event.commit();
+    }
+}
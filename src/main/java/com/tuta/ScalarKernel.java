@@ -0,0 +1,71 @@
+package com.tuta;
+
+/**
+ * Scalar {@link DenseKernel} running on any Java 8 runtime.
+ *
+ * <p>
+ * The loops multiply instead of calling {@link Math#pow(double, double)} and sum into independent double accumulators,
+ * so consecutive additions don't wait for each other and the JIT can keep several multiplications in flight.
+ * </p>
+ */
+public class ScalarKernel implements DenseKernel {
+
+    @Override
+    public double dot(float[] a, float[] b) {
+        double sum0 = 0;
+        double sum1 = 0;
+        double sum2 = 0;
+        double sum3 = 0;
+        final int length = a.length;
+        final int unrolledLength = length & ~3;
+        int i = 0;
+        for (; i < unrolledLength; i += 4) {
+            sum0 += a[i] * b[i];
+            sum1 += a[i + 1] * b[i + 1];
+            sum2 += a[i + 2] * b[i + 2];
+            sum3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += a[i] * b[i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    @Override
+    public float calcCosineSimilarity(float[] a, float[] b) {
+        double dotProduct0 = 0;
+        double dotProduct1 = 0;
+        double normA0 = 0;
+        double normA1 = 0;
+        double normB0 = 0;
+        double normB1 = 0;
+        final int length = a.length;
+        final int unrolledLength = length & ~1;
+        int i = 0;
+        for (; i < unrolledLength; i += 2) {
+            final float a0 = a[i];
+            final float a1 = a[i + 1];
+            final float b0 = b[i];
+            final float b1 = b[i + 1];
+            dotProduct0 += a0 * b0;
+            dotProduct1 += a1 * b1;
+            normA0 += a0 * a0;
+            normA1 += a1 * a1;
+            normB0 += b0 * b0;
+            normB1 += b1 * b1;
+        }
+        if (i < length) {
+            dotProduct0 += a[i] * b[i];
+            normA0 += a[i] * a[i];
+            normB0 += b[i] * b[i];
+        }
+        double euclideanDist = Math.sqrt(normA0 + normA1) * Math.sqrt(normB0 + normB1);
+        if (euclideanDist == 0.0) return 0.0f;
+        return (float) ((dotProduct0 + dotProduct1) / euclideanDist);
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,773 @@
+package com.tuta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Computes the cosine similarity of all pairs of emails into a {@link SimilarityMatrix}.
+ *
+ * <p>
+ * The lower triangular index space of the matrix, where the pair {@code (row, col)} with {@code col < row} lives at
+ * {@code row * (row - 1) / 2 + col}, is split into tiles holding the same number of pairs. The tiles are computed on an
+ * executor and every pair is written straight into {@link SymmetricMatrix#getData()}, or through
+ * {@link SimilarityMatrix#set(int, int, float)} for other matrices such as {@link MappedSymmetricMatrix}. Since each
+ * pair is calculated by the same kernel regardless of the tile it falls in, parallel and sequential runs give identical
+ * matrices.
+ * </p>
+ *
+ * <p>
+ * {@link #computeAll(SparseVector[], InvertedIndex, SimilarityMatrix)} computes the same matrix as a product of the
+ * document-term matrix with its transpose, in cache-sized blocks of rows and columns.
+ * </p>
+ *
+ * <p>
+ * When only the pairs above a similarity threshold matter, {@link #computeGraph(SparseVector[], float)} keeps just
+ * those in a {@link SimilarityGraph} instead of a matrix. As most pairs of emails share no term at all,
+ * {@link #computeGraph(SparseVector[], InvertedIndex, float, int)} goes further and only visits the pairs sharing a
+ * term, by walking the postings of the terms of each email. When only the spam flags matter,
+ * {@link #classify(SparseVector[], float, int)} stops comparing emails as soon as they are known to be spam, and
+ * {@link #computeNeighbors(SparseVector[], InvertedIndex, int)} keeps only the most similar emails of each email.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * SparseVector[] vectors = corpusIndex.getVectors();
+ * SymmetricMatrix emailsSimilarity = new SymmetricMatrix(vectors.length);
+ * new SimilarityEngine(true).computeAll(vectors, emailsSimilarity);
+ * }</pre>
+ */
+public class SimilarityEngine {
+    /**
+     * Number of tiles created per thread, so threads finishing early can pick up more work.
+     */
+    private static final int TILES_PER_THREAD = 4;
+
+    /**
+     * Number of rows whose products are accumulated together by the blocked matrix computation.
+     */
+    private static final int ROW_BLOCK_SIZE = 32;
+
+    /**
+     * Number of columns whose products are accumulated together by the blocked matrix computation, keeping the
+     * accumulators of a block within the L2 cache.
+     */
+    private static final int COL_BLOCK_SIZE = 1024;
+
+    /**
+     * The executor computing the tiles, or null to compute them on the calling thread.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Number of tiles the pairs are split into.
+     */
+    private final int numOfTiles;
+
+    /**
+     * Constructs a similarity engine running either on the common {@link ForkJoinPool} or on the calling thread.
+     *
+     * @param parallel If true, tiles are computed on all cores; if false, pairs are computed sequentially.
+     */
+    public SimilarityEngine(boolean parallel) {
+        this(parallel ? ForkJoinPool.commonPool() : null,
+                parallel ? ForkJoinPool.commonPool().getParallelism() * TILES_PER_THREAD : 1);
+    }
+
+    /**
+     * Constructs a similarity engine computing the given number of tiles on an executor.
+     * The executor is not shut down by the engine.
+     *
+     * @param executor   The executor computing the tiles, or null to compute them on the calling thread.
+     * @param numOfTiles The number of tiles the pairs are split into.
+     * @throws IllegalArgumentException If the number of tiles is not positive.
+     */
+    public SimilarityEngine(ExecutorService executor, int numOfTiles) {
+        if (numOfTiles < 1) {
+            throw new IllegalArgumentException("Number of tiles must be positive");
+        }
+        this.executor = executor;
+        this.numOfTiles = numOfTiles;
+    }
+
+    /**
+     * Returns whether the tiles are computed on an executor.
+     *
+     * @return True if the engine runs in parallel.
+     */
+    public boolean isParallel() {
+        return executor != null;
+    }
+
+    /**
+     * Computes the cosine similarity of every pair of vectors into the matrix.
+     *
+     * @param vectors The sparse vectors of all emails.
+     * @param matrix  The matrix receiving the similarities, with the same size as the number of vectors.
+     * @throws IllegalArgumentException If the size of the matrix does not match the number of vectors.
+     * @throws IllegalStateException    If the computation of a tile fails or is interrupted.
+     */
+    public void computeAll(SparseVector[] vectors, SimilarityMatrix matrix) {
+        if (matrix.size() != vectors.length) {
+            throw new IllegalArgumentException("Matrix size must match the number of vectors");
+        }
+        final long numOfPairs = (long) vectors.length * (vectors.length - 1) / 2;
+        if (matrix instanceof SymmetricMatrix) {
+            final float[] data = ((SymmetricMatrix) matrix).getData();
+            runTiles(numOfPairs, (tile, start, end) -> computeTile(vectors, data, (int) start, (int) end));
+        } else {
+            runTiles(numOfPairs, (tile, start, end) -> computeTile(vectors, matrix, start, end));
+        }
+    }
+
+    /**
+     * Computes the cosine similarity of every pair of vectors into the matrix, as the product of the document-term
+     * matrix with its transpose.
+     *
+     * <p>
+     * The rows of the matrix are split into tiles like the pairs in {@link #computeAll(SparseVector[],
+     * SimilarityMatrix)}, and every tile is computed in blocks of {@value #ROW_BLOCK_SIZE} rows and
+     * {@value #COL_BLOCK_SIZE} columns. For each row of a block, the postings of its terms that fall into the column
+     * block are multiplied with its weights and summed into a dense block of accumulators, so the postings are read
+     * sequentially and the accumulators stay in the cache. The dot products of a column block are then divided by the
+     * norms and written in one go, which are consecutive entries of a {@link SymmetricMatrix}. Each pair sums the same
+     * products in the same ascending term order as {@link SparseVector#dot(SparseVector)}, so the matrix is identical
+     * to the one computed pair by pair.
+     * </p>
+     *
+     * @param vectors       The sparse vectors of all emails.
+     * @param invertedIndex The inverted index of the same vectors, which is the transposed document-term matrix.
+     * @param matrix        The matrix receiving the similarities, with the same size as the number of vectors.
+     * @throws IllegalArgumentException If the size of the matrix or the index does not match the number of vectors.
+     * @throws IllegalStateException    If the computation of a tile fails or is interrupted.
+     */
+    public void computeAll(SparseVector[] vectors, InvertedIndex invertedIndex, SimilarityMatrix matrix) {
+        if (matrix.size() != vectors.length) {
+            throw new IllegalArgumentException("Matrix size must match the number of vectors");
+        }
+        if (invertedIndex.size() != vectors.length) {
+            throw new IllegalArgumentException("Inverted index must match the number of vectors");
+        }
+        final long numOfPairs = (long) vectors.length * (vectors.length - 1) / 2;
+        runTiles(numOfPairs, (tile, start, end) -> {
+            int endRow = end == numOfPairs ? vectors.length : firstRowFrom(end);
+            new BlockedProduct(vectors, invertedIndex, matrix).computeRows(firstRowFrom(start), endRow);
+        });
+    }
+
+    /**
+     * Computes the cosine similarity of the given pairs of vectors into the matrix, leaving all other pairs untouched.
+     *
+     * @param vectors The sparse vectors of all emails.
+     * @param pairs   The pairs to compute, encoded by {@link MinHashLsh#encodePair(int, int)}.
+     * @param matrix  The matrix receiving the similarities, with the same size as the number of vectors.
+     * @throws IllegalArgumentException If the size of the matrix does not match the number of vectors.
+     * @throws IllegalStateException    If the computation of a tile fails or is interrupted.
+     */
+    public void computePairs(SparseVector[] vectors, long[] pairs, SimilarityMatrix matrix) {
+        if (matrix.size() != vectors.length) {
+            throw new IllegalArgumentException("Matrix size must match the number of vectors");
+        }
+        runTiles(pairs.length, (tile, start, end) -> {
+            for (int i = (int) start; i < end; i++) {
+                int row = MinHashLsh.pairRow(pairs[i]);
+                int col = MinHashLsh.pairCol(pairs[i]);
+                matrix.set(row, col, SimilarityUtils.calcCosineSimilarity(vectors[row], vectors[col]));
+            }
+        });
+    }
+
+    /**
+     * Computes the cosine similarity of every pair of vectors, keeping only the pairs above the similarity threshold.
+     * Each tile collects its edges into its own buffer and the buffers are concatenated in tile order, so the graph
+     * does not depend on the number of tiles.
+     *
+     * @param vectors             The sparse vectors of all emails.
+     * @param similarityThreshold Pairs with a similarity higher than this value are kept.
+     * @return The graph of the pairs above the similarity threshold.
+     * @throws IllegalStateException If the computation of a tile fails or is interrupted.
+     */
+    public SimilarityGraph computeGraph(SparseVector[] vectors, float similarityThreshold) {
+        final long numOfPairs = (long) vectors.length * (vectors.length - 1) / 2;
+        final SimilarityGraph.EdgeBuffer[] tileEdges = new SimilarityGraph.EdgeBuffer[numOfTiles];
+        runTiles(numOfPairs, (tile, start, end) -> {
+            SimilarityGraph.EdgeBuffer edges = new SimilarityGraph.EdgeBuffer();
+            if (start < end) {
+                int row = rowOf(start);
+                int col = colOf(start, row);
+                for (long index = start; index < end; index++) {
+                    float similarity = SimilarityUtils.calcCosineSimilarity(vectors[row], vectors[col]);
+                    if (similarity > similarityThreshold) edges.add(row, col, similarity);
+                    if (++col == row) {
+                        row++;
+                        col = 0;
+                    }
+                }
+            }
+            tileEdges[tile] = edges;
+        });
+        return new SimilarityGraph(vectors.length, similarityThreshold, mergeEdges(tileEdges));
+    }
+
+    /**
+     * Computes the cosine similarity of the given pairs of vectors, keeping only the pairs above the similarity
+     * threshold. All other pairs are treated as not similar.
+     *
+     * @param vectors             The sparse vectors of all emails.
+     * @param pairs               The pairs to compute, encoded by {@link MinHashLsh#encodePair(int, int)} and in
+     *                            ascending order.
+     * @param similarityThreshold Pairs with a similarity higher than this value are kept.
+     * @return The graph of the given pairs above the similarity threshold.
+     * @throws IllegalStateException If the computation of a tile fails or is interrupted.
+     */
+    public SimilarityGraph computeGraph(SparseVector[] vectors, long[] pairs, float similarityThreshold) {
+        final SimilarityGraph.EdgeBuffer[] tileEdges = new SimilarityGraph.EdgeBuffer[numOfTiles];
+        runTiles(pairs.length, (tile, start, end) -> {
+            SimilarityGraph.EdgeBuffer edges = new SimilarityGraph.EdgeBuffer();
+            for (int i = (int) start; i < end; i++) {
+                int row = MinHashLsh.pairRow(pairs[i]);
+                int col = MinHashLsh.pairCol(pairs[i]);
+                float similarity = SimilarityUtils.calcCosineSimilarity(vectors[row], vectors[col]);
+                if (similarity > similarityThreshold) edges.add(row, col, similarity);
+            }
+            tileEdges[tile] = edges;
+        });
+        return new SimilarityGraph(vectors.length, similarityThreshold, mergeEdges(tileEdges));
+    }
+
+    /**
+     * Computes the cosine similarity of every pair of emails sharing at least one term, keeping only the pairs above
+     * the similarity threshold. Equivalent to {@link #computeGraph(SparseVector[], InvertedIndex, float, int)} without
+     * pruning.
+     *
+     * @param vectors             The sparse vectors of all emails.
+     * @param invertedIndex       The inverted index of the same vectors.
+     * @param similarityThreshold Pairs with a similarity higher than this value are kept.
+     * @return The graph of the pairs above the similarity threshold.
+     * @throws IllegalArgumentException If the similarity threshold is negative or the index does not match the vectors.
+     * @throws IllegalStateException    If the computation of a tile fails or is interrupted.
+     */
+    public SimilarityGraph computeGraph(SparseVector[] vectors, InvertedIndex invertedIndex,
+            float similarityThreshold) {
+        return computeGraph(vectors, invertedIndex, similarityThreshold, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Computes the cosine similarity of every pair of emails sharing at least one term, keeping only the pairs above
+     * the similarity threshold.
+     *
+     * <p>
+     * For each email, the postings of its terms are walked up to the email itself and the products of the weights are
+     * summed into one accumulator per earlier email, in ascending term order. The accumulated dot products are divided
+     * by the cached norms, so every pair gets exactly the similarity
+     * {@link SimilarityUtils#calcCosineSimilarity(SparseVector, SparseVector)} gives it. Pairs sharing no term have a
+     * similarity of 0 and are never visited, which is why the threshold must not be negative.
+     * </p>
+     *
+     * <p>
+     * Terms contained in more than {@code maxDocFrequency} emails, such as stop words, can be skipped. They add little
+     * to the similarity of a pair but dominate the cost, as their postings are the longest. Skipped terms still count
+     * towards the norms, so pruning can only lower the similarities.
+     * </p>
+     *
+     * @param vectors             The sparse vectors of all emails.
+     * @param invertedIndex       The inverted index of the same vectors.
+     * @param similarityThreshold Pairs with a similarity higher than this value are kept.
+     * @param maxDocFrequency     The number of emails above which a term is skipped, or {@link Integer#MAX_VALUE} to
+     *                            skip none.
+     * @return The graph of the pairs above the similarity threshold.
+     * @throws IllegalArgumentException If the similarity threshold is negative or the index does not match the vectors.
+     * @throws IllegalStateException    If the computation of a tile fails or is interrupted.
+     */
+    public SimilarityGraph computeGraph(SparseVector[] vectors, InvertedIndex invertedIndex, float similarityThreshold,
+            int maxDocFrequency) {
+        return computeGraph(vectors, invertedIndex, similarityThreshold, maxDocFrequency, (EmailClusters) null);
+    }
+
+    /**
+     * Computes the cosine similarity of every pair of emails sharing at least one term like
+     * {@link #computeGraph(SparseVector[], InvertedIndex, float, int)}, also merging the clusters of the emails of
+     * every pair above the similarity threshold. The clusters are merged by the tiles as they find the pairs, so they
+     * are complete when the graph is.
+     *
+     * @param vectors             The sparse vectors of all emails.
+     * @param invertedIndex       The inverted index of the same vectors.
+     * @param similarityThreshold Pairs with a similarity higher than this value are kept.
+     * @param maxDocFrequency     The number of emails above which a term is skipped, or {@link Integer#MAX_VALUE} to
+     *                            skip none.
+     * @param clusters            The clusters of the same emails, or null to only compute the graph.
+     * @return The graph of the pairs above the similarity threshold.
+     * @throws IllegalArgumentException If the similarity threshold is negative or the index or the clusters do not
+     *                                  match the vectors.
+     * @throws IllegalStateException    If the computation of a tile fails or is interrupted.
+     */
+    public SimilarityGraph computeGraph(SparseVector[] vectors, InvertedIndex invertedIndex, float similarityThreshold,
+            int maxDocFrequency, EmailClusters clusters) {
+        if (clusters != null && clusters.size() != vectors.length) {
+            throw new IllegalArgumentException("Clusters must match the number of vectors");
+        }
+        if (similarityThreshold < 0) {
+            throw new IllegalArgumentException("Similarity threshold must not be negative");
+        }
+        if (invertedIndex.size() != vectors.length) {
+            throw new IllegalArgumentException("Inverted index must match the number of vectors");
+        }
+        final long numOfPairs = (long) vectors.length * (vectors.length - 1) / 2;
+        final SimilarityGraph.EdgeBuffer[] tileEdges = new SimilarityGraph.EdgeBuffer[numOfTiles];
+        runTiles(numOfPairs, (tile, start, end) -> {
+            // Each tile takes the rows whose first pair lies in its range, so all rows are taken exactly once
+            SimilarityGraph.EdgeBuffer edges = new SimilarityGraph.EdgeBuffer();
+            int endRow = end == numOfPairs ? vectors.length : firstRowFrom(end);
+            computeRows(vectors, invertedIndex, firstRowFrom(start), endRow, 0, vectors.length, similarityThreshold,
+                    maxDocFrequency, clusters == null ? edges : (row, col, similarity) -> {
+                        edges.add(row, col, similarity);
+                        clusters.union(row, col);
+                    });
+            tileEdges[tile] = edges;
+        });
+        return new SimilarityGraph(vectors.length, similarityThreshold, mergeEdges(tileEdges));
+    }
+
+    /**
+     * Computes the similarities of the pairs of one partition sharing at least one term, keeping only the pairs above
+     * the similarity threshold. The graphs of all partitions of {@link PairPartition#split(int, int)} together hold
+     * exactly the edges of {@link #computeGraph(SparseVector[], InvertedIndex, float, int)}.
+     *
+     * <p>
+     * The rows of the partition are split into tiles. The postings of each row are only walked from the first column
+     * of the partition, found by binary search, up to its last column.
+     * </p>
+     *
+     * @param vectors             The sparse vectors of all emails.
+     * @param invertedIndex       The inverted index of the same vectors.
+     * @param similarityThreshold Pairs with a similarity higher than this value are kept.
+     * @param maxDocFrequency     The number of emails above which a term is skipped, or {@link Integer#MAX_VALUE} to
+     *                            skip none.
+     * @param partition           The partition of the pairs to compute.
+     * @return The graph over all emails holding the pairs of the partition above the similarity threshold.
+     * @throws IllegalArgumentException If the similarity threshold is negative, the index does not match the vectors or
+     *                                  the partition exceeds them.
+     * @throws IllegalStateException    If the computation of a tile fails or is interrupted.
+     */
+    public SimilarityGraph computeGraph(SparseVector[] vectors, InvertedIndex invertedIndex, float similarityThreshold,
+            int maxDocFrequency, PairPartition partition) {
+        if (similarityThreshold < 0) {
+            throw new IllegalArgumentException("Similarity threshold must not be negative");
+        }
+        if (invertedIndex.size() != vectors.length) {
+            throw new IllegalArgumentException("Inverted index must match the number of vectors");
+        }
+        if (partition.getRowEnd() > vectors.length || partition.getColEnd() > vectors.length) {
+            throw new IllegalArgumentException("Partition must lie within the vectors");
+        }
+        final int rowStart = partition.getRowStart();
+        final SimilarityGraph.EdgeBuffer[] tileEdges = new SimilarityGraph.EdgeBuffer[numOfTiles];
+        runTiles(partition.getRowEnd() - rowStart, (tile, start, end) -> {
+            SimilarityGraph.EdgeBuffer edges = new SimilarityGraph.EdgeBuffer();
+            computeRows(vectors, invertedIndex, rowStart + (int) start, rowStart + (int) end, partition.getColStart(),
+                    partition.getColEnd(), similarityThreshold, maxDocFrequency, edges);
+            tileEdges[tile] = edges;
+        });
+        return new SimilarityGraph(vectors.length, similarityThreshold, mergeEdges(tileEdges));
+    }
+
+    /**
+     * Finds the {@code k} emails most similar to every email, not counting the email itself. The emails are split
+     * into tiles of consecutive emails, each scoring its emails one by one against the emails sharing a term with
+     * them, like {@link NeighborIndex#query(int, int)}, with accumulators and a {@link TopKHeap} reused for all
+     * emails of the tile.
+     *
+     * @param vectors       The sparse vectors of all emails.
+     * @param invertedIndex The inverted index of the same vectors.
+     * @param k             The number of neighbors of each email.
+     * @return The neighbors of each email, indexed by email index.
+     * @throws IllegalArgumentException If {@code k} is not positive or the index does not match the vectors.
+     * @throws IllegalStateException    If the computation of a tile fails or is interrupted.
+     */
+    public Neighbors[] computeNeighbors(SparseVector[] vectors, InvertedIndex invertedIndex, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Number of neighbors must be positive");
+        }
+        if (invertedIndex.size() != vectors.length) {
+            throw new IllegalArgumentException("Inverted index must match the number of vectors");
+        }
+        final Neighbors[] neighbors = new Neighbors[vectors.length];
+        final double[] maxWeights = NeighborIndex.getMaxNormalizedWeights(invertedIndex);
+        runTiles(vectors.length, (tile, start, end) -> {
+            NeighborIndex.Scorer scorer = new NeighborIndex.Scorer(vectors, invertedIndex, maxWeights);
+            TopKHeap heap = new TopKHeap(k);
+            for (int emailIndex = (int) start; emailIndex < end; emailIndex++) {
+                heap.clear();
+                neighbors[emailIndex] = scorer.score(vectors[emailIndex], emailIndex, heap);
+            }
+        });
+        return neighbors;
+    }
+
+    /**
+     * Classifies every email as spam if more than {@code numOfSimilarEmailsAllowed} other emails have a similarity
+     * above the threshold, computing only the similarities that can still change a spam flag.
+     *
+     * <p>
+     * The pairs are walked like in {@link #computeAll(SparseVector[], SimilarityMatrix)}, counting the similar emails
+     * of both emails of a pair. Once both emails of a pair are over the allowed count they are spam no matter what, so
+     * the pair is skipped. Before computing a pair, its similarity is bounded by
+     * {@code min(max|u| * sum|v|, sum|u| * max|v|) / (|u| |v|)}, and pairs whose bound does not exceed the threshold
+     * are pruned as well. The spam flags are therefore exactly those of the full classification, only the
+     * similar-counts of spam emails are lower bounds. Which pairs are skipped depends on the order in which the tiles
+     * run, the flags do not.
+     * </p>
+     *
+     * @param vectors                   The sparse vectors of all emails.
+     * @param similarityThreshold       Pairs with a similarity higher than this value are similar.
+     * @param numOfSimilarEmailsAllowed Number of similar emails an email may have before it is considered spam.
+     * @return The spam flags, similar-counts and numbers of computed and skipped pairs.
+     * @throws IllegalStateException If the computation of a tile fails or is interrupted.
+     */
+    public SpamClassification classify(SparseVector[] vectors, float similarityThreshold,
+            int numOfSimilarEmailsAllowed) {
+        final int numOfEmails = vectors.length;
+        final double[] maxWeights = new double[numOfEmails];
+        final double[] sumOfWeights = new double[numOfEmails];
+        for (int i = 0; i < numOfEmails; i++) {
+            for (float weight : vectors[i].getWeights()) {
+                maxWeights[i] = Math.max(maxWeights[i], Math.abs(weight));
+                sumOfWeights[i] += Math.abs(weight);
+            }
+        }
+
+        final AtomicIntegerArray similarCounts = new AtomicIntegerArray(numOfEmails);
+        final long numOfPairs = (long) numOfEmails * (numOfEmails - 1) / 2;
+        final long[] tileComparisons = new long[numOfTiles];
+        final long[] tileSkippedPairs = new long[numOfTiles];
+        runTiles(numOfPairs, (tile, start, end) -> {
+            if (start >= end) return;
+            long comparisons = 0;
+            long skippedPairs = 0;
+            int row = rowOf(start);
+            int col = colOf(start, row);
+            for (long index = start; index < end; index++) {
+                if (similarCounts.get(row) > numOfSimilarEmailsAllowed
+                        && similarCounts.get(col) > numOfSimilarEmailsAllowed) {
+                    skippedPairs++;
+                } else if (canExceed(vectors, maxWeights, sumOfWeights, row, col, similarityThreshold)) {
+                    comparisons++;
+                    if (SimilarityUtils.calcCosineSimilarity(vectors[row], vectors[col]) > similarityThreshold) {
+                        similarCounts.incrementAndGet(row);
+                        similarCounts.incrementAndGet(col);
+                    }
+                }
+                if (++col == row) {
+                    row++;
+                    col = 0;
+                }
+            }
+            tileComparisons[tile] = comparisons;
+            tileSkippedPairs[tile] = skippedPairs;
+        });
+
+        long numOfComparisons = 0;
+        long numOfSkippedPairs = 0;
+        for (int tile = 0; tile < numOfTiles; tile++) {
+            numOfComparisons += tileComparisons[tile];
+            numOfSkippedPairs += tileSkippedPairs[tile];
+        }
+        boolean[] spam = new boolean[numOfEmails];
+        int[] counts = new int[numOfEmails];
+        for (int i = 0; i < numOfEmails; i++) {
+            counts[i] = similarCounts.get(i);
+            spam[i] = counts[i] > numOfSimilarEmailsAllowed;
+        }
+        return new SpamClassification(spam, counts, numOfPairs, numOfComparisons, numOfSkippedPairs,
+                numOfPairs - numOfComparisons - numOfSkippedPairs);
+    }
+
+    /**
+     * Returns whether the bound on the similarity of a pair exceeds the threshold. By Hölder's inequality the dot
+     * product is at most the largest weight of one vector times the sum of the weights of the other. The bound is
+     * widened slightly so rounding in the exact similarity can never make a pruned pair similar.
+     */
+    private static boolean canExceed(SparseVector[] vectors, double[] maxWeights, double[] sumOfWeights, int row,
+            int col, float similarityThreshold) {
+        final double normProduct = vectors[row].getNorm() * vectors[col].getNorm();
+        final double bound = normProduct == 0 ? 0 : Math.min(maxWeights[row] * sumOfWeights[col],
+                sumOfWeights[row] * maxWeights[col]) / normProduct;
+        return bound * (1 + 1e-6) > similarityThreshold;
+    }
+
+    /**
+     * Scores the rows {@code [startRow, endRow)} against the earlier rows within {@code [colStart, colEnd)}, with one
+     * accumulator per earlier row.
+     */
+    private static void computeRows(SparseVector[] vectors, InvertedIndex invertedIndex, int startRow, int endRow,
+            int colStart, int colEnd, float similarityThreshold, int maxDocFrequency,
+            SimilarityGraph.EdgeSink edges) {
+        if (startRow >= endRow) return;
+        final double[] accumulators = new double[endRow];
+        final int[] touched = new int[endRow];
+        // Row + 1 that last touched each accumulator, so touching is tracked even for products of 0
+        final int[] touchedBy = new int[endRow];
+
+        for (int row = startRow; row < endRow; row++) {
+            final int[] termIds = vectors[row].getTermIds();
+            final float[] weights = vectors[row].getWeights();
+            final int colLimit = Math.min(row, colEnd);
+            int numOfTouched = 0;
+            for (int i = 0; i < termIds.length; i++) {
+                final int length = invertedIndex.getPostingLength(termIds[i]);
+                if (length > maxDocFrequency) continue;
+                final int[] docIds = invertedIndex.getPostingDocIds(termIds[i]);
+                final float[] docWeights = invertedIndex.getPostingWeights(termIds[i]);
+                final double weight = weights[i];
+                int p = colStart == 0 ? 0 : Arrays.binarySearch(docIds, 0, length, colStart);
+                if (p < 0) p = -p - 1;
+                for (; p < length && docIds[p] < colLimit; p++) {
+                    final int col = docIds[p];
+                    if (touchedBy[col] != row + 1) {
+                        touchedBy[col] = row + 1;
+                        touched[numOfTouched++] = col;
+                    }
+                    accumulators[col] += weight * docWeights[p];
+                }
+            }
+
+            // Edges must ascend by column within a row
+            Arrays.sort(touched, 0, numOfTouched);
+            final double norm = vectors[row].getNorm();
+            for (int i = 0; i < numOfTouched; i++) {
+                final int col = touched[i];
+                final float similarity = (float) (accumulators[col] / (norm * vectors[col].getNorm()));
+                if (similarity > similarityThreshold) edges.add(row, col, similarity);
+                accumulators[col] = 0;
+            }
+        }
+    }
+
+    /**
+     * Computes rows of the similarity matrix block by block, reusing its accumulators and posting cursors for all
+     * blocks of a tile.
+     */
+    private static class BlockedProduct {
+        private final SparseVector[] vectors;
+        private final InvertedIndex invertedIndex;
+        private final SimilarityMatrix matrix;
+
+        /**
+         * Backing array of the matrix, or null to write through {@link SimilarityMatrix#set(int, int, float)}.
+         */
+        private final float[] data;
+
+        /**
+         * Dot products of the current block, {@link #COL_BLOCK_SIZE} per row of the block.
+         */
+        private final double[] accumulators = new double[ROW_BLOCK_SIZE * COL_BLOCK_SIZE];
+
+        /**
+         * Position in the postings of every term of every row of the current row block, up to which the postings have
+         * been multiplied.
+         */
+        private int[] cursors = new int[1024];
+
+        /**
+         * Start of the cursors of each row of the current row block in {@link #cursors}.
+         */
+        private final int[] cursorOffsets = new int[ROW_BLOCK_SIZE + 1];
+
+        BlockedProduct(SparseVector[] vectors, InvertedIndex invertedIndex, SimilarityMatrix matrix) {
+            this.vectors = vectors;
+            this.invertedIndex = invertedIndex;
+            this.matrix = matrix;
+            this.data = matrix instanceof SymmetricMatrix ? ((SymmetricMatrix) matrix).getData() : null;
+        }
+
+        /**
+         * Computes the rows {@code [startRow, endRow)} against all earlier rows.
+         */
+        void computeRows(int startRow, int endRow) {
+            for (int blockStart = startRow; blockStart < endRow; blockStart += ROW_BLOCK_SIZE) {
+                final int blockEnd = Math.min(blockStart + ROW_BLOCK_SIZE, endRow);
+                resetCursors(blockStart, blockEnd);
+                // The last row of the block has the most columns, all below it
+                for (int colStart = 0; colStart < blockEnd - 1; colStart += COL_BLOCK_SIZE) {
+                    final int colEnd = Math.min(colStart + COL_BLOCK_SIZE, blockEnd - 1);
+                    for (int row = blockStart; row < blockEnd; row++) {
+                        accumulate(row, row - blockStart, colStart, Math.min(colEnd, row));
+                    }
+                }
+            }
+        }
+
+        private void resetCursors(int blockStart, int blockEnd) {
+            int numOfCursors = 0;
+            for (int row = blockStart; row < blockEnd; row++) {
+                cursorOffsets[row - blockStart] = numOfCursors;
+                numOfCursors += vectors[row].size();
+            }
+            cursorOffsets[blockEnd - blockStart] = numOfCursors;
+            if (numOfCursors > cursors.length) cursors = new int[Math.max(numOfCursors, cursors.length * 2)];
+            Arrays.fill(cursors, 0, numOfCursors, 0);
+        }
+
+        /**
+         * Sums the products of a row with the columns {@code [colStart, colEnd)} and writes their similarities.
+         */
+        private void accumulate(int row, int blockRow, int colStart, int colEnd) {
+            if (colEnd <= colStart) return;
+            final int[] termIds = vectors[row].getTermIds();
+            final float[] weights = vectors[row].getWeights();
+            final int accumulatorOffset = blockRow * COL_BLOCK_SIZE - colStart;
+            final int cursorOffset = cursorOffsets[blockRow];
+            for (int i = 0; i < termIds.length; i++) {
+                final int length = invertedIndex.getPostingLength(termIds[i]);
+                final int[] docIds = invertedIndex.getPostingDocIds(termIds[i]);
+                final float[] docWeights = invertedIndex.getPostingWeights(termIds[i]);
+                final double weight = weights[i];
+                int p = cursors[cursorOffset + i];
+                for (; p < length && docIds[p] < colEnd; p++) {
+                    accumulators[accumulatorOffset + docIds[p]] += weight * docWeights[p];
+                }
+                cursors[cursorOffset + i] = p;
+            }
+
+            final double norm = vectors[row].getNorm();
+            final long rowOffset = (long) row * (row - 1) / 2;
+            for (int col = colStart; col < colEnd; col++) {
+                final double euclideanDist = norm * vectors[col].getNorm();
+                final float similarity = euclideanDist == 0.0 ? 0.0f
+                        : (float) (accumulators[accumulatorOffset + col] / euclideanDist);
+                accumulators[accumulatorOffset + col] = 0;
+                if (data != null) {
+                    data[(int) (rowOffset + col)] = similarity;
+                } else {
+                    matrix.set(row, col, similarity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first row whose pairs start at or after the given one-dimensional index.
+     */
+    private static int firstRowFrom(long index) {
+        if (index == 0) return 0;
+        int row = rowOf(index);
+        return (long) row * (row - 1) / 2 < index ? row + 1 : row;
+    }
+
+    /**
+     * Concatenates the edges of all computed tiles in tile order.
+     */
+    private static SimilarityGraph.EdgeBuffer mergeEdges(SimilarityGraph.EdgeBuffer[] tileEdges) {
+        SimilarityGraph.EdgeBuffer edges = new SimilarityGraph.EdgeBuffer();
+        for (SimilarityGraph.EdgeBuffer buffer : tileEdges) {
+            if (buffer != null) edges.addAll(buffer);
+        }
+        return edges;
+    }
+
+    /**
+     * Work on the range {@code [start, end)} of the tile with the given index.
+     */
+    private interface Tile {
+        void compute(int tileIndex, long start, long end);
+    }
+
+    /**
+     * Splits the range {@code [0, size)} into tiles of equal length and computes them on the executor. Tiles are
+     * numbered from 0 in ascending order of their ranges, a single tile 0 covers the whole range when not run in
+     * parallel.
+     */
+    private void runTiles(long size, Tile tile) {
+        if (executor == null || numOfTiles == 1 || size < numOfTiles) {
+            tile.compute(0, 0, size);
+            return;
+        }
+
+        List<Callable<Void>> tiles = new ArrayList<>(numOfTiles);
+        for (int i = 0; i < numOfTiles; i++) {
+            final int tileIndex = i;
+            final long start = size * i / numOfTiles;
+            final long end = size * (i + 1) / numOfTiles;
+            tiles.add(() -> {
+                tile.compute(tileIndex, start, end);
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> future : executor.invokeAll(tiles)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Similarity computation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Similarity computation failed", e.getCause());
+        }
+    }
+
+    /**
+     * Computes the pairs of the one-dimensional index range {@code [start, end)} of the lower triangular part.
+     */
+    static void computeTile(SparseVector[] vectors, float[] data, int start, int end) {
+        if (start >= end) return;
+        int row = rowOf(start);
+        int col = colOf(start, row);
+        for (int index = start; index < end; index++) {
+            data[index] = SimilarityUtils.calcCosineSimilarity(vectors[row], vectors[col]);
+            if (++col == row) {
+                row++;
+                col = 0;
+            }
+        }
+    }
+
+    /**
+     * Computes the pairs of the one-dimensional index range {@code [start, end)} of the lower triangular part into a
+     * matrix without a backing array.
+     */
+    private static void computeTile(SparseVector[] vectors, SimilarityMatrix matrix, long start, long end) {
+        if (start >= end) return;
+        int row = rowOf(start);
+        int col = colOf(start, row);
+        for (long index = start; index < end; index++) {
+            matrix.set(row, col, SimilarityUtils.calcCosineSimilarity(vectors[row], vectors[col]));
+            if (++col == row) {
+                row++;
+                col = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the row holding the given one-dimensional index, which is the largest row with
+     * {@code row * (row - 1) / 2 <= index}.
+     *
+     * @param index The one-dimensional index.
+     * @return The row of the index.
+     */
+    static int rowOf(long index) {
+        long row = (long) ((1 + Math.sqrt(1 + 8.0 * index)) / 2);
+        while (row * (row - 1) / 2 > index) row--;
+        while ((row + 1) * row / 2 <= index) row++;
+        return (int) row;
+    }
+
+    /**
+     * Returns the column of the given one-dimensional index within its row, computed in {@code long} since
+     * {@code row * (row - 1)} exceeds the {@code int} range from row 46341 on.
+     *
+     * @param index The one-dimensional index.
+     * @param row   The row of the index, see {@link #rowOf(long)}.
+     * @return The column of the index.
+     */
+    static int colOf(long index, int row) {
+        return (int) (index - (long) row * (row - 1) / 2);
+    }
+}
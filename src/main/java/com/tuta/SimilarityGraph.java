@@ -0,0 +1,256 @@
+package com.tuta;
+
+import java.util.Arrays;
+
+/**
+ * Threshold-sparse store of the similarities of a set of emails, keeping only the pairs above a similarity threshold.
+ *
+ * <p>
+ * Classifying an email only requires the number of emails it is similar to, yet a {@link SimilarityMatrix} keeps the
+ * similarity of every pair, most of which are below the threshold. This graph keeps an edge for each pair whose
+ * similarity is higher than the threshold, in compressed sparse row (CSR) form: the similar emails of email {@code i}
+ * are stored in ascending order from {@code offsets[i]} to {@code offsets[i + 1]}, so its memory grows with the number
+ * of similar pairs instead of the square of the number of emails, and the classification runs in O(edges).
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * SimilarityGraph similarityGraph = new SimilarityEngine(true).computeGraph(vectors, 0.32f);
+ * boolean isSpam = similarityGraph.getSimilarCount(0) > numOfSimilarEmailsAllowed;
+ * }</pre>
+ */
+public class SimilarityGraph {
+    /**
+     * Number of emails, which are the vertices of the graph.
+     */
+    private final int numOfEmails;
+
+    /**
+     * Similarities of the stored pairs are higher than this value.
+     */
+    private final float similarityThreshold;
+
+    /**
+     * Start of the similar emails of each email in {@link #neighbors}.
+     */
+    private final int[] offsets;
+
+    /**
+     * Similar emails of all emails, ascending for each email.
+     */
+    private final int[] neighbors;
+
+    /**
+     * Similarity of each entry of {@link #neighbors}.
+     */
+    private final float[] similarities;
+
+    /**
+     * Builds the graph from a list of edges.
+     *
+     * @param numOfEmails         The number of emails.
+     * @param similarityThreshold The threshold the similarities of the edges are higher than.
+     * @param edges               The edges, in ascending order of their pairs.
+     * @throws IllegalArgumentException If there are too many edges to store.
+     */
+    SimilarityGraph(int numOfEmails, float similarityThreshold, EdgeBuffer edges) {
+        if (edges.size() > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Too many similar pairs");
+        }
+        this.numOfEmails = numOfEmails;
+        this.similarityThreshold = similarityThreshold;
+        this.offsets = new int[numOfEmails + 1];
+        this.neighbors = new int[edges.size() * 2];
+        this.similarities = new float[neighbors.length];
+
+        for (int i = 0; i < edges.size(); i++) {
+            offsets[MinHashLsh.pairRow(edges.pairs[i]) + 1]++;
+            offsets[MinHashLsh.pairCol(edges.pairs[i]) + 1]++;
+        }
+        for (int email = 0; email < numOfEmails; email++) {
+            offsets[email + 1] += offsets[email];
+        }
+
+        // Pairs ascend by row and then by column, so every email first receives its smaller and then its larger
+        // similar emails, each in ascending order
+        int[] positions = Arrays.copyOf(offsets, numOfEmails);
+        for (int i = 0; i < edges.size(); i++) {
+            int row = MinHashLsh.pairRow(edges.pairs[i]);
+            int col = MinHashLsh.pairCol(edges.pairs[i]);
+            neighbors[positions[row]] = col;
+            similarities[positions[row]++] = edges.similarities[i];
+            neighbors[positions[col]] = row;
+            similarities[positions[col]++] = edges.similarities[i];
+        }
+    }
+
+    /**
+     * Restores a graph from its arrays, as written by {@link IndexSnapshot}. The arrays are used as they are.
+     */
+    SimilarityGraph(int numOfEmails, float similarityThreshold, int[] offsets, int[] neighbors, float[] similarities) {
+        if (offsets.length != numOfEmails + 1 || neighbors.length != similarities.length
+                || offsets[numOfEmails] != neighbors.length) {
+            throw new IllegalArgumentException("Invalid graph arrays");
+        }
+        this.numOfEmails = numOfEmails;
+        this.similarityThreshold = similarityThreshold;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.similarities = similarities;
+    }
+
+    /**
+     * Builds the graph from the pairs of a matrix above the similarity threshold.
+     *
+     * @param matrix              The matrix holding the similarities, pairs that were never set are skipped.
+     * @param similarityThreshold Pairs with a similarity higher than this value are stored.
+     * @return The similarity graph.
+     */
+    public static SimilarityGraph fromMatrix(SimilarityMatrix matrix, float similarityThreshold) {
+        EdgeBuffer edges = new EdgeBuffer();
+        for (int row = 1; row < matrix.size(); row++) {
+            for (int col = 0; col < row; col++) {
+                float similarity = matrix.get(row, col);
+                if (similarity > similarityThreshold) edges.add(row, col, similarity);
+            }
+        }
+        return new SimilarityGraph(matrix.size(), similarityThreshold, edges);
+    }
+
+    /**
+     * Returns the number of emails.
+     *
+     * @return The number of vertices of the graph.
+     */
+    public int size() {
+        return numOfEmails;
+    }
+
+    public float getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    /**
+     * Returns the number of pairs above the similarity threshold.
+     *
+     * @return The number of edges of the graph.
+     */
+    public int getNumOfEdges() {
+        return neighbors.length / 2;
+    }
+
+    /**
+     * Returns the number of emails similar to an email.
+     *
+     * @param emailIndex The index of the email.
+     * @return The number of emails with a similarity higher than the threshold.
+     */
+    public int getSimilarCount(int emailIndex) {
+        return offsets[emailIndex + 1] - offsets[emailIndex];
+    }
+
+    /**
+     * Returns the emails similar to an email.
+     *
+     * @param emailIndex The index of the email.
+     * @return The indices of the emails with a similarity higher than the threshold, in ascending order.
+     */
+    public int[] getSimilarEmails(int emailIndex) {
+        return Arrays.copyOfRange(neighbors, offsets[emailIndex], offsets[emailIndex + 1]);
+    }
+
+    /**
+     * Returns the similarity of a pair of emails if it is above the threshold.
+     *
+     * @param row The index of one email.
+     * @param col The index of the other email.
+     * @return The similarity of the pair, or {@link Float#NaN} if it is not above the threshold.
+     */
+    public float getSimilarity(int row, int col) {
+        int position = Arrays.binarySearch(neighbors, offsets[row], offsets[row + 1], col);
+        return position < 0 ? Float.NaN : similarities[position];
+    }
+
+    /**
+     * Classifies every email, which is spam if it is similar to more emails than allowed.
+     *
+     * @param numOfSimilarEmailsAllowed Number of similar emails an email may have before it is considered spam.
+     * @return The spam flag of every email.
+     */
+    public boolean[] classify(int numOfSimilarEmailsAllowed) {
+        boolean[] spam = new boolean[numOfEmails];
+        for (int emailIndex = 0; emailIndex < numOfEmails; emailIndex++) {
+            spam[emailIndex] = getSimilarCount(emailIndex) > numOfSimilarEmailsAllowed;
+        }
+        return spam;
+    }
+
+    int[] getOffsets() {
+        return offsets;
+    }
+
+    int[] getNeighbors() {
+        return neighbors;
+    }
+
+    float[] getSimilarities() {
+        return similarities;
+    }
+
+    /**
+     * Receiver of the edges found by {@link SimilarityEngine}, called with {@code row > col}.
+     */
+    interface EdgeSink {
+        void add(int row, int col, float similarity);
+    }
+
+    /**
+     * Growable list of edges, collected by one thread at a time.
+     */
+    static class EdgeBuffer implements EdgeSink {
+        /**
+         * Pairs of the edges, encoded by {@link MinHashLsh#encodePair(int, int)}.
+         */
+        private long[] pairs = new long[64];
+
+        /**
+         * Similarity of each edge.
+         */
+        private float[] similarities = new float[64];
+
+        /**
+         * Number of edges.
+         */
+        private int numOfEdges;
+
+        /**
+         * Appends an edge.
+         */
+        @Override
+        public void add(int row, int col, float similarity) {
+            if (numOfEdges == pairs.length) {
+                pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                similarities = Arrays.copyOf(similarities, pairs.length);
+            }
+            pairs[numOfEdges] = MinHashLsh.encodePair(row, col);
+            similarities[numOfEdges++] = similarity;
+        }
+
+        /**
+         * Appends all edges of another buffer.
+         */
+        void addAll(EdgeBuffer other) {
+            if (numOfEdges + other.numOfEdges > pairs.length) {
+                pairs = Arrays.copyOf(pairs, Math.max(numOfEdges + other.numOfEdges, pairs.length * 2));
+                similarities = Arrays.copyOf(similarities, pairs.length);
+            }
+            System.arraycopy(other.pairs, 0, pairs, numOfEdges, other.numOfEdges);
+            System.arraycopy(other.similarities, 0, similarities, numOfEdges, other.numOfEdges);
+            numOfEdges += other.numOfEdges;
+        }
+
+        int size() {
+            return numOfEdges;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.tuta;
+
+/**
+ * Storage of the pairwise similarities of a set of emails.
+ *
+ * <p>
+ * Implementations only store the lower triangular part, since the similarity of {@code (row, col)} equals the one of
+ * {@code (col, row)}, and always return 1 for the diagonal. Pairs that were never set return {@link Float#NaN}.
+ * </p>
+ */
+public interface SimilarityMatrix {
+    /**
+     * Returns the size of the matrix.
+     *
+     * @return The number of rows or columns of the matrix.
+     */
+    int size();
+
+    /**
+     * Sets the value at the specified row and column indices.
+     *
+     * @param row   The row index.
+     * @param col   The column index.
+     * @param value The value to be set.
+     * @throws IllegalArgumentException If the indices are invalid or on the diagonal.
+     */
+    void set(int row, int col, float value);
+
+    /**
+     * Gets the value at the specified row and column indices.
+     *
+     * @param row The row index.
+     * @param col The column index.
+     * @return The value at the specified indices, 1 on the diagonal.
+     * @throws IllegalArgumentException If the indices are invalid.
+     */
+    float get(int row, int col);
+}
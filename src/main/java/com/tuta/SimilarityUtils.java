@@ -44,9 +44,31 @@ public class SimilarityUtils {
      * @return The TF-IDF value of the specified word within the given email.
      */
     public static float calcTFIDF(Email[] allEmails, Email currEmail, String word) {
-        float numOfWords = TextUtils.countNumOfWords(currEmail.getBody());
-        float tf = TextUtils.countWordOccurrence(word, currEmail.getBody()) / numOfWords;
-        float idf = 1 + (float) Math.log10((float) (allEmails.length / TextUtils.countDocsHasWord(word, allEmails)));
+        return calcTFIDF(
+                TextUtils.countWordOccurrence(word, currEmail.getBody()),
+                TextUtils.countNumOfWords(currEmail.getBody()),
+                allEmails.length,
+                TextUtils.countDocsHasWord(word, allEmails)
+        );
+    }
+
+    /**
+     * Calculates the TF-IDF value of a word from precomputed counts.
+     *
+     * <p>
+     * This is the formula behind {@link #calcTFIDF(Email[], Email, String)}, for callers such as {@link CorpusIndex}
+     * that already know the counts and don't need to rescan the emails.
+     * </p>
+     *
+     * @param wordOccurrence   The number of occurrences of the word in the email.
+     * @param numOfWords       The number of words in the email.
+     * @param numOfDocs        The number of emails in the corpus.
+     * @param numOfDocsHasWord The number of emails containing the word.
+     * @return The TF-IDF value of the word within the email.
+     */
+    public static float calcTFIDF(int wordOccurrence, int numOfWords, int numOfDocs, int numOfDocsHasWord) {
+        float tf = wordOccurrence / (float) numOfWords;
+        float idf = 1 + (float) Math.log10((float) (numOfDocs / numOfDocsHasWord));
         return tf * idf;
     }
 
@@ -82,23 +104,37 @@ public class SimilarityUtils {
      * the current email and another email to be compared.
      * </p>
      *
+     * <p>
+     * The computation is delegated to {@link DenseKernels#get()}, so it uses SIMD instructions when the runtime
+     * supports them.
+     * </p>
+     *
      * @param currEmailNormalizedVector The normalized vector representation of the current email.
      * @param emailToCompareNormalizedVector The normalized vector representation of the email to be compared.
      * @return The cosine similarity between the two email vectors.
+     * @see DenseKernel#calcCosineSimilarity(float[], float[])
      */
     public static float calcCosineSimilarity(float[] currEmailNormalizedVector,
             float[] emailToCompareNormalizedVector) {
-        float dotProduct = 0f;
-        double normA = 0;
-        double normB = 0;
-        for (int i = 0; i < currEmailNormalizedVector.length; i++) {
-            dotProduct += currEmailNormalizedVector[i] * emailToCompareNormalizedVector[i];
-            normA += Math.pow(currEmailNormalizedVector[i], 2);
-            normB += Math.pow(emailToCompareNormalizedVector[i], 2);
-        }
-        float euclideanDist = (float) (Math.sqrt(normA) * Math.sqrt(normB));
+        return DenseKernels.get().calcCosineSimilarity(currEmailNormalizedVector, emailToCompareNormalizedVector);
+    }
+
+    /**
+     * Calculates the cosine similarity between the sparse vectors of two emails.
+     *
+     * <p>
+     * Unlike {@link #calcCosineSimilarity(float[], float[])}, only the terms present in the emails are visited and the
+     * norms cached by the vectors are reused, so the cost is proportional to the length of the emails.
+     * </p>
+     *
+     * @param currEmailVector The sparse vector representation of the current email.
+     * @param emailToCompareVector The sparse vector representation of the email to be compared.
+     * @return The cosine similarity between the two email vectors.
+     */
+    public static float calcCosineSimilarity(SparseVector currEmailVector, SparseVector emailToCompareVector) {
+        double euclideanDist = currEmailVector.getNorm() * emailToCompareVector.getNorm();
         if (euclideanDist == 0.0) return 0.0f;
-        return dotProduct / euclideanDist;
+        return (float) (currEmailVector.dot(emailToCompareVector) / euclideanDist);
     }
 
     /**
@@ -120,4 +156,24 @@ public class SimilarityUtils {
         }
         return normalize(vector, tfIdfDatabase.keySet());
     }
+
+    /**
+     * Retrieves the dense vector representation of an email from an inverted index.
+     *
+     * <p>
+     * The vector holds the weight of every term id of the index in ascending order, so it has the same entries as
+     * {@link #getVector(Map, int)} over the equivalent TF-IDF database, in term id order instead of hash order.
+     * </p>
+     *
+     * @param invertedIndex  The inverted index holding the weights of all emails.
+     * @param currEmailIndex The index of the email for which the vector representation is requested.
+     * @return The dense vector representation of the specified email.
+     */
+    public static float[] getVector(InvertedIndex invertedIndex, int currEmailIndex) {
+        float[] vector = new float[invertedIndex.getVocabularySize()];
+        for (int termId = 0; termId < vector.length; termId++) {
+            vector[termId] = invertedIndex.getWeight(termId, currEmailIndex);
+        }
+        return vector;
+    }
 }
@@ -0,0 +1,119 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Result of a spam check run: the receiver, number of similar emails and spam flag of every email.
+ *
+ * Usage Example:
+ * <pre>{@code
+ * SpamCheckResult result = new SpamChecker(options, log).check(reader);
+ * result.write(writer, CheckerOptions.OutputFormat.CSV);
+ * }</pre>
+ */
+public class SpamCheckResult {
+    /**
+     * Escapes the receivers of the JSON lines.
+     */
+    private static final Gson GSON = new Gson();
+
+    private final String[] receivers;
+    private final int[] similarCounts;
+    private final boolean[] spam;
+
+    /**
+     * Constructs a result.
+     *
+     * @param receivers     The receiver of each email.
+     * @param similarCounts The number of similar emails of each email.
+     * @param spam          The spam flag of each email.
+     * @throws IllegalArgumentException If the arrays have different lengths.
+     */
+    public SpamCheckResult(String[] receivers, int[] similarCounts, boolean[] spam) {
+        if (receivers.length != similarCounts.length || receivers.length != spam.length) {
+            throw new IllegalArgumentException("Result arrays must have the same length");
+        }
+        this.receivers = receivers;
+        this.similarCounts = similarCounts;
+        this.spam = spam;
+    }
+
+    /**
+     * Returns the number of emails checked.
+     *
+     * @return The number of emails.
+     */
+    public int size() {
+        return receivers.length;
+    }
+
+    public String getReceiver(int emailIndex) {
+        return receivers[emailIndex];
+    }
+
+    public int getSimilarCount(int emailIndex) {
+        return similarCounts[emailIndex];
+    }
+
+    public boolean isSpam(int emailIndex) {
+        return spam[emailIndex];
+    }
+
+    /**
+     * Returns the number of emails tagged as spam.
+     *
+     * @return The number of spam emails.
+     */
+    public int getNumOfSpam() {
+        int numOfSpam = 0;
+        for (boolean isSpam : spam) {
+            if (isSpam) numOfSpam++;
+        }
+        return numOfSpam;
+    }
+
+    /**
+     * Writes the results in the given format. The writer is neither flushed nor closed.
+     *
+     * @param writer The writer receiving the results, ideally buffered.
+     * @param format The output format.
+     * @throws IOException If writing fails.
+     */
+    public void write(Writer writer, CheckerOptions.OutputFormat format) throws IOException {
+        switch (format) {
+            case JSONL:
+                for (int i = 0; i < size(); i++) {
+                    writer.write("{\"index\":" + i + ",\"receiver\":" + GSON.toJson(receivers[i]) + ",\"spam\":"
+                            + spam[i] + ",\"similarCount\":" + similarCounts[i] + "}\n");
+                }
+                break;
+            case CSV:
+                writer.write("index,receiver,spam,similarCount\n");
+                for (int i = 0; i < size(); i++) {
+                    writer.write(i + "," + csvField(receivers[i]) + "," + spam[i] + "," + similarCounts[i] + "\n");
+                }
+                break;
+            default:
+                writer.write("\n--> Final result\n");
+                writer.write(String.format("| %-15s | %-4s |\n", "Email Index", "Spam"));
+                writer.write("|-----------------|------|\n");
+                for (int i = 0; i < size(); i++) {
+                    writer.write(String.format("| %-15d | %-4s |\n", i, spam[i] ? "Yes" : "No"));
+                }
+        }
+    }
+
+    /**
+     * Quotes a CSV field if it contains a separator, quote or line break.
+     */
+    private static String csvField(String value) {
+        if (value == null) return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
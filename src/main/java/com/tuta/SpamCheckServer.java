@@ -0,0 +1,281 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Long-running HTTP service scoring emails against a resident {@link OnlineSpamIndex}, on the JDK's built-in
+ * {@link HttpServer}.
+ *
+ * <p>
+ * The index stays warm between requests, so there is no JVM startup, JIT warmup or index rebuild per batch. Requests
+ * carry a single {@link Email} JSON object or an array of them and are answered with the matching {@link SpamVerdict}
+ * JSON object or array:
+ * </p>
+ * <ul>
+ *     <li>{@code POST /classify} adds the emails to the index and returns their verdicts, like
+ *     {@link OnlineSpamIndex#classify(Email)}.</li>
+ *     <li>{@code POST /score} returns the verdicts without adding the emails, like
+ *     {@link OnlineSpamIndex#score(Email)}.</li>
+ *     <li>{@code GET /metrics} returns the number of requests, emails and indexed emails, and the latency
+ *     percentiles of the recent requests in milliseconds.</li>
+ * </ul>
+ *
+ * <p>
+ * Scoring only reads the index, so {@code /score} requests run concurrently under the read lock of a
+ * {@link ReadWriteLock}. A {@code /classify} request takes the write lock only to append each email with
+ * {@link OnlineSpamIndex#add(Email)}, then downgrades it to the read lock to classify the email, so the scoring of an
+ * email never blocks the other requests.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * ExecutorService executor = Executors.newFixedThreadPool(8);
+ * SpamCheckServer server = new SpamCheckServer(new InetSocketAddress(8080), spamIndex, executor);
+ * server.start();
+ * // curl -X POST localhost:8080/classify -d '{"receiver": "john.doe@example.com", "body": "Claim your prize"}'
+ * }</pre>
+ */
+public class SpamCheckServer {
+    /**
+     * Number of most recent requests the latency percentiles are calculated over.
+     */
+    private static final int LATENCY_WINDOW = 10_000;
+
+    private static final Gson GSON = new Gson();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final OnlineSpamIndex spamIndex;
+
+    /**
+     * Guards the index: shared by scoring and classifying, exclusive when adding emails.
+     */
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+    private final LatencyRecorder latencies = new LatencyRecorder(LATENCY_WINDOW);
+    private final AtomicLong numOfEmails = new AtomicLong();
+    private final AtomicLong numOfErrors = new AtomicLong();
+
+    /**
+     * Constructs a server bound to the given address. It does not accept requests until {@link #start()} is called.
+     *
+     * @param address   The address to bind to, with port 0 for any free port.
+     * @param spamIndex The index the emails are scored against and added to. It must not be used by anyone else while
+     *                  the server runs.
+     * @param executor  The executor running the request handlers, shut down by {@link #stop(int)}.
+     * @throws IOException If the address cannot be bound.
+     */
+    public SpamCheckServer(InetSocketAddress address, OnlineSpamIndex spamIndex, ExecutorService executor)
+            throws IOException {
+        this.spamIndex = spamIndex;
+        this.executor = executor;
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/classify", exchange -> handleEmails(exchange, true));
+        server.createContext("/score", exchange -> handleEmails(exchange, false));
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Creates the executor of the request handlers.
+     *
+     * @param threads The number of threads, or "virtual" for a virtual thread per request, which needs Java 21.
+     * @return The executor.
+     * @throws IllegalArgumentException If the number of threads is invalid or virtual threads are not available.
+     */
+    public static ExecutorService createExecutor(String threads) {
+        if ("virtual".equals(threads)) {
+            try {
+                // Looked up reflectively as the project compiles for Java 8
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Virtual threads need Java 21 or later");
+            }
+        }
+        int numOfThreads;
+        try {
+            numOfThreads = Integer.parseInt(threads);
+        } catch (NumberFormatException e) {
+            numOfThreads = 0;
+        }
+        if (numOfThreads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + threads);
+        }
+        return Executors.newFixedThreadPool(numOfThreads);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits for the running ones up to the given delay and shuts the executor down.
+     *
+     * @param delaySeconds The maximum time to wait for running requests.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the port the server is bound to, useful when binding to port 0.
+     *
+     * @return The local port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the latencies of the scoring requests, as reported by the metrics endpoint.
+     *
+     * @return The latency recorder of the service.
+     */
+    public LatencyRecorder getLatencies() {
+        return latencies;
+    }
+
+    private void handleEmails(HttpExchange exchange, boolean addToIndex) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, error("Method not allowed"));
+                return;
+            }
+
+            JsonElement request;
+            Email[] emails;
+            try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                request = JsonParser.parseReader(reader);
+                if (request.isJsonArray()) {
+                    emails = GSON.fromJson(request, Email[].class);
+                } else if (request.isJsonObject()) {
+                    emails = new Email[]{GSON.fromJson(request, Email.class)};
+                } else {
+                    send(exchange, 400, error("Expected an email or an array of emails"));
+                    return;
+                }
+            } catch (JsonParseException e) {
+                send(exchange, 400, error("Malformed JSON"));
+                return;
+            }
+            for (Email email : emails) {
+                if (email == null || email.getBody() == null) {
+                    send(exchange, 400, error("Email body is missing"));
+                    return;
+                }
+            }
+
+            SpamVerdict[] verdicts = addToIndex ? classify(emails) : score(emails);
+            numOfEmails.addAndGet(emails.length);
+            send(exchange, 200, GSON.toJson(request.isJsonArray() ? verdicts : verdicts[0]));
+        } catch (RuntimeException e) {
+            numOfErrors.incrementAndGet();
+            send(exchange, 500, error("Internal error"));
+        } finally {
+            latencies.record(System.nanoTime() - start);
+        }
+    }
+
+    private SpamVerdict[] classify(Email[] emails) {
+        SpamVerdict[] verdicts = new SpamVerdict[emails.length];
+        for (int i = 0; i < emails.length; i++) {
+            final int emailIndex;
+            indexLock.writeLock().lock();
+            try {
+                emailIndex = spamIndex.add(emails[i]);
+                // Downgrade, so no email is added before this one is classified
+                indexLock.readLock().lock();
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            try {
+                verdicts[i] = spamIndex.classify(emailIndex);
+            } finally {
+                indexLock.readLock().unlock();
+            }
+        }
+        return verdicts;
+    }
+
+    private SpamVerdict[] score(Email[] emails) {
+        SpamVerdict[] verdicts = new SpamVerdict[emails.length];
+        indexLock.readLock().lock();
+        try {
+            for (int i = 0; i < emails.length; i++) {
+                verdicts[i] = spamIndex.score(emails[i]);
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        return verdicts;
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, error("Method not allowed"));
+            return;
+        }
+
+        int indexSize;
+        indexLock.readLock().lock();
+        try {
+            indexSize = spamIndex.size();
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        long[] percentiles = latencies.getPercentiles(50, 90, 99, 99.9);
+        JsonObject latencyMillis = new JsonObject();
+        latencyMillis.addProperty("p50", percentiles[0] / 1e6);
+        latencyMillis.addProperty("p90", percentiles[1] / 1e6);
+        latencyMillis.addProperty("p99", percentiles[2] / 1e6);
+        latencyMillis.addProperty("p999", percentiles[3] / 1e6);
+        latencyMillis.addProperty("max", latencies.getMax() / 1e6);
+
+        JsonObject metrics = new JsonObject();
+        metrics.addProperty("requests", latencies.getCount());
+        metrics.addProperty("errors", numOfErrors.get());
+        metrics.addProperty("emails", numOfEmails.get());
+        metrics.addProperty("indexSize", indexSize);
+        metrics.add("latencyMillis", latencyMillis);
+        send(exchange, 200, GSON.toJson(metrics));
+    }
+
+    private static String error(String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("error", message);
+        return GSON.toJson(error);
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] response = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(response);
+        }
+    }
+}
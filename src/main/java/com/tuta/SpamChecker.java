@@ -0,0 +1,538 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Runs the whole spam check over a JSON array of emails: indexing, TF-IDF vectors, similarities and classification.
+ *
+ * <p>
+ * All logging goes through a single {@link PrintWriter} and is filtered by {@link CheckerOptions#getVerbosity()}, so
+ * the per-email and per-pair lines that dominate the runtime on large inputs are only formatted when asked for.
+ * </p>
+ *
+ * <p>
+ * With {@link CheckerOptions#isMetricsEnabled()}, every stage of the run is measured by {@link PipelineMetrics} and
+ * the report is logged at the end, whatever the verbosity.
+ * </p>
+ *
+ * <p>
+ * With {@link CheckerOptions#isParallel()}, the streamed emails are indexed in batches, each tokenized on all cores by
+ * {@link CorpusIndex#addAll(Email[], java.util.concurrent.ExecutorService, int)} into the same index as a sequential
+ * build.
+ * </p>
+ *
+ * <p>
+ * With {@link CheckerOptions#getClustersPath()}, the emails linked by similar pairs are clustered into campaigns by
+ * {@link EmailClusters}, merged while the similar pairs are found, and the campaigns are written to that file.
+ * </p>
+ *
+ * <p>
+ * With {@link CheckerOptions#getHashBits()}, the words are hashed into buckets by a {@link FeatureHasher} instead of
+ * being kept in a vocabulary. {@link CheckerOptions#isHashReport()} then also indexes the emails with the exact
+ * vocabulary and logs how far the hashed similarities deviate from the exact ones.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * PrintWriter log = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.err)));
+ * SpamCheckResult result = new SpamChecker(options, log).check(reader);
+ * }</pre>
+ */
+public class SpamChecker {
+    /**
+     * Number of characters of a body kept to represent a campaign.
+     */
+    static final int PREVIEW_LENGTH = 200;
+
+    /**
+     * Number of emails indexed together when indexing in parallel, bounding the bodies kept while streaming.
+     */
+    static final int INDEX_BATCH_SIZE = 16384;
+
+    private final CheckerOptions options;
+
+    /**
+     * Writer receiving the logging, flushed at the end of every run.
+     */
+    private final PrintWriter log;
+
+    /**
+     * Metrics of the last run, disabled unless requested by the options.
+     */
+    private PipelineMetrics metrics = PipelineMetrics.DISABLED;
+
+    /**
+     * Constructs a spam checker.
+     *
+     * @param options The options of the run.
+     * @param log     The writer receiving the logging.
+     */
+    public SpamChecker(CheckerOptions options, PrintWriter log) {
+        this.options = options;
+        this.log = log;
+    }
+
+    /**
+     * Reads all emails and classifies them.
+     *
+     * @param reader The reader providing the JSON array of emails.
+     * @return The result of every email.
+     * @throws IOException              If the input cannot be read or the matrix or snapshot file cannot be written.
+     * @throws IllegalArgumentException If an option cannot be combined with another one, see
+     *                                  {@link CheckerOptions#validate()}.
+     */
+    public SpamCheckResult check(Reader reader) throws IOException {
+        final CheckerOptions.ScoringMode scoringMode = options.validate();
+        metrics = options.isMetricsEnabled() ? new PipelineMetrics(options.isJfrEvents()) : PipelineMetrics.DISABLED;
+        try {
+            SpamCheckResult result = run(reader, scoringMode);
+            if (metrics.isEnabled()) log.println(metrics.getReport());
+            return result;
+        } finally {
+            log.flush();
+        }
+    }
+
+    /**
+     * Returns the metrics of the last run.
+     *
+     * @return The metrics, {@link PipelineMetrics#DISABLED} if they were not requested.
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    private SpamCheckResult run(Reader reader, CheckerOptions.ScoringMode scoringMode) throws IOException {
+        final float similarityThreshold = options.getSimilarityThreshold();
+        final boolean logEmails = isLogged(CheckerOptions.Verbosity.VERBOSE);
+
+        // Stream the emails, tokenizing each one only once into the TF-IDF index without keeping its body
+        final MinHashLsh lsh = scoringMode == CheckerOptions.ScoringMode.LSH ? new MinHashLsh(options.getLshBands(),
+                options.getLshRows(), options.getLshShingleSize(), 42) : null;
+        final FeatureHasher hasher = options.getHashBits() > 0
+                ? new FeatureHasher(options.getHashBits(), options.isHashBigrams()) : null;
+        CorpusIndex corpusIndex = new CorpusIndex(hasher);
+        // The exact index the hashed similarities are compared to
+        final CorpusIndex exactIndex = hasher != null && options.isHashReport() ? new CorpusIndex() : null;
+        // The start of every body is kept to represent the campaigns
+        final List<String> bodyPreviews = options.getClustersPath() != null ? new ArrayList<>() : null;
+        final List<Email> batch = options.isParallel() ? new ArrayList<>() : null;
+        metrics.start(PipelineMetrics.Stage.PARSE);
+        final int numOfEmails = EmailStreamReader.readEmails(reader, email -> {
+            if (logEmails) {
+                log.println("\n--> Processing email");
+                log.println(email);
+            }
+            if (batch == null) {
+                addEmail(corpusIndex, email);
+            } else {
+                batch.add(email);
+                if (batch.size() == INDEX_BATCH_SIZE) addBatch(corpusIndex, batch);
+            }
+            if (exactIndex != null) exactIndex.add(email);
+            if (lsh != null) lsh.add(email.getBody());
+            if (bodyPreviews != null) bodyPreviews.add(getPreview(email.getBody()));
+        });
+        if (batch != null) addBatch(corpusIndex, batch);
+        metrics.stop(PipelineMetrics.Stage.PARSE, numOfEmails);
+        metrics.commitRecorded(PipelineMetrics.Stage.TOKENIZE);
+
+        // TF-IDF vectors, only of the first email of every group of identical bodies when deduplicating
+        metrics.start(PipelineMetrics.Stage.TFIDF);
+        final DuplicateGroups duplicates = options.isDedup() ? new DuplicateGroups(corpusIndex) : null;
+        SparseVector[] emailVectors = duplicates != null ? duplicates.getUniqueVectors() : corpusIndex.getVectors();
+        metrics.stop(PipelineMetrics.Stage.TFIDF, emailVectors.length);
+        if (hasher == null) {
+            info("\n--> Number of unique words: " + corpusIndex.getVocabularySize());
+        } else {
+            info("\n--> Number of hash buckets: " + corpusIndex.getVocabularySize());
+        }
+        if (duplicates != null) info("--> Number of unique bodies: " + duplicates.getNumOfUniqueBodies());
+        if (metrics.isEnabled()) {
+            long numOfPostings = 0;
+            for (SparseVector vector : emailVectors) numOfPostings += vector.size();
+            metrics.setVocabularySize(corpusIndex.getVocabularySize());
+            metrics.setTermMatrixSize(emailVectors.length, numOfPostings);
+        }
+        if (exactIndex != null) {
+            info("--> Number of unique words without hashing: " + exactIndex.getVocabularySize());
+            info("--> " + measureHashingDeviation(corpusIndex, exactIndex, similarityThreshold));
+        }
+
+        // Cosine Similarity calculation
+        if (scoringMode == CheckerOptions.ScoringMode.EARLY_EXIT) {
+            return classifyWithEarlyExits(corpusIndex, emailVectors);
+        }
+        if (scoringMode == CheckerOptions.ScoringMode.WORKERS) return classifyInWorkers(corpusIndex);
+
+        final EmailClusters clusters = bodyPreviews != null ? new EmailClusters(numOfEmails) : null;
+        SimilarityGraph similarityGraph;
+        // Only a matrix on the heap is saved with the snapshot, a mapped one is already backed by its own file
+        SymmetricMatrix similarityMatrix = null;
+        metrics.start(PipelineMetrics.Stage.SIMILARITY);
+        switch (scoringMode) {
+            case LSH:
+                similarityGraph = computeLshGraph(lsh, emailVectors, duplicates);
+                break;
+            case MATRIX:
+                SimilarityMatrix emailsSimilarity = computeMatrix(emailVectors);
+                similarityGraph = SimilarityGraph.fromMatrix(emailsSimilarity, similarityThreshold);
+                if (emailsSimilarity instanceof SymmetricMatrix) similarityMatrix = (SymmetricMatrix) emailsSimilarity;
+                if (emailsSimilarity instanceof Closeable) ((Closeable) emailsSimilarity).close();
+                break;
+            case ALL_PAIRS:
+                // Keep only the pairs above the threshold
+                info("\n--> Computing similarities" + (options.isParallel() ? " in parallel" : ""));
+                similarityGraph = new SimilarityEngine(options.isParallel()).computeGraph(emailVectors,
+                        similarityThreshold);
+                break;
+            default:
+                similarityGraph = computePostingsGraph(emailVectors, clusters);
+        }
+        // The postings merge the clusters while they find the pairs, the other modes once the graph is complete
+        if (clusters != null && scoringMode != CheckerOptions.ScoringMode.POSTINGS) clusters.addAll(similarityGraph);
+        metrics.stop(PipelineMetrics.Stage.SIMILARITY, (long) emailVectors.length * (emailVectors.length - 1) / 2);
+        metrics.setNumOfSimilarPairs(similarityGraph.getNumOfEdges());
+        info("--> Number of similar pairs: " + similarityGraph.getNumOfEdges());
+
+        if (duplicates != null) {
+            // The graph holds the pairs of the unique bodies, so expand its counts to all emails of every group
+            return classifyCounts(corpusIndex, duplicates.getSimilarCounts(similarityGraph, emailVectors));
+        }
+        saveSnapshot(corpusIndex, similarityGraph, similarityMatrix);
+        if (clusters != null) writeCampaigns(corpusIndex, clusters, bodyPreviews);
+        return classifyGraph(corpusIndex, similarityGraph);
+    }
+
+    /**
+     * Counts the similar emails while comparing all pairs, skipping the pairs that can no longer change a spam flag.
+     */
+    private SpamCheckResult classifyWithEarlyExits(CorpusIndex corpusIndex, SparseVector[] emailVectors)
+            throws IOException {
+        SimilarityEngine similarityEngine = new SimilarityEngine(options.isParallel());
+        info("\n--> Classifying with early exits" + (similarityEngine.isParallel() ? " in parallel" : ""));
+        metrics.start(PipelineMetrics.Stage.SIMILARITY);
+        SpamClassification classification = similarityEngine.classify(emailVectors,
+                options.getSimilarityThreshold(), options.getNumOfSimilarEmailsAllowed());
+        metrics.stop(PipelineMetrics.Stage.SIMILARITY, (long) corpusIndex.size() * (corpusIndex.size() - 1) / 2);
+        info("--> " + classification);
+        saveSnapshot(corpusIndex, null, null);
+        metrics.start(PipelineMetrics.Stage.CLASSIFY);
+        SpamCheckResult result = createResult(corpusIndex, classification.getSimilarCounts(),
+                classification.getSpamFlags());
+        metrics.stop(PipelineMetrics.Stage.CLASSIFY, corpusIndex.size());
+        return result;
+    }
+
+    /**
+     * Splits the pairs sharing a term into partitions computed by worker processes sharing a snapshot of the index.
+     */
+    private SpamCheckResult classifyInWorkers(CorpusIndex corpusIndex) throws IOException {
+        info("\n--> Computing similarities of pairs sharing a term in " + options.getNumOfWorkers()
+                + " worker processes");
+        metrics.start(PipelineMetrics.Stage.SIMILARITY);
+        int[] similarCounts = computeInWorkers(corpusIndex, options.getSimilarityThreshold());
+        metrics.stop(PipelineMetrics.Stage.SIMILARITY, (long) corpusIndex.size() * (corpusIndex.size() - 1) / 2);
+        long numOfSimilarPairs = 0;
+        for (int count : similarCounts) numOfSimilarPairs += count;
+        metrics.setNumOfSimilarPairs(numOfSimilarPairs / 2);
+        info("--> Number of similar pairs: " + numOfSimilarPairs / 2);
+        return classifyCounts(corpusIndex, similarCounts);
+    }
+
+    /**
+     * Compares only the candidate pairs found by MinHash LSH, all others are not similar. When deduplicating, only the
+     * first email of every group is paired, matching the unique vectors.
+     */
+    private SimilarityGraph computeLshGraph(MinHashLsh lsh, SparseVector[] emailVectors, DuplicateGroups duplicates) {
+        SimilarityEngine similarityEngine = new SimilarityEngine(options.isParallel());
+        int[] representatives = null;
+        if (duplicates != null) {
+            representatives = new int[duplicates.getNumOfUniqueBodies()];
+            for (int group = 0; group < representatives.length; group++) {
+                representatives[group] = duplicates.getRepresentative(group);
+            }
+        }
+        long[] candidatePairs = lsh.getCandidatePairs(representatives);
+        info("\n--> Number of candidate pairs: " + candidatePairs.length);
+        SimilarityGraph similarityGraph = similarityEngine.computeGraph(emailVectors, candidatePairs,
+                options.getSimilarityThreshold());
+
+        if (options.isLshRecall()) {
+            SymmetricMatrix exactSimilarity = new SymmetricMatrix(emailVectors.length);
+            similarityEngine.computeAll(emailVectors, exactSimilarity);
+            info("--> LSH " + MinHashLsh.measureRecall(exactSimilarity, candidatePairs,
+                    options.getSimilarityThreshold()));
+        }
+        return similarityGraph;
+    }
+
+    /**
+     * Keeps the similarity of every pair, in a matrix on the heap or mapped to a file.
+     */
+    private SimilarityMatrix computeMatrix(SparseVector[] emailVectors) throws IOException {
+        SimilarityEngine similarityEngine = new SimilarityEngine(options.isParallel());
+        info("\n--> Computing similarity matrix" + (similarityEngine.isParallel() ? " in parallel" : ""));
+        SimilarityMatrix emailsSimilarity = createSimilarityMatrix(emailVectors.length);
+        if (options.isAllPairs()) {
+            similarityEngine.computeAll(emailVectors, emailsSimilarity);
+        } else {
+            // Same matrix, computed block by block as the product of the TF-IDF matrix with its transpose
+            similarityEngine.computeAll(emailVectors, new InvertedIndex(emailVectors), emailsSimilarity);
+        }
+        return emailsSimilarity;
+    }
+
+    /**
+     * Only the pairs sharing a term can be above a non-negative threshold, so walk their postings. The clusters, if
+     * any, are merged by the tiles while they find the pairs.
+     */
+    private SimilarityGraph computePostingsGraph(SparseVector[] emailVectors, EmailClusters clusters) {
+        SimilarityEngine similarityEngine = new SimilarityEngine(options.isParallel());
+        info("\n--> Computing similarities of pairs sharing a term"
+                + (similarityEngine.isParallel() ? " in parallel" : ""));
+        InvertedIndex invertedIndex = new InvertedIndex(emailVectors);
+        return similarityEngine.computeGraph(emailVectors, invertedIndex, options.getSimilarityThreshold(),
+                getMaxDocFrequency(emailVectors.length), clusters);
+    }
+
+    /**
+     * Final Email Classification, walking only the similar emails of each email.
+     */
+    private SpamCheckResult classifyGraph(CorpusIndex corpusIndex, SimilarityGraph similarityGraph) {
+        final int numOfEmails = corpusIndex.size();
+        final int numOfSimilarEmailsAllowed = options.getNumOfSimilarEmailsAllowed();
+        metrics.start(PipelineMetrics.Stage.CLASSIFY);
+        boolean[] finalEmailSpamClassification = similarityGraph.classify(numOfSimilarEmailsAllowed);
+        if (isLogged(CheckerOptions.Verbosity.DEBUG)) {
+            log.println("\n--> Final classification");
+            for (int i = 0; i < numOfEmails; i++) {
+                int similarEmailsCount = 0;
+                for (int j : similarityGraph.getSimilarEmails(i)) {
+                    similarEmailsCount++;
+                    log.printf("--> Email %d is similar to %d%n", i, j);
+                    if (similarEmailsCount > numOfSimilarEmailsAllowed) {
+                        log.printf("--> Email %d tagged as SPAM%n", i);
+                        break;
+                    }
+                }
+                log.println();
+            }
+        }
+
+        int[] similarCounts = new int[numOfEmails];
+        for (int i = 0; i < numOfEmails; i++) {
+            similarCounts[i] = similarityGraph.getSimilarCount(i);
+        }
+        SpamCheckResult result = createResult(corpusIndex, similarCounts, finalEmailSpamClassification);
+        metrics.stop(PipelineMetrics.Stage.CLASSIFY, numOfEmails);
+        return result;
+    }
+
+    /**
+     * Tags every email with more similar emails than allowed as spam.
+     */
+    private SpamCheckResult classifyCounts(CorpusIndex corpusIndex, int[] similarCounts) {
+        metrics.start(PipelineMetrics.Stage.CLASSIFY);
+        boolean[] spam = new boolean[similarCounts.length];
+        for (int i = 0; i < similarCounts.length; i++) {
+            spam[i] = similarCounts[i] > options.getNumOfSimilarEmailsAllowed();
+        }
+        SpamCheckResult result = createResult(corpusIndex, similarCounts, spam);
+        metrics.stop(PipelineMetrics.Stage.CLASSIFY, similarCounts.length);
+        return result;
+    }
+
+    /**
+     * Compares the similar pairs of the hashed vectors of all emails to the ones of their exact vectors.
+     */
+    private FeatureHasher.DeviationReport measureHashingDeviation(CorpusIndex hashedIndex, CorpusIndex exactIndex,
+            float similarityThreshold) {
+        SimilarityEngine similarityEngine = new SimilarityEngine(options.isParallel());
+        SparseVector[] hashedVectors = hashedIndex.getVectors();
+        SparseVector[] exactVectors = exactIndex.getVectors();
+        SimilarityGraph hashedGraph;
+        SimilarityGraph exactGraph;
+        if (similarityThreshold < 0) {
+            hashedGraph = similarityEngine.computeGraph(hashedVectors, similarityThreshold);
+            exactGraph = similarityEngine.computeGraph(exactVectors, similarityThreshold);
+        } else {
+            hashedGraph = similarityEngine.computeGraph(hashedVectors, new InvertedIndex(hashedVectors),
+                    similarityThreshold, Integer.MAX_VALUE);
+            exactGraph = similarityEngine.computeGraph(exactVectors, new InvertedIndex(exactVectors),
+                    similarityThreshold, Integer.MAX_VALUE);
+        }
+        return FeatureHasher.measureDeviation(exactVectors, hashedVectors, exactGraph, hashedGraph,
+                options.getNumOfSimilarEmailsAllowed());
+    }
+
+    /**
+     * Computes the similar-counts with worker processes. The index is written to the snapshot file of the options, or
+     * to a temporary file otherwise, which the workers read. Their result files and logs are deleted afterwards.
+     */
+    private int[] computeInWorkers(CorpusIndex corpusIndex, float similarityThreshold) throws IOException {
+        final int numOfWorkers = options.getNumOfWorkers();
+        Path workDir = Files.createTempDirectory("spamchecker-partitions");
+        try {
+            // The workers read the saved snapshot, or a temporary one if none is saved
+            Path snapshotFile = saveSnapshot(corpusIndex, null, null);
+            if (snapshotFile == null) {
+                snapshotFile = workDir.resolve("index.snapshot");
+                new IndexSnapshot(corpusIndex, null, null).write(snapshotFile);
+            }
+
+            // Twice as many blocks as workers gives every worker several partitions to balance the load
+            PartitionCoordinator coordinator = new PartitionCoordinator(numOfWorkers, 2 * numOfWorkers);
+            if (options.isParallel()) {
+                coordinator.setThreadsPerWorker(Math.max(1, Runtime.getRuntime().availableProcessors() / numOfWorkers));
+            }
+            return coordinator.computeSimilarCounts(snapshotFile, corpusIndex.size(), similarityThreshold,
+                    getMaxDocFrequency(corpusIndex.size()), workDir);
+        } finally {
+            try (Stream<Path> files = Files.walk(workDir)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes every cluster of at least two emails to the campaign file, one JSON line per cluster, as it is
+     * enumerated. The representative of a cluster is its first email.
+     */
+    private void writeCampaigns(CorpusIndex corpusIndex, EmailClusters clusters, List<String> bodyPreviews)
+            throws IOException {
+        final Path clustersPath = Paths.get(options.getClustersPath());
+        final Gson gson = new Gson();
+        final int numOfCampaigns;
+        try (Writer writer = Files.newBufferedWriter(clustersPath, StandardCharsets.UTF_8)) {
+            numOfCampaigns = clusters.forEachCluster(2, (clusterId, members) -> {
+                String[] receivers = new String[members.length];
+                for (int i = 0; i < members.length; i++) {
+                    receivers[i] = corpusIndex.getReceiver(members[i]);
+                }
+                writer.write("{\"cluster\":" + clusterId + ",\"size\":" + members.length + ",\"emails\":"
+                        + gson.toJson(members) + ",\"receivers\":" + gson.toJson(receivers) + ",\"representative\":"
+                        + gson.toJson(bodyPreviews.get(members[0])) + "}\n");
+            });
+        }
+        info("--> " + numOfCampaigns + " campaigns written to " + clustersPath);
+    }
+
+    /**
+     * Returns the start of a body representing its campaign, at most {@link #PREVIEW_LENGTH} characters long.
+     */
+    private static String getPreview(String body) {
+        if (body == null) return null;
+        return body.length() <= PREVIEW_LENGTH ? body : body.substring(0, PREVIEW_LENGTH) + "...";
+    }
+
+    /**
+     * Returns the number of emails above which a term is skipped when comparing the pairs sharing a term.
+     */
+    private int getMaxDocFrequency(int numOfEmails) {
+        final float maxDocFrequencyRatio = options.getMaxDocFrequencyRatio();
+        return maxDocFrequencyRatio >= 1 ? Integer.MAX_VALUE : (int) (maxDocFrequencyRatio * numOfEmails);
+    }
+
+    /**
+     * Adds an email to the index, recording the time and allocations of tokenizing it when the metrics are enabled.
+     */
+    private void addEmail(CorpusIndex corpusIndex, Email email) {
+        if (!metrics.isEnabled()) {
+            corpusIndex.add(email);
+            return;
+        }
+        final long allocatedBytes = metrics.getThreadAllocatedBytes();
+        final long start = System.nanoTime();
+        final int emailIndex = corpusIndex.add(email);
+        final long nanos = System.nanoTime() - start;
+        metrics.record(PipelineMetrics.Stage.TOKENIZE, nanos, metrics.getThreadAllocatedBytes() - allocatedBytes,
+                corpusIndex.getNumOfWords()[emailIndex]);
+    }
+
+    /**
+     * Indexes a batch of emails on all cores and clears it, recording the time and allocations of all threads when the
+     * metrics are enabled.
+     */
+    private void addBatch(CorpusIndex corpusIndex, List<Email> batch) {
+        final Email[] emails = batch.toArray(new Email[0]);
+        batch.clear();
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        if (!metrics.isEnabled()) {
+            corpusIndex.addAll(emails, pool, pool.getParallelism());
+            return;
+        }
+        final int firstIndex = corpusIndex.size();
+        final long allocatedBytes = metrics.getAllocatedBytes();
+        final long start = System.nanoTime();
+        corpusIndex.addAll(emails, pool, pool.getParallelism());
+        final long nanos = System.nanoTime() - start;
+        long numOfWords = 0;
+        for (int i = firstIndex; i < corpusIndex.size(); i++) {
+            numOfWords += corpusIndex.getNumOfWords()[i];
+        }
+        metrics.record(PipelineMetrics.Stage.TOKENIZE, nanos,
+                Math.max(0, metrics.getAllocatedBytes() - allocatedBytes), numOfWords);
+    }
+
+    private SpamCheckResult createResult(CorpusIndex corpusIndex, int[] similarCounts, boolean[] spam) {
+        String[] receivers = new String[corpusIndex.size()];
+        for (int i = 0; i < receivers.length; i++) {
+            receivers[i] = corpusIndex.getReceiver(i);
+        }
+        SpamCheckResult result = new SpamCheckResult(receivers, similarCounts, spam);
+        info("--> " + result.getNumOfSpam() + " of " + receivers.length + " emails tagged as SPAM");
+        return result;
+    }
+
+    /**
+     * Saves the index, the similar pairs and the similarity matrix, if known, when a snapshot file is given.
+     *
+     * @return The snapshot file, or null if none is given.
+     */
+    private Path saveSnapshot(CorpusIndex corpusIndex, SimilarityGraph similarityGraph,
+            SymmetricMatrix similarityMatrix) throws IOException {
+        if (options.getSaveSnapshotPath() == null) return null;
+
+        Path snapshotFile = Paths.get(options.getSaveSnapshotPath());
+        info("--> Saving index snapshot to " + snapshotFile);
+        new IndexSnapshot(corpusIndex, similarityGraph, similarityMatrix).write(snapshotFile);
+        return snapshotFile;
+    }
+
+    private boolean isLogged(CheckerOptions.Verbosity verbosity) {
+        return options.getVerbosity().compareTo(verbosity) >= 0;
+    }
+
+    private void info(String message) {
+        if (isLogged(CheckerOptions.Verbosity.NORMAL)) log.println(message);
+    }
+
+    /**
+     * Creates the similarity matrix, memory-mapped if a matrix file is given and on the heap otherwise.
+     */
+    private SimilarityMatrix createSimilarityMatrix(int numOfEmails) throws IOException {
+        if (options.getMatrixFile() == null) return new SymmetricMatrix(numOfEmails);
+
+        info("\n--> Mapping similarity matrix to " + options.getMatrixFile()
+                + " (" + options.getMatrixEncoding() + ")");
+        return new MappedSymmetricMatrix(Paths.get(options.getMatrixFile()), numOfEmails, options.getMatrixEncoding());
+    }
+}
@@ -0,0 +1,103 @@
+package com.tuta;
+
+/**
+ * Spam flags of a corpus classified by {@link SimilarityEngine#classify(SparseVector[], float, int)}, together with
+ * how many comparisons the early exits saved.
+ *
+ * <p>
+ * The spam flags are exactly those of the full classification. The similar-counts are exact for emails that are not
+ * spam, while for spam emails they are lower bounds above the number of similar emails allowed, since comparisons
+ * between two emails already tagged as spam are skipped.
+ * </p>
+ */
+public class SpamClassification {
+    private final boolean[] spam;
+    private final int[] similarCounts;
+    private final long numOfPairs;
+    private final long numOfComparisons;
+    private final long numOfSkippedPairs;
+    private final long numOfPrunedPairs;
+
+    /**
+     * Constructs a classification.
+     *
+     * @param spam              The spam flag of each email.
+     * @param similarCounts     The number of similar emails found for each email.
+     * @param numOfPairs        The number of pairs of emails.
+     * @param numOfComparisons  The number of pairs whose similarity was computed.
+     * @param numOfSkippedPairs The number of pairs skipped because both emails were already spam.
+     * @param numOfPrunedPairs  The number of pairs skipped because their norms bound the similarity below the
+     *                          threshold.
+     */
+    SpamClassification(boolean[] spam, int[] similarCounts, long numOfPairs, long numOfComparisons,
+            long numOfSkippedPairs, long numOfPrunedPairs) {
+        this.spam = spam;
+        this.similarCounts = similarCounts;
+        this.numOfPairs = numOfPairs;
+        this.numOfComparisons = numOfComparisons;
+        this.numOfSkippedPairs = numOfSkippedPairs;
+        this.numOfPrunedPairs = numOfPrunedPairs;
+    }
+
+    /**
+     * Returns the number of classified emails.
+     *
+     * @return The number of emails.
+     */
+    public int size() {
+        return spam.length;
+    }
+
+    public boolean isSpam(int emailIndex) {
+        return spam[emailIndex];
+    }
+
+    public boolean[] getSpamFlags() {
+        return spam;
+    }
+
+    /**
+     * Returns the number of similar emails found for an email, which is exact unless the email is spam.
+     *
+     * @param emailIndex The index of the email.
+     * @return The number of similar emails found.
+     */
+    public int getSimilarCount(int emailIndex) {
+        return similarCounts[emailIndex];
+    }
+
+    public int[] getSimilarCounts() {
+        return similarCounts;
+    }
+
+    public long getNumOfPairs() {
+        return numOfPairs;
+    }
+
+    /**
+     * Returns the number of pairs whose similarity was computed.
+     */
+    public long getNumOfComparisons() {
+        return numOfComparisons;
+    }
+
+    /**
+     * Returns the number of pairs skipped because both emails were already tagged as spam.
+     */
+    public long getNumOfSkippedPairs() {
+        return numOfSkippedPairs;
+    }
+
+    /**
+     * Returns the number of pairs skipped because the bound on their similarity did not exceed the threshold.
+     */
+    public long getNumOfPrunedPairs() {
+        return numOfPrunedPairs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Compared %d of %d pairs, skipped %d spam pairs and pruned %d by their norms",
+                numOfComparisons, numOfPairs, numOfSkippedPairs, numOfPrunedPairs);
+    }
+}
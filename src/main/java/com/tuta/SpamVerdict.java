@@ -0,0 +1,47 @@
+package com.tuta;
+
+/**
+ * Represents the spam classification of a single email.
+ */
+public class SpamVerdict {
+    private final int emailIndex;
+    private final int similarEmailsCount;
+    private final boolean spam;
+
+    /**
+     * Constructs a verdict.
+     *
+     * @param emailIndex         The index of the email.
+     * @param similarEmailsCount The number of emails with a similarity above the threshold.
+     * @param spam               Whether the email is considered spam.
+     */
+    public SpamVerdict(int emailIndex, int similarEmailsCount, boolean spam) {
+        this.emailIndex = emailIndex;
+        this.similarEmailsCount = similarEmailsCount;
+        this.spam = spam;
+    }
+
+    public int getEmailIndex() {
+        return emailIndex;
+    }
+
+    public int getSimilarEmailsCount() {
+        return similarEmailsCount;
+    }
+
+    public boolean isSpam() {
+        return spam;
+    }
+
+    /**
+     * Returns a string representation of the verdict in the format:
+     * "Email [index]: [count] similar emails, spam: [Yes/No]"
+     *
+     * @return String representation of the verdict.
+     */
+    @Override
+    public String toString() {
+        return String.format("Email %d: %d similar emails, spam: %s", emailIndex, similarEmailsCount,
+                spam ? "Yes" : "No");
+    }
+}
@@ -0,0 +1,124 @@
+package com.tuta;
+
+import java.util.Arrays;
+
+/**
+ * Represents a sparse TF-IDF vector holding only the terms present in an email.
+ *
+ * <p>
+ * Terms are stored as strictly ascending integer term ids with their corresponding weights, so two vectors can be
+ * multiplied with a single merge pass whose cost is proportional to the number of terms in the emails rather than the
+ * size of the vocabulary. The Euclidean norm is calculated once on construction and cached.
+ * </p>
+ */
+public class SparseVector {
+    /**
+     * Strictly ascending term ids of the non-zero entries.
+     */
+    private final int[] termIds;
+
+    /**
+     * Weights of the non-zero entries, aligned with {@link #termIds}.
+     */
+    private final float[] weights;
+
+    /**
+     * Cached Euclidean norm of the vector.
+     */
+    private final double norm;
+
+    /**
+     * Constructs a sparse vector from term ids and their weights.
+     * The arrays are used as they are and must not be modified afterwards.
+     *
+     * @param termIds Strictly ascending term ids.
+     * @param weights The weight of each term id.
+     * @throws IllegalArgumentException If the arrays have different lengths or the term ids are not strictly ascending.
+     */
+    public SparseVector(int[] termIds, float[] weights) {
+        if (termIds.length != weights.length) {
+            throw new IllegalArgumentException("Term ids and weights must have the same length");
+        }
+        double sumOfSquares = 0;
+        for (int i = 0; i < termIds.length; i++) {
+            if (i > 0 && termIds[i] <= termIds[i - 1]) {
+                throw new IllegalArgumentException("Term ids must be strictly ascending");
+            }
+            sumOfSquares += (double) weights[i] * weights[i];
+        }
+        this.termIds = termIds;
+        this.weights = weights;
+        this.norm = Math.sqrt(sumOfSquares);
+    }
+
+    /**
+     * Returns the number of non-zero entries.
+     *
+     * @return The number of terms stored in the vector.
+     */
+    public int size() {
+        return termIds.length;
+    }
+
+    /**
+     * Returns the term ids of the non-zero entries, which must not be modified.
+     *
+     * @return The term ids in strictly ascending order.
+     */
+    public int[] getTermIds() {
+        return termIds;
+    }
+
+    /**
+     * Returns the weights of the non-zero entries, which must not be modified.
+     *
+     * @return The weights, aligned with {@link #getTermIds()}.
+     */
+    public float[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * Returns the weight of a term.
+     *
+     * @param termId The term id.
+     * @return The weight of the term, or 0 if the term is not present.
+     */
+    public float get(int termId) {
+        int position = Arrays.binarySearch(termIds, termId);
+        return position < 0 ? 0f : weights[position];
+    }
+
+    /**
+     * Returns the cached Euclidean norm of the vector.
+     *
+     * @return The Euclidean norm.
+     */
+    public double getNorm() {
+        return norm;
+    }
+
+    /**
+     * Calculates the dot product with another sparse vector by merging their ascending term ids.
+     *
+     * @param other The other vector.
+     * @return The dot product of both vectors.
+     */
+    public double dot(SparseVector other) {
+        final int[] otherTermIds = other.termIds;
+        final float[] otherWeights = other.weights;
+        double dotProduct = 0;
+        int i = 0;
+        int j = 0;
+        while (i < termIds.length && j < otherTermIds.length) {
+            if (termIds[i] < otherTermIds[j]) {
+                i++;
+            } else if (termIds[i] > otherTermIds[j]) {
+                j++;
+            } else {
+                dotProduct += (double) weights[i++] * otherWeights[j++];
+            }
+        }
+        return dotProduct;
+    }
+}
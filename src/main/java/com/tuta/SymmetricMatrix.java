@@ -7,10 +7,11 @@ import java.util.Arrays;
  * Represents a symmetric matrix and provides methods for setting and retrieving values.
  * The matrix is optimized for space by storing only the lower triangular part (excluding the diagonal),
  * as the diagonal values are always assumed to be 1.
- * The matrix is internally stored as a one-dimensional array.
+ * The matrix is internally stored as a one-dimensional array, so it is limited to about 65k emails and must fit on the
+ * heap. Use {@link MappedSymmetricMatrix} for larger corpora.
  * </p>
  */
-public class SymmetricMatrix {
+public class SymmetricMatrix implements SimilarityMatrix {
     /**
      * The one-dimensional array storing the data of the symmetric matrix.
      */
@@ -25,15 +26,29 @@ public class SymmetricMatrix {
      * Constructs a symmetric matrix with the specified size.
      *
      * @param symMatrixSize The size (number of rows or columns) of the symmetric matrix.
+     * @throws IllegalArgumentException If the lower triangular part does not fit into a Java array.
      */
     public SymmetricMatrix(int symMatrixSize) {
         // Calculate the size needed for the one-dimensional array
         this.symMatrixSize = symMatrixSize;
-        final int auxSize = symMatrixSize * (symMatrixSize - 1) / 2;
-        this.data = new float[auxSize];
+        final long auxSize = (long) symMatrixSize * (symMatrixSize - 1) / 2;
+        if (auxSize > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Matrix too large for an array");
+        }
+        this.data = new float[(int) auxSize];
         Arrays.fill(this.data, Float.NaN);
     }
 
+    /**
+     * Returns the size of the symmetric matrix.
+     *
+     * @return The number of rows or columns of the matrix.
+     */
+    @Override
+    public int size() {
+        return symMatrixSize;
+    }
+
     /**
      * Returns the one-dimensional array containing the data of the symmetric matrix.
      * The data represents the lower triangular part of the matrix stored in a one-dimensional array.
@@ -53,6 +68,7 @@ public class SymmetricMatrix {
      * @throws IllegalArgumentException If the row or column indices are invalid. Indices must be non-negative
      *                                  and less than the original matrix size.
      */
+    @Override
     public void set(int row, int col, float value) {
         // Ensure row and col are valid indices
         if (row < 0 || col < 0 || row >= symMatrixSize || col >= symMatrixSize) {
@@ -72,6 +88,7 @@ public class SymmetricMatrix {
      * @throws IllegalArgumentException If the row or column indices are invalid. Indices must be non-negative
      *                                  and less than the original matrix size.
      */
+    @Override
     public float get(int row, int col) {
         // Ensure row and col are valid indices
         if (row < 0 || col < 0 || row >= symMatrixSize || col >= symMatrixSize) {
@@ -104,8 +121,8 @@ public class SymmetricMatrix {
             row = temp;
         }
 
-        // Calculate the index in the one-dimensional array
-        return row * (row - 1) / 2 + col;
+        // Calculate the index in the one-dimensional array, in long as row * (row - 1) overflows an int
+        return (int) ((long) row * (row - 1) / 2 + col);
     }
 
     /**
@@ -0,0 +1,253 @@
+package com.tuta;
+
+import java.util.Arrays;
+
+/**
+ * Dictionary interning terms to dense integer ids, assigned in order of first appearance.
+ *
+ * <p>
+ * The characters of all terms are stored back to back in a single {@code char[]} pool and looked up through an
+ * open-addressing hash table of ids, so interning a term that is already known allocates nothing. Terms are only turned
+ * into {@link String} objects when {@link #getTerm(int)} is called.
+ * </p>
+ *
+ * <p>
+ * Note: This class is not thread-safe.
+ * </p>
+ */
+public class TermDictionary {
+    /**
+     * Marks an empty slot of the hash table.
+     */
+    private static final int EMPTY = -1;
+
+    /**
+     * Characters of all terms, stored back to back in id order.
+     */
+    private char[] pool;
+
+    /**
+     * Start of each term in the pool. The term with id {@code i} ends where the term {@code i + 1} starts.
+     */
+    private int[] offsets;
+
+    /**
+     * Hash of each term, kept so the table can be resized without rehashing the characters.
+     */
+    private int[] hashes;
+
+    /**
+     * Open-addressing hash table holding term ids, with {@link #EMPTY} for free slots. Its length is a power of two.
+     */
+    private int[] table;
+
+    /**
+     * Number of interned terms.
+     */
+    private int size;
+
+    /**
+     * Constructs an empty term dictionary.
+     */
+    public TermDictionary() {
+        this(1024);
+    }
+
+    /**
+     * Constructs an empty term dictionary sized for the given number of terms.
+     *
+     * @param expectedNumOfTerms The number of terms expected to be interned.
+     */
+    public TermDictionary(int expectedNumOfTerms) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedNumOfTerms * 2 - 1)) << 1;
+        this.pool = new char[Math.max(64, expectedNumOfTerms * 8)];
+        this.offsets = new int[Math.max(16, expectedNumOfTerms) + 1];
+        this.hashes = new int[Math.max(16, expectedNumOfTerms)];
+        this.table = new int[capacity];
+        Arrays.fill(this.table, EMPTY);
+    }
+
+    /**
+     * Restores a dictionary from its arrays, as written by {@link IndexSnapshot}. The arrays are used as they are.
+     */
+    TermDictionary(char[] pool, int[] offsets, int[] hashes, int[] table, int size) {
+        if (Integer.bitCount(table.length) != 1 || offsets.length < size + 1 || hashes.length < size) {
+            throw new IllegalArgumentException("Invalid dictionary arrays");
+        }
+        this.pool = pool;
+        this.offsets = offsets;
+        this.hashes = hashes;
+        this.table = table;
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of interned terms.
+     *
+     * @return The number of terms, which is also the next id to be assigned.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the id of a term, assigning the next id if the term is new.
+     *
+     * @param buffer The buffer holding the term characters.
+     * @param start  The index of the first character of the term.
+     * @param length The number of characters of the term.
+     * @return The id of the term.
+     */
+    public int intern(char[] buffer, int start, int length) {
+        return intern(buffer, start, length, hash(buffer, start, length));
+    }
+
+    /**
+     * Returns the id of a term whose hash is already known, e.g. from another dictionary, assigning the next id if the
+     * term is new.
+     */
+    int intern(char[] buffer, int start, int length, int hash) {
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int termId = table[slot];
+            if (termId == EMPTY) {
+                termId = add(buffer, start, length, hash);
+                table[slot] = termId;
+                if (size * 2 > table.length) rehash();
+                return termId;
+            }
+            if (hashes[termId] == hash && termEquals(termId, buffer, start, length)) return termId;
+        }
+    }
+
+    /**
+     * Returns the id of a term, assigning the next id if the term is new.
+     *
+     * @param term The term.
+     * @return The id of the term.
+     */
+    public int intern(String term) {
+        return intern(term.toCharArray(), 0, term.length());
+    }
+
+    /**
+     * Returns the id of a term without interning it.
+     *
+     * @param term The term.
+     * @return The id of the term, or -1 if the term is unknown.
+     */
+    public int getId(CharSequence term) {
+        int length = term.length();
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + term.charAt(i);
+        }
+        hash = mix(hash);
+
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int termId = table[slot];
+            if (termId == EMPTY) return -1;
+            if (hashes[termId] == hash && termEquals(termId, term)) return termId;
+        }
+    }
+
+    /**
+     * Returns the term of an id.
+     *
+     * @param termId The term id.
+     * @return The term the id was assigned to.
+     * @throws IllegalArgumentException If the id was never assigned.
+     */
+    public String getTerm(int termId) {
+        if (termId < 0 || termId >= size) {
+            throw new IllegalArgumentException("Invalid term id");
+        }
+        return new String(pool, offsets[termId], offsets[termId + 1] - offsets[termId]);
+    }
+
+    char[] getPool() {
+        return pool;
+    }
+
+    int[] getOffsets() {
+        return offsets;
+    }
+
+    int[] getHashes() {
+        return hashes;
+    }
+
+    int[] getTable() {
+        return table;
+    }
+
+    /**
+     * Appends a new term to the pool and returns its id.
+     */
+    private int add(char[] buffer, int start, int length, int hash) {
+        if (size + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            hashes = Arrays.copyOf(hashes, offsets.length);
+        }
+        int poolEnd = offsets[size];
+        if (poolEnd + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolEnd + length));
+        }
+        System.arraycopy(buffer, start, pool, poolEnd, length);
+        hashes[size] = hash;
+        offsets[size + 1] = poolEnd + length;
+        return size++;
+    }
+
+    /**
+     * Doubles the hash table and reinserts all term ids.
+     */
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        Arrays.fill(newTable, EMPTY);
+        int mask = newTable.length - 1;
+        for (int termId = 0; termId < size; termId++) {
+            int slot = hashes[termId] & mask;
+            while (newTable[slot] != EMPTY) slot = (slot + 1) & mask;
+            newTable[slot] = termId;
+        }
+        table = newTable;
+    }
+
+    private boolean termEquals(int termId, char[] buffer, int start, int length) {
+        int offset = offsets[termId];
+        if (offsets[termId + 1] - offset != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (pool[offset + i] != buffer[start + i]) return false;
+        }
+        return true;
+    }
+
+    private boolean termEquals(int termId, CharSequence term) {
+        int offset = offsets[termId];
+        if (offsets[termId + 1] - offset != term.length()) return false;
+        for (int i = 0; i < term.length(); i++) {
+            if (pool[offset + i] != term.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int hash(char[] buffer, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Spreads the bits of a polynomial hash so that linear probing on a power-of-two table stays short.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+}
@@ -8,6 +8,10 @@ import java.util.regex.Pattern;
  * Utility class providing various text processing methods.
  */
 public class TextUtils {
+    /**
+     * Pattern matching the punctuation character at the end of a word.
+     */
+    private static final Pattern PUNCTUATION_AT_WORD_END = Pattern.compile("\\p{Punct}$");
 
     /**
      * Removes any trailing punctuation from the end of a given word in the input text.
@@ -19,9 +23,7 @@ public class TextUtils {
     public static String removePunctuationAtWordEnd(String input) {
         if (input == null || input.isEmpty()) return input;
 
-        String regex = "\\p{Punct}$";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(input);
+        Matcher matcher = PUNCTUATION_AT_WORD_END.matcher(input);
 
         return matcher.replaceAll("");
     }
@@ -89,4 +91,15 @@ public class TextUtils {
         String[] words = textBody.split("\\s+");
         return words.length;
     }
+
+    /**
+     * Checks whether a character is one of the ASCII punctuation characters matched by {@code \p{Punct}}:
+     * {@code !"#$%&'()*+,-./:;<=>?@[\]^_`{|}~}.
+     *
+     * @param c The character to check.
+     * @return True if the character is an ASCII punctuation character.
+     */
+    public static boolean isPunctuation(char c) {
+        return (c >= '!' && c <= '/') || (c >= ':' && c <= '@') || (c >= '[' && c <= '`') || (c >= '{' && c <= '~');
+    }
 }
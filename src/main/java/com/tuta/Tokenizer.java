@@ -0,0 +1,197 @@
+package com.tuta;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+/**
+ * Streaming tokenizer applying the cleaning rules of {@link TextUtils#getCleanWords(String)} without regular expressions.
+ *
+ * <p>
+ * The text is scanned once: words are split on the whitespace characters of {@code \s}, lowercased and stripped of a
+ * single trailing punctuation character of {@code \p{Punct}}. Each cleaned word is written into a reusable buffer and
+ * either handed to a {@link TokenConsumer} or interned to an integer id through a {@link TermDictionary}, so known words
+ * are tokenized without allocating. Words containing non-ASCII characters fall back to {@link String#toLowerCase()} to
+ * keep the exact same results.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * Tokenizer tokenizer = new Tokenizer(new TermDictionary());
+ * int numOfWords = tokenizer.tokenizeTermIds(email.getBody(), termId -> counts[termId]++);
+ * }</pre>
+ *
+ * <p>
+ * Note: This class is not thread-safe, use one tokenizer per thread.
+ * </p>
+ */
+public class Tokenizer {
+    /**
+     * Receives the cleaned words of a text.
+     */
+    public interface TokenConsumer {
+        /**
+         * Called for every cleaned word, in order.
+         *
+         * @param buffer The buffer holding the word. It is reused for the next word.
+         * @param length The number of characters of the word.
+         */
+        void accept(char[] buffer, int length);
+    }
+
+    /**
+     * The dictionary tokens are interned to, or null if the tokenizer only produces characters.
+     */
+    private final TermDictionary dictionary;
+
+    /**
+     * Whether ASCII letters can be lowercased directly. Not the case for locales with special casing rules for
+     * ASCII letters, such as the Turkish dotless i.
+     */
+    private final boolean asciiLowerCase;
+
+    /**
+     * Reusable buffer holding the current word.
+     */
+    private char[] buffer = new char[64];
+
+    /**
+     * Constructs a tokenizer producing characters only.
+     */
+    public Tokenizer() {
+        this(null);
+    }
+
+    /**
+     * Constructs a tokenizer interning words to the given dictionary.
+     *
+     * @param dictionary The dictionary words are interned to.
+     */
+    public Tokenizer(TermDictionary dictionary) {
+        this.dictionary = dictionary;
+        String language = Locale.getDefault().getLanguage();
+        this.asciiLowerCase = !"tr".equals(language) && !"az".equals(language) && !"lt".equals(language);
+    }
+
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Tokenizes a text, interning every cleaned word to the dictionary of this tokenizer.
+     *
+     * @param text           The text to tokenize.
+     * @param termIdConsumer Receives the term id of every cleaned word, in order.
+     * @return The number of words, as counted by {@link TextUtils#countNumOfWords(String)}.
+     * @throws IllegalStateException If the tokenizer has no dictionary.
+     */
+    public int tokenizeTermIds(CharSequence text, IntConsumer termIdConsumer) {
+        if (dictionary == null) {
+            throw new IllegalStateException("Tokenizer has no dictionary");
+        }
+        return tokenize(text, (word, length) -> termIdConsumer.accept(dictionary.intern(word, 0, length)));
+    }
+
+    /**
+     * Tokenizes a text, handing the characters of every cleaned word to the given consumer.
+     *
+     * <p>
+     * Words are produced exactly like {@code text.split("\\s+")}: leading whitespace yields one empty word, while
+     * trailing whitespace yields none, and an empty text yields a single empty word.
+     * </p>
+     *
+     * @param text          The text to tokenize.
+     * @param tokenConsumer Receives the characters of every cleaned word, in order.
+     * @return The number of words, as counted by {@link TextUtils#countNumOfWords(String)}.
+     */
+    public int tokenize(CharSequence text, TokenConsumer tokenConsumer) {
+        final int textLength = text.length();
+        if (textLength == 0) {
+            tokenConsumer.accept(buffer, 0);
+            return 1;
+        }
+
+        int numOfWords = 0;
+        int position = 0;
+        if (isWhitespace(text.charAt(0))) {
+            while (position < textLength && isWhitespace(text.charAt(position))) position++;
+            if (position == textLength) return 0;
+            tokenConsumer.accept(buffer, 0);
+            numOfWords++;
+        }
+
+        while (position < textLength) {
+            int start = position;
+            boolean ascii = true;
+            while (position < textLength) {
+                char c = text.charAt(position);
+                if (isWhitespace(c)) break;
+                ascii &= c < 128;
+                position++;
+            }
+            int length = clean(text, start, position, ascii);
+            tokenConsumer.accept(buffer, length);
+            numOfWords++;
+            while (position < textLength && isWhitespace(text.charAt(position))) position++;
+        }
+        return numOfWords;
+    }
+
+    /**
+     * Writes the lowercased word into the buffer and strips its trailing punctuation.
+     *
+     * @return The length of the cleaned word.
+     */
+    private int clean(CharSequence text, int start, int end, boolean ascii) {
+        int length = end - start;
+        if (ascii && asciiLowerCase) {
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(start + i);
+                buffer[i] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+            }
+        } else {
+            String lowerCase = text.subSequence(start, end).toString().toLowerCase();
+            length = lowerCase.length();
+            ensureCapacity(length);
+            lowerCase.getChars(0, length, buffer, 0);
+        }
+        return removePunctuationAtWordEnd(buffer, length);
+    }
+
+    /**
+     * Removes the punctuation character matched by {@code \p{Punct}$}, which is either the last character or the one
+     * right before a final line terminator.
+     *
+     * @return The new length of the word.
+     */
+    private static int removePunctuationAtWordEnd(char[] word, int length) {
+        if (length == 0) return 0;
+        if (TextUtils.isPunctuation(word[length - 1])) return length - 1;
+        if (length >= 2 && isLineTerminator(word[length - 1]) && TextUtils.isPunctuation(word[length - 2])) {
+            word[length - 2] = word[length - 1];
+            return length - 1;
+        }
+        return length;
+    }
+
+    private void ensureCapacity(int length) {
+        if (length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+        }
+    }
+
+    /**
+     * Checks for the whitespace characters matched by {@code \s}.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    /**
+     * Checks for the line terminators that are not whitespace, which are the only ones that can end a word.
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
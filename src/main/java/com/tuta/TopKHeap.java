@@ -0,0 +1,150 @@
+package com.tuta;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heap keeping the {@code k} most similar emails offered to it, in two primitive arrays.
+ *
+ * <p>
+ * The root of the heap is the least similar email kept, so an offered email only enters the heap if it is more
+ * similar than the root, replacing it in O(log k). Emails of equal similarity are ranked by ascending email index,
+ * which makes the kept emails independent of the order they are offered in. The heap can be cleared and refilled, so
+ * a single heap serves all queries of a thread.
+ * </p>
+ *
+ * Usage Example:
+ * <pre>{@code
+ * TopKHeap heap = new TopKHeap(10);
+ * for (int i = 0; i < vectors.length; i++) {
+ *     heap.offer(i, SimilarityUtils.calcCosineSimilarity(query, vectors[i]));
+ * }
+ * Neighbors neighbors = heap.toNeighbors();
+ * }</pre>
+ */
+public class TopKHeap {
+    private final int[] emailIndices;
+    private final float[] similarities;
+    private int size;
+
+    /**
+     * Constructs an empty heap.
+     *
+     * @param capacity The number of emails kept, {@code k}.
+     * @throws IllegalArgumentException If the capacity is not positive.
+     */
+    public TopKHeap(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Number of neighbors must be positive");
+        }
+        emailIndices = new int[capacity];
+        similarities = new float[capacity];
+    }
+
+    public int getCapacity() {
+        return emailIndices.length;
+    }
+
+    /**
+     * Returns the number of emails kept so far.
+     *
+     * @return The number of emails, at most the capacity.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the similarity of the least similar email kept, which an offered email must reach once the heap is full.
+     *
+     * @return The lowest similarity, or negative infinity if the heap is empty.
+     */
+    public float getLowestSimilarity() {
+        return size == 0 ? Float.NEGATIVE_INFINITY : similarities[0];
+    }
+
+    /**
+     * Removes all emails.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Offers an email, which is kept if the heap is not full or the email ranks above the least similar email kept.
+     *
+     * @param emailIndex The index of the email.
+     * @param similarity The similarity of the email.
+     * @return True if the email was kept.
+     */
+    public boolean offer(int emailIndex, float similarity) {
+        if (size < emailIndices.length) {
+            // Sift the new email up from the last leaf
+            int child = size++;
+            while (child > 0) {
+                final int parent = (child - 1) >>> 1;
+                if (!ranksBelow(emailIndex, similarity, emailIndices[parent], similarities[parent])) break;
+                emailIndices[child] = emailIndices[parent];
+                similarities[child] = similarities[parent];
+                child = parent;
+            }
+            emailIndices[child] = emailIndex;
+            similarities[child] = similarity;
+            return true;
+        }
+        if (!ranksBelow(emailIndices[0], similarities[0], emailIndex, similarity)) return false;
+
+        // Replace the root and sift it down
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size) break;
+            if (child + 1 < size
+                    && ranksBelow(emailIndices[child + 1], similarities[child + 1], emailIndices[child],
+                    similarities[child])) {
+                child++;
+            }
+            if (!ranksBelow(emailIndices[child], similarities[child], emailIndex, similarity)) break;
+            emailIndices[parent] = emailIndices[child];
+            similarities[parent] = similarities[child];
+            parent = child;
+        }
+        emailIndices[parent] = emailIndex;
+        similarities[parent] = similarity;
+        return true;
+    }
+
+    /**
+     * Returns the kept emails ranked from the most similar one, leaving the heap unchanged.
+     *
+     * @return The neighbors held by the heap.
+     */
+    public Neighbors toNeighbors() {
+        // Sort keys ascending by rank: the similarity in the high half, the inverted email index in the low half
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            int bits = Float.floatToIntBits(similarities[i] + 0f);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            keys[i] = ((long) bits << 32) | (~emailIndices[i] & 0xffffffffL);
+        }
+        Arrays.sort(keys);
+
+        int[] sortedIndices = new int[size];
+        float[] sortedSimilarities = new float[size];
+        for (int i = 0; i < size; i++) {
+            final long key = keys[size - 1 - i];
+            int bits = (int) (key >> 32);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            sortedIndices[i] = ~(int) key;
+            sortedSimilarities[i] = Float.intBitsToFloat(bits);
+        }
+        return new Neighbors(sortedIndices, sortedSimilarities);
+    }
+
+    /**
+     * Returns whether the first email ranks below the second one: it is less similar, or equally similar with a higher
+     * email index.
+     */
+    private static boolean ranksBelow(int emailIndex, float similarity, int otherIndex, float otherSimilarity) {
+        return similarity < otherSimilarity || (similarity == otherSimilarity && emailIndex > otherIndex);
+    }
+}
@@ -1,6 +1,15 @@
 package com.tuta;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 /**
  * Unit test for simple App.
@@ -19,4 +28,23 @@ class AppTest
     @Test
     void main() {
     }
+
+    @Test
+    void runBatch(@TempDir Path tempDir) throws IOException {
+        Path output = tempDir.resolve("result.csv");
+
+        int exitCode = App.runBatch(new String[]{"--input", "emails-sm.json", "--output", output.toString(),
+                "--format", "csv", "--quiet"});
+
+        assertThat(exitCode).isZero();
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(11).startsWith("index,receiver,spam,similarCount");
+        assertThat(lines.get(1)).isEqualTo("0,john.doe@example.com,false,0");
+    }
+
+    @Test
+    void runBatchInvalidArguments() {
+        assertThat(App.runBatch(new String[]{"--threshold", "0.3"})).isEqualTo(2);
+        assertThat(App.runBatch(new String[]{"--input", "missing.json", "--quiet"})).isEqualTo(1);
+    }
 }
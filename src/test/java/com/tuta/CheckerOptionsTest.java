@@ -0,0 +1,189 @@
+package com.tuta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CheckerOptionsTest {
+
+    @Test
+    void parseDefaults() {
+        CheckerOptions options = CheckerOptions.parse(new String[]{"--input", "emails.json"});
+
+        assertThat(options.getInputPath()).isEqualTo("emails.json");
+        assertThat(options.getOutputPath()).isNull();
+        assertThat(options.getSimilarityThreshold()).isEqualTo(0.32f);
+        assertThat(options.getNumOfSimilarEmailsAllowed()).isEqualTo(1);
+        assertThat(options.getVerbosity()).isEqualTo(CheckerOptions.Verbosity.NORMAL);
+        assertThat(options.getOutputFormat()).isEqualTo(CheckerOptions.OutputFormat.JSONL);
+        assertThat(options.isLshEnabled()).isFalse();
+        assertThat(options.isMatrixStore()).isFalse();
+        assertThat(options.isAllPairs()).isFalse();
+        assertThat(options.getMaxDocFrequencyRatio()).isEqualTo(1f);
+        assertThat(options.isMetricsEnabled()).isFalse();
+        assertThat(options.isJfrEvents()).isFalse();
+        assertThat(options.getNumOfWorkers()).isZero();
+        assertThat(options.isDedup()).isFalse();
+        assertThat(options.getClustersPath()).isNull();
+        assertThat(options.getHashBits()).isZero();
+        assertThat(options.isHashBigrams()).isFalse();
+        assertThat(options.isHashReport()).isFalse();
+    }
+
+    @Test
+    void parseAllOptions() {
+        CheckerOptions options = CheckerOptions.parse(new String[]{
+                "--input", "in.json", "--output", "out.csv", "--threshold", "0.5", "--allowed", "3",
+                "--format", "csv", "--verbosity", "debug", "--sequential", "--matrix-file", "matrix.bin",
+                "--matrix-encoding", "float16", "--save-snapshot", "index.snapshot", "--all-pairs", "--metrics",
+                "--clusters", "campaigns.jsonl"
+        });
+
+        assertThat(options.getOutputPath()).isEqualTo("out.csv");
+        assertThat(options.getSimilarityThreshold()).isEqualTo(0.5f);
+        assertThat(options.getNumOfSimilarEmailsAllowed()).isEqualTo(3);
+        assertThat(options.getOutputFormat()).isEqualTo(CheckerOptions.OutputFormat.CSV);
+        assertThat(options.getVerbosity()).isEqualTo(CheckerOptions.Verbosity.DEBUG);
+        assertThat(options.isParallel()).isFalse();
+        assertThat(options.isMatrixStore()).isTrue();
+        assertThat(options.getMatrixFile()).isEqualTo("matrix.bin");
+        assertThat(options.getMatrixEncoding()).isEqualTo(MappedSymmetricMatrix.Encoding.FLOAT16);
+        assertThat(options.getSaveSnapshotPath()).isEqualTo("index.snapshot");
+        assertThat(options.isAllPairs()).isTrue();
+        assertThat(options.isMetricsEnabled()).isTrue();
+        assertThat(options.isJfrEvents()).isFalse();
+        assertThat(options.getClustersPath()).isEqualTo("campaigns.jsonl");
+        assertThat(options.validate()).isEqualTo(CheckerOptions.ScoringMode.MATRIX);
+    }
+
+    @Test
+    void parseLshOptions() {
+        CheckerOptions options = CheckerOptions.parse(new String[]{"--input", "in.json", "--lsh", "--lsh-bands", "16",
+                "--lsh-rows", "4", "--lsh-shingle", "2", "--lsh-recall"});
+
+        assertThat(options.isLshEnabled()).isTrue();
+        assertThat(options.getLshBands()).isEqualTo(16);
+        assertThat(options.getLshRows()).isEqualTo(4);
+        assertThat(options.getLshShingleSize()).isEqualTo(2);
+        assertThat(options.isLshRecall()).isTrue();
+    }
+
+    @ParameterizedTest(name = "Test case {index} - {0}")
+    @CsvSource(delimiter = ';', value = {
+            "--input a.json; POSTINGS",
+            "--input a.json --max-df 0.5 --clusters c.jsonl; POSTINGS",
+            "--input a.json --dedup --hash-bits 16; POSTINGS",
+            "--input a.json --all-pairs --dedup; ALL_PAIRS",
+            "--input a.json --threshold -1 --clusters c.jsonl; ALL_PAIRS",
+            "--input a.json --lsh --dedup --lsh-recall; LSH",
+            "--input a.json --lsh --clusters c.jsonl; LSH",
+            "--input a.json --matrix --all-pairs --save-snapshot a.snapshot; MATRIX",
+            "--input a.json --early-exit --all-pairs --hash-bits 16; EARLY_EXIT",
+            "--input a.json --workers 4 --max-df 0.5 --save-snapshot a.snapshot; WORKERS"
+    })
+    void validateScoringMode(String args, CheckerOptions.ScoringMode scoringMode) {
+        CheckerOptions options = CheckerOptions.parse(args.split(" "));
+
+        assertThat(options.validate()).isEqualTo(scoringMode);
+        assertThat(options.getMaxDocFrequencyRatio()).isEqualTo(args.contains("--max-df") ? 0.5f : 1);
+    }
+
+    @Test
+    void validateOptionsSetOneByOne() {
+        CheckerOptions options = new CheckerOptions();
+        options.setLshEnabled(true);
+        options.setDedup(true);
+        assertThat(options.validate()).isEqualTo(CheckerOptions.ScoringMode.LSH);
+
+        options.setEarlyExit(true);
+        assertThatThrownBy(options::validate)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Option --early-exit cannot be combined with --lsh");
+
+        options = new CheckerOptions();
+        options.setNumOfWorkers(2);
+        options.setHashBits(16);
+        assertThatThrownBy(options::validate)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Option --hash-bits cannot be combined with --workers");
+    }
+
+    @Test
+    void parseHashing() {
+        CheckerOptions options = CheckerOptions.parse(new String[]{"--input", "in.json", "--hash-bits", "20",
+                "--hash-bigrams", "--hash-report"});
+
+        assertThat(options.getHashBits()).isEqualTo(20);
+        assertThat(options.isHashBigrams()).isTrue();
+        assertThat(options.isHashReport()).isTrue();
+    }
+
+    @Test
+    void jfrImpliesMetrics() {
+        CheckerOptions options = CheckerOptions.parse(new String[]{"--input", "in.json", "--jfr"});
+
+        assertThat(options.isMetricsEnabled()).isTrue();
+        assertThat(options.isJfrEvents()).isTrue();
+    }
+
+    @Test
+    void parseServe() {
+        CheckerOptions options = CheckerOptions.parse(new String[]{"--serve", "--port", "0", "--threads", "virtual",
+                "--epoch-growth", "0.5", "--load-snapshot", "index.snapshot"});
+
+        assertThat(options.isServe()).isTrue();
+        assertThat(options.getInputPath()).isNull();
+        assertThat(options.getPort()).isZero();
+        assertThat(options.getThreads()).isEqualTo("virtual");
+        assertThat(options.getEpochGrowth()).isEqualTo(0.5f);
+        assertThat(options.getLoadSnapshotPath()).isEqualTo("index.snapshot");
+    }
+
+    @ParameterizedTest(name = "Test case {index} - {0}")
+    @CsvSource(delimiter = ';', value = {
+            "--threshold 0.3; Missing option: --input",
+            "--input a.json --bogus; Unknown option: --bogus",
+            "--input; Missing value of option: --input",
+            "--input a.json --threshold high; Invalid value of option --threshold: high",
+            "--input a.json --allowed 1.5; Invalid value of option --allowed: 1.5",
+            "--input a.json --format xml; Invalid value of option --format: xml",
+            "--input a.json --max-df 0; Invalid value of option --max-df: 0",
+            "--input a.json --workers -1; Invalid value of option --workers: -1",
+            "--input a.json --hash-bits 25; Invalid value of option --hash-bits: 25",
+            "--input a.json --hash-bits 16 --save-snapshot a.snapshot; "
+                    + "Option --save-snapshot cannot be combined with --hash-bits",
+            "--input a.json --lsh --matrix; Option --matrix cannot be combined with --lsh",
+            "--input a.json --lsh --all-pairs; Option --all-pairs cannot be combined with --lsh",
+            "--input a.json --lsh --max-df 0.5; Option --max-df cannot be combined with --lsh",
+            "--input a.json --matrix --max-df 0.5; Option --max-df cannot be combined with --matrix",
+            "--input a.json --all-pairs --max-df 0.5; Option --max-df cannot be combined with --all-pairs",
+            "--input a.json --threshold -1 --max-df 0.5; "
+                    + "Option --max-df cannot be combined with a negative --threshold",
+            "--input a.json --early-exit --lsh; Option --early-exit cannot be combined with --lsh",
+            "--input a.json --early-exit --matrix-file m.bin; Option --early-exit cannot be combined with --matrix",
+            "--input a.json --early-exit --max-df 0.5; Option --early-exit cannot be combined with --max-df",
+            "--input a.json --workers 2 --lsh; Option --workers cannot be combined with --lsh",
+            "--input a.json --workers 2 --matrix; Option --workers cannot be combined with --matrix",
+            "--input a.json --workers 2 --all-pairs; Option --workers cannot be combined with --all-pairs",
+            "--input a.json --workers 2 --early-exit; Option --workers cannot be combined with --early-exit",
+            "--input a.json --workers 2 --threshold -1; "
+                    + "Option --workers cannot be combined with a negative --threshold",
+            "--input a.json --dedup --matrix; Option --dedup cannot be combined with --matrix",
+            "--input a.json --dedup --early-exit; Option --dedup cannot be combined with --early-exit",
+            "--input a.json --dedup --workers 2; Option --dedup cannot be combined with --workers",
+            "--input a.json --dedup --max-df 0.5; Option --dedup cannot be combined with --max-df",
+            "--input a.json --dedup --save-snapshot a.snapshot; Option --save-snapshot cannot be combined with --dedup",
+            "--input a.json --clusters c.jsonl --early-exit; Option --clusters cannot be combined with --early-exit",
+            "--input a.json --clusters c.jsonl --workers 2; Option --clusters cannot be combined with --workers",
+            "--input a.json --clusters c.jsonl --dedup; Option --clusters cannot be combined with --dedup",
+            "--input a.json --hash-bits 16 --workers 2; Option --hash-bits cannot be combined with --workers"
+    })
+    void parseInvalidArguments(String args, String message) {
+        assertThatThrownBy(() -> CheckerOptions.parse(args.split(" ")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(message);
+    }
+}
@@ -0,0 +1,259 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class CorpusIndexTest {
+    private Email[] sampleEmails;
+    private CorpusIndex corpusIndex;
+
+    @BeforeEach
+    void setUp() {
+        sampleEmails = new Email[]{
+                new Email("John", "This is email 1."),
+                new Email("Jane", "This is email 2."),
+                new Email("Jack", "Email 3 has some unique words, unique!"),
+        };
+        corpusIndex = new CorpusIndex(sampleEmails);
+    }
+
+    @Test
+    void size() {
+        assertThat(corpusIndex.size()).isEqualTo(3);
+        assertThat(corpusIndex.getVocabularySize()).isEqualTo(10);
+        assertThat(corpusIndex.getReceiver(1)).isEqualTo("Jane");
+    }
+
+    @Test
+    void addMatchesConstructor() {
+        CorpusIndex incrementalIndex = new CorpusIndex();
+        for (int i = 0; i < 100; i++) {
+            for (Email email : sampleEmails) {
+                assertThat(incrementalIndex.add(email)).isEqualTo(incrementalIndex.size() - 1);
+            }
+        }
+        assertThat(incrementalIndex.size()).isEqualTo(300);
+        assertThat(incrementalIndex.getReceiver(299)).isEqualTo("Jack");
+        assertThat(incrementalIndex.getDocFrequency("unique")).isEqualTo(100);
+
+        Email[] repeatedEmails = new Email[300];
+        for (int i = 0; i < repeatedEmails.length; i++) repeatedEmails[i] = sampleEmails[i % 3];
+        CorpusIndex fullIndex = new CorpusIndex(repeatedEmails);
+        for (int i = 0; i < repeatedEmails.length; i++) {
+            assertThat(incrementalIndex.getVector(i).getTermIds()).containsExactly(fullIndex.getVector(i).getTermIds());
+            assertThat(incrementalIndex.getVector(i).getWeights()).containsExactly(fullIndex.getVector(i).getWeights());
+        }
+    }
+
+    @Test
+    void getDocFrequency() {
+        assertThat(corpusIndex.getDocFrequency("email")).isEqualTo(3);
+        assertThat(corpusIndex.getDocFrequency("unique")).isEqualTo(1);
+        assertThat(corpusIndex.getDocFrequency("none")).isZero();
+    }
+
+    @Test
+    void getTFIDFMatchesCalcTFIDF() {
+        for (int i = 0; i < sampleEmails.length; i++) {
+            for (String word : TextUtils.getCleanWords(sampleEmails[i].getBody())) {
+                assertThat(corpusIndex.getTFIDF(i, word))
+                        .as("Email %d word %s", i, word)
+                        .isEqualTo(SimilarityUtils.calcTFIDF(sampleEmails, sampleEmails[i], word));
+            }
+        }
+    }
+
+    @Test
+    void getTermId() {
+        assertThat(corpusIndex.getTermId("this")).isZero();
+        assertThat(corpusIndex.getTermId("2")).isEqualTo(4);
+        assertThat(corpusIndex.getTermId("none")).isEqualTo(-1);
+        assertThat(corpusIndex.getTerm(4)).isEqualTo("2");
+    }
+
+    @Test
+    void getVector() {
+        SparseVector vector = corpusIndex.getVector(2);
+        assertThat(vector.getTermIds()).containsExactly(2, 5, 6, 7, 8, 9);
+        for (int termId : vector.getTermIds()) {
+            String word = corpusIndex.getTerm(termId);
+            assertThat(vector.get(termId)).as("Word %s", word)
+                    .isEqualTo(SimilarityUtils.calcTFIDF(sampleEmails, sampleEmails[2], word));
+        }
+    }
+
+    @Test
+    void getVectorOfBodyMatchesAdd() {
+        String body = "Unique words, and a NEW word: email 4!";
+        SparseVector vector = corpusIndex.getVector(body);
+        assertThat(corpusIndex.size()).isEqualTo(3);
+        assertThat(corpusIndex.getVocabularySize()).isEqualTo(10);
+
+        corpusIndex.add(new Email("Jill", body));
+        SparseVector expected = corpusIndex.getVector(3);
+        assertThat(vector.getTermIds()).containsExactly(expected.getTermIds());
+        assertThat(vector.getWeights()).containsExactly(expected.getWeights());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void hashedIndexUsesBucketsAsTermIds(boolean bigrams) {
+        CorpusIndex hashedIndex = new CorpusIndex(new FeatureHasher(16, bigrams));
+        for (Email email : sampleEmails) hashedIndex.add(email);
+        String body = "Unique words, and a NEW word: email 4!";
+        SparseVector vector = hashedIndex.getVector(body);
+
+        assertThat(hashedIndex.getVocabularySize()).isEqualTo(1 << 16);
+        assertThat(hashedIndex.getDocFrequency("email")).isEqualTo(3);
+        assertThat(hashedIndex.getTermId("prize")).isBetween(0, (1 << 16) - 1);
+        assertThat(hashedIndex.buildInvertedIndex().getVocabularySize()).isLessThanOrEqualTo(1 << 16);
+        assertThatThrownBy(() -> hashedIndex.getTerm(0))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Words are not kept when hashing");
+
+        hashedIndex.add(new Email("Jill", body));
+        SparseVector expected = hashedIndex.getVector(3);
+        assertThat(vector.getTermIds()).containsExactly(expected.getTermIds());
+        assertThat(vector.getWeights()).containsExactly(expected.getWeights());
+        assertThat(vector.size()).isEqualTo(bigrams ? 15 : 8);
+    }
+
+    private static void assertSameIndex(CorpusIndex actual, CorpusIndex expected) {
+        final int numOfEntries = expected.getDocOffsets()[expected.size()];
+        assertThat(actual.size()).isEqualTo(expected.size());
+        assertThat(actual.getVocabularySize()).isEqualTo(expected.getVocabularySize());
+        if (expected.getHasher() == null) {
+            for (int termId = 0; termId < expected.getVocabularySize(); termId++) {
+                assertThat(actual.getTerm(termId)).isEqualTo(expected.getTerm(termId));
+            }
+        }
+        assertThat(Arrays.copyOf(actual.getDocFrequencies(), expected.getVocabularySize()))
+                .isEqualTo(Arrays.copyOf(expected.getDocFrequencies(), expected.getVocabularySize()));
+        assertThat(Arrays.copyOf(actual.getDocOffsets(), expected.size() + 1))
+                .isEqualTo(Arrays.copyOf(expected.getDocOffsets(), expected.size() + 1));
+        assertThat(Arrays.copyOf(actual.getNumOfWords(), expected.size()))
+                .isEqualTo(Arrays.copyOf(expected.getNumOfWords(), expected.size()));
+        assertThat(Arrays.copyOf(actual.getDocTermIds(), numOfEntries))
+                .isEqualTo(Arrays.copyOf(expected.getDocTermIds(), numOfEntries));
+        assertThat(Arrays.copyOf(actual.getDocTermCounts(), numOfEntries))
+                .isEqualTo(Arrays.copyOf(expected.getDocTermCounts(), numOfEntries));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.getReceiver(i)).isEqualTo(expected.getReceiver(i));
+        }
+    }
+
+    @ParameterizedTest(name = "Ranges: {0}, hashed: {1}")
+    @CsvSource({"1, false", "2, false", "7, false", "64, false", "7, true"})
+    void addAllMatchesSequentialAdd(int numOfRanges, boolean hashed) {
+        Email[] emails = randomEmails(3000, numOfRanges);
+        CorpusIndex sequential = hashed ? new CorpusIndex(new FeatureHasher(8, true)) : new CorpusIndex();
+        for (Email email : emails) sequential.add(email);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CorpusIndex parallel = hashed ? new CorpusIndex(new FeatureHasher(8, true)) : new CorpusIndex();
+            // Batches appended to emails added one at a time, and the other way around
+            parallel.add(emails[0]);
+            parallel.addAll(Arrays.copyOfRange(emails, 1, 2000), executor, numOfRanges);
+            parallel.add(emails[2000]);
+            parallel.addAll(Arrays.copyOfRange(emails, 2001, 3000), executor, numOfRanges);
+
+            assertSameIndex(parallel, sequential);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void addAllWithoutExecutor() {
+        CorpusIndex index = new CorpusIndex();
+        index.addAll(sampleEmails, null, 4);
+
+        assertSameIndex(index, corpusIndex);
+        assertThatThrownBy(() -> index.addAll(sampleEmails, null, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Number of ranges must be positive");
+    }
+
+    @Test
+    void getVectorsCosineMatchesDenseVectors() {
+        Map<String, Map<Integer, Float>> tfIdfDatabase = corpusIndex.buildTFIDFDatabase();
+        SparseVector[] vectors = corpusIndex.getVectors();
+        for (int i = 0; i < vectors.length; i++) {
+            for (int j = 0; j < vectors.length; j++) {
+                float expected = SimilarityUtils.calcCosineSimilarity(
+                        SimilarityUtils.getVector(tfIdfDatabase, i),
+                        SimilarityUtils.getVector(tfIdfDatabase, j)
+                );
+                assertThat(SimilarityUtils.calcCosineSimilarity(vectors[i], vectors[j]))
+                        .as("Emails %d and %d", i, j)
+                        .isCloseTo(expected, within(1e-6f));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void buildTFIDFDatabaseMatchesCalcTFIDF(String filePath) throws IOException {
+        Email[] emails;
+        try (Reader reader = new FileReader(filePath)) {
+            emails = new Gson().fromJson(reader, Email[].class);
+        }
+
+        Map<String, Map<Integer, Float>> tfIdfDatabase = new CorpusIndex(emails).buildTFIDFDatabase();
+
+        for (int i = 0; i < emails.length; i++) {
+            for (String word : TextUtils.getCleanWords(emails[i].getBody())) {
+                assertThat(tfIdfDatabase.get(word).get(i))
+                        .as("Email %d word %s", i, word)
+                        .isEqualTo(SimilarityUtils.calcTFIDF(emails, emails[i], word));
+            }
+        }
+        int numOfEntries = 0;
+        for (Map<Integer, Float> wordMap : tfIdfDatabase.values()) {
+            numOfEntries += wordMap.size();
+        }
+        int expectedNumOfEntries = 0;
+        for (Email email : emails) {
+            expectedNumOfEntries += (int) Arrays.stream(TextUtils.getCleanWords(email.getBody()))
+                    .distinct().count();
+        }
+        assertThat(numOfEntries).isEqualTo(expectedNumOfEntries);
+    }
+
+    /**
+     * Generates emails from a skewed vocabulary with mixed case, punctuation and missing receivers.
+     */
+    static Email[] randomEmails(int numOfEmails, long seed) {
+        Random random = new Random(seed);
+        Email[] emails = new Email[numOfEmails];
+        for (int i = 0; i < numOfEmails; i++) {
+            StringBuilder body = new StringBuilder();
+            int numOfWords = random.nextInt(40);
+            for (int j = 0; j < numOfWords; j++) {
+                int word = (int) Math.pow(random.nextInt(200), 2);
+                body.append(random.nextInt(8) == 0 ? "Word" : "word").append(word)
+                        .append(random.nextInt(10) == 0 ? ", " : " ");
+            }
+            emails[i] = new Email(random.nextInt(5) == 0 ? null : "user" + i + "@example.com", body.toString());
+        }
+        return emails;
+    }
+}
@@ -0,0 +1,116 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DenseKernelTest {
+    private static final DenseKernel[] KERNELS = {new ScalarKernel(), DenseKernels.get()};
+
+    private static float[] randomVector(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = random.nextInt(4) == 0 ? random.nextFloat() : 0f;
+        }
+        return vector;
+    }
+
+    private static float referenceCosineSimilarity(float[] a, float[] b) {
+        double dotProduct = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dotProduct += (double) a[i] * b[i];
+            normA += (double) a[i] * a[i];
+            normB += (double) b[i] * b[i];
+        }
+        double euclideanDist = Math.sqrt(normA) * Math.sqrt(normB);
+        return euclideanDist == 0.0 ? 0.0f : (float) (dotProduct / euclideanDist);
+    }
+
+    /**
+     * The dense cosine similarity before it was computed by the kernels, summing the dot product in single precision.
+     */
+    private static float floatCosineSimilarity(float[] a, float[] b) {
+        float dotProduct = 0f;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dotProduct += a[i] * b[i];
+            normA += (double) a[i] * a[i];
+            normB += (double) b[i] * b[i];
+        }
+        float euclideanDist = (float) (Math.sqrt(normA) * Math.sqrt(normB));
+        return euclideanDist == 0.0 ? 0.0f : dotProduct / euclideanDist;
+    }
+
+    @ParameterizedTest(name = "Length: {0}")
+    @ValueSource(ints = {0, 1, 3, 7, 8, 15, 16, 17, 63, 1000, 4099})
+    void calcCosineSimilarityMatchesReference(int length) {
+        Random random = new Random(length);
+        for (int sample = 0; sample < 20; sample++) {
+            float[] a = randomVector(random, length);
+            float[] b = randomVector(random, length);
+            float expected = referenceCosineSimilarity(a, b);
+            double expectedDot = 0;
+            for (int i = 0; i < length; i++) expectedDot += (double) a[i] * b[i];
+
+            for (DenseKernel kernel : KERNELS) {
+                assertThat(kernel.calcCosineSimilarity(a, b)).as(kernel.getName()).isCloseTo(expected, within(1e-5f));
+                assertThat(kernel.dot(a, b)).as(kernel.getName())
+                        .isCloseTo(expectedDot, within(1e-5 * Math.max(1, expectedDot)));
+            }
+            // Summing in double moves the results of the dense path by rounding only
+            assertThat(SimilarityUtils.calcCosineSimilarity(a, b))
+                    .isCloseTo(floatCosineSimilarity(a, b), within(1e-5f));
+        }
+    }
+
+    @Test
+    void zeroVectors() {
+        for (DenseKernel kernel : KERNELS) {
+            assertThat(kernel.calcCosineSimilarity(new float[5], new float[]{1, 2, 3, 4, 5})).isZero();
+            assertThat(kernel.dot(new float[0], new float[0])).isZero();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void calcCosineSimilarityOfEmails(String filePath) throws IOException {
+        Email[] emails;
+        try (Reader reader = new FileReader(filePath)) {
+            emails = new Gson().fromJson(reader, Email[].class);
+        }
+        CorpusIndex corpusIndex = new CorpusIndex(emails);
+        InvertedIndex invertedIndex = corpusIndex.buildInvertedIndex();
+        float[][] vectors = new float[emails.length][];
+        for (int i = 0; i < emails.length; i++) vectors[i] = SimilarityUtils.getVector(invertedIndex, i);
+
+        for (int i = 0; i < emails.length; i++) {
+            for (int j = 0; j < emails.length; j++) {
+                float expected = SimilarityUtils.calcCosineSimilarity(corpusIndex.getVector(i),
+                        corpusIndex.getVector(j));
+                for (DenseKernel kernel : KERNELS) {
+                    assertThat(kernel.calcCosineSimilarity(vectors[i], vectors[j])).as(kernel.getName())
+                            .isCloseTo(expected, within(1e-5f));
+                }
+            }
+        }
+    }
+
+    @Test
+    void loadFallsBackToScalarKernel() {
+        assertThat(DenseKernels.load("com.tuta.MissingKernel")).isInstanceOf(ScalarKernel.class);
+        assertThat(DenseKernels.load("java.lang.String")).isInstanceOf(ScalarKernel.class);
+        assertThat(new ScalarKernel().getName()).isEqualTo("scalar");
+    }
+}
@@ -0,0 +1,135 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DuplicateGroupsTest {
+
+    private static Email[] readEmails(String filePath) throws IOException {
+        try (Reader reader = new FileReader(filePath)) {
+            return new Gson().fromJson(reader, Email[].class);
+        }
+    }
+
+    /**
+     * Emails of a file, each repeated a random number of times and with some bodies shuffled word by word.
+     */
+    private static Email[] withDuplicates(Email[] emails, int seed) {
+        Random random = new Random(seed);
+        List<Email> duplicated = new ArrayList<>();
+        for (Email email : emails) {
+            int copies = 1 + random.nextInt(4);
+            for (int i = 0; i < copies; i++) {
+                List<String> words = new ArrayList<>(Arrays.asList(email.getBody().split(" ")));
+                if (random.nextBoolean()) Collections.shuffle(words, random);
+                duplicated.add(new Email(email.getReceiver() + i, String.join(" ", words)));
+            }
+        }
+        Collections.shuffle(duplicated, random);
+        return duplicated.toArray(new Email[0]);
+    }
+
+    private static int[] expectedCounts(SparseVector[] vectors, SimilarityGraph graph) {
+        int[] counts = new int[vectors.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = graph.getSimilarCount(i);
+        }
+        return counts;
+    }
+
+    @Test
+    void groupIdenticalBodies() {
+        CorpusIndex corpusIndex = new CorpusIndex(new Email[]{
+                new Email("John", "You won a prize!"),
+                new Email("Jane", "Meeting at noon."),
+                new Email("Jack", "you WON a prize"),
+                new Email("Jill", "A prize you won."),
+                new Email("Joe", "You won a prize, a prize!"),
+                new Email("Jim", "Meeting at noon.")
+        });
+
+        DuplicateGroups duplicates = new DuplicateGroups(corpusIndex);
+
+        assertThat(duplicates.size()).isEqualTo(6);
+        assertThat(duplicates.getNumOfUniqueBodies()).isEqualTo(3);
+        assertThat(new int[]{duplicates.getGroup(0), duplicates.getGroup(1), duplicates.getGroup(2),
+                duplicates.getGroup(3), duplicates.getGroup(4), duplicates.getGroup(5)})
+                .containsExactly(0, 1, 0, 0, 2, 1);
+        assertThat(duplicates.getRepresentative(1)).isEqualTo(1);
+        assertThat(duplicates.getMultiplicity(0)).isEqualTo(3);
+        assertThat(duplicates.getMultiplicity(2)).isEqualTo(1);
+        assertThat(duplicates.toString()).isEqualTo("6 emails with 3 unique bodies");
+
+        SparseVector[] vectors = corpusIndex.getVectors();
+        SparseVector[] uniqueVectors = duplicates.getUniqueVectors();
+        for (int group = 0; group < uniqueVectors.length; group++) {
+            assertThat(uniqueVectors[group].getTermIds()).isEqualTo(vectors[duplicates.getRepresentative(group)].getTermIds());
+            assertThat(uniqueVectors[group].getWeights())
+                    .isEqualTo(vectors[duplicates.getRepresentative(group)].getWeights());
+        }
+    }
+
+    @ParameterizedTest(name = "{0}, threshold: {1}")
+    @CsvSource({"emails-sm.json, 0.32", "emails-m.json, 0.32", "emails-m.json, 0.2", "emails-m.json, 0.9"})
+    void similarCountsMatchAllEmails(String filePath, float similarityThreshold) throws IOException {
+        CorpusIndex corpusIndex = new CorpusIndex(withDuplicates(readEmails(filePath), 7));
+        SimilarityEngine engine = new SimilarityEngine(false);
+        SparseVector[] vectors = corpusIndex.getVectors();
+        int[] expected = expectedCounts(vectors, engine.computeGraph(vectors, new InvertedIndex(vectors),
+                similarityThreshold));
+
+        DuplicateGroups duplicates = new DuplicateGroups(corpusIndex);
+        SparseVector[] uniqueVectors = duplicates.getUniqueVectors();
+        SimilarityGraph uniqueGraph = engine.computeGraph(uniqueVectors, new InvertedIndex(uniqueVectors),
+                similarityThreshold);
+
+        assertThat(duplicates.getNumOfUniqueBodies()).isLessThan(duplicates.size());
+        assertThat(duplicates.getSimilarCounts(uniqueGraph, uniqueVectors)).containsExactly(expected);
+    }
+
+    @Test
+    void similarCountsOfEmptyBodiesMatchAllPairs() {
+        CorpusIndex corpusIndex = new CorpusIndex(new Email[]{
+                new Email("John", ""),
+                new Email("Jane", "Hello"),
+                new Email("Jack", ""),
+                new Email("Jill", "Hello")
+        });
+        SimilarityEngine engine = new SimilarityEngine(false);
+        SparseVector[] vectors = corpusIndex.getVectors();
+        DuplicateGroups duplicates = new DuplicateGroups(corpusIndex);
+        SparseVector[] uniqueVectors = duplicates.getUniqueVectors();
+
+        // Empty bodies have a similarity of 0, which is only above a negative threshold
+        for (float similarityThreshold : new float[]{-0.5f, 0f, 0.5f}) {
+            assertThat(duplicates.getSimilarCounts(engine.computeGraph(uniqueVectors, similarityThreshold),
+                    uniqueVectors))
+                    .containsExactly(expectedCounts(vectors, engine.computeGraph(vectors, similarityThreshold)));
+        }
+    }
+
+    @Test
+    void similarCountsOfOtherGraph() {
+        CorpusIndex corpusIndex = new CorpusIndex(new Email[]{new Email("John", "a b"), new Email("Jane", "a b")});
+        SparseVector[] vectors = corpusIndex.getVectors();
+        SimilarityGraph graph = new SimilarityEngine(false).computeGraph(vectors, 0.32f);
+
+        assertThatThrownBy(() -> new DuplicateGroups(corpusIndex).getSimilarCounts(graph, vectors))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Graph must match the number of unique bodies");
+    }
+}
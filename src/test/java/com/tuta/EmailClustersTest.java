@@ -0,0 +1,160 @@
+package com.tuta;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmailClustersTest {
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static List<int[]> collectClusters(EmailClusters clusters, int minSize) throws IOException {
+        List<int[]> collected = new ArrayList<>();
+        int numOfClusters = clusters.forEachCluster(minSize, (clusterId, members) -> {
+            assertThat(clusterId).isEqualTo(collected.size());
+            collected.add(members);
+        });
+        assertThat(numOfClusters).isEqualTo(collected.size());
+        return collected;
+    }
+
+    /**
+     * Labels the connected components by a depth-first search from every email in ascending order.
+     */
+    private static int[] componentLabels(int numOfEmails, int[][] edges) {
+        List<List<Integer>> neighbors = new ArrayList<>();
+        for (int i = 0; i < numOfEmails; i++) neighbors.add(new ArrayList<>());
+        for (int[] edge : edges) {
+            neighbors.get(edge[0]).add(edge[1]);
+            neighbors.get(edge[1]).add(edge[0]);
+        }
+        int[] labels = new int[numOfEmails];
+        Arrays.fill(labels, -1);
+        for (int start = 0; start < numOfEmails; start++) {
+            if (labels[start] >= 0) continue;
+            List<Integer> stack = new ArrayList<>();
+            stack.add(start);
+            labels[start] = start;
+            while (!stack.isEmpty()) {
+                int email = stack.remove(stack.size() - 1);
+                for (int neighbor : neighbors.get(email)) {
+                    if (labels[neighbor] < 0) {
+                        labels[neighbor] = start;
+                        stack.add(neighbor);
+                    }
+                }
+            }
+        }
+        return labels;
+    }
+
+    @Test
+    void unionLinksToTheFirstEmail() throws IOException {
+        EmailClusters clusters = new EmailClusters(7);
+
+        assertThat(clusters.union(5, 3)).isTrue();
+        assertThat(clusters.union(6, 5)).isTrue();
+        assertThat(clusters.union(3, 6)).isFalse();
+        assertThat(clusters.union(1, 2)).isTrue();
+
+        assertThat(clusters.size()).isEqualTo(7);
+        assertThat(clusters.find(6)).isEqualTo(3);
+        assertThat(clusters.find(2)).isEqualTo(1);
+        assertThat(clusters.find(4)).isEqualTo(4);
+        List<int[]> campaigns = collectClusters(clusters, 2);
+        assertThat(campaigns).hasSize(2);
+        assertThat(campaigns.get(0)).containsExactly(1, 2);
+        assertThat(campaigns.get(1)).containsExactly(3, 5, 6);
+        assertThat(collectClusters(clusters, 1)).hasSize(4);
+        assertThat(collectClusters(clusters, 4)).isEmpty();
+    }
+
+    @ParameterizedTest(name = "Emails: {0}, edges: {1}")
+    @CsvSource({"1000, 300", "1000, 900", "5000, 4000", "20000, 30000"})
+    void concurrentUnionsFindTheConnectedComponents(int numOfEmails, int numOfEdges) throws Exception {
+        Random random = new Random(numOfEmails + numOfEdges);
+        int[][] edges = new int[numOfEdges][];
+        for (int i = 0; i < numOfEdges; i++) {
+            edges[i] = new int[]{random.nextInt(numOfEmails), random.nextInt(numOfEmails)};
+        }
+
+        EmailClusters clusters = new EmailClusters(numOfEmails);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int task = 0; task < 8; task++) {
+            final int start = numOfEdges * task / 8;
+            final int end = numOfEdges * (task + 1) / 8;
+            tasks.add(() -> {
+                for (int i = start; i < end; i++) clusters.union(edges[i][0], edges[i][1]);
+                return null;
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            future.get();
+        }
+
+        int[] labels = componentLabels(numOfEmails, edges);
+        int[] roots = new int[numOfEmails];
+        for (int i = 0; i < numOfEmails; i++) roots[i] = clusters.find(i);
+        assertThat(roots).isEqualTo(labels);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 64})
+    void engineMergesClustersWhileComputingTheGraph(int numOfTiles) throws IOException {
+        SparseVector[] vectors = SimilarityEngineTest.randomVectors(2000, 400, 11);
+        InvertedIndex invertedIndex = new InvertedIndex(vectors);
+        EmailClusters clusters = new EmailClusters(vectors.length);
+
+        SimilarityGraph graph = new SimilarityEngine(executor, numOfTiles).computeGraph(vectors, invertedIndex, 0.3f,
+                Integer.MAX_VALUE, clusters);
+        EmailClusters expected = new EmailClusters(vectors.length);
+        expected.addAll(graph);
+
+        assertThat(graph.getNumOfEdges()).isPositive();
+        List<int[]> campaigns = collectClusters(clusters, 2);
+        List<int[]> expectedCampaigns = collectClusters(expected, 2);
+        assertThat(campaigns).hasSameSizeAs(expectedCampaigns);
+        for (int i = 0; i < campaigns.size(); i++) {
+            assertThat(campaigns.get(i)).containsExactly(expectedCampaigns.get(i));
+        }
+    }
+
+    @Test
+    void invalidArguments() {
+        SparseVector[] vectors = SimilarityEngineTest.randomVectors(10, 40, 1);
+        SimilarityEngine engine = new SimilarityEngine(false);
+
+        assertThatThrownBy(() -> engine.computeGraph(vectors, new InvertedIndex(vectors), 0.3f, Integer.MAX_VALUE,
+                new EmailClusters(9)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Clusters must match the number of vectors");
+        assertThatThrownBy(() -> new EmailClusters(9).addAll(engine.computeGraph(vectors, 0.3f)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Graph must match the number of emails");
+    }
+}
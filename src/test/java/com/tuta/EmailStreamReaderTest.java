@@ -0,0 +1,66 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.MalformedJsonException;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmailStreamReaderTest {
+
+    @Test
+    void readEmailsMatchesGson() throws IOException {
+        Email[] expectedEmails;
+        try (Reader reader = new FileReader("emails-m.json")) {
+            expectedEmails = new Gson().fromJson(reader, Email[].class);
+        }
+
+        List<Email> emails = new ArrayList<>();
+        int numOfEmails;
+        try (Reader reader = new FileReader("emails-m.json")) {
+            numOfEmails = EmailStreamReader.readEmails(reader, emails::add);
+        }
+
+        assertThat(numOfEmails).isEqualTo(expectedEmails.length);
+        assertThat(emails).hasSize(expectedEmails.length);
+        for (int i = 0; i < expectedEmails.length; i++) {
+            assertThat(emails.get(i).toString()).isEqualTo(expectedEmails[i].toString());
+        }
+    }
+
+    @Test
+    void readEmailsSkipsUnknownFieldsAndNulls() throws IOException {
+        String json = "[{\"id\": 1, \"tags\": [\"a\", {\"b\": 2}], \"body\": \"Hello\", \"receiver\": \"john\"},"
+                + " {\"receiver\": null, \"body\": \"Bye\"}]";
+        List<Email> emails = new ArrayList<>();
+
+        EmailStreamReader.readEmails(new StringReader(json), emails::add);
+
+        assertThat(emails).hasSize(2);
+        assertThat(emails.get(0).getReceiver()).isEqualTo("john");
+        assertThat(emails.get(0).getBody()).isEqualTo("Hello");
+        assertThat(emails.get(1).getReceiver()).isNull();
+        assertThat(emails.get(1).getBody()).isEqualTo("Bye");
+    }
+
+    @Test
+    void readEmailsEmptyArray() throws IOException {
+        assertThat(EmailStreamReader.readEmails(new StringReader("[]"), email -> { })).isZero();
+    }
+
+    @Test
+    void readEmailsInvalidJson() {
+        assertThatThrownBy(() -> EmailStreamReader.readEmails(new StringReader("{\"body\": \"Hello\"}"), email -> { }))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> EmailStreamReader.readEmails(new StringReader("[{\"body\" \"Hello\"}]"), email -> { }))
+                .isInstanceOf(MalformedJsonException.class);
+    }
+}
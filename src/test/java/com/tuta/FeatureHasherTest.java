@@ -0,0 +1,184 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class FeatureHasherTest {
+
+    private static Email[] readEmails(String filePath) throws IOException {
+        try (Reader reader = new FileReader(filePath)) {
+            return new Gson().fromJson(reader, Email[].class);
+        }
+    }
+
+    @Test
+    void featuresAreSpreadOverBucketsAndSigns() {
+        FeatureHasher hasher = new FeatureHasher(10, false);
+        int[] bucketCounts = new int[hasher.getNumOfBuckets()];
+        int numOfNegative = 0;
+        for (int i = 0; i < 100_000; i++) {
+            int feature = hasher.getFeature("word" + i);
+            assertThat(hasher.getFeature("word" + i)).isEqualTo(feature);
+            bucketCounts[FeatureHasher.getBucket(feature)]++;
+            if (FeatureHasher.getSign(feature) < 0) numOfNegative++;
+        }
+
+        assertThat(hasher.getNumOfBuckets()).isEqualTo(1024);
+        assertThat(numOfNegative).isBetween(49_000, 51_000);
+        for (int count : bucketCounts) {
+            // About 98 words per bucket
+            assertThat(count).isBetween(50, 150);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void hashFeaturesOfWordsAndBigrams(boolean bigrams) {
+        FeatureHasher hasher = new FeatureHasher(20, bigrams);
+        List<Integer> features = new ArrayList<>();
+
+        int numOfWords = hasher.hashFeatures(new Tokenizer(), "Claim YOUR prize, claim!", features::add);
+
+        assertThat(numOfWords).isEqualTo(4);
+        assertThat(features).hasSize(bigrams ? 7 : 4);
+        // Every bigram follows its second word
+        assertThat(features.get(0)).isEqualTo(hasher.getFeature("claim")).isEqualTo(features.get(bigrams ? 5 : 3));
+        assertThat(features.get(1)).isEqualTo(hasher.getFeature("your"));
+        if (bigrams) {
+            assertThat(features.get(2)).isNotEqualTo(features.get(4)).isNotEqualTo(features.get(6));
+            assertThat(features.get(4)).isNotEqualTo(features.get(6));
+        }
+    }
+
+    @Test
+    void collidingWordsCancelOut() {
+        FeatureHasher hasher = new FeatureHasher(4, false);
+        // Find two words falling into the same bucket with opposite signs
+        Map<Integer, String> wordsByFeature = new HashMap<>();
+        String first = null;
+        String second = null;
+        for (int i = 0; first == null; i++) {
+            String word = "w" + i;
+            int feature = hasher.getFeature(word);
+            first = wordsByFeature.get(~feature);
+            second = word;
+            wordsByFeature.put(feature, word);
+        }
+        CorpusIndex corpusIndex = new CorpusIndex(hasher);
+        corpusIndex.add(new Email("a", first + " " + second + " " + first));
+        corpusIndex.add(new Email("b", first + " " + second));
+
+        int bucket = corpusIndex.getTermId(first);
+        assertThat(corpusIndex.getTermId(second)).isEqualTo(bucket);
+        assertThat(corpusIndex.getVector(0).getTermIds()).containsExactly(bucket);
+        assertThat(corpusIndex.getVector(1).size()).isZero();
+        assertThat(corpusIndex.getDocFrequency(first)).isEqualTo(1);
+        assertThat(corpusIndex.getVector(first + " " + second).size()).isZero();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void hashingWithoutCollisionsKeepsTheSimilarities(String filePath) throws IOException {
+        Email[] emails = readEmails(filePath);
+        CorpusIndex exactIndex = new CorpusIndex(emails);
+        FeatureHasher hasher = new FeatureHasher(24, false);
+        CorpusIndex hashedIndex = new CorpusIndex(hasher);
+        for (Email email : emails) hashedIndex.add(email);
+        Set<Integer> buckets = new HashSet<>();
+        for (int termId = 0; termId < exactIndex.getVocabularySize(); termId++) {
+            buckets.add(hashedIndex.getTermId(exactIndex.getTerm(termId)));
+        }
+        assertThat(buckets).hasSize(exactIndex.getVocabularySize());
+
+        SparseVector[] exactVectors = exactIndex.getVectors();
+        SparseVector[] hashedVectors = hashedIndex.getVectors();
+        for (int i = 0; i < emails.length; i++) {
+            assertThat(hashedVectors[i].size()).isEqualTo(exactVectors[i].size());
+            assertThat(hashedVectors[i].getNorm()).isCloseTo(exactVectors[i].getNorm(), within(1e-9));
+        }
+        SimilarityEngine engine = new SimilarityEngine(false);
+        FeatureHasher.DeviationReport report = FeatureHasher.measureDeviation(exactVectors, hashedVectors,
+                engine.computeGraph(exactVectors, 0.32f), engine.computeGraph(hashedVectors, 0.32f), 1);
+
+        assertThat(report.getNumOfMeasuredPairs()).isPositive();
+        assertThat(report.getMaxDeviation()).isLessThan(1e-6);
+        assertThat(report.getNumOfLostPairs()).isZero();
+        assertThat(report.getNumOfGainedPairs()).isZero();
+        assertThat(report.getNumOfFlippedEmails()).isZero();
+    }
+
+    @Test
+    void indexAtMaxNumOfBits() throws IOException {
+        Email[] emails = readEmails("emails-m.json");
+        CorpusIndex exactIndex = new CorpusIndex(emails);
+        CorpusIndex hashedIndex = new CorpusIndex(new FeatureHasher(FeatureHasher.MAX_NUM_OF_BITS, false));
+        hashedIndex.addAll(emails, ForkJoinPool.commonPool(), 2);
+
+        assertThat(hashedIndex.getVocabularySize()).isEqualTo(1 << FeatureHasher.MAX_NUM_OF_BITS);
+        SparseVector[] vectors = hashedIndex.getVectors();
+        SimilarityEngine engine = new SimilarityEngine(false);
+        SimilarityGraph graph = engine.computeGraph(vectors, hashedIndex.buildInvertedIndex(), 0.32f,
+                Integer.MAX_VALUE);
+        SimilarityGraph exactGraph = engine.computeGraph(exactIndex.getVectors(), 0.32f);
+        for (int i = 0; i < emails.length; i++) {
+            assertThat(graph.getSimilarEmails(i)).containsExactly(exactGraph.getSimilarEmails(i));
+        }
+    }
+
+    @ParameterizedTest(name = "Bits: {0}")
+    @ValueSource(ints = {2, 6, 12})
+    void measureDeviationOfCollisions(int numOfBits) throws IOException {
+        Email[] emails = readEmails("emails-m.json");
+        CorpusIndex hashedIndex = new CorpusIndex(new FeatureHasher(numOfBits, false));
+        for (Email email : emails) hashedIndex.add(email);
+        SparseVector[] exactVectors = new CorpusIndex(emails).getVectors();
+        SparseVector[] hashedVectors = hashedIndex.getVectors();
+        SimilarityEngine engine = new SimilarityEngine(false);
+        SimilarityGraph exactGraph = engine.computeGraph(exactVectors, 0.32f);
+        SimilarityGraph hashedGraph = engine.computeGraph(hashedVectors, 0.32f);
+
+        FeatureHasher.DeviationReport report = FeatureHasher.measureDeviation(exactVectors, hashedVectors, exactGraph,
+                hashedGraph, 1);
+
+        assertThat(report.getNumOfMeasuredPairs() - report.getNumOfGainedPairs())
+                .isEqualTo(exactGraph.getNumOfEdges());
+        assertThat(report.getNumOfMeasuredPairs() - report.getNumOfLostPairs())
+                .isEqualTo(hashedGraph.getNumOfEdges());
+        assertThat(report.getMeanDeviation()).isBetween(0.0, report.getMaxDeviation());
+        assertThat(report.getMaxDeviation()).isPositive().isLessThanOrEqualTo(2.0);
+        assertThat(report.toString()).startsWith("Hashing deviation: mean ").endsWith(" of 10");
+    }
+
+    @Test
+    void invalidArguments() {
+        SparseVector[] vectors = SimilarityEngineTest.randomVectors(10, 40, 1);
+        SimilarityGraph graph = new SimilarityEngine(false).computeGraph(vectors, 0.3f);
+
+        assertThatThrownBy(() -> new FeatureHasher(0, false))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Number of bits must be between 1 and 24");
+        assertThatThrownBy(() -> new FeatureHasher(25, true))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Number of bits must be between 1 and 24");
+        assertThatThrownBy(() -> FeatureHasher.measureDeviation(vectors, new SparseVector[9], graph, graph, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Vectors and graphs must cover the same emails");
+    }
+}
@@ -0,0 +1,140 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IndexSnapshotTest {
+    @TempDir
+    Path tempDir;
+
+    private static Email[] readEmails(String filePath) throws IOException {
+        try (Reader reader = new FileReader(filePath)) {
+            return new Gson().fromJson(reader, Email[].class);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void readMatchesFreshBuild(String filePath) throws IOException {
+        final float similarityThreshold = 0.32f;
+        Email[] emails = readEmails(filePath);
+        CorpusIndex corpusIndex = new CorpusIndex(emails);
+        SimilarityEngine engine = new SimilarityEngine(false);
+        SimilarityGraph similarityGraph = engine.computeGraph(corpusIndex.getVectors(), similarityThreshold);
+        SymmetricMatrix similarityMatrix = new SymmetricMatrix(emails.length);
+        engine.computeAll(corpusIndex.getVectors(), similarityMatrix);
+
+        Path file = tempDir.resolve("index.snapshot");
+        new IndexSnapshot(corpusIndex, similarityGraph, similarityMatrix).write(file);
+        IndexSnapshot snapshot = IndexSnapshot.read(file);
+        CorpusIndex restoredIndex = snapshot.getCorpusIndex();
+
+        assertThat(restoredIndex.size()).isEqualTo(corpusIndex.size());
+        assertThat(restoredIndex.getVocabularySize()).isEqualTo(corpusIndex.getVocabularySize());
+        for (int i = 0; i < emails.length; i++) {
+            assertThat(restoredIndex.getReceiver(i)).isEqualTo(emails[i].getReceiver());
+            assertThat(restoredIndex.getVector(i).getTermIds()).containsExactly(corpusIndex.getVector(i).getTermIds());
+            assertThat(restoredIndex.getVector(i).getWeights()).containsExactly(corpusIndex.getVector(i).getWeights());
+        }
+        assertThat(restoredIndex.getDocFrequency("the")).isEqualTo(corpusIndex.getDocFrequency("the"));
+
+        SimilarityGraph restoredGraph = snapshot.getSimilarityGraph();
+        assertThat(restoredGraph.getSimilarityThreshold()).isEqualTo(similarityThreshold);
+        assertThat(restoredGraph.getNumOfEdges()).isEqualTo(similarityGraph.getNumOfEdges());
+        assertThat(restoredGraph.classify(1)).containsExactly(similarityGraph.classify(1));
+        assertThat(snapshot.getSimilarityMatrix().getData()).containsExactly(similarityMatrix.getData());
+
+        // The restored index classifies exactly like one rebuilt from the emails
+        SimilarityGraph rebuiltGraph = engine.computeGraph(restoredIndex.getVectors(), similarityThreshold);
+        assertThat(rebuiltGraph.classify(1)).containsExactly(similarityGraph.classify(1));
+    }
+
+    @Test
+    void restoredIndexKeepsGrowing() throws IOException {
+        Email[] emails = readEmails("emails-sm.json");
+        Email[] firstEmails = Arrays.copyOf(emails, emails.length / 2);
+        CorpusIndex corpusIndex = new CorpusIndex(firstEmails);
+        Path file = tempDir.resolve("index.snapshot");
+        new IndexSnapshot(corpusIndex, null, null).write(file);
+
+        IndexSnapshot snapshot = IndexSnapshot.read(file);
+        assertThat(snapshot.getSimilarityGraph()).isNull();
+        assertThat(snapshot.getSimilarityMatrix()).isNull();
+
+        CorpusIndex restoredIndex = snapshot.getCorpusIndex();
+        for (int i = firstEmails.length; i < emails.length; i++) restoredIndex.add(emails[i]);
+        CorpusIndex fullIndex = new CorpusIndex(emails);
+        for (int i = 0; i < emails.length; i++) {
+            assertThat(restoredIndex.getReceiver(i)).isEqualTo(emails[i].getReceiver());
+            assertThat(restoredIndex.getVector(i).getTermIds()).containsExactly(fullIndex.getVector(i).getTermIds());
+            assertThat(restoredIndex.getVector(i).getWeights()).containsExactly(fullIndex.getVector(i).getWeights());
+        }
+    }
+
+    @Test
+    void emptyIndex() throws IOException {
+        Path file = tempDir.resolve("index.snapshot");
+        new IndexSnapshot(new CorpusIndex(), null, null).write(file);
+
+        CorpusIndex restoredIndex = IndexSnapshot.read(file).getCorpusIndex();
+        assertThat(restoredIndex.size()).isZero();
+        assertThat(restoredIndex.add(new Email(null, "Hello world"))).isZero();
+        assertThat(restoredIndex.getReceiver(0)).isNull();
+        assertThat(restoredIndex.getDocFrequency("hello")).isEqualTo(1);
+    }
+
+    @Test
+    void invalidFiles() throws IOException {
+        Path file = tempDir.resolve("index.snapshot");
+        Files.write(file, new byte[IndexSnapshot.HEADER_SIZE]);
+        assertThatThrownBy(() -> IndexSnapshot.read(file))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith("Not an index snapshot");
+
+        ByteBuffer header = ByteBuffer.allocate(IndexSnapshot.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(IndexSnapshot.MAGIC).putInt(IndexSnapshot.VERSION + 1);
+        Files.write(file, header.array());
+        assertThatThrownBy(() -> IndexSnapshot.read(file))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Unsupported snapshot version: " + (IndexSnapshot.VERSION + 1));
+
+        new IndexSnapshot(new CorpusIndex(readEmails("emails-sm.json")), null, null).write(file);
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length / 2));
+        assertThatThrownBy(() -> IndexSnapshot.read(file))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Truncated snapshot");
+    }
+
+    @Test
+    void sizeMismatch() {
+        CorpusIndex corpusIndex = new CorpusIndex(new Email[]{new Email("John", "Hello world")});
+        assertThatThrownBy(() -> new IndexSnapshot(corpusIndex, null, new SymmetricMatrix(2)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Similarities must match the corpus size");
+    }
+
+    @Test
+    void hashedIndex() {
+        CorpusIndex corpusIndex = new CorpusIndex(new FeatureHasher(12, false));
+        corpusIndex.add(new Email("John", "Hello world"));
+        assertThatThrownBy(() -> new IndexSnapshot(corpusIndex, null, null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Snapshots of hashed indices are not supported");
+    }
+}
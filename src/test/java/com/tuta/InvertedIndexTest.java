@@ -0,0 +1,83 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class InvertedIndexTest {
+
+    private static Email[] readEmails(String filePath) throws IOException {
+        try (Reader reader = new FileReader(filePath)) {
+            return new Gson().fromJson(reader, Email[].class);
+        }
+    }
+
+    @Test
+    void add() {
+        InvertedIndex invertedIndex = new InvertedIndex();
+        assertThat(invertedIndex.add(new SparseVector(new int[]{0, 2}, new float[]{0.5f, 1f}))).isZero();
+        assertThat(invertedIndex.add(new SparseVector(new int[]{}, new float[]{}))).isEqualTo(1);
+        for (int i = 2; i < 100; i++) {
+            assertThat(invertedIndex.add(new SparseVector(new int[]{2, 1500}, new float[]{i, 3f}))).isEqualTo(i);
+        }
+
+        assertThat(invertedIndex.size()).isEqualTo(100);
+        assertThat(invertedIndex.getVocabularySize()).isEqualTo(1501);
+        assertThat(invertedIndex.getNumOfPostings()).isEqualTo(2 + 98 * 2);
+        assertThat(invertedIndex.getPostingLength(0)).isEqualTo(1);
+        assertThat(invertedIndex.getPostingLength(1)).isZero();
+        assertThat(invertedIndex.getPostingLength(2)).isEqualTo(99);
+        assertThat(invertedIndex.getPostingLength(5000)).isZero();
+        assertThat(invertedIndex.getDocIds(2)).startsWith(0, 2, 3).endsWith(99).isSorted();
+        assertThat(invertedIndex.getWeights(2)).startsWith(1f, 2f, 3f);
+        assertThat(invertedIndex.getWeight(2, 50)).isEqualTo(50f);
+        assertThat(invertedIndex.getWeight(2, 1)).isZero();
+        assertThat(invertedIndex.getWeight(1500, 0)).isZero();
+        assertThat(invertedIndex.getNorm(0)).isCloseTo(Math.sqrt(1.25), within(1e-9));
+        assertThat(invertedIndex.getNorm(1)).isZero();
+        assertThatThrownBy(() -> invertedIndex.getNorm(100)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void buildInvertedIndexMatchesTFIDFDatabase(String filePath) throws IOException {
+        Email[] emails = readEmails(filePath);
+        CorpusIndex corpusIndex = new CorpusIndex(emails);
+        Map<String, Map<Integer, Float>> tfIdfDatabase = corpusIndex.buildTFIDFDatabase();
+        InvertedIndex invertedIndex = corpusIndex.buildInvertedIndex();
+
+        assertThat(invertedIndex.size()).isEqualTo(emails.length);
+        assertThat(invertedIndex.getVocabularySize()).isEqualTo(tfIdfDatabase.size());
+        long numOfPostings = 0;
+        for (Map.Entry<String, Map<Integer, Float>> entry : tfIdfDatabase.entrySet()) {
+            int termId = corpusIndex.getTermId(entry.getKey());
+            assertThat(invertedIndex.getPostingLength(termId)).isEqualTo(corpusIndex.getDocFrequency(entry.getKey()));
+            for (Map.Entry<Integer, Float> posting : entry.getValue().entrySet()) {
+                assertThat(invertedIndex.getWeight(termId, posting.getKey())).isEqualTo(posting.getValue());
+            }
+            numOfPostings += entry.getValue().size();
+        }
+        assertThat(invertedIndex.getNumOfPostings()).isEqualTo(numOfPostings);
+
+        // Dense vectors hold the same entries in a different order, so their similarities agree
+        for (int i = 0; i < emails.length; i++) {
+            assertThat(invertedIndex.getNorm(i)).isEqualTo(corpusIndex.getVector(i).getNorm());
+            for (int j = 0; j < i; j++) {
+                assertThat(SimilarityUtils.calcCosineSimilarity(SimilarityUtils.getVector(invertedIndex, i),
+                        SimilarityUtils.getVector(invertedIndex, j)))
+                        .isCloseTo(SimilarityUtils.calcCosineSimilarity(SimilarityUtils.getVector(tfIdfDatabase, i),
+                                SimilarityUtils.getVector(tfIdfDatabase, j)), within(1e-6f));
+            }
+        }
+    }
+}
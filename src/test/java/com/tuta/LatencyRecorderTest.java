@@ -0,0 +1,41 @@
+package com.tuta;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LatencyRecorderTest {
+
+    @Test
+    void percentiles() {
+        LatencyRecorder latencies = new LatencyRecorder(1000);
+        for (int nanos = 100; nanos >= 1; nanos--) latencies.record(nanos);
+
+        assertThat(latencies.getCount()).isEqualTo(100);
+        assertThat(latencies.getMax()).isEqualTo(100);
+        assertThat(latencies.getPercentiles(0, 50, 90, 99, 100)).containsExactly(1, 50, 90, 99, 100);
+    }
+
+    @Test
+    void slidingWindow() {
+        LatencyRecorder latencies = new LatencyRecorder(10);
+        for (int nanos = 1; nanos <= 100; nanos++) latencies.record(nanos);
+
+        assertThat(latencies.getPercentile(0)).isEqualTo(91);
+        assertThat(latencies.getPercentile(50)).isEqualTo(95);
+        assertThat(latencies.getCount()).isEqualTo(100);
+    }
+
+    @Test
+    void emptyAndInvalid() {
+        LatencyRecorder latencies = new LatencyRecorder(10);
+        assertThat(latencies.getPercentile(99)).isZero();
+        assertThatThrownBy(() -> latencies.getPercentile(101))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Percentile must be between 0 and 100");
+        assertThatThrownBy(() -> new LatencyRecorder(0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Window size must be positive");
+    }
+}
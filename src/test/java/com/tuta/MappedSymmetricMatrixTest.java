@@ -0,0 +1,120 @@
+package com.tuta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class MappedSymmetricMatrixTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @EnumSource(MappedSymmetricMatrix.Encoding.class)
+    void checkConstructor(MappedSymmetricMatrix.Encoding encoding) throws IOException {
+        Path file = tempDir.resolve("matrix.bin");
+        try (MappedSymmetricMatrix matrix = new MappedSymmetricMatrix(file, 5, encoding)) {
+            assertThat(matrix.size()).isEqualTo(5);
+            assertThat(matrix.getNumOfValues()).isEqualTo(10);
+            assertThat(Files.size(file)).isEqualTo(10L * encoding.getBytesPerValue());
+            for (int row = 1; row < 5; row++) {
+                for (int col = 0; col < row; col++) {
+                    assertThat(matrix.get(row, col)).isNaN();
+                }
+                assertThat(matrix.get(row, row)).isEqualTo(1f);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"FLOAT32, 0", "FLOAT16, 0.0005", "BYTE, 0.004"})
+    void setAndGet(MappedSymmetricMatrix.Encoding encoding, float tolerance) throws IOException {
+        try (MappedSymmetricMatrix matrix = new MappedSymmetricMatrix(tempDir.resolve("matrix.bin"), 4, encoding)) {
+            matrix.set(0, 1, 0.3217f);
+            matrix.set(3, 2, -0.75f);
+            matrix.set(1, 3, 1f);
+
+            assertThat(matrix.get(1, 0)).isCloseTo(0.3217f, within(tolerance));
+            assertThat(matrix.get(2, 3)).isCloseTo(-0.75f, within(tolerance));
+            assertThat(matrix.get(3, 1)).isEqualTo(1f);
+            assertThat(matrix.get(2, 0)).isNaN();
+        }
+    }
+
+    @ParameterizedTest(name = "Test case {index} - Row: {0} Col: {1}")
+    @CsvSource({"-1, 1", "1, -1", "2, 0", "0, 2"})
+    void invalidIndices(int row, int col) throws IOException {
+        try (MappedSymmetricMatrix matrix = new MappedSymmetricMatrix(tempDir.resolve("matrix.bin"), 2,
+                MappedSymmetricMatrix.Encoding.FLOAT32)) {
+            assertThatThrownBy(() -> matrix.get(row, col))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Invalid indices");
+            assertThatThrownBy(() -> matrix.set(row, col, 1f))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Invalid indices");
+            assertThatThrownBy(() -> matrix.set(1, 1, 3f))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Invalid indices for the lower triangular part");
+        }
+    }
+
+    @Test
+    void mapIndexBeyondIntRange() {
+        assertThat(MappedSymmetricMatrix.mapIndex(200_000, 199_999)).isEqualTo(20_000_099_999L);
+        assertThat(MappedSymmetricMatrix.mapIndex(70_000, 0)).isGreaterThan(Integer.MAX_VALUE);
+    }
+
+    @Test
+    void halfFloatConversion() {
+        float[] values = {0f, -0f, 1f, -1f, 0.5f, 0.3217f, 65504f, 6.1035156e-5f, 5.9604645e-8f, 0.1f};
+        for (float value : values) {
+            float converted = MappedSymmetricMatrix.halfToFloat(MappedSymmetricMatrix.floatToHalf(value));
+            assertThat(converted).isCloseTo(value, within(Math.abs(value) / 2048));
+        }
+        assertThat(MappedSymmetricMatrix.halfToFloat(MappedSymmetricMatrix.floatToHalf(Float.NaN))).isNaN();
+        assertThat(MappedSymmetricMatrix.halfToFloat(MappedSymmetricMatrix.floatToHalf(1e6f)))
+                .isEqualTo(Float.POSITIVE_INFINITY);
+        assertThat(MappedSymmetricMatrix.floatToHalf(1f)).isEqualTo((short) 0x3c00);
+        // 1 + 2^-11 lies halfway between 1 and the next half-float and rounds to the even one
+        assertThat(MappedSymmetricMatrix.floatToHalf(1f + 0x1p-11f)).isEqualTo((short) 0x3c00);
+        assertThat(MappedSymmetricMatrix.floatToHalf(1f + 0x1p-11f + 0x1p-20f)).isEqualTo((short) 0x3c01);
+    }
+
+    @Test
+    void byteQuantization() {
+        for (int code = 0; code < 255; code++) {
+            float value = MappedSymmetricMatrix.byteToFloat((byte) code);
+            assertThat(MappedSymmetricMatrix.floatToByte(value)).isEqualTo((byte) code);
+        }
+        assertThat(MappedSymmetricMatrix.byteToFloat(MappedSymmetricMatrix.floatToByte(0f))).isEqualTo(0f);
+        assertThat(MappedSymmetricMatrix.byteToFloat(MappedSymmetricMatrix.floatToByte(2f))).isEqualTo(1f);
+        assertThat(MappedSymmetricMatrix.byteToFloat(MappedSymmetricMatrix.floatToByte(Float.NaN))).isNaN();
+    }
+
+    @Test
+    void computeAllMatchesHeapMatrix() throws IOException {
+        SparseVector[] vectors = SimilarityEngineTest.randomVectors(60, 40, 7);
+        SymmetricMatrix expected = new SymmetricMatrix(vectors.length);
+        new SimilarityEngine(false).computeAll(vectors, expected);
+
+        try (MappedSymmetricMatrix matrix = new MappedSymmetricMatrix(tempDir.resolve("matrix.bin"), vectors.length,
+                MappedSymmetricMatrix.Encoding.FLOAT32)) {
+            new SimilarityEngine(true).computeAll(vectors, matrix);
+            for (int row = 0; row < vectors.length; row++) {
+                for (int col = 0; col < vectors.length; col++) {
+                    assertThat(matrix.get(row, col)).isEqualTo(expected.get(row, col));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MinHashLshTest {
+
+    private static Email[] readEmails(String filePath) throws IOException {
+        try (Reader reader = new FileReader(filePath)) {
+            return new Gson().fromJson(reader, Email[].class);
+        }
+    }
+
+    @Test
+    void encodePair() {
+        long pair = MinHashLsh.encodePair(3, 7);
+        assertThat(pair).isEqualTo(MinHashLsh.encodePair(7, 3));
+        assertThat(MinHashLsh.pairRow(pair)).isEqualTo(7);
+        assertThat(MinHashLsh.pairCol(pair)).isEqualTo(3);
+    }
+
+    @Test
+    void add() {
+        MinHashLsh lsh = new MinHashLsh(4, 2, 1, 42);
+        for (int i = 0; i < 100; i++) {
+            assertThat(lsh.add("Body number " + i)).isEqualTo(i);
+        }
+        assertThat(lsh.size()).isEqualTo(100);
+    }
+
+    @Test
+    void getCandidatePairs() {
+        MinHashLsh lsh = new MinHashLsh(16, 2, 1, 42);
+        lsh.add("Claim your prize now, John!");
+        lsh.add("Claim your prize now, Jane!");
+        lsh.add("Meeting notes for the quarterly planning");
+        lsh.add("claim YOUR prize now john");
+
+        long[] candidatePairs = lsh.getCandidatePairs();
+
+        assertThat(candidatePairs).contains(MinHashLsh.encodePair(0, 3), MinHashLsh.encodePair(0, 1))
+                .doesNotContain(MinHashLsh.encodePair(0, 2))
+                .isSorted()
+                .doesNotHaveDuplicates();
+    }
+
+    @Test
+    void identicalBodiesAreAlwaysCandidates() {
+        MinHashLsh lsh = new MinHashLsh(4, 8, 3, 7);
+        lsh.add("Act promptly and enjoy your well-deserved reward!");
+        lsh.add("Our team will review the document by Friday.");
+        lsh.add("act promptly and enjoy your well-deserved reward");
+
+        assertThat(lsh.getCandidatePairs()).containsExactly(MinHashLsh.encodePair(0, 2));
+    }
+
+    @Test
+    void campaignPairsAreStoredOnce() {
+        MinHashLsh lsh = new MinHashLsh(32, 2, 1, 42);
+        for (int i = 0; i < 600; i++) {
+            lsh.add("Act promptly and enjoy your well-deserved reward!");
+            lsh.add("");
+        }
+
+        long[] candidatePairs = lsh.getCandidatePairs();
+
+        // Every body falls into the same bucket as its copies in all 32 bands
+        assertThat(candidatePairs).hasSize(2 * 600 * 599 / 2).isSorted().doesNotHaveDuplicates();
+        assertThat(candidatePairs).contains(MinHashLsh.encodePair(0, 1198), MinHashLsh.encodePair(1, 1199))
+                .doesNotContain(MinHashLsh.encodePair(0, 1));
+    }
+
+    @Test
+    void getCandidatePairsOfSomeDocuments() {
+        MinHashLsh lsh = new MinHashLsh(16, 2, 1, 42);
+        lsh.add("Claim your prize now, John!");
+        lsh.add("Claim your prize now, John!");
+        lsh.add("Meeting notes for the quarterly planning");
+        lsh.add("claim YOUR prize now jane");
+
+        // Pairs are encoded with the positions of the documents in the given array
+        assertThat(lsh.getCandidatePairs(new int[]{0, 2, 3})).containsExactly(MinHashLsh.encodePair(0, 2));
+        assertThat(lsh.getCandidatePairs(new int[]{2})).isEmpty();
+    }
+
+    @Test
+    void tooManyCandidatePairs() {
+        MinHashLsh lsh = new MinHashLsh(1, 1, 1, 42);
+        for (int i = 0; i < 70_000; i++) lsh.add("");
+
+        assertThatThrownBy(lsh::getCandidatePairs)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Too many candidate pairs: " + 70_000L * 69_999 / 2);
+    }
+
+    @Test
+    void invalidArguments() {
+        assertThatThrownBy(() -> new MinHashLsh(0, 2, 1, 42))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid LSH configuration");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void measureRecallAgainstExactMode(String filePath) throws IOException {
+        final float similarityThreshold = 0.32f;
+        Email[] emails = readEmails(filePath);
+        SparseVector[] vectors = new CorpusIndex(emails).getVectors();
+        SimilarityEngine engine = new SimilarityEngine(false);
+
+        SymmetricMatrix exactSimilarity = new SymmetricMatrix(emails.length);
+        engine.computeAll(vectors, exactSimilarity);
+
+        MinHashLsh lsh = new MinHashLsh(32, 2, 1, 42);
+        for (Email email : emails) lsh.add(email.getBody());
+        long[] candidatePairs = lsh.getCandidatePairs();
+        SymmetricMatrix approximateSimilarity = new SymmetricMatrix(emails.length);
+        engine.computePairs(vectors, candidatePairs, approximateSimilarity);
+
+        MinHashLsh.RecallReport report = MinHashLsh.measureRecall(exactSimilarity, candidatePairs, similarityThreshold);
+        assertThat(report.getNumOfSimilarPairs()).isPositive();
+        assertThat(report.getRecall()).isEqualTo(1.0);
+        assertThat(report.getNumOfCandidatePairs()).isLessThan(emails.length * (emails.length - 1) / 2);
+
+        // Every pair above the threshold keeps its exact similarity, so the classification is unchanged
+        for (int i = 0; i < emails.length; i++) {
+            for (int j = 0; j < emails.length; j++) {
+                if (i != j && exactSimilarity.get(i, j) > similarityThreshold) {
+                    assertThat(approximateSimilarity.get(i, j)).isEqualTo(exactSimilarity.get(i, j));
+                }
+            }
+        }
+    }
+}
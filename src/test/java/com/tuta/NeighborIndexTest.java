@@ -0,0 +1,149 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NeighborIndexTest {
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static CorpusIndex readCorpus(String filePath) throws IOException {
+        try (Reader reader = new FileReader(filePath)) {
+            return new CorpusIndex(new Gson().fromJson(reader, Email[].class));
+        }
+    }
+
+    private static CorpusIndex randomCorpus(int numOfEmails, int vocabularySize, long seed) {
+        Random random = new Random(seed);
+        Email[] emails = new Email[numOfEmails];
+        for (int i = 0; i < numOfEmails; i++) {
+            StringBuilder body = new StringBuilder();
+            for (int j = 5 + random.nextInt(30); j > 0; j--) {
+                body.append("word").append((int) Math.pow(vocabularySize, random.nextDouble())).append(' ');
+            }
+            emails[i] = new Email("receiver" + i, body.toString());
+        }
+        return new CorpusIndex(emails);
+    }
+
+    /**
+     * Ranks all other emails sharing a term with the query by brute force.
+     */
+    private static List<Integer> expectedNeighbors(SparseVector[] vectors, SparseVector query, int excluded, int k) {
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < vectors.length; i++) {
+            if (i == excluded) continue;
+            for (int termId : query.getTermIds()) {
+                if (vectors[i].get(termId) != 0) {
+                    candidates.add(i);
+                    break;
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(
+                (Integer i) -> -SimilarityUtils.calcCosineSimilarity(query, vectors[i])).thenComparingInt(i -> i));
+        return candidates.subList(0, Math.min(k, candidates.size()));
+    }
+
+    private static void assertNeighbors(Neighbors neighbors, SparseVector[] vectors, SparseVector query, int excluded,
+            int k) {
+        List<Integer> expected = expectedNeighbors(vectors, query, excluded, k);
+        assertThat(neighbors.size()).isEqualTo(expected.size());
+        for (int rank = 0; rank < expected.size(); rank++) {
+            assertThat(neighbors.getEmailIndex(rank)).isEqualTo(expected.get(rank));
+            assertThat(neighbors.getSimilarity(rank))
+                    .isEqualTo(SimilarityUtils.calcCosineSimilarity(query, vectors[expected.get(rank)]));
+        }
+    }
+
+    @ParameterizedTest(name = "{0}, k: {1}")
+    @CsvSource({"emails-sm.json, 1", "emails-sm.json, 3", "emails-m.json, 4", "emails-m.json, 20"})
+    void queryByEmailIndex(String filePath, int k) throws IOException {
+        CorpusIndex corpusIndex = readCorpus(filePath);
+        NeighborIndex neighborIndex = new NeighborIndex(corpusIndex, new SimilarityEngine(false));
+        SparseVector[] vectors = corpusIndex.getVectors();
+
+        assertThat(neighborIndex.size()).isEqualTo(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            assertNeighbors(neighborIndex.query(i, k), vectors, vectors[i], i, k);
+        }
+    }
+
+    @Test
+    void queryByEmail() throws IOException {
+        CorpusIndex corpusIndex = readCorpus("emails-m.json");
+        NeighborIndex neighborIndex = new NeighborIndex(corpusIndex, new SimilarityEngine(false));
+        SparseVector[] vectors = corpusIndex.getVectors();
+        Email email = new Email("new@example.com", "Congratulations, you won a free prize! Unknownword");
+
+        Neighbors neighbors = neighborIndex.query(email, 5);
+
+        assertThat(neighbors.size()).isPositive();
+        assertNeighbors(neighbors, vectors, corpusIndex.getVector(email.getBody()), -1, 5);
+        assertThat(neighborIndex.query(new Email("new@example.com", "Zzyzx qwertzuiop"), 5).size()).isZero();
+    }
+
+    @ParameterizedTest(name = "Tiles: {0}")
+    @CsvSource({"1", "3", "64"})
+    void queryAllMatchesSingleQueries(int numOfTiles) {
+        CorpusIndex corpusIndex = randomCorpus(1500, 3000, numOfTiles);
+        NeighborIndex neighborIndex = new NeighborIndex(corpusIndex, new SimilarityEngine(executor, numOfTiles));
+        SparseVector[] vectors = corpusIndex.getVectors();
+
+        Neighbors[] all = neighborIndex.queryAll(7);
+
+        assertThat(all).hasSize(1500);
+        for (int i = 0; i < all.length; i++) {
+            Neighbors single = neighborIndex.query(i, 7);
+            assertThat(all[i].toString()).isEqualTo(single.toString());
+            for (int rank = 0; rank < single.size(); rank++) {
+                assertThat(all[i].getEmailIndex(rank)).isEqualTo(single.getEmailIndex(rank));
+                assertThat(all[i].getSimilarity(rank)).isEqualTo(single.getSimilarity(rank));
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            assertNeighbors(all[i], vectors, vectors[i], i, 7);
+        }
+    }
+
+    @Test
+    void invalidArguments() throws IOException {
+        NeighborIndex neighborIndex = new NeighborIndex(readCorpus("emails-sm.json"), new SimilarityEngine(false));
+
+        assertThatThrownBy(() -> neighborIndex.query(-1, 3))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid email index: -1");
+        assertThatThrownBy(() -> neighborIndex.query(0, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Number of neighbors must be positive");
+        assertThatThrownBy(() -> neighborIndex.queryAll(0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Number of neighbors must be positive");
+    }
+}
@@ -0,0 +1,214 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OnlineSpamIndexTest {
+    private static final float SIMILARITY_THRESHOLD = 0.32f;
+    private Email[] emails;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (Reader reader = new FileReader("emails-m.json")) {
+            emails = new Gson().fromJson(reader, Email[].class);
+        }
+    }
+
+    /**
+     * Counts the similar emails of the last email like a batch run over the given emails.
+     */
+    private static int batchSimilarCountOfLast(Email[] emails) {
+        SparseVector[] vectors = new CorpusIndex(emails).getVectors();
+        int last = vectors.length - 1;
+        int similarEmailsCount = 0;
+        for (int i = 0; i < last; i++) {
+            if (SimilarityUtils.calcCosineSimilarity(vectors[last], vectors[i]) > SIMILARITY_THRESHOLD) {
+                similarEmailsCount++;
+            }
+        }
+        return similarEmailsCount;
+    }
+
+    @Test
+    void classifyWithoutEpochGrowthMatchesBatch() {
+        OnlineSpamIndex spamIndex = new OnlineSpamIndex(SIMILARITY_THRESHOLD, 1, 0f);
+        for (int i = 0; i < emails.length; i++) {
+            SpamVerdict verdict = spamIndex.classify(emails[i]);
+            int expectedCount = batchSimilarCountOfLast(Arrays.copyOf(emails, i + 1));
+
+            assertThat(verdict.getEmailIndex()).isEqualTo(i);
+            assertThat(verdict.getSimilarEmailsCount()).as("Email %d", i).isEqualTo(expectedCount);
+            assertThat(verdict.isSpam()).isEqualTo(expectedCount > 1);
+        }
+        assertThat(spamIndex.size()).isEqualTo(emails.length);
+        assertThat(spamIndex.getEpoch()).isEqualTo(emails.length + 1);
+    }
+
+    @Test
+    void classifyUpdatesSimilarCountsOfIndexedEmails() {
+        OnlineSpamIndex spamIndex = new OnlineSpamIndex(SIMILARITY_THRESHOLD, 1, 0f);
+        for (Email email : emails) spamIndex.classify(email);
+
+        int totalOfSimilarCounts = 0;
+        for (int i = 0; i < emails.length; i++) {
+            totalOfSimilarCounts += spamIndex.getSimilarCount(i);
+            assertThat(spamIndex.isSpam(i)).isEqualTo(spamIndex.getSimilarCount(i) > 1);
+        }
+        // Each pair is judged once, when the later of both emails arrives
+        int numOfSimilarPairs = 0;
+        for (int i = 1; i <= emails.length; i++) {
+            numOfSimilarPairs += batchSimilarCountOfLast(Arrays.copyOf(emails, i));
+        }
+        assertThat(totalOfSimilarCounts).isEqualTo(2 * numOfSimilarPairs);
+    }
+
+    @Test
+    void classifyRefreshesOnEpochGrowth() {
+        OnlineSpamIndex spamIndex = new OnlineSpamIndex(
+                new CorpusIndex(Arrays.copyOf(emails, 5)), SIMILARITY_THRESHOLD, 1, 0.5f);
+        assertThat(spamIndex.getEpoch()).isEqualTo(1);
+
+        spamIndex.classify(emails[5]);
+        spamIndex.classify(emails[6]);
+        assertThat(spamIndex.getEpoch()).isEqualTo(1);
+
+        SpamVerdict verdict = spamIndex.classify(emails[7]);
+        assertThat(spamIndex.getEpoch()).isEqualTo(2);
+        assertThat(verdict.getSimilarEmailsCount()).isEqualTo(batchSimilarCountOfLast(Arrays.copyOf(emails, 8)));
+
+        spamIndex.refresh();
+        assertThat(spamIndex.getEpoch()).isEqualTo(3);
+    }
+
+    @Test
+    void classifyWithNegativeThreshold() {
+        // Emails sharing no term have a similarity of 0, which is above the threshold too
+        OnlineSpamIndex spamIndex = new OnlineSpamIndex(-0.5f, 1, 0.1f);
+        spamIndex.classify(new Email("a", "Claim your prize now"));
+        spamIndex.classify(new Email("b", "Meeting notes for the planning"));
+
+        SpamVerdict verdict = spamIndex.classify(new Email("c", "Lunch on Friday"));
+
+        assertThat(verdict.getSimilarEmailsCount()).isEqualTo(2);
+        assertThat(spamIndex.score(new Email("d", "")).getSimilarEmailsCount()).isEqualTo(3);
+        assertThat(spamIndex.getSimilarCount(0)).isEqualTo(2);
+    }
+
+    @Test
+    void existingCorpusStartsWithBatchSimilarCounts() {
+        OnlineSpamIndex spamIndex = new OnlineSpamIndex(new CorpusIndex(emails), SIMILARITY_THRESHOLD, 1, 0.1f);
+
+        SimilarityGraph graph = new SimilarityEngine(false).computeGraph(new CorpusIndex(emails).getVectors(),
+                SIMILARITY_THRESHOLD);
+        boolean[] spam = graph.classify(1);
+        for (int i = 0; i < emails.length; i++) {
+            assertThat(spamIndex.getSimilarCount(i)).isEqualTo(graph.getSimilarCount(i));
+            assertThat(spamIndex.isSpam(i)).isEqualTo(spam[i]);
+        }
+        assertThat(spam).contains(true);
+    }
+
+    @Test
+    void existingCorpusTakesSimilarCountsFromGraph() {
+        SparseVector[] vectors = new CorpusIndex(emails).getVectors();
+        SimilarityEngine engine = new SimilarityEngine(false);
+        SimilarityGraph expected = engine.computeGraph(vectors, SIMILARITY_THRESHOLD);
+
+        // A graph with a lower threshold holds all similar pairs
+        OnlineSpamIndex fromLowerThreshold = new OnlineSpamIndex(new CorpusIndex(emails),
+                engine.computeGraph(vectors, 0.1f), SIMILARITY_THRESHOLD, 1, 0.1f);
+        // A graph with a higher threshold misses some, so the counts are computed instead
+        OnlineSpamIndex fromHigherThreshold = new OnlineSpamIndex(new CorpusIndex(emails),
+                engine.computeGraph(vectors, 0.9f), SIMILARITY_THRESHOLD, 1, 0.1f);
+        // The counts of a graph without pairs are taken as they are
+        SimilarityGraph emptyGraph = new SimilarityGraph(emails.length, SIMILARITY_THRESHOLD,
+                new int[emails.length + 1], new int[0], new float[0]);
+        OnlineSpamIndex fromEmptyGraph = new OnlineSpamIndex(new CorpusIndex(emails), emptyGraph,
+                SIMILARITY_THRESHOLD, 1, 0.1f);
+
+        for (int i = 0; i < emails.length; i++) {
+            assertThat(fromLowerThreshold.getSimilarCount(i)).isEqualTo(expected.getSimilarCount(i));
+            assertThat(fromHigherThreshold.getSimilarCount(i)).isEqualTo(expected.getSimilarCount(i));
+            assertThat(fromEmptyGraph.getSimilarCount(i)).isZero();
+        }
+    }
+
+    @Test
+    void classifyAddedEmailsConcurrently() throws Exception {
+        final float similarityThreshold = 0.1f;
+        Email[] randomEmails = CorpusIndexTest.randomEmails(600, 3);
+        Email[] corpus = Arrays.copyOf(randomEmails, 300);
+        OnlineSpamIndex expectedIndex = new OnlineSpamIndex(new CorpusIndex(corpus), similarityThreshold, 1, 10f);
+        OnlineSpamIndex spamIndex = new OnlineSpamIndex(new CorpusIndex(corpus), similarityThreshold, 1, 10f);
+        SpamVerdict[] expected = new SpamVerdict[randomEmails.length];
+        for (int i = corpus.length; i < randomEmails.length; i++) {
+            expected[i] = expectedIndex.classify(randomEmails[i]);
+            assertThat(spamIndex.add(randomEmails[i])).isEqualTo(i);
+        }
+        assertThat(Arrays.stream(expected, corpus.length, expected.length)
+                .mapToInt(SpamVerdict::getSimilarEmailsCount).sum()).isPositive();
+
+        // Classifying the added emails only reads the index, so it can run on several threads
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SpamVerdict>> verdicts = new ArrayList<>();
+            for (int i = corpus.length; i < randomEmails.length; i++) {
+                final int emailIndex = i;
+                verdicts.add(executor.submit(() -> spamIndex.classify(emailIndex)));
+            }
+            for (int i = corpus.length; i < randomEmails.length; i++) {
+                SpamVerdict verdict = verdicts.get(i - corpus.length).get();
+                assertThat(verdict.getSimilarEmailsCount()).isEqualTo(expected[i].getSimilarEmailsCount());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < randomEmails.length; i++) {
+            assertThat(spamIndex.getSimilarCount(i)).as("Email %d", i).isEqualTo(expectedIndex.getSimilarCount(i));
+        }
+        assertThatThrownBy(() -> spamIndex.classify(randomEmails.length))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid email index: 600");
+    }
+
+    @Test
+    void invalidEpochGrowth() {
+        assertThatThrownBy(() -> new OnlineSpamIndex(SIMILARITY_THRESHOLD, 1, -1f))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Epoch growth must not be negative");
+    }
+
+    @Test
+    void scoreMatchesClassifyWithoutAdding() {
+        OnlineSpamIndex spamIndex = new OnlineSpamIndex(SIMILARITY_THRESHOLD, 1, 10f);
+        for (Email email : emails) {
+            SpamVerdict scored = spamIndex.score(email);
+            int size = spamIndex.size();
+            SpamVerdict classified = spamIndex.classify(email);
+
+            assertThat(scored.getEmailIndex()).isEqualTo(-1);
+            assertThat(scored.getSimilarEmailsCount()).isEqualTo(classified.getSimilarEmailsCount());
+            assertThat(scored.isSpam()).isEqualTo(classified.isSpam());
+            assertThat(spamIndex.size()).isEqualTo(size + 1);
+        }
+    }
+
+    @Test
+    void spamVerdictToString() {
+        assertThat(new SpamVerdict(3, 2, true).toString()).isEqualTo("Email 3: 2 similar emails, spam: Yes");
+    }
+}
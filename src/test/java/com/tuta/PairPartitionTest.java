@@ -0,0 +1,59 @@
+package com.tuta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PairPartitionTest {
+
+    @ParameterizedTest(name = "Emails: {0}, blocks: {1}")
+    @CsvSource({"0, 1", "1, 3", "23, 1", "23, 4", "23, 23", "23, 40", "100, 7"})
+    void splitCoversEveryPairOnce(int numOfEmails, int numOfBlocks) {
+        PairPartition[] partitions = PairPartition.split(numOfEmails, numOfBlocks);
+
+        assertThat(partitions).hasSize(numOfBlocks * (numOfBlocks + 1) / 2);
+        long numOfPairs = 0;
+        for (int i = 0; i < partitions.length; i++) {
+            assertThat(partitions[i].getIndex()).isEqualTo(i);
+            numOfPairs += partitions[i].getNumOfPairs();
+        }
+        assertThat(numOfPairs).isEqualTo((long) numOfEmails * (numOfEmails - 1) / 2);
+        for (int row = 1; row < numOfEmails; row++) {
+            for (int col = 0; col < row; col++) {
+                int containing = 0;
+                for (PairPartition partition : partitions) {
+                    if (partition.contains(row, col)) containing++;
+                }
+                assertThat(containing).as("Pair %d, %d", row, col).isEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    void getNumOfPairs() {
+        PairPartition diagonal = new PairPartition(0, 10, 14, 10, 14);
+        PairPartition offDiagonal = new PairPartition(1, 10, 14, 0, 5);
+
+        assertThat(diagonal.getNumOfPairs()).isEqualTo(6);
+        assertThat(diagonal.contains(12, 11)).isTrue();
+        assertThat(diagonal.contains(11, 12)).isFalse();
+        assertThat(diagonal.contains(11, 11)).isFalse();
+        assertThat(offDiagonal.getNumOfPairs()).isEqualTo(20);
+        assertThat(offDiagonal.contains(13, 4)).isTrue();
+        assertThat(offDiagonal.contains(14, 4)).isFalse();
+        assertThat(offDiagonal.toString()).isEqualTo("Partition 1 [rows 10-14, columns 0-5]");
+    }
+
+    @Test
+    void invalidArguments() {
+        assertThatThrownBy(() -> PairPartition.split(10, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Number of blocks must be positive");
+        assertThatThrownBy(() -> new PairPartition(0, 5, 10, 6, 8))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid partition");
+    }
+}
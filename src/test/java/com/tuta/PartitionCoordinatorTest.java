@@ -0,0 +1,128 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PartitionCoordinatorTest {
+    @TempDir
+    Path tempDir;
+
+    private static CorpusIndex readCorpus(String filePath) throws IOException {
+        try (Reader reader = new FileReader(filePath)) {
+            return new CorpusIndex(new Gson().fromJson(reader, Email[].class));
+        }
+    }
+
+    private static int[] expectedCounts(CorpusIndex corpusIndex, float similarityThreshold) {
+        SparseVector[] vectors = corpusIndex.getVectors();
+        SimilarityGraph graph = new SimilarityEngine(false).computeGraph(vectors, new InvertedIndex(vectors),
+                similarityThreshold);
+        int[] counts = new int[vectors.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = graph.getSimilarCount(i);
+        }
+        return counts;
+    }
+
+    @ParameterizedTest(name = "Workers: {0}, blocks: {1}")
+    @CsvSource({"1, 1", "2, 4", "3, 4", "5, 2"})
+    void assignPartitions(int numOfWorkers, int numOfBlocks) {
+        PartitionCoordinator coordinator = new PartitionCoordinator(numOfWorkers, numOfBlocks);
+        int[][] assignment = coordinator.assignPartitions(1000);
+        PairPartition[] partitions = PairPartition.split(1000, numOfBlocks);
+
+        assertThat(assignment.length).isEqualTo(numOfWorkers);
+        assertThat(Arrays.stream(assignment).flatMapToInt(Arrays::stream).sorted().toArray())
+                .containsExactly(Arrays.stream(partitions).mapToInt(PairPartition::getIndex).toArray());
+        long largestPartition = Arrays.stream(partitions).mapToLong(PairPartition::getNumOfPairs).max().orElse(0);
+        long[] loads = Arrays.stream(assignment)
+                .mapToLong(indices -> Arrays.stream(indices).mapToLong(i -> partitions[i].getNumOfPairs()).sum())
+                .toArray();
+        assertThat(Arrays.stream(loads).max().getAsLong() - Arrays.stream(loads).min().getAsLong())
+                .isLessThanOrEqualTo(largestPartition);
+        for (int[] indices : assignment) {
+            assertThat(indices).isSorted();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void computeSimilarCountsInWorkerProcesses(String filePath) throws IOException {
+        CorpusIndex corpusIndex = readCorpus(filePath);
+        Path snapshotFile = tempDir.resolve("index.snapshot");
+        new IndexSnapshot(corpusIndex, null, null).write(snapshotFile);
+
+        PartitionCoordinator coordinator = new PartitionCoordinator(2, 3);
+        coordinator.setThreadsPerWorker(2);
+        int[] similarCounts = coordinator.computeSimilarCounts(snapshotFile, corpusIndex.size(), 0.32f,
+                Integer.MAX_VALUE, tempDir);
+
+        assertThat(similarCounts).containsExactly(expectedCounts(corpusIndex, 0.32f));
+        assertThat(tempDir.resolve("counts-0.bin")).exists();
+        assertThat(tempDir.resolve("worker-1.log")).exists();
+    }
+
+    @Test
+    void runWorkerInProcess() throws IOException {
+        CorpusIndex corpusIndex = readCorpus("emails-m.json");
+        Path snapshotFile = tempDir.resolve("index.snapshot");
+        new IndexSnapshot(corpusIndex, null, null).write(snapshotFile);
+
+        // Two workers splitting the six partitions of three blocks between them
+        int[] similarCounts = new int[corpusIndex.size()];
+        PartitionWorker.run(new String[]{snapshotFile.toString(), tempDir.resolve("a.bin").toString(), "0.2",
+                String.valueOf(Integer.MAX_VALUE), "3", "1", "0", "2", "4"});
+        PartitionWorker.run(new String[]{snapshotFile.toString(), tempDir.resolve("b.bin").toString(), "0.2",
+                String.valueOf(Integer.MAX_VALUE), "3", "2", "1", "3", "5"});
+        PartitionWorker.addCounts(tempDir.resolve("a.bin"), similarCounts);
+        PartitionWorker.addCounts(tempDir.resolve("b.bin"), similarCounts);
+
+        assertThat(similarCounts).containsExactly(expectedCounts(corpusIndex, 0.2f));
+        assertThatThrownBy(() -> PartitionWorker.addCounts(tempDir.resolve("a.bin"), new int[3]))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith("Partition result does not match the number of emails");
+    }
+
+    @Test
+    void failingWorker() throws IOException {
+        Files.write(tempDir.resolve("index.snapshot"), new byte[64]);
+
+        assertThatThrownBy(() -> new PartitionCoordinator(1, 1).computeSimilarCounts(
+                tempDir.resolve("index.snapshot"), 10, 0.32f, Integer.MAX_VALUE, tempDir))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith("Partition worker 0 failed with exit code 1");
+        assertThat(new String(Files.readAllBytes(tempDir.resolve("worker-0.log"))))
+                .contains("Not an index snapshot");
+    }
+
+    @Test
+    void invalidArguments() {
+        assertThatThrownBy(() -> new PartitionCoordinator(0, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Number of workers must be positive");
+        assertThatThrownBy(() -> new PartitionCoordinator(1, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Number of blocks must be positive");
+        assertThatThrownBy(() -> new PartitionCoordinator(1, 1).computeSimilarCounts(tempDir, 10, -1f,
+                Integer.MAX_VALUE, tempDir))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Similarity threshold must not be negative");
+        assertThatThrownBy(() -> PartitionWorker.run(new String[]{"index.snapshot", "counts.bin", "0.3"}))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Usage: PartitionWorker");
+    }
+}
@@ -0,0 +1,133 @@
+package com.tuta;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PipelineMetricsTest {
+
+    @Test
+    void disabledRecordsNothing() {
+        PipelineMetrics metrics = PipelineMetrics.DISABLED;
+        metrics.start(PipelineMetrics.Stage.PARSE);
+        metrics.record(PipelineMetrics.Stage.TOKENIZE, 100, 100, 1);
+        metrics.stop(PipelineMetrics.Stage.SIMILARITY, 10);
+
+        assertThat(metrics.isEnabled()).isFalse();
+        assertThat(metrics.getThreadAllocatedBytes()).isZero();
+        for (PipelineMetrics.Stage stage : PipelineMetrics.Stage.values()) {
+            assertThat(metrics.isRecorded(stage)).isFalse();
+        }
+    }
+
+    @Test
+    void stopAddsTimeAllocationsAndItems() {
+        PipelineMetrics metrics = new PipelineMetrics(false);
+        metrics.start(PipelineMetrics.Stage.TFIDF);
+        long[] allocated = new long[1 << 20];
+        metrics.stop(PipelineMetrics.Stage.TFIDF, 4);
+        metrics.start(PipelineMetrics.Stage.TFIDF);
+        metrics.stop(PipelineMetrics.Stage.TFIDF, 6);
+
+        assertThat(allocated).hasSize(1 << 20);
+        assertThat(metrics.isRecorded(PipelineMetrics.Stage.TFIDF)).isTrue();
+        assertThat(metrics.isRecorded(PipelineMetrics.Stage.PARSE)).isFalse();
+        assertThat(metrics.getNumOfItems(PipelineMetrics.Stage.TFIDF)).isEqualTo(10);
+        assertThat(metrics.getWallNanos(PipelineMetrics.Stage.TFIDF)).isPositive();
+        assertThat(metrics.getItemsPerSecond(PipelineMetrics.Stage.TFIDF)).isPositive();
+        if (metrics.isAllocationMeasured()) {
+            assertThat(metrics.getAllocatedBytes(PipelineMetrics.Stage.TFIDF)).isGreaterThanOrEqualTo(8L << 20);
+        }
+    }
+
+    @Test
+    void recordedSpansAreExcludedFromTheStartedStage() throws InterruptedException {
+        PipelineMetrics metrics = new PipelineMetrics(false);
+        metrics.start(PipelineMetrics.Stage.PARSE);
+        Thread.sleep(5);
+        metrics.record(PipelineMetrics.Stage.TOKENIZE, 1_000_000_000L, 0, 100);
+        metrics.stop(PipelineMetrics.Stage.PARSE, 1);
+
+        // The span is longer than the stage, which therefore reports no time of its own
+        assertThat(metrics.getWallNanos(PipelineMetrics.Stage.PARSE)).isZero();
+        assertThat(metrics.getWallNanos(PipelineMetrics.Stage.TOKENIZE)).isEqualTo(1_000_000_000L);
+        assertThat(metrics.getItemsPerSecond(PipelineMetrics.Stage.TOKENIZE)).isEqualTo(100.0);
+        assertThat(metrics.getItemsPerSecond(PipelineMetrics.Stage.PARSE)).isZero();
+    }
+
+    @Test
+    void stagesMustNotOverlap() {
+        PipelineMetrics metrics = new PipelineMetrics(false);
+        metrics.start(PipelineMetrics.Stage.PARSE);
+
+        assertThatThrownBy(() -> metrics.start(PipelineMetrics.Stage.TFIDF))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Stage PARSE is still started");
+        assertThatThrownBy(() -> metrics.stop(PipelineMetrics.Stage.TFIDF, 1))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Stage TFIDF is not started");
+    }
+
+    @Test
+    void fillRatios() {
+        PipelineMetrics metrics = new PipelineMetrics(false);
+        assertThat(metrics.getTermMatrixFillRatio()).isNaN();
+        assertThat(metrics.getSimilarityFillRatio()).isNaN();
+
+        metrics.setVocabularySize(50);
+        metrics.setTermMatrixSize(10, 125);
+        metrics.setNumOfSimilarPairs(9);
+
+        assertThat(metrics.getTermMatrixFillRatio()).isEqualTo(0.25);
+        assertThat(metrics.getSimilarityFillRatio()).isEqualTo(0.2);
+    }
+
+    @Test
+    void getReport() {
+        PipelineMetrics metrics = new PipelineMetrics(false);
+        metrics.start(PipelineMetrics.Stage.SIMILARITY);
+        metrics.stop(PipelineMetrics.Stage.SIMILARITY, 45);
+        metrics.setVocabularySize(50);
+
+        String report = metrics.getReport();
+
+        assertThat(report).startsWith("--> Pipeline metrics").contains("similarity", "total", "vocabulary: 50 terms")
+                .doesNotContain("tokenize");
+        assertThat(metrics.toString()).isEqualTo(report);
+    }
+
+    @Test
+    void commitsJfrEvents(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("metrics.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.tuta.PipelineStage");
+            recording.start();
+
+            PipelineMetrics metrics = new PipelineMetrics(true);
+            metrics.start(PipelineMetrics.Stage.PARSE);
+            metrics.record(PipelineMetrics.Stage.TOKENIZE, 1000, 0, 7);
+            metrics.stop(PipelineMetrics.Stage.PARSE, 1);
+            metrics.commitRecorded(PipelineMetrics.Stage.TOKENIZE);
+
+            recording.stop();
+            recording.dump(file);
+            assertThat(metrics.isJfrEvents()).isTrue();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        assertThat(events.stream().map(event -> event.getString("stage")).collect(Collectors.toList()))
+                .containsExactly("PARSE", "TOKENIZE");
+        assertThat(events.get(1).getLong("items")).isEqualTo(7);
+        assertThat(events.get(1).getDuration("exclusiveTime").toNanos()).isEqualTo(1000);
+    }
+}
@@ -0,0 +1,271 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SimilarityEngineTest {
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    static SparseVector[] randomVectors(int numOfVectors, int vocabularySize, long seed) {
+        Random random = new Random(seed);
+        SparseVector[] vectors = new SparseVector[numOfVectors];
+        for (int i = 0; i < numOfVectors; i++) {
+            int[] termIds = random.ints(0, vocabularySize).distinct().limit(1 + random.nextInt(20)).sorted().toArray();
+            float[] weights = new float[termIds.length];
+            for (int j = 0; j < weights.length; j++) weights[j] = random.nextFloat();
+            vectors[i] = new SparseVector(termIds, weights);
+        }
+        return vectors;
+    }
+
+    @Test
+    void computeAllSequential() throws IOException {
+        Email[] emails;
+        try (Reader reader = new FileReader("emails-m.json")) {
+            emails = new Gson().fromJson(reader, Email[].class);
+        }
+        SparseVector[] vectors = new CorpusIndex(emails).getVectors();
+        SymmetricMatrix matrix = new SymmetricMatrix(vectors.length);
+
+        SimilarityEngine engine = new SimilarityEngine(false);
+        engine.computeAll(vectors, matrix);
+
+        assertThat(engine.isParallel()).isFalse();
+        for (int i = 0; i < vectors.length; i++) {
+            for (int j = 0; j < vectors.length; j++) {
+                if (i == j) continue;
+                assertThat(matrix.get(i, j)).isEqualTo(SimilarityUtils.calcCosineSimilarity(vectors[i], vectors[j]));
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "Tiles: {0}")
+    @ValueSource(ints = {1, 2, 7, 64, 1000})
+    void computeAllParallelMatchesSequential(int numOfTiles) {
+        SparseVector[] vectors = randomVectors(150, 60, 42);
+        SymmetricMatrix sequential = new SymmetricMatrix(vectors.length);
+        SymmetricMatrix parallel = new SymmetricMatrix(vectors.length);
+
+        new SimilarityEngine(false).computeAll(vectors, sequential);
+        new SimilarityEngine(executor, numOfTiles).computeAll(vectors, parallel);
+
+        assertThat(parallel.getData()).doesNotContain(Float.NaN).containsExactly(sequential.getData());
+    }
+
+    @Test
+    void computeAllCommonPool() {
+        SparseVector[] vectors = randomVectors(80, 30, 7);
+        SymmetricMatrix sequential = new SymmetricMatrix(vectors.length);
+        SymmetricMatrix parallel = new SymmetricMatrix(vectors.length);
+
+        new SimilarityEngine(false).computeAll(vectors, sequential);
+        SimilarityEngine engine = new SimilarityEngine(true);
+        engine.computeAll(vectors, parallel);
+
+        assertThat(engine.isParallel()).isTrue();
+        assertThat(parallel.getData()).containsExactly(sequential.getData());
+    }
+
+    @Test
+    void computeAllInvalidArguments() {
+        assertThatThrownBy(() -> new SimilarityEngine(executor, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Number of tiles must be positive");
+        assertThatThrownBy(() -> new SimilarityEngine(false).computeAll(new SparseVector[3], new SymmetricMatrix(2)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Matrix size must match the number of vectors");
+    }
+
+    @ParameterizedTest(name = "Tiles: {0}")
+    @ValueSource(ints = {1, 3, 64})
+    void computeAllBlockedMatchesPairwise(int numOfTiles) {
+        // More vectors than fit into a block of rows and of columns, including one without any term
+        SparseVector[] vectors = randomVectors(2500, 400, 11);
+        vectors[1200] = new SparseVector(new int[0], new float[0]);
+        SymmetricMatrix pairwise = new SymmetricMatrix(vectors.length);
+        SymmetricMatrix blocked = new SymmetricMatrix(vectors.length);
+
+        new SimilarityEngine(false).computeAll(vectors, pairwise);
+        new SimilarityEngine(executor, numOfTiles).computeAll(vectors, new InvertedIndex(vectors), blocked);
+
+        assertThat(blocked.getData()).doesNotContain(Float.NaN).isEqualTo(pairwise.getData());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void computeAllBlockedFromEmails(String filePath) throws IOException {
+        Email[] emails;
+        try (Reader reader = new FileReader(filePath)) {
+            emails = new Gson().fromJson(reader, Email[].class);
+        }
+        SparseVector[] vectors = new CorpusIndex(emails).getVectors();
+        SymmetricMatrix pairwise = new SymmetricMatrix(vectors.length);
+        SymmetricMatrix blocked = new SymmetricMatrix(vectors.length);
+
+        SimilarityEngine engine = new SimilarityEngine(executor, 7);
+        engine.computeAll(vectors, pairwise);
+        engine.computeAll(vectors, new InvertedIndex(vectors), blocked);
+
+        assertThat(blocked.getData()).isEqualTo(pairwise.getData());
+    }
+
+    @Test
+    void computeAllBlockedIntoMappedMatrix(@TempDir Path tempDir) throws IOException {
+        SparseVector[] vectors = randomVectors(300, 80, 5);
+        SymmetricMatrix pairwise = new SymmetricMatrix(vectors.length);
+        new SimilarityEngine(false).computeAll(vectors, pairwise);
+
+        try (MappedSymmetricMatrix blocked = new MappedSymmetricMatrix(tempDir.resolve("matrix.bin"), vectors.length,
+                MappedSymmetricMatrix.Encoding.FLOAT32)) {
+            new SimilarityEngine(executor, 4).computeAll(vectors, new InvertedIndex(vectors), blocked);
+            for (int i = 1; i < vectors.length; i++) {
+                for (int j = 0; j < i; j++) {
+                    assertThat(blocked.get(i, j)).isEqualTo(pairwise.get(i, j));
+                }
+            }
+        }
+    }
+
+    @Test
+    void computeAllBlockedInvalidArguments() {
+        SparseVector[] vectors = randomVectors(5, 40, 1);
+        SimilarityEngine engine = new SimilarityEngine(false);
+        assertThatThrownBy(() -> engine.computeAll(vectors, new InvertedIndex(vectors), new SymmetricMatrix(4)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Matrix size must match the number of vectors");
+        assertThatThrownBy(() -> engine.computeAll(vectors, new InvertedIndex(), new SymmetricMatrix(5)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Inverted index must match the number of vectors");
+    }
+
+    @ParameterizedTest(name = "Tiles: {0}, threshold: {1}, allowed: {2}")
+    @CsvSource({"1, 0.2, 1", "7, 0.2, 1", "64, 0.2, 3", "7, 0.5, 0", "64, -1, 5"})
+    void classifyMatchesGraph(int numOfTiles, float similarityThreshold, int numOfSimilarEmailsAllowed) {
+        SparseVector[] vectors = randomVectors(200, 50, 11);
+        SimilarityGraph graph = new SimilarityEngine(false).computeGraph(vectors, similarityThreshold);
+
+        SpamClassification classification = new SimilarityEngine(executor, numOfTiles)
+                .classify(vectors, similarityThreshold, numOfSimilarEmailsAllowed);
+
+        assertThat(classification.getSpamFlags()).containsExactly(graph.classify(numOfSimilarEmailsAllowed));
+        for (int i = 0; i < vectors.length; i++) {
+            if (classification.isSpam(i)) {
+                assertThat(classification.getSimilarCount(i)).isGreaterThan(numOfSimilarEmailsAllowed)
+                        .isLessThanOrEqualTo(graph.getSimilarCount(i));
+            } else {
+                assertThat(classification.getSimilarCount(i)).isEqualTo(graph.getSimilarCount(i));
+            }
+        }
+        assertThat(classification.getNumOfComparisons() + classification.getNumOfSkippedPairs()
+                + classification.getNumOfPrunedPairs()).isEqualTo(classification.getNumOfPairs()).isEqualTo(19900);
+    }
+
+    @Test
+    void classifySkipsPairsOfSpamEmails() {
+        SparseVector[] vectors = new SparseVector[100];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = new SparseVector(new int[]{1, 2, 3}, new float[]{0.5f, 0.25f, 0.125f});
+        }
+
+        SpamClassification classification = new SimilarityEngine(false).classify(vectors, 0.32f, 1);
+
+        // Email 0 is compared until it is spam, each later email until it and email 0 are spam
+        assertThat(classification.getSpamFlags()).doesNotContain(false);
+        assertThat(classification.getNumOfSkippedPairs()).isGreaterThan(classification.getNumOfPairs() * 9 / 10);
+        assertThat(classification.getNumOfPrunedPairs()).isZero();
+        assertThat(classification.toString())
+                .startsWith("Compared " + classification.getNumOfComparisons() + " of 4950");
+    }
+
+    @Test
+    void classifyPrunesPairsByNorms() {
+        int[] longTermIds = new int[100];
+        float[] longWeights = new float[100];
+        for (int i = 0; i < longTermIds.length; i++) {
+            longTermIds[i] = i;
+            longWeights[i] = 1f;
+        }
+        SparseVector[] vectors = {
+                new SparseVector(new int[]{0}, new float[]{1f}),
+                new SparseVector(longTermIds, longWeights),
+                new SparseVector(new int[]{1}, new float[]{1f}),
+        };
+
+        // The single-term emails have a similarity of 0.1 with the long email, at most 0.1 by the bound
+        SpamClassification classification = new SimilarityEngine(false).classify(vectors, 0.32f, 0);
+
+        assertThat(classification.getNumOfPrunedPairs()).isEqualTo(2);
+        assertThat(classification.getNumOfComparisons()).isEqualTo(1);
+        assertThat(classification.getSpamFlags()).containsExactly(false, false, false);
+        assertThat(new SimilarityEngine(false).classify(vectors, 0.05f, 0).getSpamFlags())
+                .containsExactly(true, true, true);
+    }
+
+    @Test
+    void rowOf() {
+        int index = 0;
+        for (int row = 1; row < 500; row++) {
+            for (int col = 0; col < row; col++) {
+                assertThat(SimilarityEngine.rowOf(index++)).isEqualTo(row);
+            }
+        }
+        assertThat(SimilarityEngine.rowOf(65535L * 65534 / 2)).isEqualTo(65535);
+        assertThat(SimilarityEngine.rowOf(65535L * 65534 / 2 - 1)).isEqualTo(65534);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 499, 46341, 46342, 50000, 65535})
+    void colOf(int row) {
+        // row * (row - 1) overflows an int from row 46341 on
+        final long rowStart = (long) row * (row - 1) / 2;
+        for (int col : new int[]{0, row / 2, row - 1}) {
+            assertThat(SimilarityEngine.rowOf(rowStart + col)).isEqualTo(row);
+            assertThat(SimilarityEngine.colOf(rowStart + col, row)).isEqualTo(col);
+        }
+    }
+
+    @Test
+    void computeTileStartingWithinRow() {
+        SparseVector[] vectors = randomVectors(40, 30, 5);
+        float[] data = new float[40 * 39 / 2];
+
+        // Tiles starting in the middle of a row continue from the right column
+        SimilarityEngine.computeTile(vectors, data, 0, 100);
+        SimilarityEngine.computeTile(vectors, data, 100, 433);
+        SimilarityEngine.computeTile(vectors, data, 433, data.length);
+
+        int index = 0;
+        for (int row = 1; row < vectors.length; row++) {
+            for (int col = 0; col < row; col++) {
+                assertThat(data[index++]).isEqualTo(SimilarityUtils.calcCosineSimilarity(vectors[row], vectors[col]));
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class SimilarityGraphTest {
+
+    @Test
+    void fromMatrix() {
+        SymmetricMatrix matrix = new SymmetricMatrix(4);
+        matrix.set(1, 0, 0.5f);
+        matrix.set(2, 0, 0.1f);
+        matrix.set(3, 0, 0.9f);
+        matrix.set(3, 2, 0.4f);
+
+        SimilarityGraph graph = SimilarityGraph.fromMatrix(matrix, 0.32f);
+
+        assertThat(graph.size()).isEqualTo(4);
+        assertThat(graph.getNumOfEdges()).isEqualTo(3);
+        assertThat(graph.getSimilarEmails(0)).containsExactly(1, 3);
+        assertThat(graph.getSimilarEmails(1)).containsExactly(0);
+        assertThat(graph.getSimilarEmails(2)).containsExactly(3);
+        assertThat(graph.getSimilarEmails(3)).containsExactly(0, 2);
+        assertThat(graph.getSimilarCount(3)).isEqualTo(2);
+        assertThat(graph.getSimilarity(3, 0)).isEqualTo(0.9f);
+        assertThat(graph.getSimilarity(0, 3)).isEqualTo(0.9f);
+        assertThat(graph.getSimilarity(2, 0)).isNaN();
+        assertThat(graph.classify(1)).containsExactly(true, false, false, true);
+    }
+
+    @Test
+    void emptyGraph() {
+        SimilarityGraph graph = new SimilarityEngine(false).computeGraph(new SparseVector[0], 0.32f);
+        assertThat(graph.size()).isZero();
+        assertThat(graph.getNumOfEdges()).isZero();
+        assertThat(graph.classify(0)).isEmpty();
+    }
+
+    @ParameterizedTest(name = "Tiles: {0}")
+    @ValueSource(ints = {1, 3, 64})
+    void computeGraphMatchesMatrix(int numOfTiles) {
+        SparseVector[] vectors = SimilarityEngineTest.randomVectors(200, 50, 3);
+        SymmetricMatrix matrix = new SymmetricMatrix(vectors.length);
+        new SimilarityEngine(false).computeAll(vectors, matrix);
+        SimilarityGraph expected = SimilarityGraph.fromMatrix(matrix, 0.2f);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            SimilarityGraph graph = new SimilarityEngine(executor, numOfTiles).computeGraph(vectors, 0.2f);
+
+            assertThat(graph.getNumOfEdges()).isPositive().isEqualTo(expected.getNumOfEdges());
+            for (int i = 0; i < vectors.length; i++) {
+                assertThat(graph.getSimilarEmails(i)).isSorted().containsExactly(expected.getSimilarEmails(i));
+                for (int j : graph.getSimilarEmails(i)) {
+                    assertThat(graph.getSimilarity(i, j)).isEqualTo(matrix.get(i, j));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @ParameterizedTest(name = "Tiles: {0}")
+    @ValueSource(ints = {1, 3, 64, 1000})
+    void computeGraphFromInvertedIndexMatchesAllPairs(int numOfTiles) {
+        SparseVector[] vectors = SimilarityEngineTest.randomVectors(300, 400, 5);
+        InvertedIndex invertedIndex = new InvertedIndex(vectors);
+        SimilarityGraph expected = new SimilarityEngine(false).computeGraph(vectors, 0f);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            SimilarityGraph graph = new SimilarityEngine(executor, numOfTiles).computeGraph(vectors, invertedIndex, 0f);
+
+            // With a threshold of 0 every pair with a nonzero score is an edge, with exactly the same similarity
+            assertThat(graph.getNumOfEdges()).isPositive().isEqualTo(expected.getNumOfEdges())
+                    .isLessThan(vectors.length * (vectors.length - 1) / 2);
+            for (int i = 0; i < vectors.length; i++) {
+                assertThat(graph.getSimilarEmails(i)).isSorted().containsExactly(expected.getSimilarEmails(i));
+                for (int j : graph.getSimilarEmails(i)) {
+                    assertThat(graph.getSimilarity(i, j))
+                            .isEqualTo(SimilarityUtils.calcCosineSimilarity(vectors[i], vectors[j]));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @ParameterizedTest(name = "Blocks: {0}")
+    @ValueSource(ints = {1, 2, 5, 17})
+    void computeGraphOfPartitionsMatchesFullGraph(int numOfBlocks) {
+        SparseVector[] vectors = SimilarityEngineTest.randomVectors(300, 400, 5);
+        InvertedIndex invertedIndex = new InvertedIndex(vectors);
+        SimilarityGraph expected = new SimilarityEngine(false).computeGraph(vectors, invertedIndex, 0.1f);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            SimilarityEngine engine = new SimilarityEngine(executor, 7);
+            int numOfEdges = 0;
+            int[] similarCounts = new int[vectors.length];
+            for (PairPartition partition : PairPartition.split(vectors.length, numOfBlocks)) {
+                SimilarityGraph graph = engine.computeGraph(vectors, invertedIndex, 0.1f, Integer.MAX_VALUE,
+                        partition);
+                numOfEdges += graph.getNumOfEdges();
+                for (int i = 0; i < vectors.length; i++) {
+                    similarCounts[i] += graph.getSimilarCount(i);
+                    for (int j : graph.getSimilarEmails(i)) {
+                        assertThat(partition.contains(Math.max(i, j), Math.min(i, j))).isTrue();
+                        assertThat(graph.getSimilarity(i, j)).isEqualTo(expected.getSimilarity(i, j));
+                    }
+                }
+            }
+
+            assertThat(numOfEdges).isPositive().isEqualTo(expected.getNumOfEdges());
+            for (int i = 0; i < vectors.length; i++) {
+                assertThat(similarCounts[i]).isEqualTo(expected.getSimilarCount(i));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void computeGraphOfPartitionInvalidArguments() {
+        SparseVector[] vectors = SimilarityEngineTest.randomVectors(5, 40, 1);
+        SimilarityEngine engine = new SimilarityEngine(false);
+        assertThatThrownBy(() -> engine.computeGraph(vectors, new InvertedIndex(vectors), 0.1f, Integer.MAX_VALUE,
+                new PairPartition(0, 4, 6, 0, 4)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Partition must lie within the vectors");
+    }
+
+    @Test
+    void computeGraphFromInvertedIndexWithPruning() {
+        SparseVector[] vectors = {
+                new SparseVector(new int[]{0, 1}, new float[]{0.1f, 1f}),
+                new SparseVector(new int[]{0, 1}, new float[]{0.1f, 1f}),
+                new SparseVector(new int[]{0, 2}, new float[]{0.1f, 1f}),
+                new SparseVector(new int[]{0, 3}, new float[]{0.1f, 1f}),
+        };
+        SimilarityEngine engine = new SimilarityEngine(false);
+        InvertedIndex invertedIndex = new InvertedIndex(vectors);
+
+        assertThat(engine.computeGraph(vectors, invertedIndex, 0f).getNumOfEdges()).isEqualTo(6);
+
+        // Term 0 is contained in every email and skipped, so only the pair sharing term 1 remains
+        SimilarityGraph prunedGraph = engine.computeGraph(vectors, invertedIndex, 0f, 3);
+        assertThat(prunedGraph.getNumOfEdges()).isEqualTo(1);
+        assertThat(prunedGraph.getSimilarity(1, 0))
+                .isLessThan(SimilarityUtils.calcCosineSimilarity(vectors[1], vectors[0]))
+                .isCloseTo(1f / 1.01f, within(1e-6f));
+    }
+
+    @Test
+    void computeGraphFromInvertedIndexInvalidArguments() {
+        SparseVector[] vectors = SimilarityEngineTest.randomVectors(5, 40, 1);
+        SimilarityEngine engine = new SimilarityEngine(false);
+        assertThatThrownBy(() -> engine.computeGraph(vectors, new InvertedIndex(vectors), -0.1f))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Similarity threshold must not be negative");
+        assertThatThrownBy(() -> engine.computeGraph(vectors, new InvertedIndex(), 0.32f))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Inverted index must match the number of vectors");
+    }
+
+    @Test
+    void computeGraphForCandidatePairs() {
+        SparseVector[] vectors = SimilarityEngineTest.randomVectors(50, 20, 9);
+        long[] pairs = {MinHashLsh.encodePair(1, 0), MinHashLsh.encodePair(7, 2), MinHashLsh.encodePair(40, 39)};
+
+        SimilarityGraph graph = new SimilarityEngine(false).computeGraph(vectors, pairs, -1f);
+
+        assertThat(graph.getNumOfEdges()).isEqualTo(3);
+        assertThat(graph.getSimilarEmails(2)).containsExactly(7);
+        assertThat(graph.getSimilarity(7, 2)).isEqualTo(SimilarityUtils.calcCosineSimilarity(vectors[7], vectors[2]));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void classifyMatchesMatrix(String filePath) throws IOException {
+        final float similarityThreshold = 0.32f;
+        Email[] emails;
+        try (Reader reader = new FileReader(filePath)) {
+            emails = new Gson().fromJson(reader, Email[].class);
+        }
+        SparseVector[] vectors = new CorpusIndex(emails).getVectors();
+        SymmetricMatrix matrix = new SymmetricMatrix(vectors.length);
+        new SimilarityEngine(false).computeAll(vectors, matrix);
+
+        SimilarityGraph graph = new SimilarityEngine(true).computeGraph(vectors, similarityThreshold);
+        SimilarityGraph invertedGraph = new SimilarityEngine(true).computeGraph(vectors, new InvertedIndex(vectors),
+                similarityThreshold);
+        assertThat(invertedGraph.classify(1)).containsExactly(graph.classify(1));
+
+        for (int i = 0; i < emails.length; i++) {
+            int similarEmailsCount = 0;
+            for (int j = 0; j < emails.length; j++) {
+                if (i != j && matrix.get(i, j) > similarityThreshold) similarEmailsCount++;
+            }
+            assertThat(graph.getSimilarCount(i)).isEqualTo(similarEmailsCount);
+            assertThat(invertedGraph.getSimilarEmails(i)).containsExactly(graph.getSimilarEmails(i));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.tuta;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpamCheckServerTest {
+    private static final Gson GSON = new Gson();
+    private Email[] emails;
+    private SpamCheckServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (Reader reader = new FileReader("emails-m.json")) {
+            emails = GSON.fromJson(reader, Email[].class);
+        }
+        server = new SpamCheckServer(new InetSocketAddress("localhost", 0),
+                new OnlineSpamIndex(0.32f, 1, 0.1f), SpamCheckServer.createExecutor("4"));
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Sends a request and returns the status code followed by the response body.
+     */
+    private String[] request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        try (InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read; (read = input.read(buffer)) > 0; ) response.write(buffer, 0, read);
+            return new String[]{String.valueOf(status), response.toString("UTF-8")};
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    void classifySingleAndBatch() throws IOException {
+        String[] single = request("POST", "/classify", GSON.toJson(emails[0]));
+        assertThat(single[0]).isEqualTo("200");
+        SpamVerdict first = GSON.fromJson(single[1], SpamVerdict.class);
+        assertThat(first.getEmailIndex()).isZero();
+        assertThat(first.isSpam()).isFalse();
+
+        Email[] batch = new Email[emails.length - 1];
+        System.arraycopy(emails, 1, batch, 0, batch.length);
+        String[] response = request("POST", "/classify", GSON.toJson(batch));
+        assertThat(response[0]).isEqualTo("200");
+
+        // Same verdicts as classifying the emails one by one on an index of its own
+        OnlineSpamIndex expectedIndex = new OnlineSpamIndex(0.32f, 1, 0.1f);
+        expectedIndex.classify(emails[0]);
+        SpamVerdict[] verdicts = GSON.fromJson(response[1], SpamVerdict[].class);
+        assertThat(verdicts).hasSize(batch.length);
+        for (int i = 0; i < batch.length; i++) {
+            SpamVerdict expected = expectedIndex.classify(batch[i]);
+            assertThat(verdicts[i].getEmailIndex()).isEqualTo(i + 1);
+            assertThat(verdicts[i].getSimilarEmailsCount()).isEqualTo(expected.getSimilarEmailsCount());
+            assertThat(verdicts[i].isSpam()).isEqualTo(expected.isSpam());
+        }
+    }
+
+    @Test
+    void scoreDoesNotAddToIndex() throws IOException {
+        request("POST", "/classify", GSON.toJson(emails));
+
+        String[] response = request("POST", "/score", GSON.toJson(emails[0]));
+        assertThat(response[0]).isEqualTo("200");
+        SpamVerdict verdict = GSON.fromJson(response[1], SpamVerdict.class);
+        assertThat(verdict.getEmailIndex()).isEqualTo(-1);
+        assertThat(verdict.isSpam()).isTrue();
+
+        JsonObject metrics = GSON.fromJson(request("GET", "/metrics", null)[1], JsonObject.class);
+        assertThat(metrics.get("indexSize").getAsInt()).isEqualTo(emails.length);
+        assertThat(metrics.get("emails").getAsInt()).isEqualTo(emails.length + 1);
+        assertThat(metrics.get("requests").getAsInt()).isEqualTo(2);
+        assertThat(metrics.getAsJsonObject("latencyMillis").get("p99").getAsDouble()).isPositive();
+    }
+
+    @Test
+    void concurrentScoringWhileClassifying() throws Exception {
+        request("POST", "/classify", GSON.toJson(emails));
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String[]>> responses = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                Email email = emails[i % emails.length];
+                String path = i % 8 == 0 ? "/classify" : "/score";
+                responses.add(clients.submit(() -> request("POST", path, GSON.toJson(email))));
+            }
+            for (Future<String[]> response : responses) {
+                assertThat(response.get()[0]).isEqualTo("200");
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+
+        JsonObject metrics = GSON.fromJson(request("GET", "/metrics", null)[1], JsonObject.class);
+        assertThat(metrics.get("indexSize").getAsInt()).isEqualTo(emails.length + 8);
+        assertThat(metrics.get("errors").getAsInt()).isZero();
+    }
+
+    @Test
+    void invalidRequests() throws IOException {
+        assertThat(request("GET", "/classify", null)[0]).isEqualTo("405");
+        assertThat(request("POST", "/score", "{not json")[0]).isEqualTo("400");
+        assertThat(request("POST", "/score", "42")[0]).isEqualTo("400");
+        assertThat(request("POST", "/score", "[1, 2]")[0]).isEqualTo("400");
+        String[] response = request("POST", "/classify", "{\"receiver\": \"a@example.com\"}");
+        assertThat(response[0]).isEqualTo("400");
+        assertThat(response[1]).isEqualTo("{\"error\":\"Email body is missing\"}");
+    }
+
+    @Test
+    void createExecutor() {
+        assertThatThrownBy(() -> SpamCheckServer.createExecutor("0"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid number of threads: 0");
+        assertThatThrownBy(() -> SpamCheckServer.createExecutor("many"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid number of threads: many");
+    }
+}
@@ -0,0 +1,354 @@
+package com.tuta;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpamCheckerTest {
+
+    private static SpamCheckResult check(CheckerOptions options, StringWriter log) throws IOException {
+        try (Reader reader = new FileReader(options.getInputPath())) {
+            return new SpamChecker(options, new PrintWriter(log)).check(reader);
+        }
+    }
+
+    private static CheckerOptions options(String filePath) {
+        CheckerOptions options = new CheckerOptions();
+        options.setInputPath(filePath);
+        options.setParallel(false);
+        return options;
+    }
+
+    @ParameterizedTest
+    @EnumSource(CheckerOptions.Verbosity.class)
+    void verbosity(CheckerOptions.Verbosity verbosity) throws IOException {
+        CheckerOptions options = options("emails-sm.json");
+        options.setVerbosity(verbosity);
+        StringWriter log = new StringWriter();
+
+        check(options, log);
+
+        assertThat(log.toString().contains("Number of unique words"))
+                .isEqualTo(verbosity.compareTo(CheckerOptions.Verbosity.NORMAL) >= 0);
+        assertThat(log.toString().contains("Processing email"))
+                .isEqualTo(verbosity.compareTo(CheckerOptions.Verbosity.VERBOSE) >= 0);
+        assertThat(log.toString().contains("is similar to"))
+                .isEqualTo(verbosity == CheckerOptions.Verbosity.DEBUG);
+    }
+
+    @Test
+    void checkCountsAllSimilarEmails() throws IOException {
+        SpamCheckResult result = check(options("emails-m.json"), new StringWriter());
+
+        assertThat(result.size()).isEqualTo(10);
+        assertThat(result.getReceiver(0)).isEqualTo("john.doe@example.com");
+        assertThat(result.getSimilarCount(0)).isEqualTo(5);
+        assertThat(result.getNumOfSpam()).isEqualTo(10);
+    }
+
+    @Test
+    void storesGiveSameResult() throws IOException {
+        SpamCheckResult graph = check(options("emails-m.json"), new StringWriter());
+        CheckerOptions matrixOptions = options("emails-m.json");
+        matrixOptions.setMatrixStore(true);
+        SpamCheckResult matrix = check(matrixOptions, new StringWriter());
+
+        for (int i = 0; i < graph.size(); i++) {
+            assertThat(matrix.getSimilarCount(i)).isEqualTo(graph.getSimilarCount(i));
+            assertThat(matrix.isSpam(i)).isEqualTo(graph.isSpam(i));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void earlyExitGivesSameSpamFlags(String filePath) throws IOException {
+        SpamCheckResult graph = check(options(filePath), new StringWriter());
+        CheckerOptions earlyExitOptions = options(filePath);
+        earlyExitOptions.setEarlyExit(true);
+        StringWriter log = new StringWriter();
+        SpamCheckResult earlyExit = check(earlyExitOptions, log);
+
+        assertThat(log.toString()).contains("Classifying with early exits", "Compared ");
+        for (int i = 0; i < graph.size(); i++) {
+            assertThat(earlyExit.isSpam(i)).isEqualTo(graph.isSpam(i));
+            if (graph.isSpam(i)) {
+                assertThat(earlyExit.getSimilarCount(i)).isGreaterThan(1).isLessThanOrEqualTo(graph.getSimilarCount(i));
+            } else {
+                assertThat(earlyExit.getSimilarCount(i)).isEqualTo(graph.getSimilarCount(i));
+            }
+        }
+    }
+
+    @Test
+    void checkRejectsConflictingOptions() {
+        CheckerOptions options = options("emails-m.json");
+        options.setLshEnabled(true);
+        options.setMatrixStore(true);
+
+        assertThatThrownBy(() -> check(options, new StringWriter()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Option --matrix cannot be combined with --lsh");
+    }
+
+    @ParameterizedTest
+    @CsvSource({"graph, true, false", "matrix, true, true", "early-exit, false, false", "workers, false, false"})
+    void saveSnapshotInEveryMode(String mode, boolean withGraph, boolean withMatrix, @TempDir Path tempDir)
+            throws IOException {
+        CheckerOptions options = options("emails-m.json");
+        options.setMatrixStore(mode.equals("matrix"));
+        options.setEarlyExit(mode.equals("early-exit"));
+        options.setNumOfWorkers(mode.equals("workers") ? 2 : 0);
+        Path snapshotFile = tempDir.resolve("index.snapshot");
+        options.setSaveSnapshotPath(snapshotFile.toString());
+        StringWriter log = new StringWriter();
+        SpamCheckResult result = check(options, log);
+
+        IndexSnapshot snapshot = IndexSnapshot.read(snapshotFile);
+        assertThat(log.toString()).containsOnlyOnce("Saving index snapshot");
+        assertThat(snapshot.getCorpusIndex().size()).isEqualTo(result.size());
+        assertThat(snapshot.getSimilarityGraph() != null).isEqualTo(withGraph);
+        assertThat(snapshot.getSimilarityMatrix() != null).isEqualTo(withMatrix);
+        if (withGraph) {
+            for (int i = 0; i < result.size(); i++) {
+                assertThat(snapshot.getSimilarityGraph().getSimilarCount(i)).isEqualTo(result.getSimilarCount(i));
+            }
+        }
+        if (withMatrix) {
+            SparseVector[] vectors = snapshot.getCorpusIndex().getVectors();
+            assertThat(snapshot.getSimilarityMatrix().get(3, 1))
+                    .isEqualTo(SimilarityUtils.calcCosineSimilarity(vectors[3], vectors[1]));
+        }
+    }
+
+    @Test
+    void writeJsonLines() throws IOException {
+        SpamCheckResult result = new SpamCheckResult(new String[]{"a@example.com", "quote\"d"}, new int[]{2, 0},
+                new boolean[]{true, false});
+        StringWriter writer = new StringWriter();
+
+        result.write(writer, CheckerOptions.OutputFormat.JSONL);
+
+        assertThat(writer.toString()).isEqualTo(
+                "{\"index\":0,\"receiver\":\"a@example.com\",\"spam\":true,\"similarCount\":2}\n"
+                        + "{\"index\":1,\"receiver\":\"quote\\\"d\",\"spam\":false,\"similarCount\":0}\n");
+    }
+
+    @Test
+    void writeCsv() throws IOException {
+        SpamCheckResult result = new SpamCheckResult(new String[]{"a@example.com", "b, \"c\"", null},
+                new int[]{2, 0, 1}, new boolean[]{true, false, false});
+        StringWriter writer = new StringWriter();
+
+        result.write(writer, CheckerOptions.OutputFormat.CSV);
+
+        assertThat(writer.toString()).isEqualTo("index,receiver,spam,similarCount\n"
+                + "0,a@example.com,true,2\n"
+                + "1,\"b, \"\"c\"\"\",false,0\n"
+                + "2,,false,1\n");
+    }
+
+    @Test
+    void metricsAreOffByDefault() throws IOException {
+        StringWriter log = new StringWriter();
+        SpamChecker checker;
+        try (Reader reader = new FileReader("emails-m.json")) {
+            checker = new SpamChecker(options("emails-m.json"), new PrintWriter(log));
+            checker.check(reader);
+        }
+
+        assertThat(checker.getMetrics()).isSameAs(PipelineMetrics.DISABLED);
+        assertThat(log.toString()).doesNotContain("Pipeline metrics");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void metricsCoverAllStages(boolean earlyExit) throws IOException {
+        CheckerOptions options = options("emails-m.json");
+        options.setVerbosity(CheckerOptions.Verbosity.QUIET);
+        options.setMetricsEnabled(true);
+        options.setEarlyExit(earlyExit);
+        StringWriter log = new StringWriter();
+        SpamChecker checker;
+        try (Reader reader = new FileReader(options.getInputPath())) {
+            checker = new SpamChecker(options, new PrintWriter(log));
+            checker.check(reader);
+        }
+
+        PipelineMetrics metrics = checker.getMetrics();
+        assertThat(metrics.isEnabled()).isTrue();
+        for (PipelineMetrics.Stage stage : PipelineMetrics.Stage.values()) {
+            assertThat(metrics.isRecorded(stage)).as(stage.name()).isTrue();
+        }
+        assertThat(metrics.getNumOfItems(PipelineMetrics.Stage.PARSE)).isEqualTo(10);
+        assertThat(metrics.getNumOfItems(PipelineMetrics.Stage.TOKENIZE)).isGreaterThan(10);
+        assertThat(metrics.getNumOfItems(PipelineMetrics.Stage.SIMILARITY)).isEqualTo(45);
+        assertThat(metrics.getTermMatrixFillRatio()).isBetween(0.0, 1.0);
+        assertThat(Double.isNaN(metrics.getSimilarityFillRatio())).isEqualTo(earlyExit);
+        // Reported even though the logging is quiet
+        assertThat(log.toString()).startsWith("--> Pipeline metrics").contains("similarity", "vocabulary: ");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void parallelIndexGivesSameResult(String filePath) throws IOException {
+        CheckerOptions sequentialOptions = options(filePath);
+        sequentialOptions.setMetricsEnabled(true);
+        SpamChecker sequential = new SpamChecker(sequentialOptions, new PrintWriter(new StringWriter()));
+        CheckerOptions parallelOptions = options(filePath);
+        parallelOptions.setMetricsEnabled(true);
+        parallelOptions.setParallel(true);
+        SpamChecker parallel = new SpamChecker(parallelOptions, new PrintWriter(new StringWriter()));
+        SpamCheckResult sequentialResult;
+        SpamCheckResult parallelResult;
+        try (Reader reader = new FileReader(filePath)) {
+            sequentialResult = sequential.check(reader);
+        }
+        try (Reader reader = new FileReader(filePath)) {
+            parallelResult = parallel.check(reader);
+        }
+
+        assertThat(parallel.getMetrics().getNumOfItems(PipelineMetrics.Stage.TOKENIZE))
+                .isEqualTo(sequential.getMetrics().getNumOfItems(PipelineMetrics.Stage.TOKENIZE));
+        for (int i = 0; i < sequentialResult.size(); i++) {
+            assertThat(parallelResult.getReceiver(i)).isEqualTo(sequentialResult.getReceiver(i));
+            assertThat(parallelResult.getSimilarCount(i)).isEqualTo(sequentialResult.getSimilarCount(i));
+            assertThat(parallelResult.isSpam(i)).isEqualTo(sequentialResult.isSpam(i));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void workersGiveSameResult(String filePath) throws IOException {
+        SpamCheckResult local = check(options(filePath), new StringWriter());
+        CheckerOptions workerOptions = options(filePath);
+        workerOptions.setNumOfWorkers(2);
+        StringWriter log = new StringWriter();
+        SpamCheckResult workers = check(workerOptions, log);
+
+        assertThat(log.toString()).contains("in 2 worker processes");
+        for (int i = 0; i < local.size(); i++) {
+            assertThat(workers.getReceiver(i)).isEqualTo(local.getReceiver(i));
+            assertThat(workers.getSimilarCount(i)).isEqualTo(local.getSimilarCount(i));
+            assertThat(workers.isSpam(i)).isEqualTo(local.isSpam(i));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"emails-sm.json, false", "emails-m.json, false", "emails-m.json, true"})
+    void dedupGivesSameResult(String filePath, boolean allPairs) throws IOException {
+        SpamCheckResult all = check(options(filePath), new StringWriter());
+        CheckerOptions dedupOptions = options(filePath);
+        dedupOptions.setDedup(true);
+        dedupOptions.setAllPairs(allPairs);
+        StringWriter log = new StringWriter();
+        SpamCheckResult dedup = check(dedupOptions, log);
+
+        assertThat(log.toString()).contains("Number of unique bodies");
+        for (int i = 0; i < all.size(); i++) {
+            assertThat(dedup.getReceiver(i)).isEqualTo(all.getReceiver(i));
+            assertThat(dedup.getSimilarCount(i)).isEqualTo(all.getSimilarCount(i));
+            assertThat(dedup.isSpam(i)).isEqualTo(all.isSpam(i));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"emails-sm.json", "emails-m.json"})
+    void dedupWithLshGivesSameResult(String filePath, @TempDir Path tempDir) throws IOException {
+        // Every email twice, so that LSH pairs every body with its copy in all bands
+        JsonArray emails = JsonParser.parseString(new String(Files.readAllBytes(Paths.get(filePath)),
+                StandardCharsets.UTF_8)).getAsJsonArray();
+        emails.addAll(emails.deepCopy());
+        Path inputFile = tempDir.resolve("emails.json");
+        Files.write(inputFile, emails.toString().getBytes(StandardCharsets.UTF_8));
+        CheckerOptions lshOptions = options(inputFile.toString());
+        lshOptions.setLshEnabled(true);
+        SpamCheckResult lsh = check(lshOptions, new StringWriter());
+        CheckerOptions dedupOptions = options(inputFile.toString());
+        dedupOptions.setLshEnabled(true);
+        dedupOptions.setDedup(true);
+        StringWriter log = new StringWriter();
+        SpamCheckResult dedup = check(dedupOptions, log);
+
+        assertThat(log.toString()).contains("Number of unique bodies", "Number of candidate pairs");
+        assertThat(dedup.size()).isEqualTo(emails.size());
+        for (int i = 0; i < lsh.size(); i++) {
+            assertThat(dedup.getReceiver(i)).isEqualTo(lsh.getReceiver(i));
+            assertThat(dedup.getSimilarCount(i)).isEqualTo(lsh.getSimilarCount(i)).isPositive();
+            assertThat(dedup.isSpam(i)).isEqualTo(lsh.isSpam(i));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void writeCampaigns(boolean allPairs, @TempDir Path tempDir) throws IOException {
+        CheckerOptions options = options("emails-m.json");
+        options.setAllPairs(allPairs);
+        options.setClustersPath(tempDir.resolve("campaigns.jsonl").toString());
+        StringWriter log = new StringWriter();
+        SpamCheckResult result = check(options, log);
+
+        List<String> lines = Files.readAllLines(tempDir.resolve("campaigns.jsonl"));
+        assertThat(log.toString()).contains(lines.size() + " campaigns written to");
+        assertThat(lines).isNotEmpty();
+        int numOfClustered = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            JsonObject campaign = JsonParser.parseString(lines.get(i)).getAsJsonObject();
+            JsonArray emails = campaign.getAsJsonArray("emails");
+            assertThat(campaign.get("cluster").getAsInt()).isEqualTo(i);
+            assertThat(campaign.get("size").getAsInt()).isEqualTo(emails.size()).isGreaterThan(1);
+            assertThat(campaign.getAsJsonArray("receivers").get(0).getAsString())
+                    .isEqualTo(result.getReceiver(emails.get(0).getAsInt()));
+            assertThat(campaign.get("representative").getAsString()).isNotEmpty();
+            for (int j = 0; j < emails.size(); j++) {
+                assertThat(result.getSimilarCount(emails.get(j).getAsInt())).isPositive();
+            }
+            numOfClustered += emails.size();
+        }
+        int numOfSimilar = 0;
+        for (int i = 0; i < result.size(); i++) {
+            if (result.getSimilarCount(i) > 0) numOfSimilar++;
+        }
+        assertThat(numOfClustered).isEqualTo(numOfSimilar);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void hashingReportsDeviation(boolean allPairs) throws IOException {
+        SpamCheckResult exact = check(options("emails-m.json"), new StringWriter());
+        CheckerOptions hashOptions = options("emails-m.json");
+        hashOptions.setHashBits(20);
+        hashOptions.setHashReport(true);
+        hashOptions.setAllPairs(allPairs);
+        StringWriter log = new StringWriter();
+        SpamCheckResult hashed = check(hashOptions, log);
+
+        // The 182 words of the corpus fall into distinct buckets
+        assertThat(log.toString()).contains("Number of hash buckets: 1048576", "without hashing: 182",
+                "lost pairs: 0, gained pairs: 0, reclassified emails: 0 of 10");
+        for (int i = 0; i < exact.size(); i++) {
+            assertThat(hashed.getReceiver(i)).isEqualTo(exact.getReceiver(i));
+            assertThat(hashed.getSimilarCount(i)).isEqualTo(exact.getSimilarCount(i));
+            assertThat(hashed.isSpam(i)).isEqualTo(exact.isSpam(i));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.tuta;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class SparseVectorTest {
+    private SparseVector vector;
+
+    @BeforeEach
+    void setUp() {
+        vector = new SparseVector(new int[]{1, 4, 7}, new float[]{3f, 4f, 12f});
+    }
+
+    @Test
+    void checkConstructor() {
+        assertThat(vector.size()).isEqualTo(3);
+        assertThat(vector.getTermIds()).containsExactly(1, 4, 7);
+        assertThat(vector.getWeights()).containsExactly(3f, 4f, 12f);
+    }
+
+    @Test
+    void constructorInvalidArguments() {
+        assertThatThrownBy(() -> new SparseVector(new int[]{1, 2}, new float[]{1f}))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Term ids and weights must have the same length");
+        assertThatThrownBy(() -> new SparseVector(new int[]{2, 2}, new float[]{1f, 1f}))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Term ids must be strictly ascending");
+    }
+
+    @Test
+    void get() {
+        assertThat(vector.get(4)).isEqualTo(4f);
+        assertThat(vector.get(5)).isEqualTo(0f);
+    }
+
+    @Test
+    void getNorm() {
+        assertThat(vector.getNorm()).isEqualTo(13.0);
+        assertThat(new SparseVector(new int[0], new float[0]).getNorm()).isZero();
+    }
+
+    @Test
+    void dot() {
+        SparseVector other = new SparseVector(new int[]{0, 4, 7, 9}, new float[]{5f, 2f, 1f, 8f});
+        assertThat(vector.dot(other)).isEqualTo(20.0);
+        assertThat(other.dot(vector)).isEqualTo(20.0);
+        assertThat(vector.dot(new SparseVector(new int[]{2}, new float[]{1f}))).isZero();
+    }
+
+    @Test
+    void cosineSimilarityMatchesDenseVectors() {
+        SparseVector other = new SparseVector(new int[]{0, 4, 7, 9}, new float[]{5f, 2f, 1f, 8f});
+        float[] denseVector = new float[10];
+        float[] denseOther = new float[10];
+        for (int termId = 0; termId < 10; termId++) {
+            denseVector[termId] = vector.get(termId);
+            denseOther[termId] = other.get(termId);
+        }
+
+        assertThat(SimilarityUtils.calcCosineSimilarity(vector, other))
+                .isCloseTo(SimilarityUtils.calcCosineSimilarity(denseVector, denseOther), within(1e-6f));
+        assertThat(SimilarityUtils.calcCosineSimilarity(vector, vector)).isEqualTo(1f);
+        assertThat(SimilarityUtils.calcCosineSimilarity(vector, new SparseVector(new int[0], new float[0])))
+                .isEqualTo(0f);
+    }
+}
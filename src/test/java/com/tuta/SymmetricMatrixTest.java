@@ -68,4 +68,11 @@ class SymmetricMatrixTest {
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("Invalid indices for the lower triangular part");
     }
+
+    @Test
+    void tooLargeForAnArray() {
+        assertThatThrownBy(() -> new SymmetricMatrix(70_000))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Matrix too large for an array");
+    }
 }
\ No newline at end of file
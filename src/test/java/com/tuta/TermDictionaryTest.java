@@ -0,0 +1,61 @@
+package com.tuta;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TermDictionaryTest {
+    private TermDictionary dictionary;
+
+    @BeforeEach
+    void setUp() {
+        dictionary = new TermDictionary(4);
+    }
+
+    @Test
+    void intern() {
+        assertThat(dictionary.intern("email")).isZero();
+        assertThat(dictionary.intern("spam")).isEqualTo(1);
+        assertThat(dictionary.intern("email")).isZero();
+        assertThat(dictionary.intern("")).isEqualTo(2);
+        assertThat(dictionary.size()).isEqualTo(3);
+    }
+
+    @Test
+    void internFromBuffer() {
+        char[] buffer = "xxspamxx".toCharArray();
+        assertThat(dictionary.intern(buffer, 2, 4)).isZero();
+        assertThat(dictionary.intern("spam")).isZero();
+        assertThat(dictionary.getTerm(0)).isEqualTo("spam");
+    }
+
+    @Test
+    void getId() {
+        dictionary.intern("email");
+        assertThat(dictionary.getId("email")).isZero();
+        assertThat(dictionary.getId(new StringBuilder("email"))).isZero();
+        assertThat(dictionary.getId("spam")).isEqualTo(-1);
+        assertThat(dictionary.size()).isEqualTo(1);
+    }
+
+    @Test
+    void growsBeyondExpectedNumOfTerms() {
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(dictionary.intern("term" + i)).isEqualTo(i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(dictionary.getId("term" + i)).isEqualTo(i);
+            assertThat(dictionary.getTerm(i)).isEqualTo("term" + i);
+        }
+        assertThat(dictionary.size()).isEqualTo(10_000);
+    }
+
+    @Test
+    void getTermInvalidId() {
+        assertThatThrownBy(() -> dictionary.getTerm(0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid term id");
+    }
+}
@@ -0,0 +1,86 @@
+package com.tuta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenizerTest {
+
+    private static List<String> tokenize(Tokenizer tokenizer, String textBody) {
+        List<String> words = new ArrayList<>();
+        int numOfWords = tokenizer.tokenize(textBody, (buffer, length) -> words.add(new String(buffer, 0, length)));
+        assertThat(numOfWords).isEqualTo(words.size());
+        return words;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "Best email service: end-to-end, encrypted and no ads.",
+            "Congratulations, John!\n\nClaim Your Prize: http://example.com/claim-prize\n\nBest regards,\nThe Team",
+            "",
+            "   ",
+            "  leading and trailing whitespace \t\r\n",
+            "double punctuation?! ... (quoted) \"words\"",
+            "Line\u000Bfeed\fand\ttabs",
+            "Non-breaking\u00A0space and \u2003em space",
+            "Umlauts ÄÖÜ and ÉCOLE, ΣΟΦΟΣ.",
+            "Dotted İSTANBUL and dotless ı",
+            "Ends with terminator.\u2028 and ,\u0085 and ;\u2029",
+            "Surrogates 𝐀𝐁! and emoji 😀.",
+    })
+    void tokenizeMatchesGetCleanWords(String textBody) {
+        List<String> words = tokenize(new Tokenizer(), textBody);
+        assertThat(words).containsExactly(TextUtils.getCleanWords(textBody));
+        assertThat(words).hasSize(TextUtils.countNumOfWords(textBody));
+    }
+
+    @Test
+    void tokenizeMatchesGetCleanWordsInTurkishLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            String textBody = "TITLE INFO Istanbul";
+            assertThat(tokenize(new Tokenizer(), textBody)).containsExactly(TextUtils.getCleanWords(textBody));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    void tokenizeInternsTermIds() {
+        TermDictionary dictionary = new TermDictionary();
+        Tokenizer tokenizer = new Tokenizer(dictionary);
+        List<Integer> termIds = new ArrayList<>();
+
+        int numOfWords = tokenizer.tokenizeTermIds("Encrypted email, encrypted CALENDAR. Email!", termIds::add);
+
+        assertThat(numOfWords).isEqualTo(5);
+        assertThat(termIds).containsExactly(0, 1, 0, 2, 1);
+        assertThat(dictionary.getTerm(0)).isEqualTo("encrypted");
+        assertThat(dictionary.getTerm(2)).isEqualTo("calendar");
+        assertThat(tokenizer.getDictionary()).isSameAs(dictionary);
+    }
+
+    @Test
+    void tokenizeWithoutDictionary() {
+        assertThatThrownBy(() -> new Tokenizer().tokenizeTermIds("text", termId -> { }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Tokenizer has no dictionary");
+    }
+
+    @Test
+    void tokenizeLongWords() {
+        StringBuilder textBody = new StringBuilder();
+        for (int i = 0; i < 500; i++) textBody.append((char) ('A' + i % 26));
+        textBody.append(". short");
+        assertThat(tokenize(new Tokenizer(), textBody.toString()))
+                .containsExactly(TextUtils.getCleanWords(textBody.toString()));
+    }
+}
@@ -0,0 +1,69 @@
+package com.tuta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TopKHeapTest {
+
+    @ParameterizedTest(name = "Offers: {0}, k: {1}")
+    @CsvSource({"0, 5", "3, 5", "5, 5", "100, 1", "1000, 10", "1000, 999"})
+    void keepsTheMostSimilarEmails(int numOfOffers, int k) {
+        Random random = new Random(numOfOffers * 31 + k);
+        float[] similarities = new float[numOfOffers];
+        // Few distinct values so that many emails tie
+        for (int i = 0; i < numOfOffers; i++) similarities[i] = random.nextInt(20) / 20f;
+        int[] order = IntStream.range(0, numOfOffers).boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> -similarities[i]).thenComparingInt(i -> i))
+                .mapToInt(Integer::intValue).limit(k).toArray();
+
+        TopKHeap heap = new TopKHeap(k);
+        for (int i : IntStream.range(0, numOfOffers).map(i -> numOfOffers - 1 - i).toArray()) {
+            heap.offer(i, similarities[i]);
+        }
+        Neighbors neighbors = heap.toNeighbors();
+
+        assertThat(heap.size()).isEqualTo(order.length);
+        assertThat(neighbors.size()).isEqualTo(order.length);
+        for (int rank = 0; rank < order.length; rank++) {
+            assertThat(neighbors.getEmailIndex(rank)).isEqualTo(order[rank]);
+            assertThat(neighbors.getSimilarity(rank)).isEqualTo(similarities[order[rank]]);
+        }
+    }
+
+    @Test
+    void offerAndClear() {
+        TopKHeap heap = new TopKHeap(2);
+
+        assertThat(heap.offer(4, 0.5f)).isTrue();
+        assertThat(heap.offer(2, -0.25f)).isTrue();
+        assertThat(heap.offer(7, -0.5f)).isFalse();
+        assertThat(heap.offer(3, 0.5f)).isTrue();
+        assertThat(heap.offer(5, 0.5f)).isFalse();
+        assertThat(heap.getCapacity()).isEqualTo(2);
+        assertThat(heap.toNeighbors().toString()).isEqualTo("3 (0.5000), 4 (0.5000)");
+
+        heap.clear();
+        assertThat(heap.size()).isZero();
+        heap.offer(1, -0.0f);
+        heap.offer(0, -1f);
+        Neighbors neighbors = heap.toNeighbors();
+        assertThat(Arrays.asList(neighbors.getEmailIndex(0), neighbors.getEmailIndex(1))).containsExactly(1, 0);
+        assertThat(neighbors.getSimilarity(1)).isEqualTo(-1f);
+    }
+
+    @Test
+    void invalidCapacity() {
+        assertThatThrownBy(() -> new TopKHeap(0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Number of neighbors must be positive");
+    }
+}
@@ -0,0 +1,68 @@
+package com.tuta;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD {@link DenseKernel} built on the incubating Java Vector API, using the widest vector shape of the CPU, such as
+ * 8 floats with AVX2 or 16 floats with AVX-512.
+ *
+ * <p>
+ * Products are summed lane-wise in single precision with fused multiply-adds and the lanes are only reduced at the
+ * end, so the results differ from the scalar kernels by rounding. Only compiled by the {@code vector} Maven profile and
+ * loaded through {@link DenseKernels}.
+ * </p>
+ */
+public class VectorKernel implements DenseKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public double dot(float[] a, float[] b) {
+        final int length = a.length;
+        final int upperBound = SPECIES.loopBound(length);
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i < upperBound; i += SPECIES.length()) {
+            sum = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), sum);
+        }
+        double dotProduct = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            dotProduct += a[i] * b[i];
+        }
+        return dotProduct;
+    }
+
+    @Override
+    public float calcCosineSimilarity(float[] a, float[] b) {
+        final int length = a.length;
+        final int upperBound = SPECIES.loopBound(length);
+        FloatVector dotProducts = FloatVector.zero(SPECIES);
+        FloatVector normsA = FloatVector.zero(SPECIES);
+        FloatVector normsB = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, i);
+            dotProducts = va.fma(vb, dotProducts);
+            normsA = va.fma(va, normsA);
+            normsB = vb.fma(vb, normsB);
+        }
+        double dotProduct = dotProducts.reduceLanes(VectorOperators.ADD);
+        double normA = normsA.reduceLanes(VectorOperators.ADD);
+        double normB = normsB.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            dotProduct += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        double euclideanDist = Math.sqrt(normA) * Math.sqrt(normB);
+        if (euclideanDist == 0.0) return 0.0f;
+        return (float) (dotProduct / euclideanDist);
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.vectorBitSize() + " bit)";
+    }
+}